@@ -8,6 +8,8 @@ import org.pi2.service.data.CsvLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
 
 
@@ -21,6 +23,8 @@ public class Main {
 
     private static FlightNetwork flightNetwork; // Data structure
     private static API flightAPI; // Service layer and handling of the tasks
+    // Binary snapshot of the network next to the database, lets a restart skip SQLite and the csv files
+    private static final Path SNAPSHOT_FILE = Path.of("flightnetwork.snapshot");
 
     /**
      * Entry point for the application
@@ -53,12 +57,31 @@ public class Main {
         try {
             log.info("Initializing database....");
 
-            // Constructing the network
-            flightNetwork = new FlightNetwork();
-            loadFromCSV();
+            // Constructing the network, from the snapshot file if it is up to date, otherwise from the database
+            flightNetwork = new FlightNetwork(SNAPSHOT_FILE);
+            // The csv files are only the fallback for an empty database
+            if (flightNetwork.getSnapshot().airportCount() == 0) {
+                loadFromCSV();
+            }
+            saveSnapshot();
             log.info("Database initialization completed successfully");
             //initialize the service layer on the network
             flightAPI = new API(flightNetwork);
+            // -Dflightnetwork.bidirectional=false switches back to the unidirectional search for comparisons
+            flightAPI.setBidirectionalSearch(Boolean.parseBoolean(System.getProperty("flightnetwork.bidirectional", "true")));
+            // -Dflightnetwork.landmarks=0 disables the landmark search of "cheapest", -Dflightnetwork.landmarkSelection=farthest
+            flightAPI.configureLandmarks(Integer.parseInt(System.getProperty("flightnetwork.landmarks", "8")),
+                    System.getProperty("flightnetwork.landmarkSelection", "avoid"));
+            // -Dflightnetwork.contractionHierarchies=false disables them, the files live next to the snapshot file
+            flightAPI.configureContractionHierarchies(
+                    Boolean.parseBoolean(System.getProperty("flightnetwork.contractionHierarchies", "true")),
+                    SNAPSHOT_FILE.toAbsolutePath().getParent());
+            // -Dflightnetwork.allPairsMaxAirports=0 disables the all-pairs tables, -Dflightnetwork.allPairsMethod=floyd-warshall
+            flightAPI.configureAllPairs(Integer.parseInt(System.getProperty("flightnetwork.allPairsMaxAirports", "1000")),
+                    System.getProperty("flightnetwork.allPairsMethod", "dijkstra"));
+            // -Dflightnetwork.tripCacheSize=0 disables the cache of the planned trips, -Dflightnetwork.tripCacheTtlSeconds=0 keeps them until the next version
+            flightAPI.configureTripCache(Integer.parseInt(System.getProperty("flightnetwork.tripCacheSize", "10000")),
+                    Long.parseLong(System.getProperty("flightnetwork.tripCacheTtlSeconds", "300")));
 
         }
 
@@ -72,18 +95,25 @@ public class Main {
 
     /**
      * Loads flightnetwork data from csv files as fallback
-     * @throws SQLException in case of db operations error
      */
-    private static void loadFromCSV() throws SQLException {
+    private static void loadFromCSV() {
         CsvLoader loader = new CsvLoader();
         String airportsFile = "airports.csv";
         String flightsFile = "flights.csv";
         String routesFile = "routes.csv";
 
+        loader.loadInto(flightNetwork, airportsFile, flightsFile, routesFile);
+    }
+
+    /**
+     * Writes the current network to the snapshot file for the next start
+     * A failure is only logged, the next start falls back to the database
+     */
+    private static void saveSnapshot() {
         try {
-            flightNetwork = loader.loadNetwork(airportsFile, flightsFile, routesFile);
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+            flightNetwork.saveSnapshot(SNAPSHOT_FILE);
+        } catch (IOException e) {
+            log.warn("Could not write network snapshot: {}", e.getMessage());
         }
     }
 
@@ -107,6 +137,7 @@ public class Main {
             log.info("Shutting down");
             // Clean up datastruct and database connections
             if (flightNetwork != null) {
+                saveSnapshot();
                 flightNetwork.close();
             }
             log.info("Database connection closed");
@@ -11,6 +11,10 @@ public class Airport {
     private final String code; //International Air Transport Association code of the Airport
     private final String city; // City where Airport is located
     private final String country; // Country where the Airport is located
+    private final Double latitude; // Latitude in degrees, null if unknown
+    private final Double longitude; // Longitude in degrees, null if unknown
+    private final Integer minimumConnectionTime; // Minutes needed to change flights at the airport, null if unknown
+    private final int key; // IATA code packed into an int, see IataKey
 
     /**
      * Constructor creates Airport Object
@@ -21,10 +25,55 @@ public class Airport {
      * @param country name of the Country of the Airport location, refers to the organizational structure of the Airlines. I.e. London Heathrow is in the united Kingdom and not in England
      */
     public Airport(String name, String code, String city, String country) {
+        this(name, code, city, country, null, null);
+    }
+
+    /**
+     * Constructor creates Airport Object with its location
+     * The coordinates are optional, they let the route planner steer its search towards the destination
+     * @param name Full Name of the Airport i.e. "London Heathrow"
+     * @param code The International Air Transport Association code of the Airport i.e. "LHR"
+     * @param city Name of the City of the Airport location
+     * @param country name of the Country of the Airport location
+     * @param latitude Latitude in degrees, -90 to 90, null if unknown
+     * @param longitude Longitude in degrees, -180 to 180, null if unknown
+     */
+    public Airport(String name, String code, String city, String country, Double latitude, Double longitude) {
+        this(name, code, city, country, latitude, longitude, null);
+    }
+
+    /**
+     * Constructor creates Airport Object with its location and its minimum connection time
+     * The connection time is optional, the earliest arrival planner uses a default for airports without one
+     * @param name Full Name of the Airport i.e. "London Heathrow"
+     * @param code The International Air Transport Association code of the Airport i.e. "LHR"
+     * @param city Name of the City of the Airport location
+     * @param country name of the Country of the Airport location
+     * @param latitude Latitude in degrees, -90 to 90, null if unknown
+     * @param longitude Longitude in degrees, -180 to 180, null if unknown
+     * @param minimumConnectionTime Minutes between landing and the next departure at this airport, null if unknown
+     */
+    public Airport(String name, String code, String city, String country, Double latitude, Double longitude,
+                   Integer minimumConnectionTime) {
         this.name = name;
         this.code = code;
         this.city = city;
         this.country = country;
+        // Only complete coordinates are useful, a single one is dropped
+        boolean complete = latitude != null && longitude != null && !latitude.isNaN() && !longitude.isNaN();
+        this.latitude = complete ? latitude : null;
+        this.longitude = complete ? longitude : null;
+        this.minimumConnectionTime = minimumConnectionTime != null && minimumConnectionTime >= 0 ? minimumConnectionTime : null;
+        this.key = IataKey.of(code);
+    }
+
+    /**
+     * Get the IATA code packed into an int
+     * Not a bean getter on purpose, so it is not serialized into the API responses
+     * @return packed code, IataKey.INVALID if the code is not three uppercase letters
+     */
+    public int key() {
+        return key;
     }
 
     /**
@@ -59,6 +108,38 @@ public class Airport {
         return country;
     }
 
+    /**
+     * Get the Latitude of the Airport
+     * @return Latitude in degrees, null if unknown
+     */
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Get the Longitude of the Airport
+     * @return Longitude in degrees, null if unknown
+     */
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Get the minimum connection time of the Airport
+     * @return minutes needed to change flights, null if unknown
+     */
+    public Integer getMinimumConnectionTime() {
+        return minimumConnectionTime;
+    }
+
+    /**
+     * Checks if the location of the Airport is known
+     * @return true if latitude and longitude are set
+     */
+    public boolean hasCoordinates() {
+        return latitude != null;
+    }
+
     /**
      * Defining equality based on airport codes
      * Used for the TripPLanner
@@ -79,11 +160,12 @@ public class Airport {
 
     /**
      * Generates Hashcode based on the IATA Code of the airport
+     * Uses the packed code, which is computed once in the constructor, so hashing allocates nothing
      * @return Object hash code
      */
     @Override
     public int hashCode() {
-        return Objects.hash(code);
+        return key != IataKey.INVALID ? key : Objects.hashCode(code);
     }
 }
 
@@ -0,0 +1,115 @@
+package org.pi2.model;
+
+/**
+ * Statistics about the delta of the published network snapshot and the background compactions
+ * Used to tune the compaction thresholds, returned by the /stats endpoint
+ */
+public class CompactionStats {
+    private final long networkVersion;         // version of the published snapshot
+    private final int deltaSize;               // changes in the delta of the published snapshot
+    private final long deltaAgeMillis;         // age of the oldest change in the delta
+    private final int maxDeltaSize;            // size threshold that triggers a compaction
+    private final long maxDeltaAgeMillis;      // age threshold that triggers a compaction
+    private final long compactions;            // amount of finished compactions
+    private final double lastCompactionMillis; // duration of the last compaction
+    private final double maxCompactionMillis;  // longest compaction so far
+    private final double totalCompactionMillis; // sum of all compaction durations
+
+    /**
+     * Constructor creates the statistics object
+     * @param networkVersion version of the published snapshot
+     * @param deltaSize changes in the delta of the published snapshot
+     * @param deltaAgeMillis age of the oldest change in the delta in milliseconds
+     * @param maxDeltaSize size threshold that triggers a compaction
+     * @param maxDeltaAgeMillis age threshold that triggers a compaction
+     * @param compactions amount of finished compactions
+     * @param lastCompactionMillis duration of the last compaction in milliseconds
+     * @param maxCompactionMillis longest compaction in milliseconds
+     * @param totalCompactionMillis sum of all compaction durations in milliseconds
+     */
+    public CompactionStats(long networkVersion, int deltaSize, long deltaAgeMillis, int maxDeltaSize,
+                           long maxDeltaAgeMillis, long compactions, double lastCompactionMillis,
+                           double maxCompactionMillis, double totalCompactionMillis) {
+        this.networkVersion = networkVersion;
+        this.deltaSize = deltaSize;
+        this.deltaAgeMillis = deltaAgeMillis;
+        this.maxDeltaSize = maxDeltaSize;
+        this.maxDeltaAgeMillis = maxDeltaAgeMillis;
+        this.compactions = compactions;
+        this.lastCompactionMillis = lastCompactionMillis;
+        this.maxCompactionMillis = maxCompactionMillis;
+        this.totalCompactionMillis = totalCompactionMillis;
+    }
+
+    /**
+     * Get the version of the published snapshot
+     * @return network version
+     */
+    public long getNetworkVersion() {
+        return networkVersion;
+    }
+
+    /**
+     * Get the amount of changes in the delta of the published snapshot
+     * @return delta size
+     */
+    public int getDeltaSize() {
+        return deltaSize;
+    }
+
+    /**
+     * Get the age of the oldest change in the delta
+     * @return age in milliseconds, 0 if the delta is empty
+     */
+    public long getDeltaAgeMillis() {
+        return deltaAgeMillis;
+    }
+
+    /**
+     * Get the delta size that triggers a compaction
+     * @return size threshold
+     */
+    public int getMaxDeltaSize() {
+        return maxDeltaSize;
+    }
+
+    /**
+     * Get the delta age that triggers a compaction
+     * @return age threshold in milliseconds
+     */
+    public long getMaxDeltaAgeMillis() {
+        return maxDeltaAgeMillis;
+    }
+
+    /**
+     * Get the amount of finished compactions
+     * @return amount of compactions
+     */
+    public long getCompactions() {
+        return compactions;
+    }
+
+    /**
+     * Get the duration of the last compaction
+     * @return duration in milliseconds, 0 if there was none yet
+     */
+    public double getLastCompactionMillis() {
+        return lastCompactionMillis;
+    }
+
+    /**
+     * Get the duration of the longest compaction
+     * @return duration in milliseconds, 0 if there was none yet
+     */
+    public double getMaxCompactionMillis() {
+        return maxCompactionMillis;
+    }
+
+    /**
+     * Get the average duration of a compaction
+     * @return average in milliseconds, 0 if there was none yet
+     */
+    public double getAverageCompactionMillis() {
+        return compactions == 0 ? 0 : totalCompactionMillis / compactions;
+    }
+}
@@ -0,0 +1,231 @@
+package org.pi2.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Dictionary ids of the airlines and countries of one network version, for trips with filters like
+ * "avoid an airline", "only these airlines", "avoid an airport" or "never transit a country"
+ *
+ * Structure:
+ * - Airline and country names get dense int ids, the names are matched case-insensitive
+ * - Country id per airport id, -1 for airports without a country
+ * - Flight multigraph: one edge per flight and not only the cheapest per pair, because a filtered airline can be
+ *   the cheapest one of a pair while another airline flies it too. The edges of an origin are sorted by cost,
+ *   so between equally good edges a search keeps the cheapest flight
+ * - Airline id, flight and route distance per multigraph edge, the distance is the one of the shortest route of the
+ *   pair and -1 if the pair has no route
+ *
+ * A search compiles the filters of a query into bitsets over these ids, testing an edge or an airport is then
+ * a single AND of one word of the bitset, see TripConstraints in the planning package.
+ *
+ * Built on first use per snapshot (NetworkSnapshot.constraints), the multigraph has no delta overlay:
+ * a new version with added flights builds its own index.
+ *
+ * Complexity:
+ *  - Build: O(M + F*log F + R), with M=Amount of airports, F=Amount of flights, R=Amount of routes
+ *  - Space Complexity: O(M + F)
+ */
+public final class ConstraintIndex {
+    private final Map<String, Integer> airlineIds;  // lower case airline name to airline id
+    private final Map<String, Integer> countryIds;  // lower case country name to country id
+    private final int[] nodeCountries;              // country id per airport id, -1 if unknown
+    private final CsrGraph flights;                 // one edge per flight, weight = cost in euros
+    private final int[] edgeAirlines;               // airline id per edge
+    private final int[] edgeDistances;              // distance of the shortest route of the pair per edge, -1 if none
+    private final Flight[] edgeFlights;             // flight per edge
+
+    private ConstraintIndex(Map<String, Integer> airlineIds, Map<String, Integer> countryIds, int[] nodeCountries,
+                            CsrGraph flights, int[] edgeAirlines, int[] edgeDistances, Flight[] edgeFlights) {
+        this.airlineIds = airlineIds;
+        this.countryIds = countryIds;
+        this.nodeCountries = nodeCountries;
+        this.flights = flights;
+        this.edgeAirlines = edgeAirlines;
+        this.edgeDistances = edgeDistances;
+        this.edgeFlights = edgeFlights;
+    }
+
+    /**
+     * Builds the index of a network version
+     * @param snapshot network version, base and delta
+     * @return the index
+     */
+    static ConstraintIndex build(NetworkSnapshot snapshot) {
+        int nodeCount = snapshot.airportCount();
+        Map<String, Integer> airlineIds = new HashMap<>();
+        Map<String, Integer> countryIds = new HashMap<>();
+
+        // Step 1: country per airport
+        int[] nodeCountries = new int[nodeCount];
+        for (int id = 0; id < nodeCount; id++) {
+            nodeCountries[id] = idOf(countryIds, snapshot.airport(id).getCountry());
+        }
+
+        // Step 2: every flight with a cost and a known destination, grouped by origin and sorted by cost
+        int[] offsets = new int[nodeCount + 1];
+        Flight[] edgeFlights = new Flight[snapshot.flightCount()];
+        int m = 0;
+        for (int u = 0; u < nodeCount; u++) {
+            offsets[u] = m;
+            for (Flight flight : snapshot.flightsFrom(u)) {
+                if (flight.getCostInEuros() == null || snapshot.idOf(flight.getDestinationCode()) < 0) continue;
+                edgeFlights[m++] = flight;
+            }
+            Arrays.sort(edgeFlights, offsets[u], m, (a, b) -> Integer.compare(a.getCostInEuros(), b.getCostInEuros()));
+        }
+        offsets[nodeCount] = m;
+        edgeFlights = Arrays.copyOf(edgeFlights, m);
+        int[] targets = new int[m];
+        int[] weights = new int[m];
+        int[] edgeAirlines = new int[m];
+        for (int e = 0; e < m; e++) {
+            Flight flight = edgeFlights[e];
+            targets[e] = snapshot.idOf(flight.getDestinationCode());
+            weights[e] = flight.getCostInEuros();
+            // flights without an airline share the id of the empty name, so only a list of allowed airlines drops them
+            String airline = flight.getAirline() == null ? "" : flight.getAirline();
+            edgeAirlines[e] = airlineIds.computeIfAbsent(key(airline), k -> airlineIds.size());
+        }
+
+        // Step 3: route distance per edge, the shortest live routes of an origin are collected in an array
+        // stamped with the origin id so it is never cleared
+        CsrGraph routes = snapshot.routeGraph();
+        int[] edgeDistances = new int[m];
+        Arrays.fill(edgeDistances, -1);
+        int[] shortest = new int[nodeCount];
+        int[] stamp = new int[nodeCount];
+        Arrays.fill(stamp, -1);
+        for (int u = 0; u < nodeCount; u++) {
+            if (u < routes.offsets().length - 1) {
+                for (int e = routes.offsets()[u]; e < routes.offsets()[u + 1]; e++) {
+                    if (!routes.isRemoved(e)) collectRoute(shortest, stamp, u, routes.target(e), routes.weight(e));
+                }
+            }
+            int[] added = routes.addedEdges(u);
+            if (added != null) {
+                for (int e : added) {
+                    collectRoute(shortest, stamp, u, routes.target(e), routes.weight(e));
+                }
+            }
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                if (stamp[targets[e]] == u) edgeDistances[e] = shortest[targets[e]];
+            }
+        }
+
+        return new ConstraintIndex(Collections.unmodifiableMap(airlineIds), Collections.unmodifiableMap(countryIds),
+                nodeCountries, new CsrGraph(offsets, targets, weights), edgeAirlines, edgeDistances, edgeFlights);
+    }
+
+    private static int idOf(Map<String, Integer> dictionary, String name) {
+        if (name == null || name.isBlank()) return -1;
+        return dictionary.computeIfAbsent(key(name), k -> dictionary.size());
+    }
+
+    private static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static void collectRoute(int[] shortest, int[] stamp, int from, int to, int distance) {
+        if (stamp[to] != from) {
+            stamp[to] = from;
+            shortest[to] = distance;
+        } else if (distance < shortest[to]) {
+            shortest[to] = distance;
+        }
+    }
+
+    /**
+     * Get the id of an airline
+     * @param name name of the airline, case-insensitive
+     * @return airline id, -1 if no flight of the network has this airline
+     */
+    public int airlineId(String name) {
+        if (name == null) return -1;
+        return airlineIds.getOrDefault(key(name), -1);
+    }
+
+    /**
+     * Get the id of a country
+     * @param name name of the country, case-insensitive
+     * @return country id, -1 if no airport of the network is in this country
+     */
+    public int countryId(String name) {
+        if (name == null) return -1;
+        return countryIds.getOrDefault(key(name), -1);
+    }
+
+    /**
+     * Get the amount of airlines
+     * @return airline ids are 0 until this value (exclusive)
+     */
+    public int airlineCount() {
+        return airlineIds.size();
+    }
+
+    /**
+     * Get the amount of countries
+     * @return country ids are 0 until this value (exclusive)
+     */
+    public int countryCount() {
+        return countryIds.size();
+    }
+
+    /**
+     * Get the country of every airport
+     * @return country id per airport id, -1 if unknown, must not be modified
+     */
+    public int[] nodeCountries() {
+        return nodeCountries;
+    }
+
+    /**
+     * Get the flight multigraph, one edge per flight
+     * @return graph without overlay, weight = cost in euros
+     */
+    public CsrGraph flights() {
+        return flights;
+    }
+
+    /**
+     * Get the airline of every multigraph edge
+     * @return airline id per edge, must not be modified
+     */
+    public int[] edgeAirlines() {
+        return edgeAirlines;
+    }
+
+    /**
+     * Get the route distance of every multigraph edge
+     * @return distance in km of the shortest route of the pair per edge, -1 if the pair has no route, must not be modified
+     */
+    public int[] edgeDistances() {
+        return edgeDistances;
+    }
+
+    /**
+     * Get the flight of a multigraph edge
+     * @param edge edge id
+     * @return the flight
+     */
+    public Flight flight(int edge) {
+        return edgeFlights[edge];
+    }
+
+    /**
+     * Translates the edges of a path in the multigraph back into the flights
+     * @param edges edge ids in travel order
+     * @return list of the flights
+     */
+    public List<Flight> toFlights(int[] edges) {
+        Flight[] path = new Flight[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            path[i] = edgeFlights[edges[i]];
+        }
+        return Arrays.asList(path);
+    }
+}
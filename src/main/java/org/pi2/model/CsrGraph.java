@@ -0,0 +1,415 @@
+package org.pi2.model;
+
+import org.pi2.util.IntObjectHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Immutable directed graph in compressed sparse row (CSR) layout with an optional delta overlay
+ *
+ * Layout:
+ * - Vertices: dense int ids 0..nodeCount-1
+ * - offsets: the base edges of vertex u are the edge indices offsets[u] until offsets[u+1] (exclusive)
+ * - targets: target vertex id of every base edge
+ * - weights: integer weight of every base edge (distance in km or cost in euros)
+ *
+ * Delta overlay:
+ * - Edges added after the base was built get the ids baseEdgeCount, baseEdgeCount+1, ... and are listed per vertex
+ * - Base edges can be removed with a tombstone bit, their id stays reserved
+ * - Vertices added after the base was built have no base edges
+ * The overlay is small, adding an edge copies only the overlay and shares the base arrays.
+ * A search visits the base edges of u that are not removed, then the added edges of u.
+ *
+ * Reverse adjacency:
+ * - The transposed base (incoming edges per vertex) is built lazily on first use and shared by all graphs
+ *   derived from the same base, so it is built once per compaction and not once per delta change
+ * - Each transposed edge remembers the id of its forward edge, tombstones and weights are looked up by that id
+ * - Added edges are additionally listed per target vertex
+ *
+ * The arrays are handed out directly to the planners so the inner loop of a search only touches primitive arrays.
+ * They must never be modified after construction.
+ *
+ * Complexity:
+ *  - Space Complexity: O(M+N)
+ *      - with M=Amount of airports, N=Amount of edges
+ */
+public final class CsrGraph {
+    private static final int[] NO_EDGES = new int[0];
+
+    private final int[] offsets; // nodeCount+1 entries, start index of the base edges of each vertex
+    private final int[] targets; // target vertex of each base edge
+    private final int[] weights; // weight of each base edge
+
+    // Delta overlay, null as long as nothing was added or removed
+    private final long[] removed;                 // tombstone bit per base edge
+    private final IntObjectHashMap<int[]> added;  // vertex to ids of its added edges
+    private final int[] addedTargets;             // target per added edge, index = id - baseEdgeCount
+    private final int[] addedWeights;             // weight per added edge, index = id - baseEdgeCount
+    private final int removedCount;               // amount of tombstones
+    private final IntObjectHashMap<int[]> addedIn; // vertex to ids of the added edges that end there
+    private final int[] addedOrigins;             // origin per added edge, index = id - baseEdgeCount
+
+    private final Transpose transpose;            // lazily built reverse of the base, shared with derived graphs
+
+    /**
+     * Constructor wraps already sorted CSR arrays
+     * @param offsets start offsets per vertex, length nodeCount+1
+     * @param targets target vertex per edge
+     * @param weights weight per edge
+     */
+    CsrGraph(int[] offsets, int[] targets, int[] weights) {
+        this(offsets, targets, weights, null, null, NO_EDGES, NO_EDGES, 0, null, NO_EDGES, new Transpose());
+    }
+
+    private CsrGraph(int[] offsets, int[] targets, int[] weights, long[] removed, IntObjectHashMap<int[]> added,
+                     int[] addedTargets, int[] addedWeights, int removedCount,
+                     IntObjectHashMap<int[]> addedIn, int[] addedOrigins, Transpose transpose) {
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.removed = removed;
+        this.added = added;
+        this.addedTargets = addedTargets;
+        this.addedWeights = addedWeights;
+        this.removedCount = removedCount;
+        this.addedIn = addedIn;
+        this.addedOrigins = addedOrigins;
+        this.transpose = transpose;
+    }
+
+    /**
+     * Builds a CSR graph from an unsorted edge list by a counting sort over the origin vertex
+     * The relative order of edges with the same origin is preserved
+     *
+     * @param nodeCount amount of vertices
+     * @param origins origin vertex per edge
+     * @param targets target vertex per edge
+     * @param weights weight per edge
+     * @param edgeCount amount of used entries in the edge arrays
+     * @param order output, order[i] is the index in the input of the i-th edge in CSR order. May be null
+     * @return the CSR graph
+     */
+    static CsrGraph fromEdges(int nodeCount, int[] origins, int[] targets, int[] weights, int edgeCount, int[] order) {
+        int[] offsets = new int[nodeCount + 1];
+        // count the outgoing edges per vertex
+        for (int i = 0; i < edgeCount; i++) {
+            offsets[origins[i] + 1]++;
+        }
+        // prefix sum gives the start of each vertex block
+        for (int v = 0; v < nodeCount; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] next = new int[nodeCount];
+        System.arraycopy(offsets, 0, next, 0, nodeCount);
+        int[] sortedTargets = new int[edgeCount];
+        int[] sortedWeights = new int[edgeCount];
+        // scatter the edges into their vertex block
+        for (int i = 0; i < edgeCount; i++) {
+            int slot = next[origins[i]]++;
+            sortedTargets[slot] = targets[i];
+            sortedWeights[slot] = weights[i];
+            if (order != null) {
+                order[slot] = i;
+            }
+        }
+        return new CsrGraph(offsets, sortedTargets, sortedWeights);
+    }
+
+    /**
+     * Get the amount of vertices, including vertices added by the overlay
+     * @return amount of vertices
+     */
+    public int nodeCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Get the size of the edge id space, base edges plus added edges
+     * Removed base edges keep their id, so this is an upper bound of the live edges
+     * @return amount of edge ids
+     */
+    public int edgeCount() {
+        return targets.length + addedTargets.length;
+    }
+
+    /**
+     * Get the amount of base edges, edge ids below this value are base edges
+     * @return amount of base edges
+     */
+    public int baseEdgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * Get the offsets array, base edges of u are offsets[u] until offsets[u+1]
+     * @return offsets array, must not be modified
+     */
+    public int[] offsets() {
+        return offsets;
+    }
+
+    /**
+     * Get the target vertex of every base edge
+     * @return targets array, must not be modified
+     */
+    public int[] targets() {
+        return targets;
+    }
+
+    /**
+     * Get the weight of every base edge
+     * @return weights array, must not be modified
+     */
+    public int[] weights() {
+        return weights;
+    }
+
+    /**
+     * Checks if the graph has a delta overlay, searches can skip the overlay checks otherwise
+     * @return true if edges were added or removed since the base was built
+     */
+    public boolean hasOverlay() {
+        return added != null || removed != null;
+    }
+
+    /**
+     * Checks if the overlay added edges, a graph with tombstones only is a subgraph of its base
+     * @return true if at least one edge was added since the base was built
+     */
+    public boolean hasAddedEdges() {
+        return addedTargets.length > 0;
+    }
+
+    /**
+     * Checks if two graphs were derived from the same base, they share the base arrays
+     * @param other graph to compare with
+     * @return true if both graphs have the same base edges
+     */
+    public boolean sameBase(CsrGraph other) {
+        return other != null && other.targets == targets && other.weights == weights;
+    }
+
+    /**
+     * Returns the base of this graph without the delta overlay, sharing the arrays and the transposed base
+     * Vertices added after the base was built are kept, they have no edges
+     * @return graph with the base edges only, this if there is no overlay
+     */
+    public CsrGraph withoutOverlay() {
+        if (!hasOverlay()) return this;
+        return new CsrGraph(offsets, targets, weights, null, null, NO_EDGES, NO_EDGES, 0, null, NO_EDGES, transpose);
+    }
+
+    /**
+     * Get the tombstone bitset of the base edges, bit e set means base edge e was removed
+     * @return bitset, null if no edge was removed
+     */
+    public long[] removed() {
+        return removed;
+    }
+
+    /**
+     * Checks if an edge was removed
+     * @param edge edge id
+     * @return true if the edge is a removed base edge
+     */
+    public boolean isRemoved(int edge) {
+        return removed != null && edge < targets.length && (removed[edge >>> 6] & (1L << edge)) != 0;
+    }
+
+    /**
+     * Get the ids of the edges added to a vertex by the overlay
+     * @param node vertex id
+     * @return edge ids, null if the vertex has no added edges
+     */
+    public int[] addedEdges(int node) {
+        return added == null ? null : added.get(node);
+    }
+
+    /**
+     * Get the target vertex of any edge, base or added
+     * @param edge edge id
+     * @return target vertex
+     */
+    public int target(int edge) {
+        return edge < targets.length ? targets[edge] : addedTargets[edge - targets.length];
+    }
+
+    /**
+     * Get the weight of any edge, base or added
+     * @param edge edge id
+     * @return weight
+     */
+    public int weight(int edge) {
+        return edge < weights.length ? weights[edge] : addedWeights[edge - weights.length];
+    }
+
+    /**
+     * Get the origin vertex of any edge, base or added
+     * Base edges are found by a binary search over the offsets, meant for path reconstruction and not for inner loops
+     * @param edge edge id
+     * @return origin vertex
+     */
+    public int origin(int edge) {
+        if (edge >= targets.length) return addedOrigins[edge - targets.length];
+        // largest vertex whose block starts at or before the edge, empty blocks share their start
+        int low = 0;
+        int high = offsets.length - 2;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= edge) low = mid;
+            else high = mid - 1;
+        }
+        return low;
+    }
+
+    /**
+     * Get the transposed base graph, its edges of vertex v are the base edges ending in v
+     * targets() of the transposed graph are the origins of the forward edges, weights() their weights.
+     * Vertices added after the base was built are not part of it, a search has to check nodeCount() of the transposed graph.
+     * Removed base edges are still contained, use reverseEdgeIds() to check their tombstone.
+     * @return transposed base, built on first use
+     */
+    public CsrGraph reverseBase() {
+        return transpose.get(this).graph;
+    }
+
+    /**
+     * Get the forward edge id of every edge of the transposed base
+     * @return forward edge id per transposed edge, must not be modified
+     */
+    public int[] reverseEdgeIds() {
+        return transpose.get(this).edges;
+    }
+
+    /**
+     * Get the ids of the edges added by the overlay that end in a vertex
+     * @param node vertex id
+     * @return edge ids, null if no added edge ends in the vertex
+     */
+    public int[] addedIncomingEdges(int node) {
+        return addedIn == null ? null : addedIn.get(node);
+    }
+
+    /**
+     * Get the amount of overlay entries, added edges plus tombstones
+     * @return overlay size
+     */
+    public int overlaySize() {
+        return addedTargets.length + removedCount;
+    }
+
+    /**
+     * Returns a graph with more vertices, the new vertices have no base edges
+     * @param nodeCount new amount of vertices, at least the current amount
+     * @return graph with the new vertex count, sharing the edge arrays
+     */
+    CsrGraph withNodeCount(int nodeCount) {
+        if (nodeCount == nodeCount()) return this;
+        int[] grown = Arrays.copyOf(offsets, nodeCount + 1);
+        Arrays.fill(grown, offsets.length, grown.length, offsets[offsets.length - 1]);
+        return new CsrGraph(grown, targets, weights, removed, added, addedTargets, addedWeights, removedCount,
+                addedIn, addedOrigins, transpose);
+    }
+
+    /**
+     * Returns a graph with one more edge in the overlay
+     * @param origin origin vertex
+     * @param target target vertex
+     * @param weight edge weight
+     * @return new graph, the id of the new edge is edgeCount() of this graph
+     */
+    CsrGraph withAddedEdge(int origin, int target, int weight) {
+        int id = edgeCount();
+        IntObjectHashMap<int[]> copy = added == null ? new IntObjectHashMap<>() : added.copy();
+        int[] existing = copy.get(origin);
+        int[] edges = existing == null ? new int[1] : Arrays.copyOf(existing, existing.length + 1);
+        edges[edges.length - 1] = id;
+        copy.put(origin, edges);
+        IntObjectHashMap<int[]> copyIn = addedIn == null ? new IntObjectHashMap<>() : addedIn.copy();
+        int[] existingIn = copyIn.get(target);
+        int[] edgesIn = existingIn == null ? new int[1] : Arrays.copyOf(existingIn, existingIn.length + 1);
+        edgesIn[edgesIn.length - 1] = id;
+        copyIn.put(target, edgesIn);
+        int[] newTargets = Arrays.copyOf(addedTargets, addedTargets.length + 1);
+        int[] newWeights = Arrays.copyOf(addedWeights, addedWeights.length + 1);
+        int[] newOrigins = Arrays.copyOf(addedOrigins, addedOrigins.length + 1);
+        newTargets[newTargets.length - 1] = target;
+        newWeights[newWeights.length - 1] = weight;
+        newOrigins[newOrigins.length - 1] = origin;
+        return new CsrGraph(offsets, targets, weights, removed, copy, newTargets, newWeights, removedCount,
+                copyIn, newOrigins, transpose);
+    }
+
+    /**
+     * Returns a graph where an added edge has a new weight
+     * @param edge id of an added edge
+     * @param weight new weight
+     * @return new graph
+     */
+    CsrGraph withAddedEdgeWeight(int edge, int weight) {
+        int[] newWeights = addedWeights.clone();
+        newWeights[edge - targets.length] = weight;
+        return new CsrGraph(offsets, targets, weights, removed, added, addedTargets, newWeights, removedCount,
+                addedIn, addedOrigins, transpose);
+    }
+
+    /**
+     * Returns a graph where a base edge is removed by a tombstone
+     * @param edge id of a base edge
+     * @return new graph
+     */
+    CsrGraph withRemovedEdge(int edge) {
+        if (isRemoved(edge)) return this;
+        long[] copy = removed == null ? new long[(targets.length + 63) >>> 6] : removed.clone();
+        copy[edge >>> 6] |= 1L << edge;
+        return new CsrGraph(offsets, targets, weights, copy, added, addedTargets, addedWeights, removedCount + 1,
+                addedIn, addedOrigins, transpose);
+    }
+
+    /**
+     * Lazily built transposed base, shared by a base graph and all graphs derived from it by the overlay
+     */
+    private static final class Transpose {
+        private volatile Reversed value;
+
+        private Reversed get(CsrGraph graph) {
+            Reversed reversed = value;
+            if (reversed == null) {
+                synchronized (this) {
+                    reversed = value;
+                    if (reversed == null) {
+                        reversed = build(graph);
+                        value = reversed;
+                    }
+                }
+            }
+            return reversed;
+        }
+
+        /**
+         * Counting sort of the base edges over their target vertex
+         */
+        private static Reversed build(CsrGraph graph) {
+            int[] offsets = graph.offsets;
+            int[] targets = graph.targets;
+            int nodeCount = offsets.length - 1;
+            int edgeCount = targets.length;
+            int[] origins = new int[edgeCount];
+            for (int u = 0; u < nodeCount; u++) {
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    origins[e] = u;
+                }
+            }
+            int[] edges = new int[edgeCount];
+            // the forward targets become the origins of the transposed graph
+            CsrGraph reversed = fromEdges(nodeCount, targets, origins, graph.weights, edgeCount, edges);
+            return new Reversed(reversed, edges);
+        }
+    }
+
+    /**
+     * Transposed base with the forward edge id of each transposed edge
+     */
+    private record Reversed(CsrGraph graph, int[] edges) {
+    }
+}
@@ -0,0 +1,110 @@
+package org.pi2.model;
+
+import java.util.Arrays;
+
+/**
+ * Direct flight connectivity of the base of the flight graph, answers "is there a direct flight from u to v"
+ *
+ * Layouts:
+ * - Matrix: one bit per airport pair in a packed long[], row u holds the destinations of u.
+ *   The check is a single bit test. Used as long as the matrix is at most 32 MB and not much larger
+ *   than the sorted arrays would be
+ * - Sorted: the destinations of every airport as a sorted int array in CSR layout, the check is a binary search
+ *   over the destinations of the origin. Used for very large or very sparse networks
+ *
+ * Delta:
+ * - Only the base edges are indexed, the index is shared by every version until the next compaction
+ * - Flights never disappear from the network: a removed base edge of the flight graph is always replaced by an
+ *   added edge of the same pair, so a base bit stays valid. The caller additionally checks the few added edges
+ *
+ * Complexity:
+ *  - Build: O(M^2/64 + N) for the matrix, O(M + N*log N) for the sorted arrays
+ *      - with M=Amount of airports, N=Amount of flight pairs
+ *  - Query: O(1) for the matrix, O(log D) for the sorted arrays, D=Amount of destinations of the origin
+ */
+public final class DirectConnections {
+    static final int MAX_MATRIX_AIRPORTS = 16_384;  // 16384^2 bits = 32 MB
+    private static final int SPARSE_FACTOR = 64;    // matrix may be this many times larger than the sorted arrays
+
+    private final CsrGraph base;       // base graph the index was built on
+    private final int nodeCount;       // airports of the base
+    private final int words;           // longs per matrix row
+    private final long[] matrix;       // row-major bits, null in the sorted layout
+    private final int[] offsets;       // destinations of u are destinations[offsets[u]..offsets[u+1]], sorted layout
+    private final int[] destinations;  // sorted per origin, sorted layout
+
+    private DirectConnections(CsrGraph base, int nodeCount, long[] matrix, int[] offsets, int[] destinations) {
+        this.base = base;
+        this.nodeCount = nodeCount;
+        this.words = (nodeCount + 63) >>> 6;
+        this.matrix = matrix;
+        this.offsets = offsets;
+        this.destinations = destinations;
+    }
+
+    /**
+     * Builds the index of the base edges of a graph, the layout is chosen by size
+     * @param graph flight graph, only its base edges are indexed
+     * @return the index
+     */
+    public static DirectConnections build(CsrGraph graph) {
+        int nodeCount = graph.nodeCount();
+        int[] graphOffsets = graph.offsets();
+        int[] targets = graph.targets();
+        int edgeCount = graph.baseEdgeCount();
+        long words = (nodeCount + 63) >>> 6;
+        long matrixBytes = nodeCount * words * 8;
+        long sortedBytes = 4L * (nodeCount + 1 + edgeCount);
+
+        if (nodeCount <= MAX_MATRIX_AIRPORTS && matrixBytes <= SPARSE_FACTOR * sortedBytes) {
+            long[] matrix = new long[(int) (nodeCount * words)];
+            for (int u = 0; u < nodeCount; u++) {
+                long row = u * words;
+                for (int e = graphOffsets[u]; e < graphOffsets[u + 1]; e++) {
+                    int v = targets[e];
+                    matrix[(int) (row + (v >>> 6))] |= 1L << v;
+                }
+            }
+            return new DirectConnections(graph.withoutOverlay(), nodeCount, matrix, null, null);
+        }
+
+        // Sorted layout: the base CSR blocks, each block sorted by destination
+        int[] offsets = Arrays.copyOf(graphOffsets, nodeCount + 1);
+        int[] destinations = Arrays.copyOf(targets, edgeCount);
+        for (int u = 0; u < nodeCount; u++) {
+            Arrays.sort(destinations, offsets[u], offsets[u + 1]);
+        }
+        return new DirectConnections(graph.withoutOverlay(), nodeCount, null, offsets, destinations);
+    }
+
+    /**
+     * Checks if the index was built on the base of a graph
+     * @param graph flight graph of a snapshot
+     * @return true if the graph shares the base arrays of the index
+     */
+    public boolean covers(CsrGraph graph) {
+        return base.sameBase(graph);
+    }
+
+    /**
+     * Checks if the base has a direct flight between two airports
+     * @param from origin id
+     * @param to destination id
+     * @return true if the base has an edge from origin to destination, false for airports added by the delta
+     */
+    public boolean contains(int from, int to) {
+        if (from >= nodeCount || to >= nodeCount) return false;
+        if (matrix != null) {
+            return (matrix[from * words + (to >>> 6)] & (1L << to)) != 0;
+        }
+        return Arrays.binarySearch(destinations, offsets[from], offsets[from + 1], to) >= 0;
+    }
+
+    /**
+     * Get the layout of the index
+     * @return "matrix" or "sorted"
+     */
+    public String layout() {
+        return matrix != null ? "matrix" : "sorted";
+    }
+}
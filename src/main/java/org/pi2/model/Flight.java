@@ -5,11 +5,15 @@ package org.pi2.model;
  * */
 
 public class Flight {
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
     // Attributes of a flight
     private final String originCode; // IATA Code of the Originating Airport
     private final String destinationCode; // IATA Code of the Destination Airport
     private final String airline; // Name of the Airline which perfoms the flight
     private final Integer CostInEuros; // The cost of the flight in Euros
+    private final Integer departureTime; // Departure in minutes after midnight, null if the flight has no schedule
+    private final Integer arrivalTime; // Arrival in minutes after midnight, earlier than the departure if it lands the next day
 
     /*
     * constructor creates a flight object
@@ -19,10 +23,33 @@ public class Flight {
     * @param CostInEuros Cost in Euros of the flight, no decimals implemented because flights are expensive
      */
     public Flight(String originCode, String destinationCode, String airline, Integer CostInEuros) {
+        this(originCode, destinationCode, airline, CostInEuros, null, null);
+    }
+
+    /**
+     * Constructor creates a flight object with its daily schedule
+     * The times are optional, only flights with both times take part in the earliest arrival planning
+     * @param originCode IATA Code of the originating Airport
+     * @param destinationCode IATA Code of the destination Airport
+     * @param airline Name of the Airline
+     * @param CostInEuros Cost in Euros of the flight
+     * @param departureTime Departure in minutes after midnight, 0 to 1439, null if unknown
+     * @param arrivalTime Arrival in minutes after midnight, 0 to 1439, null if unknown
+     */
+    public Flight(String originCode, String destinationCode, String airline, Integer CostInEuros,
+                  Integer departureTime, Integer arrivalTime) {
         this.originCode = originCode;
         this.destinationCode = destinationCode;
         this.airline = airline;
         this.CostInEuros = CostInEuros;
+        // Only a complete schedule within one day is useful, anything else is dropped
+        boolean complete = isTimeOfDay(departureTime) && isTimeOfDay(arrivalTime);
+        this.departureTime = complete ? departureTime : null;
+        this.arrivalTime = complete ? arrivalTime : null;
+    }
+
+    private static boolean isTimeOfDay(Integer minutes) {
+        return minutes != null && minutes >= 0 && minutes < MINUTES_PER_DAY;
     }
 
     /**
@@ -58,14 +85,99 @@ public class Flight {
         return CostInEuros;
     }
 
+    /**
+     * Get the departure time of the flight
+     * @return departure as "HH:mm", null if the flight has no schedule
+     */
+    public String getDepartureTime() {
+        return departureTime == null ? null : formatTime(departureTime);
+    }
+
+    /**
+     * Get the arrival time of the flight
+     * @return arrival as "HH:mm", null if the flight has no schedule
+     */
+    public String getArrivalTime() {
+        return arrivalTime == null ? null : formatTime(arrivalTime);
+    }
+
+    /**
+     * Get the departure in minutes after midnight
+     * Not a bean getter on purpose, the API shows the formatted time
+     * @return minutes after midnight, -1 if the flight has no schedule
+     */
+    public int departureMinute() {
+        return departureTime == null ? -1 : departureTime;
+    }
+
+    /**
+     * Get the arrival in minutes after midnight
+     * Not a bean getter on purpose, the API shows the formatted time
+     * @return minutes after midnight, -1 if the flight has no schedule
+     */
+    public int arrivalMinute() {
+        return arrivalTime == null ? -1 : arrivalTime;
+    }
+
+    /**
+     * Checks if the flight has a daily schedule
+     * @return true if departure and arrival time are set
+     */
+    public boolean hasSchedule() {
+        return departureTime != null;
+    }
+
+    /**
+     * Get the time in the air
+     * A flight landing at an earlier time of day than it departs lands on the next day
+     * @return duration in minutes, -1 if the flight has no schedule
+     */
+    public int durationMinutes() {
+        if (departureTime == null) return -1;
+        return arrivalTime >= departureTime ? arrivalTime - departureTime : arrivalTime + MINUTES_PER_DAY - departureTime;
+    }
+
+    /**
+     * Formats a time of day
+     * @param minutes minutes after midnight
+     * @return time as "HH:mm"
+     */
+    public static String formatTime(int minutes) {
+        return String.format("%02d:%02d", minutes / 60, minutes % 60);
+    }
+
+    /**
+     * Parses a time of day
+     * @param time time as "HH:mm" or "H:mm"
+     * @return minutes after midnight, null if the text is no valid time of day
+     */
+    public static Integer parseTime(String time) {
+        if (time == null) return null;
+        String trimmed = time.trim();
+        int colon = trimmed.indexOf(':');
+        if (colon < 1 || colon > 2 || trimmed.length() != colon + 3) return null;
+        try {
+            int hours = Integer.parseInt(trimmed.substring(0, colon));
+            int minutes = Integer.parseInt(trimmed.substring(colon + 1));
+            if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) return null;
+            return hours * 60 + minutes;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     /**
      * Formatting Flight as String for Debugging and representation
      * @return Flight as String
      */
     @Override
     public String toString() {
-        return String.format("(%s, %s, %s, %s)",
-                originCode, destinationCode, airline, CostInEuros);
+        if (departureTime == null) {
+            return String.format("(%s, %s, %s, %s)",
+                    originCode, destinationCode, airline, CostInEuros);
+        }
+        return String.format("(%s, %s, %s, %s, %s-%s)",
+                originCode, destinationCode, airline, CostInEuros, getDepartureTime(), getArrivalTime());
     }
 }
 
@@ -1,14 +1,24 @@
 package org.pi2.model;
 
 import org.pi2.service.data.DatabaseManager;
+import org.pi2.service.data.SnapshotFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Represents the structure as well as provides a Data Access Layer for acessing the database
@@ -16,10 +26,30 @@ import java.util.Map;
 public class FlightNetwork {
 
     private static final Logger log = LoggerFactory.getLogger(FlightNetwork.class);
-    //Data structure for the flights,routes and airports
-    private final Map<String, Airport> airports = new HashMap<>(); // Node storage code to Airport
-    private final Map<String, List<Flight>> adjacencyList = new HashMap<>(); // adjascency List code to outgoing flight
-    private final Map<String,List<Route>> routes = new HashMap<>(); // route storage code to outgoing route
+
+    // Writers serialize on this lock, it makes the writing thread the single publisher of new versions
+    private final Object writeLock = new Object();
+    // Currently published immutable snapshot, readers pin it for a whole query without locking
+    private final AtomicReference<NetworkSnapshot> current = new AtomicReference<>(NetworkSnapshot.empty());
+    // Called with every published snapshot, e.g. to rebuild preprocessed data of a new base
+    private final List<Consumer<NetworkSnapshot>> snapshotListeners = new CopyOnWriteArrayList<>();
+
+    // Compaction of the snapshot delta into a new base, runs on one background thread
+    private volatile int maxDeltaSize = 256;            // compact once the delta has this many changes
+    private volatile long maxDeltaAgeMillis = 10_000;   // compact once the oldest change is this old
+    private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "network-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    // Compaction timings, only written by the compactor thread
+    private volatile long compactions;
+    private volatile long lastCompactionNanos;
+    private volatile long maxCompactionNanos;
+    private volatile long totalCompactionNanos;
+    // Direct flight index of the current base, rebuilt when a new base is published
+    private volatile DirectConnections directConnections;
 
     // Database connection
     public DatabaseManager databaseManager;
@@ -35,40 +65,175 @@ public class FlightNetwork {
             loadFromDatabase();
     }
 
+    /**
+     * Constructor initalizes the flightnetwork from a snapshot file if possible
+     * The file is only used if it was written for the current state of the database, otherwise
+     * the network is loaded from the SQLite database like in the default constructor
+     * @param snapshotFile binary snapshot file written by saveSnapshot
+     * @throws SQLException if db ooperation fails
+     */
+    public FlightNetwork(Path snapshotFile) throws SQLException {
+        this.databaseManager = new DatabaseManager();
+        SnapshotFile.Source source = SnapshotFile.Source.of(databaseManager.getDatabaseFile());
+        NetworkSnapshot snapshot = SnapshotFile.read(snapshotFile, source, current.get().version() + 1);
+        if (snapshot != null) {
+            synchronized (writeLock) {
+                publish(snapshot);
+            }
+        } else {
+            loadFromDatabase();
+        }
+    }
+
     /**
      * Method to load Data from the database into the flightnetwork
-     * We load all Airports from the database and load outgoing flights and routes for each airport
+     * Reads each table once on the connection of the network
+     * Replaces the in-memory network with a new base and publishes it as a new version
      *
      * @throws SQLException If db operations fail
      */
     public void loadFromDatabase() throws SQLException{
-        // load airports
-        List<Airport> dbAirports = databaseManager.getAllAirports();
-        for (Airport airport: dbAirports) {
-            // store airport
-            airports.put(airport.getCode(),airport);
-            // init empty adjacency list for the airport
-            adjacencyList.putIfAbsent(airport.getCode(),new ArrayList<>());
-            // load the outgoing flights
-            List<Flight> flights = databaseManager.getFlightsFrom(airport.getCode());
-            adjacencyList.put((airport.getCode()),flights);
-            // load the outgoing routes
-            List<Route> airportRoutes =databaseManager.getRoutesFrom(airport.getCode());
-            routes.put(airport.getCode(), airportRoutes);
+        loadFromDatabase(false);
+    }
+
+    /**
+     * Method to load Data from the database into the flightnetwork
+     * Every table is streamed once, ordered by the origin airport, and grouped per origin while reading,
+     * so the load time grows with the table sizes and not with the amount of airports times the query latency
+     * Replaces the in-memory network with a new base and publishes it as a new version
+     *
+     * @param parallel true to read the airports, flights and routes tables in parallel on separate connections
+     * @throws SQLException If db operations fail
+     */
+    public void loadFromDatabase(boolean parallel) throws SQLException{
+        synchronized (writeLock) {
+            long start = System.nanoTime();
+            List<Airport> airports;
+            List<List<Flight>> flights;
+            List<List<Route>> routes;
+            if (parallel) {
+                CompletableFuture<List<Airport>> airportsTask = readAsync(DatabaseManager::getAllAirports);
+                CompletableFuture<List<List<Flight>>> flightsTask = readAsync(DatabaseManager::getAllFlightsByOrigin);
+                CompletableFuture<List<List<Route>>> routesTask = readAsync(DatabaseManager::getAllRoutesByOrigin);
+                airports = join(airportsTask);
+                flights = join(flightsTask);
+                routes = join(routesTask);
+            } else {
+                airports = databaseManager.getAllAirports();
+                flights = databaseManager.getAllFlightsByOrigin();
+                routes = databaseManager.getAllRoutesByOrigin();
+            }
+            // Airports without a valid IATA code can not be keyed and are left out of the in-memory network
+            for (Airport airport : airports) {
+                if (airport.key() == IataKey.INVALID) {
+                    log.warn("Skipping airport with invalid IATA code {}", airport.getCode());
+                }
+            }
+            log.info("Read database in {} ms", (System.nanoTime() - start) / 1e6);
+            long version = current.get().version() + 1;
+            // flights and routes of unknown origins are skipped by the snapshot
+            publish(NetworkSnapshot.build(version, airports, routes, flights));
         }
     }
 
     /**
-     * Adding a new Airport to network and database
-     * @param airport The airport to be added
+     * Reads one table on its own database connection
+     * @param query the read operation
+     * @return future with the result
+     * @param <T> result type
      */
-    public void addAirport(Airport airport) {
+    private <T> CompletableFuture<T> readAsync(DatabaseRead<T> query) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (DatabaseManager reader = databaseManager.openReader()) {
+                return query.read(reader);
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
 
-            try{
-                databaseManager.insertAirport(airport);}catch(SQLException e){
-                log.info(e.getMessage());
+    /**
+     * Waits for a parallel read and unwraps its SQLException
+     * @param task the read
+     * @return result of the read
+     * @param <T> result type
+     * @throws SQLException if the read failed
+     */
+    private static <T> T join(CompletableFuture<T> task) throws SQLException {
+        try {
+            return task.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException sqlException) throw sqlException;
+            throw e;
+        }
+    }
+
+    /**
+     * Read operation on a database connection
+     * @param <T> result type
+     */
+    @FunctionalInterface
+    private interface DatabaseRead<T> {
+        T read(DatabaseManager databaseManager) throws SQLException;
+    }
+
+    /**
+     * Publishes a new snapshot atomically and schedules a compaction if its delta got too large
+     * Must be called while holding the writeLock
+     * @param snapshot the new version
+     */
+    private void publish(NetworkSnapshot snapshot) {
+        DirectConnections connections = directConnections;
+        if (connections == null || !connections.covers(snapshot.flightGraph())) {
+            directConnections = DirectConnections.build(snapshot.flightGraph());
+        }
+        current.set(snapshot);
+        log.info("Published network version {} with {} airports, {} route edges, {} flight edges and {} delta changes",
+                snapshot.version(), snapshot.airportCount(), snapshot.routeGraph().edgeCount(),
+                snapshot.flightGraph().edgeCount(), snapshot.delta().size());
+        scheduleCompaction(snapshot);
+        for (Consumer<NetworkSnapshot> listener : snapshotListeners) {
+            try {
+                listener.accept(snapshot);
+            } catch (RuntimeException e) {
+                log.error("Snapshot listener failed", e);
             }
+        }
+    }
+
+    /**
+     * Registers a listener that is called with every published snapshot
+     * It runs on the publishing thread while the writeLock is held, so it should only hand off work and return
+     * @param listener called with the new snapshot
+     */
+    public void addSnapshotListener(Consumer<NetworkSnapshot> listener) {
+        snapshotListeners.add(listener);
+    }
 
+    /**
+     * Get the currently published immutable snapshot of the network
+     * A query should call this once and use the returned snapshot throughout, so it sees one consistent version
+     * @return current network snapshot
+     */
+    public NetworkSnapshot getSnapshot() {
+        return current.get();
+    }
+
+    /**
+     * Get the version number of the currently published snapshot
+     * @return current version
+     */
+    public long getVersion() {
+        return current.get().version();
+    }
+
+    /**
+     * Adding a new Airport to network and database
+     * The airport is written to the database first, only if that succeeds a new version is published
+     * @param airport The airport to be added
+     */
+    public void addAirport(Airport airport) {
+        addAll(List.of(airport), List.of(), List.of());
     }
 
     /**
@@ -76,45 +241,234 @@ public class FlightNetwork {
      * @param route Route to be added
      */
     public void addRoute(Route route) {
-
-        try{databaseManager.insertRoute(route);}catch(SQLException e) {log.info(e.getMessage());
-}}
+        addAll(List.of(), List.of(route), List.of());
+    }
 
     /**
      * Adding a new flight to network and db
      * @param flight The flight object to be added to database
      */
     public void addFlight(Flight flight) {
-        try{databaseManager.insertFlight(flight);}catch(SQLException e) {log.info(e.getMessage());
-        }}
+        addAll(List.of(), List.of(), List.of(flight));
+    }
+
+    /**
+     * Adds several elements in one write, used for bulk imports
+     * Every element is written through to the database, elements the database rejects are skipped
+     * All accepted elements become visible together in one new version
+     * Small batches go into the delta of the snapshot, batches larger than the delta threshold build a new base directly
+     *
+     * @param newAirports airports to be added
+     * @param newRoutes routes to be added
+     * @param newFlights flights to be added
+     */
+    public void addAll(List<Airport> newAirports, List<Route> newRoutes, List<Flight> newFlights) {
+        synchronized (writeLock) {
+            List<Object> accepted = new ArrayList<>();
+            for (Airport airport : newAirports) {
+                try {
+                    databaseManager.insertAirport(airport);
+                    accepted.add(airport);
+                } catch (SQLException e) {
+                    log.info(e.getMessage());
+                }
+            }
+            for (Route route : newRoutes) {
+                try {
+                    databaseManager.insertRoute(route);
+                    accepted.add(route);
+                } catch (SQLException e) {
+                    log.info(e.getMessage());
+                }
+            }
+            for (Flight flight : newFlights) {
+                try {
+                    databaseManager.insertFlight(flight);
+                    accepted.add(flight);
+                } catch (SQLException e) {
+                    log.info(e.getMessage());
+                }
+            }
+            if (accepted.isEmpty()) return;
+
+            NetworkSnapshot previous = current.get();
+            long version = previous.version() + 1;
+            NetworkSnapshot next;
+            if (accepted.size() >= maxDeltaSize) {
+                next = previous.rebuildWith(accepted, version);
+            } else {
+                next = previous;
+                for (Object change : accepted) {
+                    next = next.withChange(change, version);
+                }
+            }
+            // Changes that reference unknown airports do not alter the in-memory network
+            if (next != previous) {
+                publish(next);
+            }
+        }
+    }
+
+    /**
+     * Writes the current snapshot to a binary snapshot file, so the next start can skip the database
+     * The snapshot and the fingerprint of the database are taken together under the write lock,
+     * any later write changes the database file and makes the snapshot file stale
+     * @param snapshotFile target file
+     * @throws IOException if writing fails
+     */
+    public void saveSnapshot(Path snapshotFile) throws IOException {
+        NetworkSnapshot snapshot;
+        SnapshotFile.Source source;
+        synchronized (writeLock) {
+            snapshot = current.get();
+            source = SnapshotFile.Source.of(databaseManager.getDatabaseFile());
+        }
+        if (source == null) {
+            throw new IOException("Database file " + databaseManager.getDatabaseFile() + " not found");
+        }
+        SnapshotFile.write(snapshot, snapshotFile, source);
+    }
 
     /**
-     * Get th
-     * @param code The IATA Airportcode
+     * Sets the thresholds at which the delta is compacted into a new base
+     * @param maxDeltaSize amount of changes that triggers a compaction
+     * @param maxDeltaAgeMillis age of the oldest change that triggers a compaction
+     */
+    public void setCompactionThresholds(int maxDeltaSize, long maxDeltaAgeMillis) {
+        this.maxDeltaSize = Math.max(1, maxDeltaSize);
+        this.maxDeltaAgeMillis = Math.max(1, maxDeltaAgeMillis);
+    }
+
+    /**
+     * Get the statistics of the current delta and the compactions so far
+     * @return compaction statistics
+     */
+    public CompactionStats getCompactionStats() {
+        NetworkSnapshot snapshot = current.get();
+        long ageMillis = TimeUnit.NANOSECONDS.toMillis(snapshot.delta().ageNanos(System.nanoTime()));
+        return new CompactionStats(snapshot.version(), snapshot.delta().size(), ageMillis, maxDeltaSize,
+                maxDeltaAgeMillis, compactions, lastCompactionNanos / 1e6, maxCompactionNanos / 1e6,
+                totalCompactionNanos / 1e6);
+    }
+
+    /**
+     * Schedules the compactor for a snapshot with a delta
+     * Runs it right away if the delta reached the size threshold, otherwise once the delta reaches the age threshold
+     * @param snapshot the published snapshot
+     */
+    private void scheduleCompaction(NetworkSnapshot snapshot) {
+        NetworkDelta delta = snapshot.delta();
+        if (delta.isEmpty() || compactor.isShutdown()) return;
+        if (delta.size() >= maxDeltaSize) {
+            compactor.execute(this::compactIfNeeded);
+        } else if (compactionScheduled.compareAndSet(false, true)) {
+            long remaining = maxDeltaAgeMillis - TimeUnit.NANOSECONDS.toMillis(delta.ageNanos(System.nanoTime()));
+            compactor.schedule(() -> {
+                compactionScheduled.set(false);
+                compactIfNeeded();
+            }, Math.max(0, remaining), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Compacts the published snapshot if its delta passed one of the thresholds
+     * Runs on the compactor thread
+     */
+    private void compactIfNeeded() {
+        try {
+            NetworkSnapshot snapshot = current.get();
+            NetworkDelta delta = snapshot.delta();
+            if (delta.isEmpty()) return;
+            long ageMillis = TimeUnit.NANOSECONDS.toMillis(delta.ageNanos(System.nanoTime()));
+            if (delta.size() < maxDeltaSize && ageMillis < maxDeltaAgeMillis) {
+                // not due yet, the age check runs again later
+                scheduleCompaction(snapshot);
+                return;
+            }
+            compact(snapshot);
+        } catch (RuntimeException e) {
+            log.error("Compaction failed", e);
+        }
+    }
+
+    /**
+     * Folds the delta of a snapshot into a new base
+     * The new base is built without holding the writeLock, so writers are only blocked while the changes
+     * that arrived in the meantime are replayed onto it
+     * @param snapshot the snapshot to compact
+     */
+    private void compact(NetworkSnapshot snapshot) {
+        long start = System.nanoTime();
+        NetworkSnapshot rebuilt = snapshot.compact(snapshot.version());
+        synchronized (writeLock) {
+            NetworkSnapshot latest = current.get();
+            // The network was reloaded in the meantime, the rebuilt base is outdated
+            if (latest.baseVersion() != snapshot.baseVersion()) return;
+            long version = latest.version() + 1;
+            NetworkSnapshot result = rebuilt.withVersion(version);
+            List<Object> changes = latest.delta().changes();
+            for (Object change : changes.subList(snapshot.delta().size(), changes.size())) {
+                result = result.withChange(change, version);
+            }
+            publish(result);
+        }
+        long duration = System.nanoTime() - start;
+        lastCompactionNanos = duration;
+        maxCompactionNanos = Math.max(maxCompactionNanos, duration);
+        totalCompactionNanos += duration;
+        compactions++;
+        log.info("Compacted {} delta changes in {} ms", snapshot.delta().size(), duration / 1e6);
+    }
+
+    /**
+     * Get the outgoing routes of an airport
+     * @param code The Airport
      * @return routes originating at the airport
      */
     public List<Route> getRoutesFrom(Airport code) {
-        return routes.getOrDefault(code, new ArrayList<>());
+        NetworkSnapshot snapshot = current.get();
+        int id = snapshot.idOf(code);
+        return id < 0 ? new ArrayList<>() : snapshot.routesFrom(id);
     }
 
-    public List<Flight> getFlightsFrom(String code) throws SQLException {
-        return databaseManager.getFlightsFrom(code);
+    /**
+     * Get all outgoing flights of an airport from the current snapshot
+     * @param code IATA code of the airport
+     * @return outgoing flights, empty if the airport is unknown
+     */
+    public List<Flight> getFlightsFrom(String code) {
+        NetworkSnapshot snapshot = current.get();
+        int id = snapshot.idOf(code);
+        return id < 0 ? new ArrayList<>() : snapshot.flightsFrom(id);
+    }
 
-        }
-    public Airport getAirport(String code) throws SQLException {
-        return databaseManager.getAirport(code);
+    /**
+     * Get an airport from the current snapshot
+     * @param code IATA code of the airport
+     * @return the airport, null if it does not exist
+     */
+    public Airport getAirport(String code) {
+        return current.get().airport(code);
     }
 
-    public List<Flight> getFlights(Route route) throws SQLException {
-        return databaseManager.getFlights(route);
+    /**
+     * Get all flights flying on the given route
+     * Read from the pair index of the current snapshot, without scanning the other flights of the origin
+     * @param route route to be observed
+     * @return flights with the same origin and destination as the route, sorted by cost
+     */
+    public List<Flight> getFlights(Route route) {
+        NetworkSnapshot snapshot = current.get();
+        int from = snapshot.idOf(route.getOriginCode());
+        int to = snapshot.idOf(route.getDestinationCode());
+        return from < 0 || to < 0 ? new ArrayList<>() : snapshot.flightsBetween(from, to);
     }
     /**
-     * methhod to get a list of all Airports in the database
-     * @return List of all airports in the database
-     * @throws SQLException if db operations fail
+     * methhod to get a list of all Airports in the network
+     * @return List of all airports in the network
      */
-    public List<Airport> getAllAirports() throws SQLException {
-        return databaseManager.getAllAirports();
+    public List<Airport> getAllAirports() {
+        return current.get().airports();
     }
 
     /**
@@ -122,12 +476,10 @@ public class FlightNetwork {
      * @param airportCode IATA COde of the Airport
      * @return List of outgoing routes
      */
-    public List<Route> getRoutesFrom(String airportCode) throws SQLException {
-        try {
-            return databaseManager.getRoutesFrom(airportCode);
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+    public List<Route> getRoutesFrom(String airportCode) {
+        NetworkSnapshot snapshot = current.get();
+        int id = snapshot.idOf(airportCode);
+        return id < 0 ? new ArrayList<>() : snapshot.routesFrom(id);
     }
 
     /**
@@ -136,7 +488,7 @@ public class FlightNetwork {
      * @param routeDestination IATA Code of the destination Airport
      * @return Route if one exists, else null
      */
-    public Route getRoute(String routeOrigin, String routeDestination) throws SQLException {
+    public Route getRoute(String routeOrigin, String routeDestination) {
         List<Route> routesFromOrigin = this.getRoutesFrom(routeOrigin);
         for (Route route: routesFromOrigin){
             if (route.getDestinationCode().equals(routeDestination)){
@@ -165,15 +517,53 @@ public class FlightNetwork {
     }
 
     /**
-     * Database query to get the boolean value from the database for Task 1
+     * Checks for a direct flight for Task 1, answered from the current snapshot without a database query
+     * The base pairs are one bit test in the DirectConnections index, the flights added since the last
+     * compaction are the few added edges of the origin in the flight graph
      *
      * @param from originating airport
      * @param to destination airport
      * @return True is Route has direct flight
-     * @throws SQLException if dp operations fail
      */
-    public boolean hasDirectFlight(String from, String to) throws SQLException {
-        return databaseManager.hasDirectFlight(from,to);
+    public boolean hasDirectFlight(String from, String to) {
+        NetworkSnapshot snapshot = current.get();
+        return hasDirectFlight(snapshot, snapshot.idOf(from), snapshot.idOf(to));
+    }
+
+    /**
+     * Checks many pairs for a direct flight, all on the same version of the network
+     *
+     * @param origins originating airports
+     * @param destinations destination airports, same length as origins
+     * @return per pair true or false, null if one of the airports does not exist
+     */
+    public Boolean[] hasDirectFlights(List<String> origins, List<String> destinations) {
+        NetworkSnapshot snapshot = current.get();
+        Boolean[] result = new Boolean[origins.size()];
+        for (int i = 0; i < result.length; i++) {
+            int from = origins.get(i) == null ? -1 : snapshot.idOf(origins.get(i));
+            int to = destinations.get(i) == null ? -1 : snapshot.idOf(destinations.get(i));
+            result[i] = from < 0 || to < 0 ? null : hasDirectFlight(snapshot, from, to);
+        }
+        return result;
+    }
+
+    private boolean hasDirectFlight(NetworkSnapshot snapshot, int from, int to) {
+        if (from < 0 || to < 0) return false;
+        CsrGraph graph = snapshot.flightGraph();
+        DirectConnections connections = directConnections;
+        if (connections == null || !connections.covers(graph)) {
+            // the index already belongs to a newer base, scan the edges of the origin
+            return snapshot.flightEdgeBetween(from, to) >= 0;
+        }
+        if (connections.contains(from, to)) return true;
+        int[] added = graph.addedEdges(from);
+        if (added != null) {
+            for (int edge : added) {
+                if (graph.target(edge) == to) return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -189,6 +579,7 @@ public class FlightNetwork {
      * Closes the database connection
      */
     public void close(){
+        compactor.shutdownNow();
         if (databaseManager != null) {
             try{
                 databaseManager.close();}catch(SQLException e){
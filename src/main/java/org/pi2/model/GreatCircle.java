@@ -0,0 +1,43 @@
+package org.pi2.model;
+
+/**
+ * Great-circle distance between two points on the earth, calculated with the haversine formula
+ *
+ * The raw great-circle distance is no lower bound for the distance of a trip, the routes of the data are rounded and
+ * some are shorter (LHR-MUC is 918 km in routes.csv but 943 km great-circle). The A* search of TripPlannerRoute uses
+ * it scaled by NetworkSnapshot.greatCircleScale, which is a lower bound.
+ */
+public final class GreatCircle {
+    // Mean earth radius in km
+    public static final double EARTH_RADIUS_KM = 6371.0;
+
+    private GreatCircle() {
+    }
+
+    /**
+     * Calculates the great-circle distance with the haversine formula
+     * @param latitude1 latitude of the first point in degrees
+     * @param longitude1 longitude of the first point in degrees
+     * @param latitude2 latitude of the second point in degrees
+     * @param longitude2 longitude of the second point in degrees
+     * @return distance in km
+     */
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double phi1 = Math.toRadians(latitude1);
+        double phi2 = Math.toRadians(latitude2);
+        double sinDeltaPhi = Math.sin((phi2 - phi1) / 2);
+        double sinDeltaLambda = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double h = sinDeltaPhi * sinDeltaPhi + Math.cos(phi1) * Math.cos(phi2) * sinDeltaLambda * sinDeltaLambda;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(h)));
+    }
+
+    /**
+     * Calculates the great-circle distance between two airports
+     * @param from first airport, must have coordinates
+     * @param to second airport, must have coordinates
+     * @return distance in km
+     */
+    public static double distanceKm(Airport from, Airport to) {
+        return distanceKm(from.getLatitude(), from.getLongitude(), to.getLatitude(), to.getLongitude());
+    }
+}
@@ -0,0 +1,66 @@
+package org.pi2.model;
+
+/**
+ * Packs a three letter IATA airport code into a single int
+ *
+ * Every letter A-Z is stored as 1-26 in 5 bits, the first letter in the highest bits.
+ * The resulting key is always positive and smaller than 2^15, which makes it a cheap hash key
+ * without hashing a String or boxing an Integer.
+ *
+ * Codes that are not exactly three uppercase letters can not be packed and give INVALID.
+ */
+public final class IataKey {
+    /** Key returned for codes that are not three uppercase letters */
+    public static final int INVALID = -1;
+
+    private IataKey() {
+    }
+
+    /**
+     * Packs an IATA code
+     * @param code IATA code i.e. "LHR"
+     * @return packed key, or INVALID if the code is null or not three uppercase letters
+     */
+    public static int of(String code) {
+        if (code == null || code.length() != 3) return INVALID;
+        int key = 0;
+        for (int i = 0; i < 3; i++) {
+            char c = code.charAt(i);
+            if (c < 'A' || c > 'Z') return INVALID;
+            key = (key << 5) | (c - 'A' + 1);
+        }
+        return key;
+    }
+
+    /**
+     * Unpacks a key back into the IATA code
+     * @param key packed key
+     * @return IATA code
+     * @throws IllegalArgumentException if the key is not a valid packed code
+     */
+    public static String toCode(int key) {
+        if (!isValid(key)) {
+            throw new IllegalArgumentException("Not a packed IATA code: " + key);
+        }
+        char[] chars = new char[3];
+        for (int i = 2; i >= 0; i--) {
+            chars[i] = (char) ('A' - 1 + (key & 0x1F));
+            key >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Checks if a key is a valid packed code
+     * @param key packed key
+     * @return true if all three letters are in A-Z
+     */
+    public static boolean isValid(int key) {
+        if (key < 0 || key >= (1 << 15)) return false;
+        for (int i = 0; i < 3; i++) {
+            int letter = (key >>> (5 * i)) & 0x1F;
+            if (letter < 1 || letter > 26) return false;
+        }
+        return true;
+    }
+}
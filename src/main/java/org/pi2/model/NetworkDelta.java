@@ -0,0 +1,174 @@
+package org.pi2.model;
+
+import org.pi2.util.IntIntHashMap;
+import org.pi2.util.IntObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable record of the changes made to a network snapshot since its base was built
+ *
+ * The edges themselves live in the overlays of the snapshot graphs (see CsrGraph), the delta keeps
+ * the model objects that belong to them and the ordered list of changes, so a compaction can replay
+ * changes that arrived while it was building a new base.
+ *
+ * Every change creates a new delta, copying only the small delta structures.
+ */
+public final class NetworkDelta {
+    static final NetworkDelta EMPTY = new NetworkDelta(List.of(), 0L, new Airport[0], new IntIntHashMap(0, -1),
+            new Route[0], new Flight[0], new IntObjectHashMap<>(), 0, new IntIntHashMap(0, -1));
+
+    private final List<Object> changes;                        // accepted Airport, Route and Flight objects in order
+    private final long createdAtNanos;                         // System.nanoTime of the first change, 0 if empty
+    private final Airport[] airports;                          // added airports, id = base airport count + index
+    private final IntIntHashMap ids;                           // packed IATA code to id of the added airports
+    private final Route[] routes;                              // route per added route edge, index = edge - base edges
+    private final Flight[] cheapest;                           // cheapest flight per added flight edge
+    private final IntObjectHashMap<Flight[]> flightsByOrigin;  // all added flights per origin airport id
+    private final int flightCount;                             // amount of added flights
+    private final IntIntHashMap routeFlightEdges;              // route edge to the flight edge of its pair, if that is not in the base
+
+    private NetworkDelta(List<Object> changes, long createdAtNanos, Airport[] airports, IntIntHashMap ids,
+                         Route[] routes, Flight[] cheapest, IntObjectHashMap<Flight[]> flightsByOrigin, int flightCount,
+                         IntIntHashMap routeFlightEdges) {
+        this.changes = changes;
+        this.createdAtNanos = createdAtNanos;
+        this.airports = airports;
+        this.ids = ids;
+        this.routes = routes;
+        this.cheapest = cheapest;
+        this.flightsByOrigin = flightsByOrigin;
+        this.flightCount = flightCount;
+        this.routeFlightEdges = routeFlightEdges;
+    }
+
+    /**
+     * Get the amount of changes in the delta
+     * @return amount of accepted changes since the base was built
+     */
+    public int size() {
+        return changes.size();
+    }
+
+    /**
+     * Checks if the delta is empty
+     * @return true if the snapshot equals its base
+     */
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Get the age of the delta
+     * @param nowNanos current System.nanoTime
+     * @return nanoseconds since the first change, 0 if empty
+     */
+    public long ageNanos(long nowNanos) {
+        return changes.isEmpty() ? 0 : nowNanos - createdAtNanos;
+    }
+
+    /**
+     * Get the changes in the order they were made
+     * @return unmodifiable list of Airport, Route and Flight objects
+     */
+    public List<Object> changes() {
+        return changes;
+    }
+
+    int airportCount() {
+        return airports.length;
+    }
+
+    Airport airport(int index) {
+        return airports[index];
+    }
+
+    int idOf(int key) {
+        return ids.get(key);
+    }
+
+    Route route(int index) {
+        return routes[index];
+    }
+
+    Flight cheapest(int index) {
+        return cheapest[index];
+    }
+
+    Flight[] flightsFrom(int id) {
+        return flightsByOrigin.get(id);
+    }
+
+    int flightCount() {
+        return flightCount;
+    }
+
+    int routeFlightEdge(int routeEdge) {
+        return routeFlightEdges.get(routeEdge);
+    }
+
+    /**
+     * Returns a delta with one more change recorded
+     * @param change the accepted Airport, Route or Flight
+     * @return new delta
+     */
+    NetworkDelta withChange(Object change) {
+        List<Object> list = new ArrayList<>(changes.size() + 1);
+        list.addAll(changes);
+        list.add(change);
+        long created = changes.isEmpty() ? System.nanoTime() : createdAtNanos;
+        return new NetworkDelta(Collections.unmodifiableList(list), created, airports, ids, routes, cheapest,
+                flightsByOrigin, flightCount, routeFlightEdges);
+    }
+
+    NetworkDelta withAirport(Airport airport, int id) {
+        Airport[] newAirports = Arrays.copyOf(airports, airports.length + 1);
+        newAirports[airports.length] = airport;
+        IntIntHashMap newIds = ids.copy();
+        newIds.put(airport.key(), id);
+        return new NetworkDelta(changes, createdAtNanos, newAirports, newIds, routes, cheapest, flightsByOrigin, flightCount, routeFlightEdges);
+    }
+
+    NetworkDelta withRouteEdge(Route route) {
+        Route[] newRoutes = Arrays.copyOf(routes, routes.length + 1);
+        newRoutes[routes.length] = route;
+        return new NetworkDelta(changes, createdAtNanos, airports, ids, newRoutes, cheapest, flightsByOrigin, flightCount, routeFlightEdges);
+    }
+
+    NetworkDelta withFlight(int origin, Flight flight) {
+        IntObjectHashMap<Flight[]> copy = flightsByOrigin.copy();
+        Flight[] existing = copy.get(origin);
+        Flight[] flights = existing == null ? new Flight[1] : Arrays.copyOf(existing, existing.length + 1);
+        flights[flights.length - 1] = flight;
+        copy.put(origin, flights);
+        return new NetworkDelta(changes, createdAtNanos, airports, ids, routes, cheapest, copy, flightCount + 1, routeFlightEdges);
+    }
+
+    NetworkDelta withFlightEdge(Flight flight) {
+        Flight[] newCheapest = Arrays.copyOf(cheapest, cheapest.length + 1);
+        newCheapest[cheapest.length] = flight;
+        return new NetworkDelta(changes, createdAtNanos, airports, ids, routes, newCheapest, flightsByOrigin, flightCount, routeFlightEdges);
+    }
+
+    NetworkDelta withCheapest(int index, Flight flight) {
+        Flight[] newCheapest = cheapest.clone();
+        newCheapest[index] = flight;
+        return new NetworkDelta(changes, createdAtNanos, airports, ids, routes, newCheapest, flightsByOrigin, flightCount, routeFlightEdges);
+    }
+
+    /**
+     * Returns a delta in which a route edge maps to another flight graph edge
+     * Used when a route is added and when the flight edge of a pair moves into the overlay
+     * @param routeEdge route graph edge id
+     * @param flightEdge flight graph edge id of the same pair
+     * @return new delta
+     */
+    NetworkDelta withRouteFlightEdge(int routeEdge, int flightEdge) {
+        IntIntHashMap copy = routeFlightEdges.copy();
+        copy.put(routeEdge, flightEdge);
+        return new NetworkDelta(changes, createdAtNanos, airports, ids, routes, cheapest, flightsByOrigin, flightCount, copy);
+    }
+}
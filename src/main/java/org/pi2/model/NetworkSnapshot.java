@@ -0,0 +1,872 @@
+package org.pi2.model;
+
+import org.pi2.util.IntIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable in-memory snapshot of the flight network
+ * The planners run entirely against this snapshot, so no database query is needed while searching
+ *
+ * Versioning:
+ * - Every change of the network publishes a new snapshot with a higher version number (copy-on-write)
+ * - A reader takes one snapshot for a whole query and sees a consistent network, no locks are needed
+ *
+ * Base and delta:
+ * - The CSR arrays are built once (the base) and shared by all following versions
+ * - Changes go into a small delta: overlays on the graphs plus a NetworkDelta with the added model objects
+ * - Airports added by the delta get the ids after the base airports, ids never change until the network is reloaded
+ * - compact() folds the delta into a new base, which is done in the background once the delta grows or ages
+ *
+ * Structure:
+ * - Airports get dense int ids 0..M-1, the id is the index into the airports array
+ * - Route graph: CSR graph, one edge per route, weight = distance in kilometers
+ * - Flight graph: CSR graph, one edge per (origin, destination) pair, weight = cost of the cheapest flight on that pair
+ * - For each edge the original Route / cheapest Flight is kept, so paths can be turned back into the model objects
+ * - All flights are kept in a second CSR layout grouped by origin, for the per-airport flight lists
+ * - Flight graph edge of the pair of every route edge, and the flights of every flight graph edge sorted by cost,
+ *   so a route path turns into flights with one array read per leg (see Pairs). The delta keeps the route edges
+ *   whose flight edge moved into the overlay
+ * - Coordinates of every airport id and the factor that makes the great-circle distance a lower bound of every route (see Geo)
+ * - The route distance of every flight graph edge, built on first use (flightDistances)
+ * - The airline and country ids and the flight multigraph of the filtered trips, built on first use (constraints)
+ *
+ * Complexity:
+ *  - Build time O(M+N), with M=Amount of airports, N=Amount of routes and flights
+ *  - Space Complexity: O(M+N)
+ */
+public final class NetworkSnapshot {
+    private final long version;                // version number, increases with every published change
+    private final long baseVersion;            // version at which the base arrays were built
+    private final NetworkDelta delta;          // changes since the base was built
+    private final Airport[] airports;          // dense id to base airport
+    private final IntIntHashMap ids;           // packed IATA code to dense id, read only after construction
+    private final CsrGraph routeGraph;         // weight = distance in km, base plus overlay
+    private final Route[] routeEdges;          // route per base edge of the route graph
+    private final CsrGraph flightGraph;        // weight = minimum cost in euros, base plus overlay
+    private final Flight[] flightEdges;        // cheapest flight per base edge of the flight graph
+    private final int[] allFlightOffsets;      // all base flights of airport u are allFlights[allFlightOffsets[u]..allFlightOffsets[u+1]]
+    private final Flight[] allFlights;         // every base flight, grouped by origin
+    private final Geo geo;                     // coordinates per airport id, base and delta
+    private final Pairs pairs;                 // flight edge per base route edge and flights per base flight edge
+    private volatile int[] flightDistances;    // route distance per flight graph edge, built on first use
+    private volatile ConstraintIndex constraints; // airline and country ids of the filtered trips, built on first use
+
+    private NetworkSnapshot(long version, long baseVersion, NetworkDelta delta, Airport[] airports, IntIntHashMap ids,
+                            CsrGraph routeGraph, Route[] routeEdges,
+                            CsrGraph flightGraph, Flight[] flightEdges,
+                            int[] allFlightOffsets, Flight[] allFlights, Geo geo, Pairs pairs) {
+        this.version = version;
+        this.baseVersion = baseVersion;
+        this.delta = delta;
+        this.airports = airports;
+        this.ids = ids;
+        this.routeGraph = routeGraph;
+        this.routeEdges = routeEdges;
+        this.flightGraph = flightGraph;
+        this.flightEdges = flightEdges;
+        this.allFlightOffsets = allFlightOffsets;
+        this.allFlights = allFlights;
+        this.geo = geo;
+        this.pairs = pairs;
+    }
+
+    /**
+     * Creates the empty snapshot with version 0, used before anything is loaded
+     * @return empty snapshot
+     */
+    public static NetworkSnapshot empty() {
+        return build(0, List.of(), List.of(), List.of());
+    }
+
+    /**
+     * Builds the snapshot from the loaded network data
+     * Routes and flights whose origin or destination is not a known airport are skipped, like the planners did before
+     *
+     * @param version version number of the snapshot
+     * @param airportList all airports of the network
+     * @param routeLists outgoing routes, grouped per origin airport
+     * @param flightLists outgoing flights, grouped per origin airport
+     * @return the immutable snapshot
+     */
+    public static NetworkSnapshot build(long version, Collection<Airport> airportList,
+                                        Collection<List<Route>> routeLists,
+                                        Collection<List<Flight>> flightLists) {
+        // Step 1: dense ids for the airports, keyed by the packed IATA code
+        // airports without a valid code can not be looked up and are left out
+        Airport[] airports = airportList.stream()
+                .filter(airport -> airport.key() != IataKey.INVALID)
+                .toArray(Airport[]::new);
+        IntIntHashMap ids = new IntIntHashMap(airports.length, -1);
+        for (int i = 0; i < airports.length; i++) {
+            ids.put(airports[i].key(), i);
+        }
+        int nodeCount = airports.length;
+
+        // Step 2: route graph, one edge per route
+        int routeCount = 0;
+        for (List<Route> list : routeLists) {
+            routeCount += list.size();
+        }
+        int[] origins = new int[routeCount];
+        int[] targets = new int[routeCount];
+        int[] weights = new int[routeCount];
+        Route[] routeInput = new Route[routeCount];
+        int n = 0;
+        for (List<Route> list : routeLists) {
+            for (Route route : list) {
+                int from = ids.get(IataKey.of(route.getOriginCode()));
+                int to = ids.get(IataKey.of(route.getDestinationCode()));
+                if (from < 0 || to < 0 || route.getDistanceInKilometer() == null) continue; // skip invalid routes
+                origins[n] = from;
+                targets[n] = to;
+                weights[n] = route.getDistanceInKilometer();
+                routeInput[n] = route;
+                n++;
+            }
+        }
+        int[] order = new int[n];
+        CsrGraph routeGraph = CsrGraph.fromEdges(nodeCount, origins, targets, weights, n, order);
+        Route[] routeEdges = new Route[n];
+        for (int e = 0; e < n; e++) {
+            routeEdges[e] = routeInput[order[e]];
+        }
+
+        // Step 3: flight graph, first one edge per flight sorted by origin
+        int flightCount = 0;
+        for (List<Flight> list : flightLists) {
+            flightCount += list.size();
+        }
+        origins = new int[flightCount];
+        targets = new int[flightCount];
+        weights = new int[flightCount];
+        Flight[] flightInput = new Flight[flightCount];
+        n = 0;
+        for (List<Flight> list : flightLists) {
+            for (Flight flight : list) {
+                int from = ids.get(IataKey.of(flight.getOriginCode()));
+                int to = ids.get(IataKey.of(flight.getDestinationCode()));
+                if (from < 0 || to < 0 || flight.getCostInEuros() == null) continue; // skip invalid flights
+                origins[n] = from;
+                targets[n] = to;
+                weights[n] = flight.getCostInEuros();
+                flightInput[n] = flight;
+                n++;
+            }
+        }
+        order = new int[n];
+        CsrGraph allFlights = CsrGraph.fromEdges(nodeCount, origins, targets, weights, n, order);
+        Flight[] flightsByOrigin = new Flight[n];
+        for (int e = 0; e < n; e++) {
+            flightsByOrigin[e] = flightInput[order[e]];
+        }
+
+        // Step 4: collapse parallel flights of each origin into one edge with the minimum cost
+        int[] rowOffsets = allFlights.offsets();
+        int[] rowTargets = allFlights.targets();
+        int[] rowWeights = allFlights.weights();
+        int[] offsets = new int[nodeCount + 1];
+        int[] minTargets = new int[n];
+        int[] minCosts = new int[n];
+        Flight[] cheapest = new Flight[n];
+        IntIntHashMap slotOfTarget = new IntIntHashMap(16, -1); // target id to collapsed edge of the current origin
+        int m = 0;
+        for (int v = 0; v < nodeCount; v++) {
+            offsets[v] = m;
+            slotOfTarget.clear();
+            for (int e = rowOffsets[v]; e < rowOffsets[v + 1]; e++) {
+                int slot = slotOfTarget.get(rowTargets[e]);
+                if (slot < 0) {
+                    slotOfTarget.put(rowTargets[e], m);
+                    minTargets[m] = rowTargets[e];
+                    minCosts[m] = rowWeights[e];
+                    cheapest[m] = flightsByOrigin[e];
+                    m++;
+                } else if (rowWeights[e] < minCosts[slot]) {
+                    // strictly cheaper flight on the same pair replaces the edge weight
+                    minCosts[slot] = rowWeights[e];
+                    cheapest[slot] = flightsByOrigin[e];
+                }
+            }
+        }
+        offsets[nodeCount] = m;
+        CsrGraph flightGraph = new CsrGraph(offsets, Arrays.copyOf(minTargets, m), Arrays.copyOf(minCosts, m));
+        Flight[] flightEdges = Arrays.copyOf(cheapest, m);
+
+        return new NetworkSnapshot(version, version, NetworkDelta.EMPTY, airports, ids, routeGraph, routeEdges,
+                flightGraph, flightEdges, rowOffsets, flightsByOrigin, Geo.of(airports, routeGraph),
+                Pairs.of(ids, routeGraph, flightGraph, rowOffsets, flightsByOrigin));
+    }
+
+    /**
+     * Creates a snapshot from already built CSR arrays, used to restore a snapshot from a file
+     * All arrays are taken over without copying and must not be modified afterwards
+     *
+     * @param version version number of the snapshot
+     * @param airports airports in id order
+     * @param routeOffsets route graph offsets, length airports+1
+     * @param routeTargets route graph targets
+     * @param routeWeights route graph distances
+     * @param routeEdges Route per route graph edge
+     * @param flightOffsets flight graph offsets, length airports+1
+     * @param flightTargets flight graph targets
+     * @param flightWeights flight graph minimum costs
+     * @param flightEdges cheapest Flight per flight graph edge
+     * @param allFlightOffsets offsets of all flights per origin, length airports+1
+     * @param allFlights all flights grouped by origin
+     * @return the snapshot with an empty delta
+     */
+    public static NetworkSnapshot fromArrays(long version, Airport[] airports,
+                                             int[] routeOffsets, int[] routeTargets, int[] routeWeights, Route[] routeEdges,
+                                             int[] flightOffsets, int[] flightTargets, int[] flightWeights, Flight[] flightEdges,
+                                             int[] allFlightOffsets, Flight[] allFlights) {
+        IntIntHashMap ids = new IntIntHashMap(airports.length, -1);
+        for (int i = 0; i < airports.length; i++) {
+            ids.put(airports[i].key(), i);
+        }
+        CsrGraph routeGraph = new CsrGraph(routeOffsets, routeTargets, routeWeights);
+        CsrGraph flightGraph = new CsrGraph(flightOffsets, flightTargets, flightWeights);
+        return new NetworkSnapshot(version, version, NetworkDelta.EMPTY, airports, ids,
+                routeGraph, routeEdges, flightGraph, flightEdges,
+                allFlightOffsets, allFlights, Geo.of(airports, routeGraph),
+                Pairs.of(ids, routeGraph, flightGraph, allFlightOffsets, allFlights));
+    }
+
+    /**
+     * Folds the delta into a new base
+     * Ids of the airports stay the same, edge ids can change
+     * @param newVersion version number of the compacted snapshot
+     * @return snapshot with the same content and an empty delta
+     */
+    public NetworkSnapshot compact(long newVersion) {
+        int count = airportCount();
+        List<List<Route>> routeLists = new ArrayList<>(count);
+        List<List<Flight>> flightLists = new ArrayList<>(count);
+        for (int id = 0; id < count; id++) {
+            routeLists.add(routesFrom(id));
+            flightLists.add(flightsFrom(id));
+        }
+        return build(newVersion, airports(), routeLists, flightLists);
+    }
+
+    /**
+     * Applies a large batch of changes by building a new base directly instead of growing the delta
+     * The result has the same content as applying every change with withChange
+     * @param changes Airport, Route and Flight objects in order
+     * @param newVersion version number of the new snapshot
+     * @return new snapshot with an empty delta
+     */
+    public NetworkSnapshot rebuildWith(List<Object> changes, long newVersion) {
+        List<Airport> airportList = new ArrayList<>(airports());
+        IntIntHashMap known = new IntIntHashMap(airportList.size() + changes.size(), -1);
+        for (Airport airport : airportList) {
+            known.put(airport.key(), 1);
+        }
+        int count = airportCount();
+        List<List<Route>> routeLists = new ArrayList<>(count + 1);
+        List<List<Flight>> flightLists = new ArrayList<>(count + 1);
+        for (int id = 0; id < count; id++) {
+            routeLists.add(routesFrom(id));
+            flightLists.add(flightsFrom(id));
+        }
+        // the new rows go into one extra list each, the build sorts them to their origin and keeps the order
+        List<Route> newRoutes = new ArrayList<>();
+        List<Flight> newFlights = new ArrayList<>();
+        for (Object change : changes) {
+            if (change instanceof Airport airport) {
+                if (airport.key() != IataKey.INVALID && !known.containsKey(airport.key())) {
+                    known.put(airport.key(), 1);
+                    airportList.add(airport);
+                }
+            } else if (change instanceof Route route) {
+                newRoutes.add(route);
+            } else if (change instanceof Flight flight) {
+                newFlights.add(flight);
+            }
+        }
+        routeLists.add(newRoutes);
+        flightLists.add(newFlights);
+        return build(newVersion, airportList, routeLists, flightLists);
+    }
+
+    /**
+     * Returns the same snapshot under a different version number
+     * @param newVersion version number
+     * @return snapshot sharing all data with this one
+     */
+    public NetworkSnapshot withVersion(long newVersion) {
+        return new NetworkSnapshot(newVersion, baseVersion, delta, airports, ids, routeGraph, routeEdges,
+                flightGraph, flightEdges, allFlightOffsets, allFlights, geo, pairs);
+    }
+
+    /**
+     * Applies one change recorded by a NetworkDelta, used to replay changes onto a compacted snapshot
+     * @param change Airport, Route or Flight
+     * @param newVersion version number of the resulting snapshot
+     * @return new snapshot, or this snapshot if the change has no effect on the in-memory network
+     */
+    public NetworkSnapshot withChange(Object change, long newVersion) {
+        if (change instanceof Airport airport) return withAirport(airport, newVersion);
+        if (change instanceof Route route) return withRoute(route, newVersion);
+        if (change instanceof Flight flight) return withFlight(flight, newVersion);
+        throw new IllegalArgumentException("Unknown change " + change);
+    }
+
+    /**
+     * Returns a snapshot with one more airport in the delta
+     * @param airport airport to add
+     * @param newVersion version number of the new snapshot
+     * @return new snapshot, or this snapshot if the code is invalid or already known
+     */
+    public NetworkSnapshot withAirport(Airport airport, long newVersion) {
+        if (airport.key() == IataKey.INVALID || idOf(airport) >= 0) return this;
+        int id = airportCount();
+        NetworkDelta newDelta = delta.withChange(airport).withAirport(airport, id);
+        return new NetworkSnapshot(newVersion, baseVersion, newDelta, airports, ids,
+                routeGraph.withNodeCount(id + 1), routeEdges,
+                flightGraph.withNodeCount(id + 1), flightEdges, allFlightOffsets, allFlights, geo.withAirport(airport), pairs);
+    }
+
+    /**
+     * Returns a snapshot with one more route edge in the delta
+     * @param route route to add
+     * @param newVersion version number of the new snapshot
+     * @return new snapshot, or this snapshot if an airport of the route is unknown
+     */
+    public NetworkSnapshot withRoute(Route route, long newVersion) {
+        int from = idOf(route.getOriginCode());
+        int to = idOf(route.getDestinationCode());
+        if (from < 0 || to < 0 || route.getDistanceInKilometer() == null) return this;
+        NetworkDelta newDelta = delta.withChange(route).withRouteEdge(route);
+        // the new route edge maps to the live flight edge of its pair
+        int flightEdge = flightEdgeBetween(from, to);
+        if (flightEdge >= 0) newDelta = newDelta.withRouteFlightEdge(routeGraph.edgeCount(), flightEdge);
+        return new NetworkSnapshot(newVersion, baseVersion, newDelta, airports, ids,
+                routeGraph.withAddedEdge(from, to, route.getDistanceInKilometer()), routeEdges,
+                flightGraph, flightEdges, allFlightOffsets, allFlights, geo.withRoute(from, to, route.getDistanceInKilometer()),
+                pairs);
+    }
+
+    /**
+     * Returns a snapshot with one more flight in the delta
+     * If the flight is the new cheapest flight of its pair, the flight graph edge of the pair changes:
+     * a base edge is removed by a tombstone and replaced by an added edge, an added edge gets the new weight
+     *
+     * @param flight flight to add
+     * @param newVersion version number of the new snapshot
+     * @return new snapshot, or this snapshot if an airport of the flight is unknown
+     */
+    public NetworkSnapshot withFlight(Flight flight, long newVersion) {
+        int from = idOf(flight.getOriginCode());
+        int to = idOf(flight.getDestinationCode());
+        if (from < 0 || to < 0 || flight.getCostInEuros() == null) return this;
+        int cost = flight.getCostInEuros();
+        NetworkDelta newDelta = delta.withChange(flight).withFlight(from, flight);
+        CsrGraph newGraph = flightGraph;
+        int edge = flightEdgeBetween(from, to);
+        if (edge < 0) {
+            // new pair, new edge
+            newGraph = flightGraph.withAddedEdge(from, to, cost);
+            newDelta = withRouteFlightEdges(newDelta.withFlightEdge(flight), from, to, flightGraph.edgeCount());
+        } else if (cost < flightGraph.weight(edge)) {
+            int base = flightGraph.baseEdgeCount();
+            if (edge < base) {
+                // the base edge is replaced by an edge in the overlay
+                newGraph = flightGraph.withRemovedEdge(edge).withAddedEdge(from, to, cost);
+                newDelta = withRouteFlightEdges(newDelta.withFlightEdge(flight), from, to, flightGraph.edgeCount());
+            } else {
+                newGraph = flightGraph.withAddedEdgeWeight(edge, cost);
+                newDelta = newDelta.withCheapest(edge - base, flight);
+            }
+        }
+        return new NetworkSnapshot(newVersion, baseVersion, newDelta, airports, ids,
+                routeGraph, routeEdges, newGraph, flightEdges, allFlightOffsets, allFlights, geo, pairs);
+    }
+
+    /**
+     * Points every route edge of a pair to the new flight edge of the pair
+     * @param newDelta delta of the new snapshot
+     * @param from origin id
+     * @param to destination id
+     * @param flightEdge id of the added flight edge
+     * @return the delta with the route edges mapped
+     */
+    private NetworkDelta withRouteFlightEdges(NetworkDelta newDelta, int from, int to, int flightEdge) {
+        int[] offsets = routeGraph.offsets();
+        if (from < offsets.length - 1) {
+            for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+                if (routeGraph.target(e) == to) newDelta = newDelta.withRouteFlightEdge(e, flightEdge);
+            }
+        }
+        int[] added = routeGraph.addedEdges(from);
+        if (added != null) {
+            for (int e : added) {
+                if (routeGraph.target(e) == to) newDelta = newDelta.withRouteFlightEdge(e, flightEdge);
+            }
+        }
+        return newDelta;
+    }
+
+    /**
+     * Finds the flight graph edge of the pair of a route edge, its flight is the cheapest flight of the route
+     * One array read for base routes, one hash lookup for routes and flights of the delta
+     * @param routeEdge route graph edge id, base or added
+     * @return flight graph edge id, -1 if no flight flies the route
+     */
+    public int flightEdgeOfRoute(int routeEdge) {
+        int edge = delta.routeFlightEdge(routeEdge);
+        if (edge >= 0) return edge;
+        return routeEdge < pairs.routeFlightEdges().length ? pairs.routeFlightEdges()[routeEdge] : -1;
+    }
+
+    /**
+     * Get all flights between two airports, sorted by cost
+     * The base flights of the pair are one range of the pair index, flights of the delta are merged in
+     * @param from origin id
+     * @param to destination id
+     * @return flights from the cheapest to the most expensive, equal costs in the order they were loaded
+     */
+    public List<Flight> flightsBetween(int from, int to) {
+        List<Flight> result = new ArrayList<>();
+        if (from < airports.length) {
+            int[] offsets = flightGraph.offsets();
+            int[] targets = flightGraph.targets();
+            for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+                // tombstones included, a removed base edge only lost the cheapest flight to the delta
+                if (targets[e] != to) continue;
+                for (int i = pairs.flightOffsets()[e]; i < pairs.flightOffsets()[e + 1]; i++) {
+                    result.add(allFlights[pairs.flights()[i]]);
+                }
+                break;
+            }
+        }
+        Flight[] added = delta.flightsFrom(from);
+        if (added != null) {
+            boolean merged = false;
+            for (Flight flight : added) {
+                if (idOf(flight.getDestinationCode()) == to) {
+                    result.add(flight);
+                    merged = true;
+                }
+            }
+            // stable sort, the already sorted base flights stay ahead of equally priced new ones
+            if (merged) result.sort((a, b) -> Integer.compare(a.getCostInEuros(), b.getCostInEuros()));
+        }
+        return result;
+    }
+
+    /**
+     * Finds the live flight graph edge of a pair, its flight is the cheapest flight between the two airports
+     * @param from origin id
+     * @param to destination id
+     * @return edge id, -1 if the pair has no edge
+     */
+    public int flightEdgeBetween(int from, int to) {
+        int[] offsets = flightGraph.offsets();
+        int[] targets = flightGraph.targets();
+        for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+            if (targets[e] == to && !flightGraph.isRemoved(e)) return e;
+        }
+        int[] added = flightGraph.addedEdges(from);
+        if (added != null) {
+            for (int e : added) {
+                if (flightGraph.target(e) == to) return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the distance of every flight graph edge, the distance of the shortest route between its two airports
+     * Built on first use for this version, the Pareto search needs the cost and the distance of every edge
+     * @return distance in km per flight edge id (base and added), -1 if the pair has no route, must not be modified
+     */
+    public int[] flightDistances() {
+        int[] distances = flightDistances;
+        if (distances == null) {
+            distances = buildFlightDistances();
+            flightDistances = distances;
+        }
+        return distances;
+    }
+
+    /**
+     * Get the airline and country ids of this version and the flight multigraph the filtered trips search on
+     * Built on first use for this version, concurrent first calls may both build it, the last one wins
+     * @return the index, see ConstraintIndex
+     */
+    public ConstraintIndex constraints() {
+        ConstraintIndex index = constraints;
+        if (index == null) {
+            index = ConstraintIndex.build(this);
+            constraints = index;
+        }
+        return index;
+    }
+
+    /**
+     * One pass over the outgoing routes and flights of every airport, the route distances of an airport are
+     * collected in an array stamped with the airport id so it is never cleared
+     */
+    private int[] buildFlightDistances() {
+        int nodeCount = flightGraph.nodeCount();
+        int[] distances = new int[flightGraph.edgeCount()];
+        Arrays.fill(distances, -1);
+        int[] shortest = new int[nodeCount];
+        int[] stamp = new int[nodeCount];
+        Arrays.fill(stamp, -1);
+        for (int u = 0; u < nodeCount; u++) {
+            // shortest live route to every destination of u
+            for (int e = routeGraph.offsets()[u]; e < routeGraph.offsets()[u + 1]; e++) {
+                if (!routeGraph.isRemoved(e)) collectRoute(shortest, stamp, u, routeGraph.target(e), routeGraph.weight(e));
+            }
+            int[] addedRoutes = routeGraph.addedEdges(u);
+            if (addedRoutes != null) {
+                for (int e : addedRoutes) {
+                    collectRoute(shortest, stamp, u, routeGraph.target(e), routeGraph.weight(e));
+                }
+            }
+            // flight edges of u look their destination up
+            for (int e = flightGraph.offsets()[u]; e < flightGraph.offsets()[u + 1]; e++) {
+                int v = flightGraph.target(e);
+                if (stamp[v] == u) distances[e] = shortest[v];
+            }
+            int[] addedFlights = flightGraph.addedEdges(u);
+            if (addedFlights != null) {
+                for (int e : addedFlights) {
+                    int v = flightGraph.target(e);
+                    if (stamp[v] == u) distances[e] = shortest[v];
+                }
+            }
+        }
+        return distances;
+    }
+
+    private static void collectRoute(int[] shortest, int[] stamp, int from, int to, int distance) {
+        if (stamp[to] != from) {
+            stamp[to] = from;
+            shortest[to] = distance;
+        } else if (distance < shortest[to]) {
+            shortest[to] = distance;
+        }
+    }
+
+    /**
+     * Get the latitude of every airport id
+     * @return latitudes in degrees, NaN for airports without coordinates, must not be modified
+     */
+    public double[] latitudes() {
+        return geo.latitudes();
+    }
+
+    /**
+     * Get the longitude of every airport id
+     * @return longitudes in degrees, NaN for airports without coordinates, must not be modified
+     */
+    public double[] longitudes() {
+        return geo.longitudes();
+    }
+
+    /**
+     * Get the factor that makes the great-circle distance a lower bound for every trip in the route graph
+     * It is the smallest ratio of route distance to great-circle distance over all routes, at most 1. A route shorter
+     * than the great-circle distance of its airports (rounded distances in the data) only lowers the factor, the
+     * scaled great-circle distance stays a lower bound and the A* search of the route planner uses it as heuristic.
+     * @return factor in [0, 1], 0 if an airport has no coordinates or a route has distance 0 and A* can not be used
+     */
+    public double greatCircleScale() {
+        return geo.scale();
+    }
+
+    /**
+     * Get the version number of the snapshot
+     * @return version, higher numbers are newer
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Get the version at which the base of this snapshot was built
+     * Snapshots with the same base version share their base arrays and only differ in the delta
+     * @return base version
+     */
+    public long baseVersion() {
+        return baseVersion;
+    }
+
+    /**
+     * Get the changes since the base was built
+     * @return the delta
+     */
+    public NetworkDelta delta() {
+        return delta;
+    }
+
+    /**
+     * Get the dense id of an airport
+     * @param code IATA code of the airport
+     * @return dense id, or -1 if the airport is not part of the snapshot
+     */
+    public int idOf(String code) {
+        return idOfKey(IataKey.of(code));
+    }
+
+    /**
+     * Get the dense id of an airport
+     * @param airport the airport
+     * @return dense id, or -1 if the airport is not part of the snapshot
+     */
+    public int idOf(Airport airport) {
+        return idOfKey(airport.key());
+    }
+
+    private int idOfKey(int key) {
+        int id = ids.get(key);
+        return id >= 0 || delta.airportCount() == 0 ? id : delta.idOf(key);
+    }
+
+    /**
+     * Get the airport with the given dense id
+     * @param id dense id
+     * @return the airport
+     */
+    public Airport airport(int id) {
+        return id < airports.length ? airports[id] : delta.airport(id - airports.length);
+    }
+
+    /**
+     * Get an airport by its IATA code
+     * @param code IATA code
+     * @return the airport, or null if it is not part of the snapshot
+     */
+    public Airport airport(String code) {
+        int id = idOf(code);
+        return id < 0 ? null : airport(id);
+    }
+
+    /**
+     * Get all airports in id order
+     * @return unmodifiable list of all airports
+     */
+    public List<Airport> airports() {
+        if (delta.airportCount() == 0) return List.of(airports);
+        Airport[] all = Arrays.copyOf(airports, airportCount());
+        for (int i = 0; i < delta.airportCount(); i++) {
+            all[airports.length + i] = delta.airport(i);
+        }
+        return List.of(all);
+    }
+
+    /**
+     * Get the amount of airports
+     * @return amount of airports in the snapshot
+     */
+    public int airportCount() {
+        return airports.length + delta.airportCount();
+    }
+
+    /**
+     * Get the route graph, weights are distances in kilometers
+     * @return the route graph
+     */
+    public CsrGraph routeGraph() {
+        return routeGraph;
+    }
+
+    /**
+     * Get the Route belonging to an edge of the route graph
+     * @param edge edge id, base or added
+     * @return the route
+     */
+    public Route route(int edge) {
+        return edge < routeEdges.length ? routeEdges[edge] : delta.route(edge - routeEdges.length);
+    }
+
+    /**
+     * Get the flight graph, weights are the costs of the cheapest flight per (origin, destination) pair
+     * @return the flight graph
+     */
+    public CsrGraph flightGraph() {
+        return flightGraph;
+    }
+
+    /**
+     * Get the cheapest Flight belonging to an edge of the flight graph
+     * @param edge edge id, base or added
+     * @return the cheapest flight of the edge
+     */
+    public Flight flight(int edge) {
+        return edge < flightEdges.length ? flightEdges[edge] : delta.cheapest(edge - flightEdges.length);
+    }
+
+    /**
+     * Get all outgoing routes of an airport
+     * @param id dense id of the airport
+     * @return unmodifiable list of the routes
+     */
+    public List<Route> routesFrom(int id) {
+        List<Route> result = new ArrayList<>();
+        if (id < airports.length) {
+            int[] offsets = routeGraph.offsets();
+            result.addAll(Arrays.asList(routeEdges).subList(offsets[id], offsets[id + 1]));
+        }
+        int[] added = routeGraph.addedEdges(id);
+        if (added != null) {
+            for (int e : added) {
+                result.add(route(e));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Get all outgoing flights of an airport, not only the cheapest per destination
+     * @param id dense id of the airport
+     * @return unmodifiable list of the flights
+     */
+    public List<Flight> flightsFrom(int id) {
+        List<Flight> result = new ArrayList<>();
+        if (id < airports.length) {
+            result.addAll(Arrays.asList(allFlights).subList(allFlightOffsets[id], allFlightOffsets[id + 1]));
+        }
+        Flight[] added = delta.flightsFrom(id);
+        if (added != null) {
+            result.addAll(Arrays.asList(added));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Get the total amount of flights, parallel flights on the same pair counted separately
+     * @return amount of flights
+     */
+    public int flightCount() {
+        return allFlights.length + delta.flightCount();
+    }
+
+    /**
+     * Index between the routes and the flights of the base
+     *
+     * @param routeFlightEdges flight graph edge of the pair per base route edge, -1 if no flight flies the route
+     * @param flightOffsets the flights of base flight edge e are flights[flightOffsets[e]..flightOffsets[e+1]]
+     * @param flights indices into allFlights, grouped by flight graph edge and sorted by cost
+     */
+    private record Pairs(int[] routeFlightEdges, int[] flightOffsets, int[] flights) {
+
+        /**
+         * One pass per origin: its flight edges are put into a map by destination, the routes and flights of the
+         * origin look their pair up. The flights are then grouped by edge with a counting sort and every group
+         * is sorted by cost
+         */
+        static Pairs of(IntIntHashMap ids, CsrGraph routeGraph, CsrGraph flightGraph,
+                        int[] allFlightOffsets, Flight[] allFlights) {
+            int nodeCount = allFlightOffsets.length - 1;
+            int[] routeOffsets = routeGraph.offsets();
+            int[] routeTargets = routeGraph.targets();
+            int[] offsets = flightGraph.offsets();
+            int[] targets = flightGraph.targets();
+            int[] routeFlightEdges = new int[routeGraph.baseEdgeCount()];
+            int[] edgeOfFlight = new int[allFlights.length];
+            int[] flightOffsets = new int[flightGraph.baseEdgeCount() + 1];
+            IntIntHashMap edgeOfTarget = new IntIntHashMap(16, -1); // destination id to flight edge of the current origin
+            for (int u = 0; u < nodeCount; u++) {
+                edgeOfTarget.clear();
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    edgeOfTarget.put(targets[e], e);
+                }
+                for (int r = routeOffsets[u]; r < routeOffsets[u + 1]; r++) {
+                    routeFlightEdges[r] = edgeOfTarget.get(routeTargets[r]);
+                }
+                for (int i = allFlightOffsets[u]; i < allFlightOffsets[u + 1]; i++) {
+                    int edge = edgeOfTarget.get(ids.get(IataKey.of(allFlights[i].getDestinationCode())));
+                    edgeOfFlight[i] = edge;
+                    flightOffsets[edge + 1]++;
+                }
+            }
+            for (int e = 0; e < flightOffsets.length - 1; e++) {
+                flightOffsets[e + 1] += flightOffsets[e];
+            }
+
+            // counting sort keeps the load order inside a group, the sort by cost packs cost << 32 | index
+            int[] next = Arrays.copyOf(flightOffsets, flightOffsets.length - 1);
+            int[] flights = new int[allFlights.length];
+            for (int i = 0; i < allFlights.length; i++) {
+                flights[next[edgeOfFlight[i]]++] = i;
+            }
+            long[] keys = new long[16];
+            for (int e = 0; e < flightOffsets.length - 1; e++) {
+                int start = flightOffsets[e];
+                int size = flightOffsets[e + 1] - start;
+                if (size < 2) continue;
+                if (keys.length < size) keys = new long[Math.max(size, keys.length * 2)];
+                for (int i = 0; i < size; i++) {
+                    int flight = flights[start + i];
+                    keys[i] = (long) allFlights[flight].getCostInEuros() << 32 | flight;
+                }
+                Arrays.sort(keys, 0, size);
+                for (int i = 0; i < size; i++) {
+                    flights[start + i] = (int) keys[i];
+                }
+            }
+            return new Pairs(routeFlightEdges, flightOffsets, flights);
+        }
+    }
+
+    /**
+     * Coordinates per airport id and the factor that makes the great-circle distance a lower bound of every route
+     * Every change creates a new Geo, the coordinate arrays are only copied when an airport is added.
+     * Removed routes keep the factor, a factor that is too small is still a lower bound
+     *
+     * @param latitudes latitude per airport id in degrees, NaN if unknown
+     * @param longitudes longitude per airport id in degrees, NaN if unknown
+     * @param scale smallest ratio of route distance to great-circle distance, at most 1, 0 if an airport has no coordinates
+     */
+    private record Geo(double[] latitudes, double[] longitudes, double scale) {
+        // Relative slack of the factor, so rounding errors of the great-circle distance never overestimate
+        private static final double TOLERANCE = 1e-9;
+
+        static Geo of(Airport[] airports, CsrGraph routeGraph) {
+            double[] latitudes = new double[airports.length];
+            double[] longitudes = new double[airports.length];
+            boolean coordinates = true;
+            for (int id = 0; id < airports.length; id++) {
+                Airport airport = airports[id];
+                latitudes[id] = airport.hasCoordinates() ? airport.getLatitude() : Double.NaN;
+                longitudes[id] = airport.hasCoordinates() ? airport.getLongitude() : Double.NaN;
+                coordinates &= airport.hasCoordinates();
+            }
+            Geo geo = new Geo(latitudes, longitudes, coordinates ? 1.0 : 0.0);
+            int[] offsets = routeGraph.offsets();
+            int[] targets = routeGraph.targets();
+            int[] weights = routeGraph.weights();
+            for (int u = 0; u < airports.length && geo.scale > 0; u++) {
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    geo = geo.withRoute(u, targets[e], weights[e]);
+                }
+            }
+            return geo;
+        }
+
+        Geo withAirport(Airport airport) {
+            double[] newLatitudes = Arrays.copyOf(latitudes, latitudes.length + 1);
+            double[] newLongitudes = Arrays.copyOf(longitudes, longitudes.length + 1);
+            newLatitudes[latitudes.length] = airport.hasCoordinates() ? airport.getLatitude() : Double.NaN;
+            newLongitudes[longitudes.length] = airport.hasCoordinates() ? airport.getLongitude() : Double.NaN;
+            return new Geo(newLatitudes, newLongitudes, airport.hasCoordinates() ? scale : 0.0);
+        }
+
+        Geo withRoute(int from, int to, int distance) {
+            if (scale == 0) return this;
+            double greatCircle = GreatCircle.distanceKm(latitudes[from], longitudes[from], latitudes[to], longitudes[to]);
+            // airports at the same place bound nothing, every route is at least 0 km long
+            if (greatCircle == 0) return this;
+            double ratio = distance / greatCircle * (1 - TOLERANCE);
+            return ratio >= scale ? this : new Geo(latitudes, longitudes, Math.max(0.0, ratio));
+        }
+    }
+}
@@ -2,11 +2,23 @@ package org.pi2.service.api;
 
 import org.pi2.model.*;
 
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Supplier;
 
+import org.pi2.service.planning.AllPairs;
+import org.pi2.service.planning.EdgeWeight;
+import org.pi2.service.planning.EarliestTrip;
+import org.pi2.service.planning.ExploreResult;
+import org.pi2.service.planning.LandmarkStats;
+import org.pi2.service.planning.Landmarks;
+import org.pi2.service.planning.ParetoTrip;
 import org.pi2.service.planning.TripPlannerFlight;
+import org.pi2.service.planning.TripConstraints;
+import org.pi2.service.planning.TripMatrix;
 import org.pi2.service.planning.TripPlannerRoute;
+import org.pi2.util.TinyLfuCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,11 +31,117 @@ public class API {
     private final TripPlannerRoute tripPlannerRoute;
     private final TripPlannerFlight tripPlannerFlight;
     private final FlightNetwork network;
+    private volatile TinyLfuCache<TripKey, List<?>> trips; // planned trips per network version, null if disabled
 
     public API(FlightNetwork network) {
         this.tripPlannerRoute = new TripPlannerRoute(network);
-        this.tripPlannerFlight = new TripPlannerFlight(network);
+        this.tripPlannerFlight = new TripPlannerFlight(network, tripPlannerRoute);
         this.network = network;
+        // Trips of older versions are never hit again, the key holds the version
+        network.addSnapshotListener(snapshot -> {
+            TinyLfuCache<TripKey, List<?>> cache = trips;
+            if (cache != null) cache.clear();
+        });
+    }
+
+    /**
+     * Switches the trip planners between bidirectional (default) and unidirectional search
+     * @param bidirectional true to search from both ends, false to search from the origin only
+     */
+    public void setBidirectionalSearch(boolean bidirectional) {
+        tripPlannerRoute.setBidirectional(bidirectional);
+        tripPlannerFlight.setBidirectional(bidirectional);
+        log.info("Trip planners use {} search", bidirectional ? "bidirectional" : "unidirectional");
+    }
+
+    /**
+     * Configures the landmarks (ALT) of the "cheapest" search, they are rebuilt in the background
+     * @param count amount of landmarks, 0 disables the landmark search
+     * @param selection "avoid" or "farthest"
+     * @throws IllegalArgumentException if the selection is unknown
+     */
+    public void configureLandmarks(int count, String selection) {
+        tripPlannerFlight.setLandmarks(count, Landmarks.Selection.valueOf(selection.toUpperCase()));
+        log.info("Cheapest search uses {} landmarks ({})", count, selection);
+    }
+
+    /**
+     * Switches the contraction hierarchies of the route and the flight graph on or off
+     * They are contracted in the background and kept as files in the given directory across restarts
+     * @param enabled true to use contraction hierarchies for "shortest" and "cheapest"
+     * @param directory directory of the hierarchy files, null to keep them in memory only
+     */
+    public void configureContractionHierarchies(boolean enabled, Path directory) {
+        tripPlannerRoute.setContractionHierarchy(enabled, directory == null ? null : directory.resolve("flightnetwork.routes.ch"));
+        tripPlannerFlight.setContractionHierarchy(enabled, directory == null ? null : directory.resolve("flightnetwork.flights.ch"));
+        log.info("Contraction hierarchies {}", enabled ? "enabled" : "disabled");
+    }
+
+    /**
+     * Configures the all-pairs tables of "shortest" and "cheapest", they are computed again after every change
+     * @param maxAirports networks with at most this many airports get the tables, 0 disables them
+     * @param method "dijkstra" or "floyd-warshall"
+     * @throws IllegalArgumentException if the method is unknown
+     */
+    public void configureAllPairs(int maxAirports, String method) {
+        AllPairs.Method parsed = AllPairs.Method.valueOf(method.toUpperCase().replace('-', '_'));
+        tripPlannerRoute.setAllPairs(maxAirports, parsed);
+        tripPlannerFlight.setAllPairs(maxAirports, parsed);
+        log.info("All-pairs tables for networks up to {} airports ({})", maxAirports, method);
+    }
+
+    /**
+     * Configures the cache of the planned trips of planTrip with and without criteria
+     * The entries are keyed by origin, destination, criteria and network version and dropped on every new version
+     * @param maximumSize maximum amount of cached trips, 0 disables the cache
+     * @param ttlSeconds time to live of a cached trip in seconds, 0 for no expiry
+     * @throws IllegalArgumentException if a value is negative
+     */
+    public void configureTripCache(int maximumSize, long ttlSeconds) {
+        if (maximumSize < 0 || ttlSeconds < 0) throw new IllegalArgumentException("maximumSize and ttlSeconds must not be negative");
+        trips = maximumSize == 0 ? null : new TinyLfuCache<>(maximumSize, ttlSeconds * 1000);
+        log.info("Trip cache {}", maximumSize == 0 ? "disabled" : "of " + maximumSize + " trips, ttl " + ttlSeconds + "s");
+    }
+
+    /**
+     * Get the statistics of the trip cache
+     * @return hits, misses, evictions and size, all 0 if the cache is disabled
+     */
+    public TinyLfuCache.Stats getTripCacheStats() {
+        TinyLfuCache<TripKey, List<?>> cache = trips;
+        return cache == null ? new TinyLfuCache.Stats(0, 0, 0, 0, 0, 0) : cache.stats();
+    }
+
+    /**
+     * Answers a trip from the cache or plans and caches it
+     * The version is read before planning, the planner pins the same or a newer version, so a cached trip is
+     * never older than its key. A trip whose version was replaced while it was planned is not cached, nothing would
+     * hit it again. FlightNetwork publishes the version before the listener clears the cache, so the check under the
+     * lock of the cache can not miss a publish
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<T> cached(Airport from, Airport to, boolean routes, String criteria, Supplier<List<T>> planner) {
+        TinyLfuCache<TripKey, List<?>> cache = trips;
+        if (cache == null || from == null || to == null || criteria == null) return planner.get();
+        TripKey key = new TripKey(from.getCode(), to.getCode(), routes, criteria.toLowerCase(), network.getSnapshot().version());
+        return (List<T>) cache.get(key, k -> {
+            List<T> trip = planner.get();
+            return trip == null ? List.of() : Collections.unmodifiableList(trip);
+        }, k -> k.version() == network.getVersion());
+    }
+
+    /**
+     * Key of a cached trip, routes is true for the route trips of planTrip without criteria
+     */
+    private record TripKey(String from, String to, boolean routes, String criteria, long version) {
+    }
+
+    /**
+     * Get the statistics of the landmark preprocessing of the "cheapest" search
+     * @return landmark statistics
+     */
+    public LandmarkStats getLandmarkStats() {
+        return tripPlannerFlight.getLandmarkStats();
     }
 
 
@@ -43,6 +161,18 @@ public class API {
     public boolean hasDirectRoute(Airport from, Airport to) throws SQLException {
         return network.hasDirectFlight(from.getCode(),to.getCode());}
 
+    /**
+     * Implementation of Task 1 for many pairs at once
+     * All pairs are checked on the same version of the network, each check is a bit test, see model.DirectConnections
+     *
+     * @param origins Origin Airport Codes
+     * @param destinations Destination Airport Codes, same length as origins
+     * @return per pair if a direct flight exists, null if one of its airports does not exist
+     */
+    public Boolean[] hasDirectRoutes(List<String> origins, List<String> destinations) {
+        return network.hasDirectFlights(origins, destinations);
+    }
+
 
     /**
      * Implementation of Task 2
@@ -63,29 +193,177 @@ public class API {
      * Implementation of Task 3
      * Plans a trip (may include connecting flights) between two airports. This only checks for routes and returns the shortest route without considering the flights.
      * The method is implemented in the service.TripPlannerRoute class. Uses Dijkstra's shortest path algorithm.
-     * Consult the class for further comments.
+     * Consult the class for further comments. The trips are cached per network version, see configureTripCache.
      *
      * @param from Originating Airport
      * @param to Destination Airport
      * @return List<Route> A list of the Routes of the Trip
      */
     public java.util.List<Route> planTrip(Airport from, Airport to) throws SQLException {
-        return this.tripPlannerRoute.findShortestPath(from, to);
+        return cached(from, to, true, "", () -> this.tripPlannerRoute.findShortestPath(from, to));
     }
 
     /**
      * Implementation of Task 3
      * Plans a trip (may include connecting flights) between two airports. The criteria is either "shortest" or "cheapest". This considers the available flights.
      * The method is implemented in the service.TripPlannerFlight class. Uses Dijkstra's shortest path algorithm with different optimization criteria.
-     * Consult the class for further comments.
+     * Consult the class for further comments. The trips are cached per network version, see configureTripCache.
      *
      * @param from Originating Airport
      * @param to Destination Airport
      * @return List<Flight> List of the Flights according to the Criteria
      */
     public java.util.List<Flight> planTrip(Airport from, Airport to, String criteria) throws SQLException {
-        return this.tripPlannerFlight.planTrip(from, to, criteria);
+        return cached(from, to, false, criteria, () -> this.tripPlannerFlight.planTrip(from, to, criteria));
     }
 
+    /**
+     * Implementation of Task 3 with filters
+     * Plans the shortest route path that does not change planes at the airports or countries the constraints rule out.
+     * The method is implemented in the service.TripPlannerRoute class, routes have no airline so airline filters are not used.
+     *
+     * @param from Originating Airport
+     * @param to Destination Airport
+     * @param constraints avoided airports and allowed or avoided countries of the connecting airports
+     * @return List<Route> A list of the Routes of the Trip
+     */
+    public List<Route> planTrip(Airport from, Airport to, TripConstraints constraints) {
+        return this.tripPlannerRoute.findShortestPath(from, to, constraints);
+    }
+
+    /**
+     * Implementation of Task 3 with criteria and filters
+     * Plans a trip with the criteria "shortest" or "cheapest" that only uses the airlines and connecting airports the
+     * constraints allow. The method is implemented in the service.TripPlannerFlight class, see TripConstraints.
+     *
+     * @param from Originating Airport
+     * @param to Destination Airport
+     * @param criteria Either "shortest" or "cheapest"
+     * @param constraints filters of the airlines, airports and countries
+     * @return List<Flight> List of the Flights according to the Criteria
+     */
+    public List<Flight> planTrip(Airport from, Airport to, String criteria, TripConstraints constraints) {
+        return this.tripPlannerFlight.planTrip(from, to, criteria, constraints);
+    }
+
+    /**
+     * Checks in O(1) if there can be a route path between two airports, with the reachability index of the route graph
+     * Used to reject impossible trips before planning them, see service.Reachability
+     *
+     * @param from Originating Airport
+     * @param to Destination Airport
+     * @return false if there is certainly no route path, true if there may be one
+     */
+    public boolean mayReach(Airport from, Airport to) {
+        return this.tripPlannerRoute.mayReach(from, to);
+    }
+
+    /**
+     * Checks in O(1) if there can be a trip with the criteria between two airports, with the reachability indexes
+     * "shortest" checks the route graph, the other criteria the flight graph
+     *
+     * @param from Originating Airport
+     * @param to Destination Airport
+     * @param criteria criteria of the trip
+     * @return false if there is certainly no trip, true if there may be one
+     */
+    public boolean mayReach(Airport from, Airport to, String criteria) {
+        return this.tripPlannerFlight.mayReach(from, to, criteria);
+    }
+
+    /**
+     * Implementation of Task 3 with a maximum amount of stops
+     * Plans a trip between two airports with the criteria "shortest" or "cheapest" and at most maxStops connections.
+     * The method is implemented in the service.TripPlannerFlight class with a hop-limited layered Bellman-Ford.
+     *
+     * @param from Originating Airport
+     * @param to Destination Airport
+     * @param criteria Either "shortest" or "cheapest"
+     * @param maxStops Maximum amount of stops, 0 for a direct flight
+     * @return List<Flight> List of the Flights according to the Criteria
+     */
+    public List<Flight> planTrip(Airport from, Airport to, String criteria, int maxStops) {
+        return this.tripPlannerFlight.planTrip(from, to, criteria, maxStops);
+    }
+
+    /**
+     * Plans the trip with the lowest total weight between two airports, criteria "weighted"
+     * The method is implemented in the service.TripPlannerFlight class, the weighting is evaluated once per edge, see EdgeWeight.
+     *
+     * @param from Originating Airport
+     * @param to Destination Airport
+     * @param weight weighting of the edges, e.g. a LinearEdgeWeight of cost, distance and legs
+     * @return List<Flight> List of the Flights of the trip
+     */
+    public List<Flight> planTrip(Airport from, Airport to, EdgeWeight weight) {
+        return this.tripPlannerFlight.planTrip(from, to, weight);
+    }
+
+    /**
+     * Plans the Pareto front of cost and distance between two airports, criteria "pareto"
+     * The method is implemented in the service.TripPlannerFlight class with one multi-criteria search, see ParetoSearch.
+     *
+     * @param from Originating Airport
+     * @param to Destination Airport
+     * @return List of ParetoTrips from cheapest to shortest
+     */
+    public List<ParetoTrip> planParetoTrips(Airport from, Airport to) {
+        return this.tripPlannerFlight.planParetoTrips(from, to);
+    }
+
+    /**
+     * Plans the trip with the earliest arrival between two airports, criteria "earliest"
+     * The method is implemented in the service.TripPlannerFlight class with the Connection Scan Algorithm, see ConnectionScan.
+     *
+     * @param from Originating Airport
+     * @param to Destination Airport
+     * @param departure earliest departure in minutes after midnight
+     * @return EarliestTrip with the scheduled flights, null if there is no trip
+     */
+    public EarliestTrip planEarliestTrip(Airport from, Airport to, int departure) {
+        return this.tripPlannerFlight.planEarliestTrip(from, to, departure);
+    }
+
+    /**
+     * Lists the airports reachable from an origin within a budget, sorted by total distance or cost
+     * The method is implemented in the service.TripPlannerFlight class with one budget-bounded search, see Exploration.
+     *
+     * @param from Originating Airport
+     * @param criteria Either "shortest" or "cheapest"
+     * @param budget largest total distance or cost, null for no limit
+     * @param offset index of the first destination of the page
+     * @param limit maximum amount of destinations of the page
+     * @return ExploreResult with one page of destinations, null if the criteria is unknown
+     */
+    public ExploreResult explore(Airport from, String criteria, Integer budget, int offset, int limit) {
+        return this.tripPlannerFlight.explore(from, criteria, budget, offset, limit);
+    }
+
+    /**
+     * Plans the K best alternative trips between two airports, ordered from best to worst
+     * The method is implemented in the service.TripPlannerFlight class with Yen's K shortest paths, see KShortestPaths.
+     *
+     * @param from Originating Airport
+     * @param to Destination Airport
+     * @param criteria Either "shortest" or "cheapest"
+     * @param k Maximum amount of trips
+     * @return List of trips, each a List of Flights, null if the criteria is unknown
+     */
+    public List<List<Flight>> planTrips(Airport from, Airport to, String criteria, int k) {
+        return this.tripPlannerFlight.planTrips(from, to, criteria, k);
+    }
+
+    /**
+     * Plans the best trip between every origin and every destination and returns their distances or costs
+     * The method is implemented in the service.TripPlannerFlight class, one search per origin in parallel.
+     *
+     * @param origins Originating Airports, rows of the matrix
+     * @param destinations Destination Airports, columns of the matrix
+     * @param criteria Either "shortest" or "cheapest"
+     * @return TripMatrix with the distance or cost per pair, null if the criteria is unknown
+     */
+    public TripMatrix planMatrix(List<Airport> origins, List<Airport> destinations, String criteria) {
+        return this.tripPlannerFlight.planMatrix(origins, destinations, criteria);
+    }
 
 }
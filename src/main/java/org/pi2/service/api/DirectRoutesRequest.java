@@ -0,0 +1,62 @@
+package org.pi2.service.api;
+
+import java.util.List;
+
+/**
+ * Request body of the /task/hasDirectRoutes endpoint, either pairs or one origin with many destinations
+ * Filled by Jackson from JSON like {"pairs": [["LHR", "BGY"], ["MUC", "JFK"]]}
+ * or {"from": "LHR", "destinations": ["BGY", "JFK"]}
+ */
+public class DirectRoutesRequest {
+    private List<List<String>> pairs;  // [origin, destination] IATA codes per pair
+    private String from;               // IATA code of the origin of all destinations
+    private List<String> destinations; // IATA codes checked from the origin
+
+    /**
+     * Get the pairs
+     * @return [origin, destination] per pair, null if missing in the request
+     */
+    public List<List<String>> getPairs() {
+        return pairs;
+    }
+
+    /**
+     * Set the pairs
+     * @param pairs [origin, destination] per pair
+     */
+    public void setPairs(List<List<String>> pairs) {
+        this.pairs = pairs;
+    }
+
+    /**
+     * Get the common origin
+     * @return IATA code, null if missing in the request
+     */
+    public String getFrom() {
+        return from;
+    }
+
+    /**
+     * Set the common origin
+     * @param from IATA code
+     */
+    public void setFrom(String from) {
+        this.from = from;
+    }
+
+    /**
+     * Get the destinations of the common origin
+     * @return IATA codes, null if missing in the request
+     */
+    public List<String> getDestinations() {
+        return destinations;
+    }
+
+    /**
+     * Set the destinations of the common origin
+     * @param destinations IATA codes
+     */
+    public void setDestinations(List<String> destinations) {
+        this.destinations = destinations;
+    }
+}
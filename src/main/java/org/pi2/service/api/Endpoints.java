@@ -3,10 +3,17 @@ package org.pi2.service.api;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
 import org.pi2.model.*;
+import org.pi2.service.planning.EarliestTrip;
+import org.pi2.service.planning.ExploreResult;
+import org.pi2.service.planning.LinearEdgeWeight;
+import org.pi2.service.planning.ParetoTrip;
+import org.pi2.service.planning.TripConstraints;
+import org.pi2.service.planning.TripMatrix;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -15,6 +22,12 @@ import java.util.Map;
  */
 public class Endpoints{
     private static final Logger log = LoggerFactory.getLogger(Endpoints.class); // logger for easier debugging
+    private static final int MAX_MATRIX_AIRPORTS = 1000; // origins or destinations per matrix request
+    private static final int MAX_TRIPS = 20; // alternatives per planTrips request
+    private static final int MAX_STOPS = 10; // stop limit per planTripFlight request, each stop is one more layer of the search
+    private static final int MAX_DIRECT_PAIRS = 10_000; // pairs per hasDirectRoutes request
+    private static final int DEFAULT_EXPLORE_LIMIT = 50; // destinations per explore page if no limit is given
+    private static final int MAX_EXPLORE_LIMIT = 1000; // destinations per explore page
     private final FlightNetwork flightNetwork; // Data structure
     private final API flightAPI; // Logic service layer/ implementation of the tasks
 
@@ -38,9 +51,13 @@ public class Endpoints{
 
         // Flight API endpoints
         app.get("/task/hasDirectRoute/{from}/{to}", this::hasDirectRoute); // task 1
+        app.post("/task/hasDirectRoutes", this::hasDirectRoutes); // task 1 for many pairs
         app.get("/task/getFlight/{routeOrigin}/{routeDestination}", this::getFlight); // Task 2
         app.get("/task/planTripRoute/{from}/{to}", this::planTripRoute); // Task 3 without criteria
         app.get("/task/planTripFlight/{from}/{to}/{criteria}", this::planTripFlight); // Task 3 with criteria
+        app.get("/task/planTrips/{from}/{to}/{criteria}/{k}", this::planTrips); // K best alternatives of Task 3
+        app.post("/matrix", this::matrix); // distances or costs between many origins and destinations
+        app.get("/explore/{from}", this::explore); // every destination within a budget
         app.get("/stats",this::stats); // Small stats page with information about the database. I guess I just wanted to add something
         // Global exception handler for error responses
         app.exception(Exception.class, this::handleException);
@@ -51,7 +68,8 @@ public class Endpoints{
      * For further Information consult the readme.me
 
      * HTTP: GET /stats
-     * Respnse: Json with count of airports,flight and routes
+     * Respnse: Json with count of airports,flight and routes, as well as the delta and compaction stats of the in-memory network
+     *          the landmark stats of the "cheapest" search and the hit, miss and eviction counts of the trip cache
      */
     private void stats(Context ctx) throws SQLException {
         ctx.status(200);
@@ -62,7 +80,10 @@ public class Endpoints{
         Map<String,Object> response=Map.of(
                 "amount of Airports in Db",totalAirports,
                 "Amount of Flights in Database",totalFlights,
-                "Amount of Routes in Database",totalRoutes);
+                "Amount of Routes in Database",totalRoutes,
+                "Network Snapshot",flightNetwork.getCompactionStats(),
+                "Cheapest Search",flightAPI.getLandmarkStats(),
+                "Trip Cache",flightAPI.getTripCacheStats());
         ctx.json(response);
     }
 
@@ -78,11 +99,14 @@ public class Endpoints{
         Map<String, String> response = Map.of(
                 "Welcome Message", "Welcome to the Flight API",
                 "Statement", "For questions about the functionality, consult the readme.md",
-                "Task 1","Endpoint provided at /task/hasDirectRoute/{from}/{to}",
+                "Task 1","Endpoint provided at /task/hasDirectRoute/{from}/{to} and POST /task/hasDirectRoutes",
                 "Task 2","Endpoint provided at /task/getFlight/{routeOrigin}/{routeDestination}",
                 "Task 3.1","Endpoint provided at /task/planTripRoute/{from}/{to}",
                 "Task 3.2","Endpoint provided at /task/planTripFlight/{from}/{to}/{criteria}",
-                "Stats","Database stats provided at /stats"
+                "Stats","Database stats provided at /stats",
+                "Matrix","Endpoint provided at POST /matrix",
+                "Alternatives","Endpoint provided at /task/planTrips/{from}/{to}/{criteria}/{k}",
+                "Explore","Endpoint provided at /explore/{from}?criteria={criteria}&budget={budget}"
         );
         ctx.json(response);
     }
@@ -150,6 +174,106 @@ public class Endpoints{
         }
     }
 
+    /**
+     * Returns the result of the hasDirectRoute method for many pairs
+     * Either a list of pairs or one origin with a list of destinations
+     * For further Information consult the readme.me
+     *
+     * HTTP: POST /task/hasDirectRoutes
+     * Response: JSON with one result per pair in request order
+     */
+    private void hasDirectRoutes(Context ctx) {
+        try {
+            // Parse the body, a body that is no direct routes request is rejected
+            DirectRoutesRequest request;
+            try {
+                request = ctx.bodyAsClass(DirectRoutesRequest.class);
+            } catch (Exception e) {
+                request = null;
+            }
+            List<String> origins = new ArrayList<>();
+            List<String> destinations = new ArrayList<>();
+            boolean valid = request != null;
+            if (valid && request.getPairs() != null) {
+                for (List<String> pair : request.getPairs()) {
+                    if (pair == null || pair.size() != 2) {
+                        valid = false;
+                        break;
+                    }
+                    origins.add(pair.get(0));
+                    destinations.add(pair.get(1));
+                }
+            } else if (valid && request.getFrom() != null && request.getDestinations() != null) {
+                for (String destination : request.getDestinations()) {
+                    origins.add(request.getFrom());
+                    destinations.add(destination);
+                }
+            } else {
+                valid = false;
+            }
+            if (!valid) {
+                ctx.status(400);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "Body needs pairs, or from and destinations",
+                        "example", "{\"pairs\": [[\"LHR\", \"BGY\"]]} or {\"from\": \"LHR\", \"destinations\": [\"BGY\"]}"
+                );
+                ctx.json(errorResponse);
+                return;
+            }
+            // Handle the case, if the request has too many pairs
+            if (origins.size() > MAX_DIRECT_PAIRS) {
+                ctx.status(400);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "Too many pairs",
+                        "maximum", MAX_DIRECT_PAIRS
+                );
+                ctx.json(errorResponse);
+                return;
+            }
+
+            // Checking all pairs on one network version, null marks a pair with an airport that does not exist
+            Boolean[] answers = flightAPI.hasDirectRoutes(origins, destinations);
+            List<String> unknown = new ArrayList<>();
+            for (int i = 0; i < answers.length; i++) {
+                if (answers[i] != null) continue;
+                if (origins.get(i) == null || flightNetwork.getAirport(origins.get(i)) == null) unknown.add(origins.get(i));
+                if (destinations.get(i) == null || flightNetwork.getAirport(destinations.get(i)) == null) unknown.add(destinations.get(i));
+            }
+            if (!unknown.isEmpty()) {
+                ctx.status(404);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "Airport not found",
+                        "airports", unknown.stream().distinct().map(String::valueOf).toList()
+                );
+                ctx.json(errorResponse);
+                return;
+            }
+
+            // Structuring the response like the single pair endpoint
+            List<Map<String, Object>> results = new ArrayList<>(answers.length);
+            for (int i = 0; i < answers.length; i++) {
+                results.add(Map.of(
+                        "Originating Airport", origins.get(i),
+                        "Destination Airport", destinations.get(i),
+                        "hasDirectRoute", answers[i]
+                ));
+            }
+            ctx.status(200);
+            ctx.json(Map.of("Results", results));
+
+        }
+        // Handling of exception
+        catch (Exception e) {
+            log.error("Error in hasDirectRoutes endpoint", e);
+            ctx.status(500);
+            Map<String, Object> errorResponse = Map.of(
+                    "error", "Internal Server Error",
+                    "message", e.getMessage()
+            );
+            ctx.json(errorResponse);
+        }
+    }
+
     /**
      * Retrieves all flights operating on a specific route.
      * For further Information consult the readme.me
@@ -218,7 +342,9 @@ public class Endpoints{
      * Plans a route using the TripPlanner class
      * For further Information consult the readme.me or TripPlanner class
      *
-     * HTTP: GET /task/planTripRoute/{routeOrigin}/{routeDestination}
+     * The optional query parameters avoidAirports, onlyCountries and avoidCountries filter the connecting airports
+     *
+     * HTTP: GET /task/planTripRoute/{routeOrigin}/{routeDestination}?avoidAirports={codes}&avoidCountries={names}
      * Response: JSON with the planned route
      */
     private void planTripRoute(Context ctx) {
@@ -226,6 +352,19 @@ public class Endpoints{
             // Extract path params
             String from = ctx.pathParam("from");
             String to = ctx.pathParam("to");
+            TripConstraints constraints = parseConstraints(ctx); // optional filters, null if none
+
+            // Handle the case, if airlines are filtered, routes have no airline
+            if (constraints != null && constraints.hasAirlineFilter()) {
+                ctx.status(400);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "onlyAirlines and avoidAirlines need flights, use /task/planTripFlight",
+                        "from", from,
+                        "to", to
+                );
+                ctx.json(errorResponse);
+                return;
+            }
 
             // Ensure that the airports exist
             Airport fromAirport = flightNetwork.getAirport(from);
@@ -254,8 +393,11 @@ public class Endpoints{
                 return;
             }
 
-            // Using the TripPlanner to plan the trip
-            List<Route> response = flightAPI.planTrip(fromAirport, toAirport);
+            // Using the TripPlanner to plan the trip, unless the reachability index already rules every route out
+            // With filters the trip must not change planes at the airports they rule out
+            List<Route> response = !flightAPI.mayReach(fromAirport, toAirport) ? List.of()
+                    : constraints == null ? flightAPI.planTrip(fromAirport, toAirport)
+                    : flightAPI.planTrip(fromAirport, toAirport, constraints);
 
             // Handle case, where no appropiate route exists in the network
             if (response.isEmpty()) {
@@ -271,11 +413,16 @@ public class Endpoints{
 
             // Return the found path
             ctx.status(200);
-            Map<String, Object> fullResponse = Map.of(
-                    "Originating Airport", from,
-                    "Destination Airport", to,
-                    "Routes", response
-            );
+            Map<String, Object> fullResponse = constraints == null
+                    ? Map.of(
+                            "Originating Airport", from,
+                            "Destination Airport", to,
+                            "Routes", response)
+                    : Map.of(
+                            "Originating Airport", from,
+                            "Destination Airport", to,
+                            "constraints", constraints,
+                            "Routes", response);
             ctx.json(fullResponse);
 
         }
@@ -293,9 +440,15 @@ public class Endpoints{
 
     /**
      * Plans optimal route between 2 airports with criteria "ShortesT" for the shortest routes and criteria "cheapest for the lowest cost flights
+     * Criteria "pareto" returns all trips that are not both more expensive and longer than another trip
+     * Criteria "earliest" returns the scheduled trip that lands first, leaving at the time of the query parameter departure
+     * Criteria "weighted" returns the trip with the lowest costWeight * cost + distanceWeight * distance + legPenalty per flight
+     * The optional query parameter maxStops limits the amount of connections
+     * The optional query parameters onlyAirlines, avoidAirlines, avoidAirports, onlyCountries and avoidCountries
+     * filter the flights and the connecting airports, comma separated
      * For further Information consult the readme.me or TripPlanner class
      *
-     * HTTP: GET /task/planTripFlight/{routeOrigin}/{routeDestination}/{criteria}
+     * HTTP: GET /task/planTripFlight/{routeOrigin}/{routeDestination}/{criteria}?maxStops={maxStops}&departure={HH:mm}&avoidAirlines={names}
      * Response: JSON with the planned route
      */
     private void planTripFlight(Context ctx) {
@@ -304,6 +457,68 @@ public class Endpoints{
             String from = ctx.pathParam("from");
             String to = ctx.pathParam("to");
             String criteria = ctx.pathParam("criteria");
+            String maxStopsParam = ctx.queryParam("maxStops"); // optional, limits the amount of connections
+            String departureParam = ctx.queryParam("departure"); // required for criteria earliest, HH:mm
+            boolean earliest = criteria.equalsIgnoreCase("earliest");
+            boolean weighted = criteria.equalsIgnoreCase("weighted");
+
+            // Handle the case, if maxStops is no number, negative or too large
+            Integer maxStops = null;
+            if (maxStopsParam != null) {
+                try {
+                    maxStops = Integer.parseInt(maxStopsParam);
+                } catch (NumberFormatException e) {
+                    maxStops = -1;
+                }
+                if (maxStops < 0 || maxStops > MAX_STOPS || criteria.equalsIgnoreCase("pareto") || earliest || weighted) {
+                    ctx.status(400);
+                    Map<String, Object> errorResponse = Map.of(
+                            "error", "maxStops has to be a number between 0 and " + MAX_STOPS + " and is not supported by the criteria pareto, earliest and weighted",
+                            "maxStops", maxStopsParam
+                    );
+                    ctx.json(errorResponse);
+                    return;
+                }
+            }
+
+            // Handle the case, if filters are combined with a criteria or maxStops that does not support them
+            TripConstraints constraints = parseConstraints(ctx); // optional filters, null if none
+            if (constraints != null && (maxStops != null || criteria.equalsIgnoreCase("pareto") || earliest || weighted)) {
+                ctx.status(400);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "Airline, airport and country filters are only supported by the criteria shortest and cheapest without maxStops",
+                        "criteria", criteria
+                );
+                ctx.json(errorResponse);
+                return;
+            }
+
+            // Handle the case, if criteria weighted has coefficients that are no numbers or out of range
+            LinearEdgeWeight weight = null;
+            if (weighted) {
+                weight = parseWeight(ctx.queryParam("costWeight"), ctx.queryParam("distanceWeight"), ctx.queryParam("legPenalty"));
+                if (weight == null) {
+                    ctx.status(400);
+                    Map<String, Object> errorResponse = Map.of(
+                            "error", "costWeight, distanceWeight and legPenalty have to be numbers between 0 and " + LinearEdgeWeight.MAX_COEFFICIENT,
+                            "criteria", criteria
+                    );
+                    ctx.json(errorResponse);
+                    return;
+                }
+            }
+
+            // Handle the case, if criteria earliest has no valid departure time
+            Integer departure = earliest ? Flight.parseTime(departureParam) : null;
+            if (earliest && departure == null) {
+                ctx.status(400);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "Criteria earliest needs the departure time as HH:mm",
+                        "departure", String.valueOf(departureParam)
+                );
+                ctx.json(errorResponse);
+                return;
+            }
 
             // Verifying if the airports exist
             Airport fromAirport = flightNetwork.getAirport(from);
@@ -342,8 +557,104 @@ public class Endpoints{
                 return;
             }
 
-            // Using the method from TripPlanner to plan the trip
-            List<Flight> response = flightAPI.planTrip(fromAirport, toAirport, criteria);
+            // Handle the case, if the reachability index already rules every trip out, no search is started
+            if (!flightAPI.mayReach(fromAirport, toAirport, criteria)) {
+                ctx.status(404);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "Route not found",
+                        "from", from,
+                        "to", to,
+                        "criteria", criteria
+                );
+                ctx.json(errorResponse);
+                return;
+            }
+
+            // Criteria "pareto" returns every trade-off between cost and distance instead of one trip
+            if (criteria.equalsIgnoreCase("pareto")) {
+                List<ParetoTrip> trips = flightAPI.planParetoTrips(fromAirport, toAirport);
+                if (trips.isEmpty()) {
+                    ctx.status(404);
+                    Map<String, Object> errorResponse = Map.of(
+                            "error", "Route not found",
+                            "from", from,
+                            "to", to,
+                            "criteria", criteria
+                    );
+                    ctx.json(errorResponse);
+                    return;
+                }
+                ctx.status(200);
+                Map<String, Object> fullResponse = Map.of(
+                        "Originating Airport", from,
+                        "Destination Airport", to,
+                        "criteria", criteria,
+                        "Trips", trips
+                );
+                ctx.json(fullResponse);
+                return;
+            }
+
+            // Criteria "weighted" returns the trip with the lowest total of the weighted cost, distance and legs
+            if (weighted) {
+                List<Flight> response = flightAPI.planTrip(fromAirport, toAirport, weight);
+                if (response.isEmpty()) {
+                    ctx.status(404);
+                    Map<String, Object> errorResponse = Map.of(
+                            "error", "Route not found",
+                            "from", from,
+                            "to", to,
+                            "criteria", criteria
+                    );
+                    ctx.json(errorResponse);
+                    return;
+                }
+                ctx.status(200);
+                Map<String, Object> fullResponse = Map.of(
+                        "Originating Airport", from,
+                        "Destination Airport", to,
+                        "criteria", criteria,
+                        "weights", weight,
+                        "Routes", response
+                );
+                ctx.json(fullResponse);
+                return;
+            }
+
+            // Criteria "earliest" returns the scheduled trip that lands first after the departure time
+            if (earliest) {
+                EarliestTrip trip = flightAPI.planEarliestTrip(fromAirport, toAirport, departure);
+                if (trip == null) {
+                    ctx.status(404);
+                    Map<String, Object> errorResponse = Map.of(
+                            "error", "Route not found",
+                            "from", from,
+                            "to", to,
+                            "criteria", criteria,
+                            "departure", departureParam
+                    );
+                    ctx.json(errorResponse);
+                    return;
+                }
+                ctx.status(200);
+                Map<String, Object> fullResponse = Map.of(
+                        "Originating Airport", from,
+                        "Destination Airport", to,
+                        "criteria", criteria,
+                        "departure", departureParam,
+                        "Trip", trip
+                );
+                ctx.json(fullResponse);
+                return;
+            }
+
+            // Using the method from TripPlanner to plan the trip, with the stop limit if there is one
+            // or with the filters if there are some
+            List<Flight> response = constraints != null
+                    ? flightAPI.planTrip(fromAirport, toAirport, criteria, constraints)
+                    : maxStops == null
+                    ? flightAPI.planTrip(fromAirport, toAirport, criteria)
+                    : flightAPI.planTrip(fromAirport, toAirport, criteria, maxStops);
 
             // Handle the case, if no routes according to the params exist
             if (response == null || response.isEmpty()) {
@@ -358,20 +669,209 @@ public class Endpoints{
                 return;
             }
 
+            // Return succesful response
+            ctx.status(200);
+            Map<String, Object> fullResponse = constraints != null
+                    ? Map.of(
+                            "Originating Airport", from,
+                            "Destination Airport", to,
+                            "criteria", criteria,
+                            "constraints", constraints,
+                            "Routes", response)
+                    : maxStops == null
+                    ? Map.of(
+                            "Originating Airport", from,
+                            "Destination Airport", to,
+                            "criteria", criteria,
+                            "Routes", response)
+                    : Map.of(
+                            "Originating Airport", from,
+                            "Destination Airport", to,
+                            "criteria", criteria,
+                            "maxStops", maxStops,
+                            "Routes", response);
+            ctx.json(fullResponse);
+
+        }
+        // Handle exceptions
+        catch (Exception e) {
+            log.error("Error in planTripFlight endpoint", e);
+            ctx.status(500);
+            Map<String, Object> errorResponse = Map.of(
+                    "error", "Internal Server Error",
+                    "message", e.getMessage()
+            );
+            ctx.json(errorResponse);
+        }
+    }
+
+    /**
+     * Plans the K best alternative trips between 2 airports with criteria "shortest" or "cheapest"
+     * For further Information consult the readme.me or KShortestPaths class
+     *
+     * HTTP: GET /task/planTrips/{from}/{to}/{criteria}/{k}
+     * Response: JSON with the trips, each a list of flights, from best to worst
+     */
+    private void planTrips(Context ctx) {
+        try {
+            // Extract path params
+            String from = ctx.pathParam("from");
+            String to = ctx.pathParam("to");
+            String criteria = ctx.pathParam("criteria");
+            String kParam = ctx.pathParam("k");
+
+            // Handle the case, if k is no number or out of range
+            int k;
+            try {
+                k = Integer.parseInt(kParam);
+            } catch (NumberFormatException e) {
+                k = 0;
+            }
+            if (k < 1 || k > MAX_TRIPS) {
+                ctx.status(400);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "k has to be a number between 1 and " + MAX_TRIPS,
+                        "k", kParam
+                );
+                ctx.json(errorResponse);
+                return;
+            }
+
+            // Verifying if the airports exist
+            Airport fromAirport = flightNetwork.getAirport(from);
+            Airport toAirport = flightNetwork.getAirport(to);
+            if (fromAirport == null) {
+                ctx.status(404);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "Route Origin not found",
+                        "from", from,
+                        "to", to
+                );
+                ctx.json(errorResponse);
+                return;
+            }
+            if (toAirport == null) {
+                ctx.status(404);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "Route Destination not found",
+                        "from", from,
+                        "to", to
+                );
+                ctx.json(errorResponse);
+                return;
+            }
+
+            // Using the TripPlanner to plan the alternatives, null for an unknown criteria
+            List<List<Flight>> trips = flightAPI.planTrips(fromAirport, toAirport, criteria, k);
+            if (trips == null) {
+                ctx.status(404);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "Criteria not found",
+                        "criteria", criteria
+                );
+                ctx.json(errorResponse);
+                return;
+            }
+            // Handle the case, if no routes according to the params exist
+            if (trips.isEmpty()) {
+                ctx.status(404);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "Route not found",
+                        "from", from,
+                        "to", to,
+                        "criteria", criteria
+                );
+                ctx.json(errorResponse);
+                return;
+            }
+
             // Return succesful response
             ctx.status(200);
             Map<String, Object> fullResponse = Map.of(
                     "Originating Airport", from,
                     "Destination Airport", to,
                     "criteria", criteria,
-                    "Routes", response
+                    "k", k,
+                    "Trips", trips
             );
             ctx.json(fullResponse);
+        }
+        // Handle exceptions
+        catch (Exception e) {
+            log.error("Error in planTrips endpoint", e);
+            ctx.status(500);
+            Map<String, Object> errorResponse = Map.of(
+                    "error", "Internal Server Error",
+                    "message", e.getMessage()
+            );
+            ctx.json(errorResponse);
+        }
+    }
+
+    /**
+     * Lists every airport reachable from an origin within a budget of cost ("cheapest") or distance ("shortest")
+     * The destinations are sorted by increasing cost or distance and returned in pages
+     * For further Information consult the readme.me or Exploration class
+     *
+     * HTTP: GET /explore/{from}?criteria={criteria}&budget={budget}&offset={offset}&limit={limit}
+     * Response: JSON with the destinations of the page, their cost or distance and their amount of legs
+     */
+    private void explore(Context ctx) {
+        try {
+            // Extract params, everything but the origin is optional
+            String from = ctx.pathParam("from");
+            String criteria = ctx.queryParam("criteria") == null ? "cheapest" : ctx.queryParam("criteria");
+            String budgetParam = ctx.queryParam("budget");
+            String offsetParam = ctx.queryParam("offset");
+            String limitParam = ctx.queryParam("limit");
+
+            // Handle the case, if a number is invalid
+            Integer budget = budgetParam == null ? null : parseNonNegative(budgetParam);
+            Integer offset = offsetParam == null ? Integer.valueOf(0) : parseNonNegative(offsetParam);
+            Integer limit = limitParam == null ? Integer.valueOf(DEFAULT_EXPLORE_LIMIT) : parseNonNegative(limitParam);
+            if ((budgetParam != null && budget == null) || offset == null || limit == null || limit > MAX_EXPLORE_LIMIT) {
+                ctx.status(400);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "budget and offset have to be numbers of at least 0, limit a number between 0 and " + MAX_EXPLORE_LIMIT,
+                        "budget", String.valueOf(budgetParam),
+                        "offset", String.valueOf(offsetParam),
+                        "limit", String.valueOf(limitParam)
+                );
+                ctx.json(errorResponse);
+                return;
+            }
+
+            // Verifying if the airport exists
+            Airport fromAirport = flightNetwork.getAirport(from);
+            if (fromAirport == null) {
+                ctx.status(404);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "Route Origin not found",
+                        "from", from
+                );
+                ctx.json(errorResponse);
+                return;
+            }
+
+            // Using the TripPlanner to explore, null for an unknown criteria
+            ExploreResult result = flightAPI.explore(fromAirport, criteria, budget, offset, limit);
+            if (result == null) {
+                ctx.status(404);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "Criteria not found",
+                        "criteria", criteria
+                );
+                ctx.json(errorResponse);
+                return;
+            }
 
+            // Return succesful response, an empty page is no error
+            ctx.status(200);
+            ctx.json(result);
         }
         // Handle exceptions
         catch (Exception e) {
-            log.error("Error in planTripFlight endpoint", e);
+            log.error("Error in explore endpoint", e);
             ctx.status(500);
             Map<String, Object> errorResponse = Map.of(
                     "error", "Internal Server Error",
@@ -380,6 +880,161 @@ public class Endpoints{
             ctx.json(errorResponse);
         }
     }
+
+    /**
+     * Reads the optional filter query parameters of a trip, each a comma separated list
+     * onlyAirlines, avoidAirlines, avoidAirports (IATA codes), onlyCountries, avoidCountries
+     * @param ctx context of the request
+     * @return the filters, null if no parameter is set
+     */
+    private static TripConstraints parseConstraints(Context ctx) {
+        TripConstraints constraints = new TripConstraints(
+                parseList(ctx.queryParam("onlyAirlines")),
+                parseList(ctx.queryParam("avoidAirlines")),
+                parseList(ctx.queryParam("onlyCountries")),
+                parseList(ctx.queryParam("avoidCountries")),
+                parseList(ctx.queryParam("avoidAirports")));
+        return constraints.hasFilters() ? constraints : null;
+    }
+
+    /**
+     * Splits an optional comma separated query parameter
+     * @param value text of the parameter
+     * @return the trimmed non empty entries, empty if the parameter is not set
+     */
+    private static List<String> parseList(String value) {
+        List<String> entries = new ArrayList<>();
+        if (value == null) return entries;
+        for (String entry : value.split(",")) {
+            if (!entry.isBlank()) entries.add(entry.trim());
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the coefficients of the criteria weighted, parameters that are not set count as 1 for costWeight and 0 otherwise
+     * @param costWeight text of the parameter costWeight
+     * @param distanceWeight text of the parameter distanceWeight
+     * @param legPenalty text of the parameter legPenalty
+     * @return the weighting, null if a coefficient is no number or out of range
+     */
+    private static LinearEdgeWeight parseWeight(String costWeight, String distanceWeight, String legPenalty) {
+        try {
+            return new LinearEdgeWeight(
+                    costWeight == null ? 1 : Double.parseDouble(costWeight.trim()),
+                    distanceWeight == null ? 0 : Double.parseDouble(distanceWeight.trim()),
+                    legPenalty == null ? 0 : Double.parseDouble(legPenalty.trim()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses an optional numeric query parameter
+     * @param value text of the parameter
+     * @return the number, null if it is no number or negative
+     */
+    private static Integer parseNonNegative(String value) {
+        try {
+            int number = Integer.parseInt(value.trim());
+            return number < 0 ? null : number;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the distance or cost of the best trip between every origin and every destination
+     * For further Information consult the readme.me or TripMatrix class
+     *
+     * HTTP: POST /matrix
+     * Body: JSON with the lists "origins" and "destinations" of airport codes and the "criteria"
+     * Response: JSON with the codes of the rows and columns and the matrix as arrays of numbers
+     */
+    private void matrix(Context ctx) {
+        try {
+            // Parse the body, a body that is no matrix request is rejected
+            MatrixRequest request;
+            try {
+                request = ctx.bodyAsClass(MatrixRequest.class);
+            } catch (Exception e) {
+                request = null;
+            }
+            if (request == null || request.getOrigins() == null || request.getDestinations() == null
+                    || request.getCriteria() == null || request.getCriteria().isEmpty()) {
+                ctx.status(400);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "Body needs origins, destinations and criteria",
+                        "example", "{\"origins\": [\"LHR\"], \"destinations\": [\"MUC\"], \"criteria\": \"cheapest\"}"
+                );
+                ctx.json(errorResponse);
+                return;
+            }
+            // Handle the case, if the matrix would get too large
+            if (request.getOrigins().size() > MAX_MATRIX_AIRPORTS || request.getDestinations().size() > MAX_MATRIX_AIRPORTS) {
+                ctx.status(400);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "Too many airports",
+                        "maximum", MAX_MATRIX_AIRPORTS
+                );
+                ctx.json(errorResponse);
+                return;
+            }
+
+            // Verifying if the airports exist
+            List<Airport> origins = new ArrayList<>();
+            List<Airport> destinations = new ArrayList<>();
+            List<String> unknown = new ArrayList<>();
+            for (String code : request.getOrigins()) {
+                Airport airport = code == null ? null : flightNetwork.getAirport(code);
+                if (airport == null) unknown.add(code);
+                origins.add(airport);
+            }
+            for (String code : request.getDestinations()) {
+                Airport airport = code == null ? null : flightNetwork.getAirport(code);
+                if (airport == null) unknown.add(code);
+                destinations.add(airport);
+            }
+            if (!unknown.isEmpty()) {
+                ctx.status(404);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "Airport not found",
+                        "airports", unknown
+                );
+                ctx.json(errorResponse);
+                return;
+            }
+
+            // Using the TripPlanner to compute the matrix
+            TripMatrix response = flightAPI.planMatrix(origins, destinations, request.getCriteria());
+            // Handle of the case, where criteria was not used correctly
+            if (response == null) {
+                ctx.status(404);
+                Map<String, Object> errorResponse = Map.of(
+                        "error", "Criteria not found",
+                        "criteria", request.getCriteria()
+                );
+                ctx.json(errorResponse);
+                return;
+            }
+
+            // Return succesful response
+            ctx.status(200);
+            ctx.json(response);
+
+        }
+        // Handle exceptions
+        catch (Exception e) {
+            log.error("Error in matrix endpoint", e);
+            ctx.status(500);
+            Map<String, Object> errorResponse = Map.of(
+                    "error", "Internal Server Error",
+                    "message", e.getMessage()
+            );
+            ctx.json(errorResponse);
+        }
+    }
+
     // Global exception handler
     private void handleException(Exception e, Context ctx) {
         log.error("Unexpected server error", e);
@@ -0,0 +1,61 @@
+package org.pi2.service.api;
+
+import java.util.List;
+
+/**
+ * Request body of the /matrix endpoint
+ * Filled by Jackson from JSON like {"origins": ["LHR", "MUC"], "destinations": ["JFK"], "criteria": "cheapest"}
+ */
+public class MatrixRequest {
+    private List<String> origins;      // IATA codes of the rows
+    private List<String> destinations; // IATA codes of the columns
+    private String criteria;           // "shortest" or "cheapest"
+
+    /**
+     * Get the origin codes
+     * @return IATA codes, null if missing in the request
+     */
+    public List<String> getOrigins() {
+        return origins;
+    }
+
+    /**
+     * Set the origin codes
+     * @param origins IATA codes
+     */
+    public void setOrigins(List<String> origins) {
+        this.origins = origins;
+    }
+
+    /**
+     * Get the destination codes
+     * @return IATA codes, null if missing in the request
+     */
+    public List<String> getDestinations() {
+        return destinations;
+    }
+
+    /**
+     * Set the destination codes
+     * @param destinations IATA codes
+     */
+    public void setDestinations(List<String> destinations) {
+        this.destinations = destinations;
+    }
+
+    /**
+     * Get the criterion
+     * @return "shortest" or "cheapest", null if missing in the request
+     */
+    public String getCriteria() {
+        return criteria;
+    }
+
+    /**
+     * Set the criterion
+     * @param criteria "shortest" or "cheapest"
+     */
+    public void setCriteria(String criteria) {
+        this.criteria = criteria;
+    }
+}
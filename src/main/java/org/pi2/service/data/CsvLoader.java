@@ -8,6 +8,8 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 
 public class CsvLoader {
@@ -15,20 +17,33 @@ public class CsvLoader {
     private static final Logger log = LoggerFactory.getLogger(CsvLoader.class);
 
     public FlightNetwork loadNetwork(String airportsCsvPath, String flightsCsvPath, String routesCsvPath) throws SQLException {
+        // Create FlightNetwork with same constructor as your main code
+        FlightNetwork network = new FlightNetwork();
+        loadInto(network, airportsCsvPath, flightsCsvPath, routesCsvPath);
+        return network;
+    }
+
+    /**
+     * Imports the csv files into an existing network
+     * @param network network the rows are added to, they are persisted to its database
+     * @param airportsCsvPath airports csv file or resource
+     * @param flightsCsvPath flights csv file or resource
+     * @param routesCsvPath routes csv file or resource
+     */
+    public void loadInto(FlightNetwork network, String airportsCsvPath, String flightsCsvPath, String routesCsvPath) {
         // Get actual file paths
         String airportsPath = getFilePath(airportsCsvPath);
         String flightsPath = getFilePath(flightsCsvPath);
         String routesPath = getFilePath(routesCsvPath);
 
-        // Create FlightNetwork with same constructor as your main code
-        FlightNetwork network = new FlightNetwork();
-
-        // Load data and persist to database if using database mode
-        loadAirports(network, airportsPath);
-        loadFlights(network, flightsPath);
-        loadRoutes(network, routesPath);
-
-        return network;
+        // Parse the files and persist to database, the network publishes all imported rows as one new version
+        List<Airport> airports = new ArrayList<>();
+        List<Flight> flights = new ArrayList<>();
+        List<Route> routes = new ArrayList<>();
+        loadAirports(airports, airportsPath);
+        loadFlights(flights, flightsPath);
+        loadRoutes(routes, routesPath);
+        network.addAll(airports, routes, flights);
     }
 
     private String getFilePath(String csvPath) {
@@ -45,7 +60,7 @@ public class CsvLoader {
         return csvPath;
     }
 
-    private void loadAirports(FlightNetwork network, String airportsCsvPath) {
+    private void loadAirports(List<Airport> airports, String airportsCsvPath) {
         int count = 0;
         try (BufferedReader br = new BufferedReader(new FileReader(airportsCsvPath))) {
             String line;
@@ -53,13 +68,17 @@ public class CsvLoader {
             while ((line = br.readLine()) != null) {
                 String[] values = line.split(",");
                 if (values.length >= 4) {
+                    // latitude and longitude are optional columns 5 and 6, the minimum connection time column 7
                     Airport airport = new Airport(
                             values[0].trim(),
                             values[1].trim(),
                             values[2].trim(),
-                            values[3].trim()
+                            values[3].trim(),
+                            values.length >= 6 ? parseCoordinate(values[4]) : null,
+                            values.length >= 6 ? parseCoordinate(values[5]) : null,
+                            values.length >= 7 ? parseMinutes(values[6]) : null
                     );
-                    network.addAirport(airport);
+                    airports.add(airport);
                     count++;
                 }
             }
@@ -69,7 +88,36 @@ public class CsvLoader {
         }
     }
 
-    private void loadFlights(FlightNetwork network, String csvPath) {
+    private Double parseCoordinate(String value) {
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) return null;
+        try {
+            return Double.parseDouble(trimmed);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid coordinate {}", trimmed);
+            return null;
+        }
+    }
+
+    private Integer parseMinutes(String value) {
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) return null;
+        try {
+            return Integer.parseInt(trimmed);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid connection time {}", trimmed);
+            return null;
+        }
+    }
+
+    private Integer parseTime(String value) {
+        if (value.trim().isEmpty()) return null;
+        Integer minutes = Flight.parseTime(value);
+        if (minutes == null) log.warn("Invalid time {}", value.trim());
+        return minutes;
+    }
+
+    private void loadFlights(List<Flight> flights, String csvPath) {
         int count = 0;
         try (BufferedReader br = new BufferedReader(new FileReader(csvPath))) {
             String line;
@@ -79,13 +127,16 @@ public class CsvLoader {
                 if (values.length >= 4) {
                     try {
                         Integer cost = Integer.parseInt(values[3].trim());
+                        // departure and arrival time are optional columns 5 and 6, as HH:mm
                         Flight flight = new Flight(
                                 values[0].trim(),
                                 values[1].trim(),
                                 values[2].trim(),
-                                cost
+                                cost,
+                                values.length >= 6 ? parseTime(values[4]) : null,
+                                values.length >= 6 ? parseTime(values[5]) : null
                         );
-                        network.addFlight(flight);
+                        flights.add(flight);
                         count++;
                     } catch (NumberFormatException e) {
 log.info(e.getMessage());                    }
@@ -96,7 +147,7 @@ log.info(e.getMessage());                    }
         }
     }
 
-    private void loadRoutes(FlightNetwork network, String routesCsvPath) {
+    private void loadRoutes(List<Route> routes, String routesCsvPath) {
         int count = 0;
         try (BufferedReader br = new BufferedReader(new FileReader(routesCsvPath))) {
             String line;
@@ -110,7 +161,7 @@ log.info(e.getMessage());                    }
                                 values[1].trim(),
                                 Integer.parseInt(values[2].trim())
                         );
-                        network.addRoute(route);
+                        routes.add(route);
                         count++;
                     } catch (NumberFormatException e) {
                         log.info(e.getMessage());
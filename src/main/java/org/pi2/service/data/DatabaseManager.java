@@ -1,5 +1,6 @@
 package org.pi2.service.data;
 
+import java.nio.file.Path;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -19,9 +20,10 @@ import org.slf4j.LoggerFactory;
  * - routes table: stores route data
  * - flights table: stores flight data
  */
-public class DatabaseManager {
+public class DatabaseManager implements AutoCloseable {
     // init the Params for the logger and database connection
-    private static final String DB_URL = "jdbc:sqlite:flightnetwork.db";
+    private static final String DB_FILE = "flightnetwork.db";
+    private static final String DB_URL = "jdbc:sqlite:" + DB_FILE;
     private static final Logger log = LoggerFactory.getLogger(DatabaseManager.class);
     private Connection connection;
 
@@ -33,6 +35,33 @@ public class DatabaseManager {
         initializeDatabase();
     }
 
+    /**
+     * Get the file the SQLite database is stored in
+     * Used to check if a network snapshot file is still up to date with the database
+     * @return path of the database file
+     */
+    public Path getDatabaseFile() {
+        return Path.of(DB_FILE);
+    }
+
+    /**
+     * Constructor for an additional connection to the same database, the tables are not created again
+     * @param connection open connection
+     */
+    private DatabaseManager(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Opens an additional connection to the database, used to read several tables in parallel
+     * The caller has to close the returned manager
+     * @return DatabaseManager with its own connection
+     * @throws SQLException if the connection fails
+     */
+    public DatabaseManager openReader() throws SQLException {
+        return new DatabaseManager(DriverManager.getConnection(DB_URL));
+    }
+
     /**
      * Establishes database connection
      * Creates the tables for the database
@@ -53,24 +82,16 @@ public class DatabaseManager {
                 code TEXT PRIMARY KEY,
                 city TEXT,
                 country TEXT,
+                latitude REAL,
+                longitude REAL,
+                min_connection_minutes INTEGER,
                 UNIQUE(name,code,city,country)
             )
         """;
         log.info("Created Airports table");
 
-        // Creating table for the flights
-        // Using the unique constraint because in the given data, every flight is unique
-        String createFlightsTable = """
-            CREATE TABLE IF NOT EXISTS flights (
-                origin_code TEXT NOT NULL,
-                destination_code TEXT NOT NULL,
-                airline TEXT NOT NULL,
-                cost_in_euroes INTEGER NOT NULL,
-                FOREIGN KEY (origin_code) REFERENCES airports(code),
-                FOREIGN KEY (destination_code) REFERENCES airports(code),
-                UNIQUE(origin_code,destination_code,airline,cost_in_euroes)
-            )
-        """;
+        // Creating table for the flights, see flightsTable for the unique constraint
+        String createFlightsTable = flightsTable("flights");
         log.info("Created Flights table");
 
         // Creating table for the routes
@@ -93,21 +114,123 @@ public class DatabaseManager {
             stmt.execute(createFlightsTable);
             stmt.execute(createRoutesTable);
         }
+        addCoordinateColumns();
+        addScheduleColumns();
+        addDepartureToFlightKey();
         log.info("Tables created");
     }
 
+    // Table of the flights, every flight is unique by its pair, airline, cost and departure time.
+    // The departure time is part of the key, so an airline can fly a pair at the same cost several times a day.
+    // SQLite treats NULL departures as distinct, the partial index keeps the flights without schedule unique
+    // like before (see addDepartureToFlightKey)
+    private static String flightsTable(String name) {
+        return """
+            CREATE TABLE IF NOT EXISTS %s (
+                origin_code TEXT NOT NULL,
+                destination_code TEXT NOT NULL,
+                airline TEXT NOT NULL,
+                cost_in_euroes INTEGER NOT NULL,
+                departure_time INTEGER,
+                arrival_time INTEGER,
+                FOREIGN KEY (origin_code) REFERENCES airports(code),
+                FOREIGN KEY (destination_code) REFERENCES airports(code),
+                UNIQUE(origin_code,destination_code,airline,cost_in_euroes,departure_time)
+            )
+        """.formatted(name);
+    }
+
+    // Databases created before the departure time was part of the key of the flights get the table rebuilt,
+    // SQLite can not change a unique constraint in place. Copy, drop and rename run in one transaction
+    private void addDepartureToFlightKey() throws SQLException {
+        if (!flightKeyHasDeparture()) {
+            String columns = "origin_code, destination_code, airline, cost_in_euroes, departure_time, arrival_time";
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS flights_rebuild");
+                stmt.execute(flightsTable("flights_rebuild"));
+                stmt.execute("INSERT INTO flights_rebuild (" + columns + ") SELECT " + columns + " FROM flights");
+                stmt.execute("DROP TABLE flights");
+                stmt.execute("ALTER TABLE flights_rebuild RENAME TO flights");
+                connection.commit();
+                log.info("Added departure_time to the unique key of the flights table");
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS flights_unscheduled "
+                    + "ON flights(origin_code,destination_code,airline,cost_in_euroes) WHERE departure_time IS NULL");
+        }
+    }
+
+    // Checks the columns of the unique constraints of the flights table for departure_time
+    private boolean flightKeyHasDeparture() throws SQLException {
+        List<String> keys = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA index_list(flights)")) {
+            while (rs.next()) {
+                // origin "u" marks the index of a UNIQUE constraint of the table definition
+                if (rs.getInt("unique") == 1 && "u".equals(rs.getString("origin"))) keys.add(rs.getString("name"));
+            }
+        }
+        for (String key : keys) {
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("PRAGMA index_info(\"" + key + "\")")) {
+                while (rs.next()) {
+                    if ("departure_time".equalsIgnoreCase(rs.getString("name"))) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Databases created before the airports had coordinates get the two columns added
+    // Only alters the table if a column is missing, so an up to date database file is not modified
+    private void addCoordinateColumns() throws SQLException {
+        addColumnIfMissing("airports", "latitude", "REAL");
+        addColumnIfMissing("airports", "longitude", "REAL");
+    }
+
+    // Databases created before the flights had schedules get the time columns and the connection time added
+    private void addScheduleColumns() throws SQLException {
+        addColumnIfMissing("airports", "min_connection_minutes", "INTEGER");
+        addColumnIfMissing("flights", "departure_time", "INTEGER");
+        addColumnIfMissing("flights", "arrival_time", "INTEGER");
+    }
+
+    private void addColumnIfMissing(String table, String column, String type) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) return;
+            }
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+            log.info("Added {} column to the {} table", column, table);
+        }
+    }
+
     /**
      * Inserts Airport into the database
      * @param airport The Airport Object to be moved into the database
      * @throws SQLException if operation fails
      */
     public void insertAirport(Airport airport) throws SQLException {
-        String sql = "INSERT INTO airports (name,code,city, country) VALUES (?, ?, ?, ?)";
+        String sql = "INSERT INTO airports (name,code,city, country, latitude, longitude, min_connection_minutes) VALUES (?, ?, ?, ?, ?, ?, ?)";
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, airport.getName());
             pstmt.setString(2, airport.getCode());
             pstmt.setString(3, airport.getCity());
             pstmt.setString(4, airport.getCountry());
+            pstmt.setObject(5, airport.getLatitude(), Types.REAL);
+            pstmt.setObject(6, airport.getLongitude(), Types.REAL);
+            pstmt.setObject(7, airport.getMinimumConnectionTime(), Types.INTEGER);
             pstmt.executeUpdate();
         }
         log.info("Airport inserted");
@@ -125,12 +248,7 @@ public class DatabaseManager {
             pstmt.setString(1, code);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
-                return new Airport(
-                        rs.getString("name"),
-                        rs.getString("code"),
-                        rs.getString("city"),
-                        rs.getString("country")
-                );
+                return readAirport(rs);
             }
         }
 
@@ -148,30 +266,51 @@ public class DatabaseManager {
         try (Statement stmt = connection.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             while (rs.next()) {
-                airports.add(new Airport(
-                        rs.getString("name"),
-                        rs.getString("code"),
-                        rs.getString("city"),
-                        rs.getString("country")
-                ));
+                airports.add(readAirport(rs));
             }
         }
         log.info("Returned all Airports");
         return airports;
     }
 
+    /**
+     * Creates the Airport of the current row, the coordinates are null if the row has none
+     * @param rs result set positioned on an airports row
+     * @return Airport Object
+     * @throws SQLException if db operations fail
+     */
+    private Airport readAirport(ResultSet rs) throws SQLException {
+        double latitude = rs.getDouble("latitude");
+        boolean hasLatitude = !rs.wasNull();
+        double longitude = rs.getDouble("longitude");
+        boolean hasLongitude = !rs.wasNull();
+        int connection = rs.getInt("min_connection_minutes");
+        boolean hasConnection = !rs.wasNull();
+        return new Airport(
+                rs.getString("name"),
+                rs.getString("code"),
+                rs.getString("city"),
+                rs.getString("country"),
+                hasLatitude ? latitude : null,
+                hasLongitude ? longitude : null,
+                hasConnection ? connection : null
+        );
+    }
+
     /**
      * Inserts flight into database
      * @param flight Flight to be inserted
      * @throws SQLException if db operations fail
      */
     public void insertFlight(Flight flight) throws SQLException {
-        String sql = "INSERT INTO flights (origin_code, destination_code, airline,cost_in_euroes) VALUES (?, ?, ?, ?)";
+        String sql = "INSERT INTO flights (origin_code, destination_code, airline,cost_in_euroes, departure_time, arrival_time) VALUES (?, ?, ?, ?, ?, ?)";
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, flight.getOriginCode());
             pstmt.setString(2, flight.getDestinationCode());
             pstmt.setString(3, flight.getAirline());
             pstmt.setInt(4, flight.getCostInEuros());
+            pstmt.setObject(5, flight.hasSchedule() ? flight.departureMinute() : null, Types.INTEGER);
+            pstmt.setObject(6, flight.hasSchedule() ? flight.arrivalMinute() : null, Types.INTEGER);
             pstmt.executeUpdate();
         }
         log.info("Flight " +flight+" inserted");
@@ -190,18 +329,46 @@ public class DatabaseManager {
             pstmt.setString(1, originCode);
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
-                flights.add(new Flight(
-                        rs.getString("origin_code"),
-                        rs.getString("destination_code"),
-                        rs.getString("airline"),
-                        rs.getInt("cost_in_euroes")
-                ));
+                flights.add(createFlightFromResultSet(rs));
             }
         }
         log.info("Returned flights from " + originCode);
         return flights;
     }
 
+    /**
+     * Retrieve all flights in a single scan of the flights table, grouped per origin airport
+     * The rows are read in the order of the unique index, so every origin is one consecutive block
+     * and the flights of an origin are in the same order as getFlightsFrom returns them
+     * @return List<List<Flight>> one list of outgoing flights per origin airport
+     * @throws SQLException if db operations fail
+     */
+    public List<List<Flight>> getAllFlightsByOrigin() throws SQLException {
+        List<List<Flight>> flightsByOrigin = new ArrayList<>();
+        String sql = "SELECT origin_code, destination_code, airline, cost_in_euroes, departure_time, arrival_time FROM flights " +
+                "ORDER BY origin_code, destination_code, airline, cost_in_euroes";
+        int count = 0;
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            List<Flight> current = null;
+            String currentOrigin = null;
+            while (rs.next()) {
+                String origin = rs.getString(1);
+                // a new origin starts a new list
+                if (current == null || !origin.equals(currentOrigin)) {
+                    current = new ArrayList<>();
+                    currentOrigin = origin;
+                    flightsByOrigin.add(current);
+                }
+                current.add(new Flight(origin, rs.getString(2), rs.getString(3), rs.getInt(4),
+                        readTime(rs, 5), readTime(rs, 6)));
+                count++;
+            }
+        }
+        log.info("Returned all {} flights", count);
+        return flightsByOrigin;
+    }
+
     /**
      * Inserts a route into the database
      * @param route Route to be inserted
@@ -243,6 +410,38 @@ public class DatabaseManager {
         return routes;
     }
 
+    /**
+     * Retrieve all routes in a single scan of the routes table, grouped per origin airport
+     * The rows are read in the order of the unique index, so every origin is one consecutive block
+     * and the routes of an origin are in the same order as getRoutesFrom returns them
+     * @return List<List<Route>> one list of outgoing routes per origin airport
+     * @throws SQLException if db operations fail
+     */
+    public List<List<Route>> getAllRoutesByOrigin() throws SQLException {
+        List<List<Route>> routesByOrigin = new ArrayList<>();
+        String sql = "SELECT origin_code, destination_code, distance_in_kilometers FROM routes " +
+                "ORDER BY origin_code, destination_code, distance_in_kilometers";
+        int count = 0;
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            List<Route> current = null;
+            String currentOrigin = null;
+            while (rs.next()) {
+                String origin = rs.getString(1);
+                // a new origin starts a new list
+                if (current == null || !origin.equals(currentOrigin)) {
+                    current = new ArrayList<>();
+                    currentOrigin = origin;
+                    routesByOrigin.add(current);
+                }
+                current.add(new Route(origin, rs.getString(2), rs.getInt(3)));
+                count++;
+            }
+        }
+        log.info("Returned all {} routes", count);
+        return routesByOrigin;
+    }
+
     /**
      * Retrieve Routes that correspond to the originCode and destinationCode
      * @param originCode IATA Code for the originating airport
@@ -378,7 +577,21 @@ public class DatabaseManager {
         String destination = rs.getString("destination_code");
         String airline = rs.getString("airline");
         Integer CostInEuros = rs.getInt("cost_in_euroes");
-        return new Flight(origin,destination,airline,CostInEuros);
+        Integer departure = readTime(rs, rs.findColumn("departure_time"));
+        Integer arrival = readTime(rs, rs.findColumn("arrival_time"));
+        return new Flight(origin,destination,airline,CostInEuros,departure,arrival);
+    }
+
+    /**
+     * Reads a nullable time column
+     * @param rs the Result of the query
+     * @param column index of the column
+     * @return minutes after midnight, null if the row has no time
+     * @throws SQLException if db operations fail
+     */
+    private Integer readTime(ResultSet rs, int column) throws SQLException {
+        int minutes = rs.getInt(column);
+        return rs.wasNull() ? null : minutes;
     }
     /**
      * Closes the database connection
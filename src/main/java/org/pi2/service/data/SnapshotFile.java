@@ -0,0 +1,368 @@
+package org.pi2.service.data;
+
+import org.pi2.model.Airport;
+import org.pi2.model.CsrGraph;
+import org.pi2.model.Flight;
+import org.pi2.model.NetworkSnapshot;
+import org.pi2.model.Route;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary file format for network snapshots, so a restart does not have to load the network from SQLite
+ *
+ * The file is written and read through memory mapped NIO channels. All sections are little endian int arrays,
+ * so reading a section is a bulk copy from the mapped file into the primitive arrays of the snapshot.
+ *
+ * Layout:
+ * - Header (64 bytes): magic, format version, network version, size and modification time of the database file
+ *   the snapshot was taken from, payload length, CRC32C checksum of the payload and the element counts
+ * - String dictionary: every distinct string (names, codes, cities, countries, airlines) once, as UTF-8
+ * - Airports: four string ids per airport (name, code, city, country)
+ * - Coordinates: latitude and longitude per airport as doubles, NaN if unknown
+ * - Connection times: minimum connection time per airport in minutes, -1 if unknown
+ * - Route graph: CSR offsets, targets and distances
+ * - All flights: CSR offsets, targets, costs, airline string ids, departure and arrival minutes (-1 without schedule)
+ * - Flight graph: CSR offsets, targets, minimum costs and the index of the cheapest flight of each edge
+ *
+ * A file is only used if magic, format version, checksum and the database fingerprint match,
+ * otherwise the caller falls back to loading from the database.
+ */
+public final class SnapshotFile {
+    private static final Logger log = LoggerFactory.getLogger(SnapshotFile.class);
+
+    private static final int MAGIC = 0x464E5331; // "FNS1"
+    private static final int FORMAT_VERSION = 3;
+    private static final int HEADER_SIZE = 64;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Fingerprint of the database file the snapshot was taken from
+     * The snapshot is stale as soon as the database file was modified after the snapshot was written
+     *
+     * @param modifiedMillis last modification time of the database file
+     * @param size size of the database file in bytes
+     */
+    public record Source(long modifiedMillis, long size) {
+        /**
+         * Reads the fingerprint of a file
+         * @param file database file
+         * @return fingerprint, or null if the file does not exist
+         */
+        public static Source of(Path file) {
+            try {
+                return new Source(Files.getLastModifiedTime(file).toMillis(), Files.size(file));
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot to a file
+     * The data is first written to a temporary file which then replaces the target, so readers never see a half written file
+     *
+     * @param snapshot snapshot to write, its delta is compacted first
+     * @param file target file
+     * @param source fingerprint of the database the snapshot represents
+     * @throws IOException if writing fails
+     */
+    public static void write(NetworkSnapshot snapshot, Path file, Source source) throws IOException {
+        if (!snapshot.delta().isEmpty()) {
+            snapshot = snapshot.compact(snapshot.version());
+        }
+        long start = System.nanoTime();
+        int airportCount = snapshot.airportCount();
+
+        // Step 1: string dictionary and the flight sections, flights are already grouped by origin
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int[] airportStrings = new int[airportCount * 4];
+        double[] coordinates = new double[airportCount * 2];
+        int[] connectionTimes = new int[airportCount];
+        for (int id = 0; id < airportCount; id++) {
+            Airport airport = snapshot.airport(id);
+            connectionTimes[id] = airport.getMinimumConnectionTime() == null ? -1 : airport.getMinimumConnectionTime();
+            coordinates[id * 2] = airport.hasCoordinates() ? airport.getLatitude() : Double.NaN;
+            coordinates[id * 2 + 1] = airport.hasCoordinates() ? airport.getLongitude() : Double.NaN;
+            airportStrings[id * 4] = intern(airport.getName(), stringIds, strings);
+            airportStrings[id * 4 + 1] = intern(airport.getCode(), stringIds, strings);
+            airportStrings[id * 4 + 2] = intern(airport.getCity(), stringIds, strings);
+            airportStrings[id * 4 + 3] = intern(airport.getCountry(), stringIds, strings);
+        }
+        int[] allOffsets = new int[airportCount + 1];
+        List<Flight> all = new ArrayList<>(snapshot.flightCount());
+        for (int id = 0; id < airportCount; id++) {
+            all.addAll(snapshot.flightsFrom(id));
+            allOffsets[id + 1] = all.size();
+        }
+        int[] allTargets = new int[all.size()];
+        int[] allCosts = new int[all.size()];
+        int[] allAirlines = new int[all.size()];
+        int[] allDepartures = new int[all.size()];
+        int[] allArrivals = new int[all.size()];
+        for (int i = 0; i < all.size(); i++) {
+            Flight flight = all.get(i);
+            allTargets[i] = snapshot.idOf(flight.getDestinationCode());
+            allCosts[i] = flight.getCostInEuros();
+            allAirlines[i] = intern(flight.getAirline(), stringIds, strings);
+            allDepartures[i] = flight.departureMinute();
+            allArrivals[i] = flight.arrivalMinute();
+        }
+        CsrGraph flightGraph = snapshot.flightGraph();
+        int[] cheapestIndex = new int[flightGraph.edgeCount()];
+        for (int u = 0; u < airportCount; u++) {
+            for (int e = flightGraph.offsets()[u]; e < flightGraph.offsets()[u + 1]; e++) {
+                Flight cheapest = snapshot.flight(e);
+                for (int i = allOffsets[u]; i < allOffsets[u + 1]; i++) {
+                    if (all.get(i) == cheapest) {
+                        cheapestIndex[e] = i;
+                        break;
+                    }
+                }
+            }
+        }
+        byte[][] encoded = new byte[strings.size()][];
+        int blobLength = 0;
+        for (int i = 0; i < strings.size(); i++) {
+            encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            blobLength += encoded[i].length;
+        }
+        int paddedBlob = (blobLength + 3) & ~3;
+        CsrGraph routeGraph = snapshot.routeGraph();
+
+        // Step 2: compute the size and map the temporary file
+        long payload = 8L + 4L * (strings.size() + 1) + paddedBlob
+                + 4L * airportStrings.length
+                + 8L * coordinates.length
+                + 4L * connectionTimes.length
+                + 4L * (airportCount + 1) + 8L * routeGraph.edgeCount()
+                + 4L * (airportCount + 1) + 20L * all.size()
+                + 4L * (airportCount + 1) + 12L * flightGraph.edgeCount();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + payload);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            // Step 3: payload
+            buffer.position(HEADER_SIZE);
+            buffer.putInt(strings.size());
+            buffer.putInt(blobLength);
+            int offset = 0;
+            buffer.putInt(0);
+            for (byte[] bytes : encoded) {
+                offset += bytes.length;
+                buffer.putInt(offset);
+            }
+            for (byte[] bytes : encoded) {
+                buffer.put(bytes);
+            }
+            buffer.position(buffer.position() + paddedBlob - blobLength);
+            putInts(buffer, airportStrings);
+            buffer.asDoubleBuffer().put(coordinates);
+            buffer.position(buffer.position() + coordinates.length * 8);
+            putInts(buffer, connectionTimes);
+            putInts(buffer, routeGraph.offsets());
+            putInts(buffer, routeGraph.targets());
+            putInts(buffer, routeGraph.weights());
+            putInts(buffer, allOffsets);
+            putInts(buffer, allTargets);
+            putInts(buffer, allCosts);
+            putInts(buffer, allAirlines);
+            putInts(buffer, allDepartures);
+            putInts(buffer, allArrivals);
+            putInts(buffer, flightGraph.offsets());
+            putInts(buffer, flightGraph.targets());
+            putInts(buffer, flightGraph.weights());
+            putInts(buffer, cheapestIndex);
+
+            // Step 4: header with the checksum of the payload
+            buffer.position(0);
+            buffer.putInt(MAGIC);
+            buffer.putInt(FORMAT_VERSION);
+            buffer.putLong(snapshot.version());
+            buffer.putLong(source.modifiedMillis());
+            buffer.putLong(source.size());
+            buffer.putLong(payload);
+            buffer.putLong(checksum(buffer, payload));
+            buffer.putInt(airportCount);
+            buffer.putInt(routeGraph.edgeCount());
+            buffer.putInt(flightGraph.edgeCount());
+            buffer.putInt(all.size());
+            buffer.force();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Wrote network snapshot {} ({} bytes) in {} ms", file, HEADER_SIZE + payload, (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Reads a snapshot from a memory mapped file
+     *
+     * @param file snapshot file
+     * @param source fingerprint of the current database, the file must have been written for exactly this database
+     * @param version version number given to the restored snapshot
+     * @return the snapshot, or null if the file is missing, stale, corrupt or of another format version
+     */
+    public static NetworkSnapshot read(Path file, Source source, long version) {
+        if (source == null || !Files.isRegularFile(file)) return null;
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) return reject(file, "file too small");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            // Header checks
+            if (buffer.getInt() != MAGIC) return reject(file, "unknown file type");
+            if (buffer.getInt() != FORMAT_VERSION) return reject(file, "other format version");
+            buffer.getLong(); // network version of the writer, the restored snapshot gets a fresh one
+            if (buffer.getLong() != source.modifiedMillis() || buffer.getLong() != source.size()) {
+                return reject(file, "database changed since the snapshot was written");
+            }
+            long payload = buffer.getLong();
+            if (payload != size - HEADER_SIZE) return reject(file, "truncated");
+            long checksum = buffer.getLong();
+            int airportCount = buffer.getInt();
+            int routeCount = buffer.getInt();
+            int flightEdgeCount = buffer.getInt();
+            int flightCount = buffer.getInt();
+            if (checksum(buffer, payload) != checksum) return reject(file, "checksum mismatch");
+
+            // String dictionary
+            buffer.position(HEADER_SIZE);
+            int stringCount = buffer.getInt();
+            int blobLength = buffer.getInt();
+            int[] stringOffsets = getInts(buffer, stringCount + 1);
+            byte[] blob = new byte[blobLength];
+            buffer.get(blob);
+            buffer.position(buffer.position() + (((blobLength + 3) & ~3) - blobLength));
+            String[] strings = new String[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                strings[i] = new String(blob, stringOffsets[i], stringOffsets[i + 1] - stringOffsets[i], StandardCharsets.UTF_8);
+            }
+
+            // Airports
+            int[] airportStrings = getInts(buffer, airportCount * 4);
+            double[] coordinates = new double[airportCount * 2];
+            buffer.asDoubleBuffer().get(coordinates);
+            buffer.position(buffer.position() + coordinates.length * 8);
+            int[] connectionTimes = getInts(buffer, airportCount);
+            Airport[] airports = new Airport[airportCount];
+            String[] codes = new String[airportCount];
+            for (int id = 0; id < airportCount; id++) {
+                // the Airport constructor turns NaN coordinates into null
+                airports[id] = new Airport(string(strings, airportStrings[id * 4]), string(strings, airportStrings[id * 4 + 1]),
+                        string(strings, airportStrings[id * 4 + 2]), string(strings, airportStrings[id * 4 + 3]),
+                        coordinates[id * 2], coordinates[id * 2 + 1],
+                        connectionTimes[id] < 0 ? null : connectionTimes[id]);
+                codes[id] = airports[id].getCode();
+            }
+
+            // Route graph, the Route objects are restored from the CSR arrays
+            int[] routeOffsets = getInts(buffer, airportCount + 1);
+            int[] routeTargets = getInts(buffer, routeCount);
+            int[] routeWeights = getInts(buffer, routeCount);
+            Route[] routes = new Route[routeCount];
+            for (int u = 0; u < airportCount; u++) {
+                for (int e = routeOffsets[u]; e < routeOffsets[u + 1]; e++) {
+                    routes[e] = new Route(codes[u], codes[routeTargets[e]], routeWeights[e]);
+                }
+            }
+
+            // All flights
+            int[] allOffsets = getInts(buffer, airportCount + 1);
+            int[] allTargets = getInts(buffer, flightCount);
+            int[] allCosts = getInts(buffer, flightCount);
+            int[] allAirlines = getInts(buffer, flightCount);
+            int[] allDepartures = getInts(buffer, flightCount);
+            int[] allArrivals = getInts(buffer, flightCount);
+            Flight[] flights = new Flight[flightCount];
+            for (int u = 0; u < airportCount; u++) {
+                for (int i = allOffsets[u]; i < allOffsets[u + 1]; i++) {
+                    // the Flight constructor turns -1 times into no schedule
+                    flights[i] = new Flight(codes[u], codes[allTargets[i]], string(strings, allAirlines[i]), allCosts[i],
+                            allDepartures[i], allArrivals[i]);
+                }
+            }
+
+            // Flight graph
+            int[] flightOffsets = getInts(buffer, airportCount + 1);
+            int[] flightTargets = getInts(buffer, flightEdgeCount);
+            int[] flightWeights = getInts(buffer, flightEdgeCount);
+            int[] cheapestIndex = getInts(buffer, flightEdgeCount);
+            Flight[] cheapest = new Flight[flightEdgeCount];
+            for (int e = 0; e < flightEdgeCount; e++) {
+                cheapest[e] = flights[cheapestIndex[e]];
+            }
+
+            NetworkSnapshot snapshot = NetworkSnapshot.fromArrays(version, airports,
+                    routeOffsets, routeTargets, routeWeights, routes,
+                    flightOffsets, flightTargets, flightWeights, cheapest,
+                    allOffsets, flights);
+            log.info("Read network snapshot {} with {} airports in {} ms", file, airportCount, (System.nanoTime() - start) / 1e6);
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            // a damaged file must never prevent the start, the database is still there
+            return reject(file, e.toString());
+        }
+    }
+
+    private static NetworkSnapshot reject(Path file, String reason) {
+        log.info("Not using network snapshot {}: {}", file, reason);
+        return null;
+    }
+
+    private static int intern(String value, Map<String, Integer> ids, List<String> strings) {
+        if (value == null) return -1;
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = strings.size();
+            ids.put(value, id);
+            strings.add(value);
+        }
+        return id;
+    }
+
+    private static String string(String[] strings, int id) {
+        return id < 0 ? null : strings[id];
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + values.length * 4);
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        IntBuffer ints = buffer.asIntBuffer();
+        ints.get(values);
+        buffer.position(buffer.position() + count * 4);
+        return values;
+    }
+
+    private static long checksum(ByteBuffer buffer, long payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(HEADER_SIZE, (int) payload));
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,261 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.CsrGraph;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * All-pairs tables of one graph version, answers a point to point query with one lookup per leg
+ *
+ * Tables:
+ * - distances: distance or cost of the shortest path from s to t at s * nodeCount + t,
+ *   Integer.MAX_VALUE if t can not be reached from s
+ * - nextEdges: first edge of that path, -1 if there is none or s equals t
+ * A path is unpacked by following the first edge to its target and looking up the next edge from there.
+ * Both tables are flat int arrays, M*M entries each, so the mode is only meant for networks of a few thousand airports.
+ *
+ * Computation:
+ * - DIJKSTRA: one one-to-all search per airport, the sources are searched in parallel.
+ *   The first edge of every airport follows from its parent in the order the search settled them
+ * - FLOYD_WARSHALL: blocked Floyd-Warshall. The matrix is split into BLOCK x BLOCK tiles, for every block of k
+ *   first the diagonal tile, then the tiles in its row and column, then all other tiles are updated.
+ *   Tiles of the same phase are independent and run in parallel, a tile and its two source tiles stay in the cache.
+ *   The inner min-plus loop is a cache-blocked scalar loop over contiguous rows of int arrays, it stores into the
+ *   distance and the first edge table on every improvement
+ *
+ * Validity:
+ * - Computed on the whole graph including its overlay, but only valid for exactly this graph version.
+ *   Every change of the network publishes a new graph, the planners fall back to their searches until
+ *   the tables of the new version are computed
+ *
+ * Complexity:
+ *  - DIJKSTRA: O(M*(M+N)*log M), FLOYD_WARSHALL: O(M^3)
+ *  - Query: O(1) for the distance, O(length of the path) for the edges
+ *  - Space Complexity: O(M^2)
+ */
+public final class AllPairs {
+
+    /**
+     * Algorithm that computes the tables
+     */
+    public enum Method {
+        DIJKSTRA,
+        FLOYD_WARSHALL
+    }
+
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final int[] NO_PATH = new int[0];
+    private static final int BLOCK = 64;                      // tile size of the blocked Floyd-Warshall
+    private static final int INFINITY = Integer.MAX_VALUE / 2; // two of them added do not overflow
+
+    private final CsrGraph graph;       // graph version the tables belong to
+    private final int nodeCount;
+    private final int[] distances;      // s * nodeCount + t
+    private final int[] nextEdges;      // s * nodeCount + t
+    private final Method method;
+    private final long preprocessingNanos;
+
+    private AllPairs(CsrGraph graph, int[] distances, int[] nextEdges, Method method, long preprocessingNanos) {
+        this.graph = graph;
+        this.nodeCount = graph.nodeCount();
+        this.distances = distances;
+        this.nextEdges = nextEdges;
+        this.method = method;
+        this.preprocessingNanos = preprocessingNanos;
+    }
+
+    /**
+     * Computes the tables of a graph
+     * @param graph graph including its overlay
+     * @param method algorithm to use
+     * @return the all-pairs tables
+     */
+    public static AllPairs build(CsrGraph graph, Method method) {
+        long start = System.nanoTime();
+        int nodeCount = graph.nodeCount();
+        int[] distances = new int[nodeCount * nodeCount];
+        int[] nextEdges = new int[nodeCount * nodeCount];
+        if (method == Method.FLOYD_WARSHALL) {
+            floydWarshall(graph, distances, nextEdges);
+        } else {
+            dijkstra(graph, distances, nextEdges);
+        }
+        return new AllPairs(graph, distances, nextEdges, method, System.nanoTime() - start);
+    }
+
+    /**
+     * One search per source, in parallel, each worker thread searches with its own scratch
+     */
+    private static void dijkstra(CsrGraph graph, int[] distances, int[] nextEdges) {
+        int nodeCount = graph.nodeCount();
+        IntStream.range(0, nodeCount).parallel().forEach(source -> {
+            int[] rowDistances = new int[nodeCount];
+            int[] parents = new int[nodeCount];
+            int[] edges = new int[nodeCount];
+            int[] order = new int[nodeCount];
+            int settled = ShortestPathKernel.oneToAll(graph, source, false, rowDistances, parents, edges, order);
+            int row = source * nodeCount;
+            System.arraycopy(rowDistances, 0, distances, row, nodeCount);
+            Arrays.fill(nextEdges, row, row + nodeCount, -1);
+            // a parent is settled before its children, so its first edge is already known
+            for (int i = 0; i < settled; i++) {
+                int v = order[i];
+                if (v == source) continue;
+                nextEdges[row + v] = parents[v] == source ? edges[v] : nextEdges[row + parents[v]];
+            }
+        });
+    }
+
+    /**
+     * Blocked Floyd-Warshall on the distance matrix, the first edges are updated with every shorter distance
+     */
+    private static void floydWarshall(CsrGraph graph, int[] distances, int[] nextEdges) {
+        int nodeCount = graph.nodeCount();
+        // Init: direct edges, the cheapest one if there are parallel edges
+        Arrays.fill(distances, INFINITY);
+        Arrays.fill(nextEdges, -1);
+        for (int v = 0; v < nodeCount; v++) {
+            distances[v * nodeCount + v] = 0;
+        }
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] weights = graph.weights();
+        int baseNodes = offsets.length - 1;
+        for (int u = 0; u < nodeCount; u++) {
+            if (u < baseNodes) {
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    if (!graph.isRemoved(e)) initEdge(distances, nextEdges, nodeCount, u, targets[e], weights[e], e);
+                }
+            }
+            int[] added = graph.addedEdges(u);
+            if (added != null) {
+                for (int e : added) {
+                    initEdge(distances, nextEdges, nodeCount, u, graph.target(e), graph.weight(e), e);
+                }
+            }
+        }
+
+        int blocks = (nodeCount + BLOCK - 1) / BLOCK;
+        for (int kb = 0; kb < blocks; kb++) {
+            int k = kb;
+            // Phase 1: the diagonal tile only depends on itself
+            updateTile(distances, nextEdges, nodeCount, k, k, k);
+            // Phase 2: the tiles in row and column k depend on themselves and the diagonal tile
+            IntStream.range(0, blocks).parallel().forEach(b -> {
+                if (b == k) return;
+                updateTile(distances, nextEdges, nodeCount, k, b, k);
+                updateTile(distances, nextEdges, nodeCount, b, k, k);
+            });
+            // Phase 3: all other tiles depend on their row and column tile of phase 2
+            IntStream.range(0, blocks * blocks).parallel().forEach(tile -> {
+                int ib = tile / blocks;
+                int jb = tile % blocks;
+                if (ib != k && jb != k) updateTile(distances, nextEdges, nodeCount, ib, jb, k);
+            });
+        }
+        for (int i = 0; i < distances.length; i++) {
+            if (distances[i] >= INFINITY) distances[i] = UNREACHABLE;
+        }
+    }
+
+    private static void initEdge(int[] distances, int[] nextEdges, int nodeCount, int u, int v, int weight, int edge) {
+        int index = u * nodeCount + v;
+        if (u != v && weight < distances[index]) {
+            distances[index] = weight;
+            nextEdges[index] = edge;
+        }
+    }
+
+    /**
+     * Min-plus update of tile (ib, jb) over the intermediate nodes of block kb
+     * d[i][j] = min(d[i][j], d[i][k] + d[k][j]), the inner loop runs over one row of the tile
+     */
+    private static void updateTile(int[] distances, int[] nextEdges, int nodeCount, int ib, int jb, int kb) {
+        int iEnd = Math.min((ib + 1) * BLOCK, nodeCount);
+        int jStart = jb * BLOCK;
+        int jEnd = Math.min(jStart + BLOCK, nodeCount);
+        int kEnd = Math.min((kb + 1) * BLOCK, nodeCount);
+        for (int k = kb * BLOCK; k < kEnd; k++) {
+            int kRow = k * nodeCount;
+            for (int i = ib * BLOCK; i < iEnd; i++) {
+                int iRow = i * nodeCount;
+                int viaDistance = distances[iRow + k];
+                if (viaDistance >= INFINITY) continue;
+                int viaEdge = nextEdges[iRow + k];
+                for (int j = jStart; j < jEnd; j++) {
+                    int distance = viaDistance + distances[kRow + j];
+                    if (distance < distances[iRow + j]) {
+                        distances[iRow + j] = distance;
+                        nextEdges[iRow + j] = viaEdge;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if the tables belong to a graph
+     * @param graph graph that is searched
+     * @return true if the tables were computed on exactly this graph version
+     */
+    public boolean covers(CsrGraph graph) {
+        return this.graph == graph;
+    }
+
+    /**
+     * Get the distance or cost of the shortest path
+     * @param source start node
+     * @param target destination node
+     * @return length of the path, Integer.MAX_VALUE if there is no path
+     */
+    public int distance(int source, int target) {
+        return distances[source * nodeCount + target];
+    }
+
+    /**
+     * Unpacks the shortest path by following the first edges
+     * @param source start node
+     * @param target destination node
+     * @return edge ids of the path in travel order, empty if there is no path or source equals target,
+     *         null if the first edges run into a cycle (only possible with zero weight cycles), the caller has to search
+     */
+    int[] path(int source, int target) {
+        if (source == target || distances[source * nodeCount + target] == UNREACHABLE) return NO_PATH;
+        int length = 0;
+        for (int node = source; node != target; node = graph.target(nextEdges[node * nodeCount + target])) {
+            if (nextEdges[node * nodeCount + target] < 0 || ++length > nodeCount) return null;
+        }
+        int[] path = new int[length];
+        int node = source;
+        for (int i = 0; i < length; i++) {
+            path[i] = nextEdges[node * nodeCount + target];
+            node = graph.target(path[i]);
+        }
+        return path;
+    }
+
+    /**
+     * Get the amount of airports of the tables
+     * @return node count of the graph
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Get the algorithm that computed the tables
+     * @return the method
+     */
+    public Method method() {
+        return method;
+    }
+
+    /**
+     * Get the duration of the computation
+     * @return duration in milliseconds
+     */
+    public double preprocessingMillis() {
+        return preprocessingNanos / 1e6;
+    }
+}
@@ -0,0 +1,108 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.CsrGraph;
+import org.pi2.model.FlightNetwork;
+import org.pi2.model.NetworkSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Keeps the all-pairs tables of one graph of the network (routes or flights) up to date
+ *
+ * - Every new version of the graph (any change, not only a compaction) is computed again on a background thread
+ * - Only networks with at most maxAirports airports get tables, larger ones would need too much memory
+ * - Until the tables of the current version exist get() returns null and the planners use their other searches
+ */
+final class AllPairsHolder {
+    private static final Logger log = LoggerFactory.getLogger(AllPairsHolder.class);
+
+    // One background thread for all tables, the computation itself runs in parallel
+    private static final ExecutorService BUILDER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "all-pairs-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;                             // "route" or "flight", for the log
+    private final Function<NetworkSnapshot, CsrGraph> graphOf;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final FlightNetwork network;
+    private volatile int maxAirports;                      // 0 until configured, disables the tables
+    private volatile AllPairs.Method method = AllPairs.Method.DIJKSTRA;
+    private volatile AllPairs tables;                      // tables of the latest computed graph version
+
+    /**
+     * Constructor registers the holder for every new snapshot of the network
+     * @param name name of the graph, for the log
+     * @param graphOf picks the graph out of a snapshot
+     * @param network network whose graph is computed
+     */
+    AllPairsHolder(String name, Function<NetworkSnapshot, CsrGraph> graphOf, FlightNetwork network) {
+        this.name = name;
+        this.graphOf = graphOf;
+        this.network = network;
+        network.addSnapshotListener(snapshot -> schedule());
+    }
+
+    /**
+     * Sets the airport limit and the algorithm of the tables
+     * @param maxAirports networks with at most this many airports get tables, 0 disables them
+     * @param method algorithm that computes the tables
+     */
+    void configure(int maxAirports, AllPairs.Method method) {
+        this.maxAirports = Math.max(0, maxAirports);
+        this.method = method;
+        tables = null;
+        schedule();
+    }
+
+    /**
+     * Returns the tables if they belong to the graph
+     * @param graph graph the query runs on
+     * @return the tables, null if the query has to use another search
+     */
+    AllPairs get(CsrGraph graph) {
+        AllPairs current = tables;
+        return current != null && current.covers(graph) ? current : null;
+    }
+
+    /**
+     * Queues a computation, several requests while one is queued collapse into one
+     */
+    private void schedule() {
+        if (maxAirports > 0 && scheduled.compareAndSet(false, true)) {
+            BUILDER.execute(() -> {
+                scheduled.set(false);
+                build();
+            });
+        }
+    }
+
+    /**
+     * Computes the tables of the current graph version, unless they already exist
+     * Runs on the builder thread
+     */
+    private void build() {
+        try {
+            CsrGraph graph = graphOf.apply(network.getSnapshot());
+            AllPairs current = tables;
+            if (current != null && current.covers(graph) && current.method() == method) return;
+            if (graph.nodeCount() > maxAirports) {
+                tables = null;
+                return;
+            }
+            AllPairs built = AllPairs.build(graph, method);
+            tables = built;
+            log.info(String.format("Computed all-pairs tables of the %s graph with %d airports in %.1f ms (%s)",
+                    name, built.nodeCount(), built.preprocessingMillis(), built.method()));
+        } catch (RuntimeException e) {
+            tables = null;
+            log.error("All-pairs tables of the {} graph failed", name, e);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.Airport;
+import org.pi2.model.Flight;
+import org.pi2.model.NetworkSnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Timetable of all scheduled flights of one network version, answers "earliest arrival if I leave at T"
+ * with the Connection Scan Algorithm (CSA)
+ *
+ * Structure:
+ * - Every flight with a schedule is one connection: departure, arrival, origin id and destination id,
+ *   stored as 4 consecutive ints in one flat array sorted by departure
+ * - The schedule repeats daily, the array holds DAYS copies of every connection so trips can continue on the
+ *   next day. Times are minutes after midnight of the day of departure, an arrival can be after 24:00
+ * - Minimum connection time per airport id, DEFAULT_CONNECTION_TIME for airports without one
+ *
+ * Algorithm Steps:
+ *  1. Init
+ *      The origin is reached at the departure time, every other airport is unreached.
+ *      A binary search finds the first connection departing at or after the departure time
+ *  2. Scan
+ *      Walk the connections in departure order. A connection can be taken if its origin is reached and its
+ *      departure is not before the arrival there plus the minimum connection time (no connection time at the
+ *      origin of the trip). It improves the arrival of its destination if it lands earlier
+ *  3. Stop
+ *      Once a connection departs at or after the best arrival at the destination none of the later ones can
+ *      land earlier, the scan ends
+ *  4. Reconstruction
+ *      Follow the connection that last improved every airport back to the origin
+ *
+ * The scan reads the array strictly in order, so it is one linear pass over consecutive memory without a heap.
+ * Requires non negative durations and connection times, which the Flight schedule guarantees.
+ *
+ * Complexity:
+ *  - Build: O(C*log C), with C=Amount of scheduled flights times DAYS
+ *  - Query: O(log C + C) in the worst case, usually only the connections until the arrival are scanned
+ *  - Space Complexity: O(C + M)
+ */
+final class ConnectionScan {
+    static final int DAYS = 2;                      // the day of departure and the next day
+    static final int DEFAULT_CONNECTION_TIME = 45;  // minutes, for airports without a minimum connection time
+    private static final int STRIDE = 4;            // ints per connection
+    private static final int DEPARTURE = 0;
+    private static final int ARRIVAL = 1;
+    private static final int FROM = 2;
+    private static final int TO = 3;
+
+    private final long baseVersion;         // base, flight count and airport count the timetable was built from
+    private final int flightCount;
+    private final int nodeCount;
+    private final int[] connections;        // STRIDE ints per connection, sorted by departure
+    private final Flight[] flights;         // flight per connection
+    private final int[] connectionTimes;    // minimum connection time per airport id
+
+    private ConnectionScan(NetworkSnapshot snapshot, int[] connections, Flight[] flights, int[] connectionTimes) {
+        this.baseVersion = snapshot.baseVersion();
+        this.flightCount = snapshot.flightCount();
+        this.nodeCount = snapshot.airportCount();
+        this.connections = connections;
+        this.flights = flights;
+        this.connectionTimes = connectionTimes;
+    }
+
+    /**
+     * Builds the timetable of a network version
+     * @param snapshot network version, base flights and the flights of the delta
+     * @return the timetable, without connections if no flight has a schedule
+     */
+    static ConnectionScan build(NetworkSnapshot snapshot) {
+        int nodeCount = snapshot.airportCount();
+        int[] connectionTimes = new int[nodeCount];
+        List<Flight> scheduled = new ArrayList<>();
+        for (int id = 0; id < nodeCount; id++) {
+            Integer minutes = snapshot.airport(id).getMinimumConnectionTime();
+            connectionTimes[id] = minutes == null ? DEFAULT_CONNECTION_TIME : minutes;
+            for (Flight flight : snapshot.flightsFrom(id)) {
+                if (flight.hasSchedule() && snapshot.idOf(flight.getDestinationCode()) >= 0) scheduled.add(flight);
+            }
+        }
+
+        // Sort by departure once, packed as departure << 32 | index so the sort runs on primitives
+        int count = scheduled.size() * DAYS;
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            Flight flight = scheduled.get(i % scheduled.size());
+            int departure = flight.departureMinute() + (i / scheduled.size()) * Flight.MINUTES_PER_DAY;
+            order[i] = (long) departure << 32 | i;
+        }
+        Arrays.sort(order);
+
+        int[] connections = new int[count * STRIDE];
+        Flight[] flights = new Flight[count];
+        for (int c = 0; c < count; c++) {
+            int i = (int) order[c];
+            Flight flight = scheduled.get(i % scheduled.size());
+            int departure = (int) (order[c] >>> 32);
+            int at = c * STRIDE;
+            connections[at + DEPARTURE] = departure;
+            connections[at + ARRIVAL] = departure + flight.durationMinutes();
+            connections[at + FROM] = snapshot.idOf(flight.getOriginCode());
+            connections[at + TO] = snapshot.idOf(flight.getDestinationCode());
+            flights[c] = flight;
+        }
+        return new ConnectionScan(snapshot, connections, flights, connectionTimes);
+    }
+
+    /**
+     * Checks if the timetable is up to date for a network version
+     * Flights and airports are only ever added, so equal counts on the same base mean equal timetables
+     * @param snapshot network version of the query
+     * @return true if the timetable holds exactly the flights and airports of the snapshot
+     */
+    boolean covers(NetworkSnapshot snapshot) {
+        return baseVersion == snapshot.baseVersion() && flightCount == snapshot.flightCount()
+                && nodeCount == snapshot.airportCount();
+    }
+
+    /**
+     * Finds the trip with the earliest arrival
+     * @param source origin id
+     * @param target destination id
+     * @param departure earliest departure in minutes after midnight
+     * @return connection ids in travel order, empty if the destination can not be reached or equals the origin
+     */
+    int[] earliestArrival(int source, int target, int departure) {
+        if (source == target || source >= nodeCount || target >= nodeCount) return new int[0];
+
+        // Step 1: Init
+        SearchScratch scratch = SearchScratch.get(nodeCount);
+        scratch.reach(source, departure, -1, -1);
+        int best = Integer.MAX_VALUE;
+        int count = flights.length;
+
+        // Step 2: Scan
+        for (int c = firstDeparture(departure); c < count; c++) {
+            int at = c * STRIDE;
+            int leaves = connections[at + DEPARTURE];
+            // Step 3: Stop
+            if (leaves >= best) break;
+            int from = connections[at + FROM];
+            int arrived = scratch.distance(from);
+            if (arrived == Integer.MAX_VALUE) continue;
+            int ready = from == source ? arrived : arrived + connectionTimes[from];
+            if (ready > leaves) continue;
+            int to = connections[at + TO];
+            int lands = connections[at + ARRIVAL];
+            if (lands < scratch.distance(to)) {
+                scratch.reach(to, lands, c, from);
+                if (to == target) best = lands;
+            }
+        }
+        if (best == Integer.MAX_VALUE) return new int[0];
+
+        // Step 4: Reconstruction
+        int length = 0;
+        for (int node = target; node != source; node = scratch.parents[node]) length++;
+        int[] path = new int[length];
+        for (int node = target; node != source; node = scratch.parents[node]) {
+            path[--length] = scratch.predecessors[node];
+        }
+        return path;
+    }
+
+    /**
+     * Binary search for the first connection departing at or after a time
+     */
+    private int firstDeparture(int time) {
+        int low = 0;
+        int high = flights.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (connections[middle * STRIDE + DEPARTURE] < time) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Get the departure of a connection
+     * @param connection connection id
+     * @return minutes after midnight of the day of departure of the trip
+     */
+    int departure(int connection) {
+        return connections[connection * STRIDE + DEPARTURE];
+    }
+
+    /**
+     * Get the arrival of a connection
+     * @param connection connection id
+     * @return minutes after midnight of the day of departure of the trip
+     */
+    int arrival(int connection) {
+        return connections[connection * STRIDE + ARRIVAL];
+    }
+
+    /**
+     * Get the flight of a connection
+     * @param connection connection id
+     * @return the scheduled flight
+     */
+    Flight flight(int connection) {
+        return flights[connection];
+    }
+
+    /**
+     * Get the amount of connections, every scheduled flight DAYS times
+     * @return connection count
+     */
+    int connectionCount() {
+        return flights.length;
+    }
+}
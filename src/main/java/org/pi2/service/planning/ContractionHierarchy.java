@@ -0,0 +1,620 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.CsrGraph;
+import org.pi2.util.IndexedMinHeap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+/**
+ * Contraction hierarchy (CH) of one graph base, answers point to point queries with a small bidirectional search
+ *
+ * Preprocessing:
+ * - The airports are contracted one after another, each gets the next rank
+ * - Contracting v removes it from the remaining graph. For every pair u -> v -> w of remaining neighbours whose
+ *   path over v is the only shortest one, a shortcut u -> w with the summed weight is inserted.
+ *   A local Dijkstra from u that avoids v (witness search) decides if another path is as short
+ * - Order: the airport with the smallest edge difference (shortcuts it would need minus the edges it removes)
+ *   goes first, plus the amount of its already contracted neighbours so the hierarchy stays flat
+ * - Parallel: every round picks all airports whose priority is smaller than the one of every neighbour.
+ *   They are not adjacent, so their witness searches run in parallel on the same remaining graph.
+ *   The witness searches avoid every airport of the round, otherwise two of them could each count on a path over
+ *   the other one and both skip their shortcut.
+ *   Only inserting the shortcuts is sequential. The priorities of their neighbours are recalculated in parallel
+ *   once they are candidates of a later round
+ *
+ * Query (see ShortestPathKernel.shortestPathHierarchy):
+ * - Forward search from the source only follows edges to higher ranks, backward search from the target only
+ *   edges from higher ranks. Every shortest path has such an up-down form, the two searches meet at its highest airport
+ * - The searches only see a few dozen airports instead of the whole network
+ *
+ * Edges:
+ * - Every edge of the hierarchy is either a base edge (first = -1, second = base edge id) or a shortcut
+ *   (first and second are the hierarchy edges over the contracted airport)
+ * - Unpacking a shortcut recursively gives the base edges, so the planners return the real routes and flights
+ *
+ * Validity:
+ * - Built on the base edges of a graph without its overlay
+ * - Only valid for graphs of the same base without any overlay: a removed edge could be hidden in a shortcut,
+ *   an added edge could be shorter than a shortcut. The planners fall back until the next base is contracted
+ *
+ * Complexity:
+ *  - Preprocessing: depends on the graph, a few witness searches per airport with a settle limit
+ *  - Query: settles O(hierarchy height) airports
+ *  - Space Complexity: O(M+N+S) with S=Amount of shortcuts
+ */
+public final class ContractionHierarchy {
+    private static final int WITNESS_SETTLE_LIMIT = 64; // a witness search gives up after this many airports
+    private static final int ESTIMATE_SETTLE_LIMIT = 16; // smaller limit when only the priority is estimated
+    private static final ThreadLocal<WitnessSearch> WITNESS = new ThreadLocal<>();
+
+    private final CsrGraph base;        // base the hierarchy was built on
+    private final int nodeCount;        // airports of the base
+    final int[] rank;                   // contraction order per airport
+    final int[] edgeSource;             // origin per hierarchy edge
+    final int[] edgeTarget;             // target per hierarchy edge
+    final int[] edgeWeight;             // weight per hierarchy edge
+    final int[] edgeFirst;              // first half of a shortcut, -1 for a base edge
+    final int[] edgeSecond;             // second half of a shortcut, base edge id for a base edge
+    final int[] upOffsets;              // edges from v to higher ranks are upEdges[upOffsets[v]..upOffsets[v+1])
+    final int[] upEdges;
+    final int[] downOffsets;            // edges from higher ranks into v are downEdges[downOffsets[v]..downOffsets[v+1])
+    final int[] downEdges;
+    private final long preprocessingNanos;
+
+    ContractionHierarchy(CsrGraph base, int[] rank, int[] edgeSource, int[] edgeTarget, int[] edgeWeight,
+                         int[] edgeFirst, int[] edgeSecond, long preprocessingNanos) {
+        this.base = base;
+        this.nodeCount = rank.length;
+        this.rank = rank;
+        this.edgeSource = edgeSource;
+        this.edgeTarget = edgeTarget;
+        this.edgeWeight = edgeWeight;
+        this.edgeFirst = edgeFirst;
+        this.edgeSecond = edgeSecond;
+        this.preprocessingNanos = preprocessingNanos;
+
+        // Split the edges into the upward lists of their origin and the downward lists of their target
+        int edgeCount = edgeSource.length;
+        upOffsets = new int[nodeCount + 1];
+        downOffsets = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            if (rank[edgeTarget[e]] > rank[edgeSource[e]]) {
+                upOffsets[edgeSource[e] + 1]++;
+            } else {
+                downOffsets[edgeTarget[e] + 1]++;
+            }
+        }
+        for (int v = 0; v < nodeCount; v++) {
+            upOffsets[v + 1] += upOffsets[v];
+            downOffsets[v + 1] += downOffsets[v];
+        }
+        upEdges = new int[upOffsets[nodeCount]];
+        downEdges = new int[downOffsets[nodeCount]];
+        int[] upNext = Arrays.copyOf(upOffsets, nodeCount);
+        int[] downNext = Arrays.copyOf(downOffsets, nodeCount);
+        for (int e = 0; e < edgeCount; e++) {
+            if (rank[edgeTarget[e]] > rank[edgeSource[e]]) {
+                upEdges[upNext[edgeSource[e]]++] = e;
+            } else {
+                downEdges[downNext[edgeTarget[e]]++] = e;
+            }
+        }
+    }
+
+    /**
+     * Contracts the base of a graph
+     * @param graph graph whose base is contracted, the overlay is ignored
+     * @return the contraction hierarchy
+     */
+    public static ContractionHierarchy build(CsrGraph graph) {
+        long start = System.nanoTime();
+        CsrGraph base = graph.withoutOverlay();
+        Contraction contraction = new Contraction(base);
+        contraction.run();
+        return contraction.result(base, System.nanoTime() - start);
+    }
+
+    /**
+     * Checks if the hierarchy may answer a query on a graph
+     * @param graph graph that is searched
+     * @param source start node
+     * @param target destination node
+     * @return true if the graph has the same base, no overlay and both nodes are part of the hierarchy
+     */
+    public boolean covers(CsrGraph graph, int source, int target) {
+        return base.sameBase(graph) && !graph.hasOverlay() && source < nodeCount && target < nodeCount;
+    }
+
+    /**
+     * Checks if the hierarchy was built on the base of a graph
+     * @param graph graph to compare with
+     * @return true if both have the same base
+     */
+    public boolean sameBase(CsrGraph graph) {
+        return base.sameBase(graph);
+    }
+
+    /**
+     * Get the amount of airports in the hierarchy
+     * @return node count of the base
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Get the amount of shortcuts, hierarchy edges that are not base edges
+     * @return amount of shortcuts
+     */
+    public int shortcutCount() {
+        int shortcuts = 0;
+        for (int first : edgeFirst) if (first >= 0) shortcuts++;
+        return shortcuts;
+    }
+
+    /**
+     * Get the amount of hierarchy edges, base edges plus shortcuts
+     * @return amount of edges
+     */
+    public int edgeCount() {
+        return edgeSource.length;
+    }
+
+    /**
+     * Get the duration of the contraction, 0 if the hierarchy was read from a file
+     * @return duration in milliseconds
+     */
+    public double preprocessingMillis() {
+        return preprocessingNanos / 1e6;
+    }
+
+    /**
+     * Unpacks hierarchy edges into base edge ids
+     * @param edges hierarchy edges of a path in travel order
+     * @param count amount of used entries of edges
+     * @return base edge ids in travel order
+     */
+    int[] unpack(int[] edges, int count) {
+        int[] path = new int[Math.max(count, 4)];
+        int length = 0;
+        int[] stack = new int[16];
+        for (int i = 0; i < count; i++) {
+            int size = 0;
+            stack[size++] = edges[i];
+            while (size > 0) {
+                int e = stack[--size];
+                if (edgeFirst[e] < 0) {
+                    if (length == path.length) path = Arrays.copyOf(path, length * 2);
+                    path[length++] = edgeSecond[e];
+                } else {
+                    if (size + 2 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                    // second half below the first, so the first half is unpacked first
+                    stack[size++] = edgeSecond[e];
+                    stack[size++] = edgeFirst[e];
+                }
+            }
+        }
+        return Arrays.copyOf(path, length);
+    }
+
+    /**
+     * Fingerprint of the base edges of a graph, a stored hierarchy is only valid for the same fingerprint
+     * @param graph graph whose base is hashed, the overlay is ignored
+     * @return CRC32C of node count, offsets, targets and weights
+     */
+    public static long fingerprint(CsrGraph graph) {
+        CRC32C crc = new CRC32C();
+        int nodeCount = graph.nodeCount();
+        ByteBuffer buffer = ByteBuffer.allocate(4 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(nodeCount);
+        for (int[] values : new int[][]{Arrays.copyOf(graph.offsets(), nodeCount + 1), graph.targets(), graph.weights()}) {
+            for (int value : values) {
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    crc.update(buffer);
+                    buffer.clear();
+                }
+                buffer.putInt(value);
+            }
+        }
+        buffer.flip();
+        crc.update(buffer);
+        return crc.getValue();
+    }
+
+    /**
+     * Working state of one contraction, the adjacency of the remaining graph changes with every contracted airport
+     */
+    private static final class Contraction {
+        private final int nodeCount;
+        // Dynamic adjacency of the remaining graph, per airport the neighbour and the hierarchy edge id
+        private final int[][] outNodes;
+        private final int[][] outEdges;
+        private final int[] outSize;
+        private final int[][] inNodes;
+        private final int[][] inEdges;
+        private final int[] inSize;
+        // All hierarchy edges created so far, including the ones later replaced by a shorter shortcut
+        private int[] source = new int[16];
+        private int[] target = new int[16];
+        private int[] weight = new int[16];
+        private int[] first = new int[16];
+        private int[] second = new int[16];
+        private int edgeCount;
+        private boolean[] kept = new boolean[16]; // edge is part of the final hierarchy
+
+        private final int[] rank;
+        private final int[] priority;
+        private final int[] contractedNeighbours;
+        private final boolean[] contracted;
+        private final boolean[] inBatch;     // contracted in the current round, witness searches avoid them
+
+        Contraction(CsrGraph base) {
+            nodeCount = base.nodeCount();
+            outNodes = new int[nodeCount][];
+            outEdges = new int[nodeCount][];
+            outSize = new int[nodeCount];
+            inNodes = new int[nodeCount][];
+            inEdges = new int[nodeCount][];
+            inSize = new int[nodeCount];
+            rank = new int[nodeCount];
+            priority = new int[nodeCount];
+            contractedNeighbours = new int[nodeCount];
+            contracted = new boolean[nodeCount];
+            inBatch = new boolean[nodeCount];
+            for (int v = 0; v < nodeCount; v++) {
+                outNodes[v] = new int[2];
+                outEdges[v] = new int[2];
+                inNodes[v] = new int[2];
+                inEdges[v] = new int[2];
+            }
+            int[] offsets = base.offsets();
+            int[] targets = base.targets();
+            int[] weights = base.weights();
+            for (int u = 0; u < nodeCount; u++) {
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    if (targets[e] != u) addEdge(u, targets[e], weights[e], -1, e);
+                }
+            }
+        }
+
+        /**
+         * Contracts all airports in rounds of independent sets
+         */
+        void run() {
+            int[] remaining = IntStream.range(0, nodeCount).toArray();
+            int remainingCount = nodeCount;
+            boolean[] dirty = new boolean[nodeCount]; // neighbourhood changed since the priority was calculated
+            int[] batch = new int[nodeCount];
+            int nextRank = 0;
+
+            // Step 1: priorities of all airports, in parallel
+            IntStream.range(0, nodeCount).parallel().forEach(v -> priority[v] = priority(v));
+
+            while (remainingCount > 0) {
+                // Step 2: independent set, airports with a smaller (priority, id) than all remaining neighbours.
+                // Outdated priorities are only recalculated for airports that would be picked, hubs are neighbours
+                // of almost every round and recalculating them each time would dominate the preprocessing
+                int batchSize;
+                while (true) {
+                    batchSize = 0;
+                    int outdated = 0;
+                    for (int i = 0; i < remainingCount; i++) {
+                        int v = remaining[i];
+                        if (isLocalMinimum(v)) {
+                            batch[batchSize++] = v;
+                            if (dirty[v]) outdated++;
+                        }
+                    }
+                    if (outdated == 0) break;
+                    int[] update = new int[outdated];
+                    int n = 0;
+                    for (int i = 0; i < batchSize; i++) {
+                        if (dirty[batch[i]]) update[n++] = batch[i];
+                    }
+                    IntStream.of(update).parallel().forEach(v -> priority[v] = priority(v));
+                    for (int v : update) dirty[v] = false;
+                }
+
+                // Step 3: witness searches of the batch in parallel, the remaining graph is only read
+                int[] contract = Arrays.copyOf(batch, batchSize);
+                for (int v : contract) inBatch[v] = true;
+                List<int[]> shortcuts = IntStream.of(contract).parallel()
+                        .mapToObj(v -> shortcuts(v, WITNESS_SETTLE_LIMIT)).toList();
+
+                // Step 4: insert the shortcuts and remove the batch, sequential
+                for (int i = 0; i < contract.length; i++) {
+                    int v = contract[i];
+                    rank[v] = nextRank++;
+                    int[] found = shortcuts.get(i);
+                    for (int j = 0; j < found.length; j += 5) {
+                        addEdge(found[j], found[j + 1], found[j + 2], found[j + 3], found[j + 4]);
+                    }
+                }
+                for (int v : contract) {
+                    inBatch[v] = false;
+                    removeNode(v);
+                    // the contracted neighbour term is updated right away, the edge difference once it is needed
+                    for (int j = 0; j < outSize[v]; j++) {
+                        int w = outNodes[v][j];
+                        contractedNeighbours[w]++;
+                        priority[w]++;
+                        dirty[w] = true;
+                    }
+                    for (int j = 0; j < inSize[v]; j++) {
+                        int u = inNodes[v][j];
+                        contractedNeighbours[u]++;
+                        priority[u]++;
+                        dirty[u] = true;
+                    }
+                }
+
+                // compact the remaining airports
+                int kept = 0;
+                for (int i = 0; i < remainingCount; i++) {
+                    if (!contracted[remaining[i]]) remaining[kept++] = remaining[i];
+                }
+                remainingCount = kept;
+            }
+        }
+
+        /**
+         * Edge difference plus contracted neighbours of an airport that is still in the remaining graph
+         */
+        private int priority(int v) {
+            int shortcuts = shortcuts(v, ESTIMATE_SETTLE_LIMIT).length / 5;
+            return shortcuts - outSize[v] - inSize[v] + contractedNeighbours[v];
+        }
+
+        private boolean isLocalMinimum(int v) {
+            for (int j = 0; j < outSize[v]; j++) {
+                if (before(outNodes[v][j], v)) return false;
+            }
+            for (int j = 0; j < inSize[v]; j++) {
+                if (before(inNodes[v][j], v)) return false;
+            }
+            return true;
+        }
+
+        private boolean before(int a, int b) {
+            return priority[a] < priority[b] || priority[a] == priority[b] && a < b;
+        }
+
+        /**
+         * Finds the shortcuts contracting v needs
+         * A witness search that gives up early only adds a shortcut too many, never one too few
+         * @param settleLimit airports a witness search settles at most
+         * @return five ints per shortcut: origin, target, weight, edge into v, edge out of v
+         */
+        private int[] shortcuts(int v, int settleLimit) {
+            int[] result = new int[0];
+            int count = 0;
+            if (inSize[v] == 0 || outSize[v] == 0) return result;
+            int maxOut = 0;
+            for (int j = 0; j < outSize[v]; j++) {
+                maxOut = Math.max(maxOut, weight[outEdges[v][j]]);
+            }
+            WitnessSearch witness = WitnessSearch.get(nodeCount);
+            witness.setTargets(outNodes[v], outSize[v]);
+            for (int i = 0; i < inSize[v]; i++) {
+                int u = inNodes[v][i];
+                int inEdge = inEdges[v][i];
+                int viaWeight = weight[inEdge];
+                witness.run(this, u, v, viaWeight + maxOut, settleLimit);
+                for (int j = 0; j < outSize[v]; j++) {
+                    int w = outNodes[v][j];
+                    if (w == u) continue;
+                    int outEdge = outEdges[v][j];
+                    int shortcutWeight = viaWeight + weight[outEdge];
+                    if (witness.distance(w) <= shortcutWeight) continue;
+                    if (count + 5 > result.length) result = Arrays.copyOf(result, Math.max(10, result.length * 2));
+                    result[count++] = u;
+                    result[count++] = w;
+                    result[count++] = shortcutWeight;
+                    result[count++] = inEdge;
+                    result[count++] = outEdge;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+
+        /**
+         * Adds an edge u -> w to the remaining graph, or lowers the existing one
+         * @param firstEdge first half of a shortcut, -1 for a base edge
+         * @param secondEdge second half of a shortcut, or the base edge id
+         */
+        private void addEdge(int u, int w, int edgeWeight, int firstEdge, int secondEdge) {
+            for (int j = 0; j < outSize[u]; j++) {
+                if (outNodes[u][j] != w) continue;
+                if (weight[outEdges[u][j]] <= edgeWeight) return;
+                // a shorter edge between the same airports replaces the old one in both lists
+                int id = newEdge(u, w, edgeWeight, firstEdge, secondEdge);
+                outEdges[u][j] = id;
+                for (int k = 0; k < inSize[w]; k++) {
+                    if (inNodes[w][k] == u) inEdges[w][k] = id;
+                }
+                return;
+            }
+            int id = newEdge(u, w, edgeWeight, firstEdge, secondEdge);
+            append(outNodes, outEdges, outSize, u, w, id);
+            append(inNodes, inEdges, inSize, w, u, id);
+        }
+
+        private int newEdge(int u, int w, int edgeWeight, int firstEdge, int secondEdge) {
+            if (edgeCount == source.length) {
+                int capacity = edgeCount * 2;
+                source = Arrays.copyOf(source, capacity);
+                target = Arrays.copyOf(target, capacity);
+                weight = Arrays.copyOf(weight, capacity);
+                first = Arrays.copyOf(first, capacity);
+                second = Arrays.copyOf(second, capacity);
+                kept = Arrays.copyOf(kept, capacity);
+            }
+            source[edgeCount] = u;
+            target[edgeCount] = w;
+            weight[edgeCount] = edgeWeight;
+            first[edgeCount] = firstEdge;
+            second[edgeCount] = secondEdge;
+            return edgeCount++;
+        }
+
+        private static void append(int[][] nodes, int[][] edges, int[] size, int v, int neighbour, int id) {
+            int n = size[v];
+            if (n == nodes[v].length) {
+                nodes[v] = Arrays.copyOf(nodes[v], n * 2);
+                edges[v] = Arrays.copyOf(edges[v], n * 2);
+            }
+            nodes[v][n] = neighbour;
+            edges[v][n] = id;
+            size[v] = n + 1;
+        }
+
+        /**
+         * Removes a contracted airport from the lists of its neighbours
+         * Its own lists stay as they are, they are its edges in the final hierarchy
+         */
+        private void removeNode(int v) {
+            contracted[v] = true;
+            for (int j = 0; j < outSize[v]; j++) {
+                kept[outEdges[v][j]] = true;
+                remove(inNodes, inEdges, inSize, outNodes[v][j], v);
+            }
+            for (int j = 0; j < inSize[v]; j++) {
+                kept[inEdges[v][j]] = true;
+                remove(outNodes, outEdges, outSize, inNodes[v][j], v);
+            }
+        }
+
+        private static void remove(int[][] nodes, int[][] edges, int[] size, int v, int neighbour) {
+            int n = size[v];
+            for (int j = 0; j < n; j++) {
+                if (nodes[v][j] == neighbour) {
+                    nodes[v][j] = nodes[v][n - 1];
+                    edges[v][j] = edges[v][n - 1];
+                    size[v] = n - 1;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Drops the replaced edges and renumbers the kept ones
+         * Shortcuts only refer to edges of a contracted airport, which are all kept
+         */
+        ContractionHierarchy result(CsrGraph base, long nanos) {
+            int[] newId = new int[edgeCount];
+            int count = 0;
+            for (int e = 0; e < edgeCount; e++) {
+                newId[e] = kept[e] ? count++ : -1;
+            }
+            int[] edgeSource = new int[count];
+            int[] edgeTarget = new int[count];
+            int[] edgeWeight = new int[count];
+            int[] edgeFirst = new int[count];
+            int[] edgeSecond = new int[count];
+            for (int e = 0; e < edgeCount; e++) {
+                int id = newId[e];
+                if (id < 0) continue;
+                edgeSource[id] = source[e];
+                edgeTarget[id] = target[e];
+                edgeWeight[id] = weight[e];
+                edgeFirst[id] = first[e] < 0 ? -1 : newId[first[e]];
+                edgeSecond[id] = first[e] < 0 ? second[e] : newId[second[e]];
+            }
+            return new ContractionHierarchy(base, rank, edgeSource, edgeTarget, edgeWeight, edgeFirst, edgeSecond, nanos);
+        }
+    }
+
+    /**
+     * Local Dijkstra of the contraction, one instance per thread
+     * Uses epoch stamps like SearchScratch, so starting a search does not clear the arrays
+     */
+    private static final class WitnessSearch {
+        private final int[] distances;
+        private final int[] stamps;
+        private int epoch;
+        private final int[] targetStamps; // targets of the current contraction, valid if equal to targetEpoch
+        private int targetEpoch;
+        private int targetCount;
+        private final IndexedMinHeap heap;
+
+        private WitnessSearch(int nodeCount) {
+            distances = new int[nodeCount];
+            stamps = new int[nodeCount];
+            targetStamps = new int[nodeCount];
+            heap = new IndexedMinHeap(nodeCount);
+        }
+
+        static WitnessSearch get(int nodeCount) {
+            WitnessSearch search = WITNESS.get();
+            if (search == null || search.stamps.length < nodeCount) {
+                search = new WitnessSearch(nodeCount);
+                WITNESS.set(search);
+            }
+            return search;
+        }
+
+        /**
+         * Sets the out neighbours of the airport that is contracted, a search stops once it settled all of them
+         */
+        void setTargets(int[] nodes, int count) {
+            if (++targetEpoch == 0) {
+                Arrays.fill(targetStamps, 0);
+                targetEpoch = 1;
+            }
+            for (int j = 0; j < count; j++) {
+                targetStamps[nodes[j]] = targetEpoch;
+            }
+            targetCount = count;
+        }
+
+        /**
+         * Searches from u in the remaining graph without v and the other airports of the round,
+         * up to a distance and a settle limit, or until every target is settled
+         */
+        void run(Contraction graph, int u, int avoid, int maxDistance, int settleLimit) {
+            if (++epoch == 0) {
+                Arrays.fill(stamps, 0);
+                epoch = 1;
+            }
+            heap.clear();
+            stamps[u] = epoch;
+            distances[u] = 0;
+            heap.insert(u, 0);
+            int settled = 0;
+            int targetsLeft = targetStamps[u] == targetEpoch ? targetCount - 1 : targetCount;
+            while (!heap.isEmpty() && settled < settleLimit && targetsLeft > 0) {
+                int current = heap.poll();
+                settled++;
+                if (current != u && targetStamps[current] == targetEpoch) targetsLeft--;
+                int distance = distances[current];
+                int[] nodes = graph.outNodes[current];
+                int[] edges = graph.outEdges[current];
+                for (int j = 0; j < graph.outSize[current]; j++) {
+                    int neighbour = nodes[j];
+                    if (neighbour == avoid || graph.inBatch[neighbour]) continue;
+                    int newDistance = distance + graph.weight[edges[j]];
+                    // paths longer than the longest possible shortcut can not be witnesses
+                    if (newDistance > maxDistance) continue;
+                    if (stamps[neighbour] != epoch) {
+                        stamps[neighbour] = epoch;
+                        distances[neighbour] = newDistance;
+                        heap.insert(neighbour, newDistance);
+                    } else if (newDistance < distances[neighbour]) {
+                        distances[neighbour] = newDistance;
+                        heap.insertOrDecrease(neighbour, newDistance);
+                    }
+                }
+            }
+        }
+
+        int distance(int node) {
+            return stamps[node] == epoch ? distances[node] : Integer.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.CsrGraph;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel single source shortest paths with delta-stepping (Meyer and Sanders), the one-to-all engine for large graphs
+ *
+ * The nodes are kept in buckets of width delta by their tentative distance. The lowest non empty bucket is processed
+ * in parallel, every node of it at the same time, instead of one node after the other like Dijkstra.
+ *
+ * Edges:
+ * - light: weight <= delta, relaxing one can put the neighbour back into the current bucket
+ * - heavy: weight > delta, the neighbour always lands in a later bucket
+ *
+ * Algorithm Steps:
+ *  1. Init
+ *      delta = maximum weight / average degree, the source gets distance 0 in bucket 0
+ *  2. Light phases
+ *      Relax the light edges of every node of the current bucket in parallel. Improved neighbours go into their
+ *      bucket, the ones that fall into the current bucket are processed in the next phase, until it stays empty
+ *  3. Heavy phase
+ *      Relax the heavy edges of every node the current bucket held, once, in parallel
+ *  4. Next bucket
+ *      Continue with the next non empty bucket until all are empty
+ *
+ * Concurrency:
+ * - The distances are one int[] updated with a compare-and-set loop through a VarHandle, without locks.
+ *   A relaxation only ever lowers a distance, so the result does not depend on the order of the threads
+ * - Each parallel task collects the nodes it improved in its own array, the buckets are filled from them
+ *   by the calling thread between the phases. Outdated bucket entries are skipped when they come up
+ * - The tasks run on the common ForkJoinPool, small frontiers are relaxed on the calling thread
+ * - The buckets are cyclic: a pending node is never more than the maximum weight above the current bucket
+ *
+ * Requires non negative weights, run() refuses a graph with a negative weight and the caller uses Dijkstra.
+ * Only distances are computed, no paths or settle order.
+ *
+ * Complexity:
+ *  - Work O(M + N) plus the relaxations repeated in the light phases, span O(L * phases)
+ *      - with M=Amount of airports, N=Amount of edges, L=largest distance / delta
+ *  - Space Complexity: O(M + maximum weight / delta)
+ */
+final class DeltaStepping {
+    static final int MIN_NODES = 20_000;          // smaller graphs are searched with Dijkstra
+    private static final int PARALLEL_FRONTIER = 256; // frontiers with fewer nodes are relaxed on the calling thread
+    private static final int CHUNK = 128;          // frontier nodes per parallel task
+    private static final VarHandle DISTANCES = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final CsrGraph graph;
+    private final boolean backward;
+    private final int[] distances;
+    private final int delta;
+    private final int[][] buckets;                 // cyclic, bucket b is buckets[b % length]
+    private final int[] bucketSizes;
+    private final int[] relaxedAt;                 // distance the light edges of a node were relaxed at
+    private final int[] inSet;                     // stamp of the last bucket a node was deduped in
+    private int pending;                           // bucket entries, outdated ones included
+
+    private DeltaStepping(CsrGraph graph, boolean backward, int[] distances, int delta, int bucketCount) {
+        this.graph = graph;
+        this.backward = backward;
+        this.distances = distances;
+        this.delta = delta;
+        this.buckets = new int[bucketCount][];
+        this.bucketSizes = new int[bucketCount];
+        int nodeCount = graph.nodeCount();
+        this.relaxedAt = new int[nodeCount];
+        this.inSet = new int[nodeCount];
+        Arrays.fill(relaxedAt, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Checks if the parallel engine is worth it for a graph
+     * @param graph graph of the one-to-all query
+     * @return true for large graphs on a machine with more than one core
+     */
+    static boolean suited(CsrGraph graph) {
+        return graph.nodeCount() >= MIN_NODES && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /**
+     * Computes the distances from one node to all nodes, or from all nodes to one node
+     * @param graph graph to search, base edges plus delta overlay
+     * @param source start node, or destination node if backward
+     * @param backward false: distances source -> v on the graph, true: distances v -> source on the reversed graph
+     * @param distances output, distance per node, Integer.MAX_VALUE if not reachable. At least nodeCount entries
+     * @return amount of reached nodes, -1 if the graph has a negative weight and nothing was computed
+     */
+    static int run(CsrGraph graph, int source, boolean backward, int[] distances) {
+        // Step 1: delta from the weights, one pass over all live edges
+        int nodeCount = graph.nodeCount();
+        int[] weights = graph.weights();
+        long[] removed = graph.removed();
+        int maxWeight = 0;
+        long edges = 0;
+        for (int e = 0; e < graph.baseEdgeCount(); e++) {
+            if (removed != null && (removed[e >>> 6] & (1L << e)) != 0) continue;
+            if (weights[e] < 0) return -1;
+            maxWeight = Math.max(maxWeight, weights[e]);
+            edges++;
+        }
+        for (int e = graph.baseEdgeCount(); e < graph.edgeCount(); e++) {
+            if (graph.weight(e) < 0) return -1;
+            maxWeight = Math.max(maxWeight, graph.weight(e));
+            edges++;
+        }
+        double degree = Math.max(1.0, (double) edges / Math.max(1, nodeCount));
+        int delta = Math.max(1, (int) (maxWeight / degree));
+        int bucketCount = maxWeight / delta + 2;
+
+        Arrays.fill(distances, 0, nodeCount, Integer.MAX_VALUE);
+        DeltaStepping search = new DeltaStepping(graph, backward, distances, delta, bucketCount);
+        distances[source] = 0;
+        search.add(source);
+        search.run();
+
+        int reached = 0;
+        for (int v = 0; v < nodeCount; v++) {
+            if (distances[v] != Integer.MAX_VALUE) reached++;
+        }
+        return reached;
+    }
+
+    private void run() {
+        int phase = 0;
+        for (long bucket = 0; pending > 0; bucket++) {
+            int slot = (int) (bucket % buckets.length);
+            if (bucketSizes[slot] == 0) continue;
+
+            // Step 2: light phases until the bucket stays empty, settled collects every node the bucket held
+            int[] settled = new int[16];
+            int settledCount = 0;
+            while (bucketSizes[slot] > 0) {
+                int[] entries = buckets[slot];
+                int size = bucketSizes[slot];
+                buckets[slot] = null;
+                bucketSizes[slot] = 0;
+                pending -= size;
+                int[] frontier = new int[size];
+                int frontierSize = 0;
+                for (int i = 0; i < size; i++) {
+                    int v = entries[i];
+                    int distance = distances[v];
+                    // outdated: the node moved to a lower bucket or its edges were already relaxed at this distance
+                    if (distance / delta != bucket || relaxedAt[v] == distance) continue;
+                    relaxedAt[v] = distance;
+                    frontier[frontierSize++] = v;
+                }
+                if (settledCount + frontierSize > settled.length) {
+                    settled = Arrays.copyOf(settled, Math.max(settled.length * 2, settledCount + frontierSize));
+                }
+                System.arraycopy(frontier, 0, settled, settledCount, frontierSize);
+                settledCount += frontierSize;
+                relaxAll(frontier, frontierSize, true);
+            }
+            settledCount = dedupe(settled, settledCount, ++phase);
+
+            // Step 3: heavy edges of the bucket, each node once with its final distance
+            relaxAll(settled, settledCount, false);
+        }
+    }
+
+    /**
+     * Removes the duplicates of the nodes of a bucket, a node can come back into the bucket in a later light phase
+     */
+    private int dedupe(int[] nodes, int count, int stamp) {
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            int v = nodes[i];
+            if (inSet[v] == stamp) continue;
+            inSet[v] = stamp;
+            nodes[unique++] = v;
+        }
+        return unique;
+    }
+
+    /**
+     * Relaxes the light or heavy edges of a set of nodes, in parallel for large sets,
+     * and puts the improved neighbours into their buckets
+     */
+    private void relaxAll(int[] nodes, int count, boolean light) {
+        if (count == 0) return;
+        if (count < PARALLEL_FRONTIER) {
+            int[] improved = relaxRange(nodes, 0, count, light);
+            addAll(improved);
+            return;
+        }
+        int chunks = (count + CHUNK - 1) / CHUNK;
+        List<int[]> improved = IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> relaxRange(nodes, c * CHUNK, Math.min(count, (c + 1) * CHUNK), light))
+                .toList();
+        for (int[] part : improved) {
+            addAll(part);
+        }
+    }
+
+    /**
+     * Relaxes the light or heavy edges of nodes[from..to), runs on a worker thread
+     * @return the improved neighbours, terminated by -1 if the array is not full
+     */
+    private int[] relaxRange(int[] nodes, int from, int to, boolean light) {
+        int[] improved = new int[16];
+        int size = 0;
+        int[] offsets;
+        int[] targets;
+        int[] weights;
+        int[] edgeIds = null;
+        long[] removed = graph.removed();
+        if (!backward) {
+            offsets = graph.offsets();
+            targets = graph.targets();
+            weights = graph.weights();
+        } else {
+            CsrGraph reverse = graph.reverseBase();
+            offsets = reverse.offsets();
+            targets = reverse.targets();
+            weights = reverse.weights();
+            edgeIds = graph.reverseEdgeIds();
+        }
+        int baseNodes = offsets.length - 1;
+
+        for (int i = from; i < to; i++) {
+            int u = nodes[i];
+            int distance = distances[u];
+            if (u < baseNodes) {
+                for (int r = offsets[u]; r < offsets[u + 1]; r++) {
+                    int e = edgeIds == null ? r : edgeIds[r];
+                    if (removed != null && (removed[e >>> 6] & (1L << e)) != 0) continue;
+                    int weight = weights[r];
+                    if ((weight <= delta) != light) continue;
+                    if (lower(targets[r], distance, weight)) {
+                        if (size == improved.length) improved = Arrays.copyOf(improved, size * 2);
+                        improved[size++] = targets[r];
+                    }
+                }
+            }
+            int[] added = backward ? graph.addedIncomingEdges(u) : graph.addedEdges(u);
+            if (added != null) {
+                for (int e : added) {
+                    int weight = graph.weight(e);
+                    if ((weight <= delta) != light) continue;
+                    int neighbor = backward ? graph.origin(e) : graph.target(e);
+                    if (lower(neighbor, distance, weight)) {
+                        if (size == improved.length) improved = Arrays.copyOf(improved, size * 2);
+                        improved[size++] = neighbor;
+                    }
+                }
+            }
+        }
+        if (size < improved.length) improved[size] = -1;
+        return improved;
+    }
+
+    /**
+     * Lowers the distance of a node with a compare-and-set loop
+     * @return true if this call lowered it
+     */
+    private boolean lower(int node, int distance, int weight) {
+        long candidate = (long) distance + weight;
+        if (candidate >= Integer.MAX_VALUE) return false;
+        int value = (int) candidate;
+        int current = (int) DISTANCES.getVolatile(distances, node);
+        while (value < current) {
+            if (DISTANCES.compareAndSet(distances, node, current, value)) return true;
+            current = (int) DISTANCES.getVolatile(distances, node);
+        }
+        return false;
+    }
+
+    private void addAll(int[] improved) {
+        for (int v : improved) {
+            if (v < 0) break;
+            add(v);
+        }
+    }
+
+    /**
+     * Puts a node into the bucket of its current distance
+     */
+    private void add(int node) {
+        int slot = (distances[node] / delta) % buckets.length;
+        int[] bucket = buckets[slot];
+        if (bucket == null) {
+            bucket = new int[8];
+            buckets[slot] = bucket;
+        } else if (bucketSizes[slot] == bucket.length) {
+            bucket = Arrays.copyOf(bucket, bucket.length * 2);
+            buckets[slot] = bucket;
+        }
+        bucket[bucketSizes[slot]++] = node;
+        pending++;
+    }
+}
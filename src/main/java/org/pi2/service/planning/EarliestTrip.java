@@ -0,0 +1,84 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.Flight;
+
+import java.util.List;
+
+/**
+ * The trip of criteria "earliest", the scheduled flights that land first after a given departure time
+ */
+public class EarliestTrip {
+    private final String departureTime;      // departure of the first flight, "HH:mm"
+    private final String arrivalTime;        // arrival of the last flight, "HH:mm"
+    private final int arrivalDay;            // days after the day of departure the trip lands, 0 for the same day
+    private final int travelTimeInMinutes;   // from the requested departure time to the arrival
+    private final int totalCostInEuros;      // sum of the flight costs
+    private final List<Flight> flights;      // flights in travel order
+
+    /**
+     * Constructor creates the trip object
+     * @param departureTime departure of the first flight, "HH:mm"
+     * @param arrivalTime arrival of the last flight, "HH:mm"
+     * @param arrivalDay days after the day of departure the trip lands
+     * @param travelTimeInMinutes minutes from the requested departure time to the arrival
+     * @param totalCostInEuros sum of the flight costs
+     * @param flights flights in travel order
+     */
+    public EarliestTrip(String departureTime, String arrivalTime, int arrivalDay, int travelTimeInMinutes,
+                        int totalCostInEuros, List<Flight> flights) {
+        this.departureTime = departureTime;
+        this.arrivalTime = arrivalTime;
+        this.arrivalDay = arrivalDay;
+        this.travelTimeInMinutes = travelTimeInMinutes;
+        this.totalCostInEuros = totalCostInEuros;
+        this.flights = flights;
+    }
+
+    /**
+     * Get the departure of the first flight
+     * @return time as "HH:mm"
+     */
+    public String getDepartureTime() {
+        return departureTime;
+    }
+
+    /**
+     * Get the arrival of the last flight
+     * @return time as "HH:mm"
+     */
+    public String getArrivalTime() {
+        return arrivalTime;
+    }
+
+    /**
+     * Get the day of the arrival
+     * @return days after the day of departure, 0 for the same day
+     */
+    public int getArrivalDay() {
+        return arrivalDay;
+    }
+
+    /**
+     * Get the travel time including the wait for the first flight
+     * @return minutes from the requested departure time to the arrival
+     */
+    public int getTravelTimeInMinutes() {
+        return travelTimeInMinutes;
+    }
+
+    /**
+     * Get the total cost of the trip
+     * @return cost in euros
+     */
+    public int getTotalCostInEuros() {
+        return totalCostInEuros;
+    }
+
+    /**
+     * Get the flights of the trip
+     * @return flights in travel order
+     */
+    public List<Flight> getFlights() {
+        return flights;
+    }
+}
@@ -0,0 +1,23 @@
+package org.pi2.service.planning;
+
+/**
+ * Plug-in weighting of the flight graph edges, for trips that optimize a mix of cost, distance and legs
+ *
+ * The weighting is never called inside a search. TripPlannerFlight calls it once per edge of a network version
+ * and keeps the result as a primitive int[] indexed by edge id (see TripPlannerFlight.planTrip with an EdgeWeight),
+ * the search kernel then only reads that array. The arrays are cached by weighting and network version,
+ * so implementations have to be immutable and compare equal if they weigh every edge the same (a record does both).
+ *
+ * Weights have to be non negative, Dijkstra does not work with negative edges. A negative weight marks an edge the
+ * trip must not use.
+ */
+public interface EdgeWeight {
+
+    /**
+     * Weighs one edge of the flight graph, an edge is one (origin, destination) pair with its cheapest flight
+     * @param cost cost of the cheapest flight of the pair in euros
+     * @param distance distance of the shortest route of the pair in km, -1 if the pair has no route
+     * @return weight of the edge, negative if the edge must not be used
+     */
+    int weight(int cost, int distance);
+}
@@ -0,0 +1,92 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.CsrGraph;
+
+import java.util.Arrays;
+
+/**
+ * Every airport reachable from one origin within a budget, on one graph version, sorted by distance or cost
+ * Computed by one budget-bounded search (ShortestPathKernel.withinBudget) and cached by the flight planner,
+ * a later query with a smaller or equal budget is answered from the prefix of the arrays
+ */
+final class Exploration {
+    private final int budget;       // budget of the search, every reachable node up to it is included
+    private final int[] nodes;      // reached nodes by increasing value
+    private final int[] values;     // distance or cost per entry of nodes
+    private final int[] hops;       // amount of legs per entry of nodes
+
+    private Exploration(int budget, int[] nodes, int[] values, int[] hops) {
+        this.budget = budget;
+        this.nodes = nodes;
+        this.values = values;
+        this.hops = hops;
+    }
+
+    /**
+     * Runs the search
+     * @param graph graph to search, base edges plus delta overlay
+     * @param source origin node
+     * @param budget largest distance or cost that is included
+     * @return the reachable nodes of the origin
+     */
+    static Exploration search(CsrGraph graph, int source, int budget) {
+        int nodeCount = graph.nodeCount();
+        int[] nodes = new int[nodeCount];
+        int[] values = new int[nodeCount];
+        int[] hops = new int[nodeCount];
+        int count = ShortestPathKernel.withinBudget(graph, source, budget, nodes, values, hops);
+        return new Exploration(budget, Arrays.copyOf(nodes, count), Arrays.copyOf(values, count), Arrays.copyOf(hops, count));
+    }
+
+    /**
+     * Checks if a query can be answered from this result
+     * @param requested budget of the query
+     * @return true if the search covered at least the requested budget
+     */
+    boolean covers(int requested) {
+        return requested <= budget;
+    }
+
+    /**
+     * Get the amount of entries within a budget, the values are sorted so it is a binary search
+     * @param requested budget of the query, at most the budget of the search
+     * @return amount of leading entries with a value up to the budget
+     */
+    int countWithin(int requested) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] <= requested) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Get the node of an entry
+     * @param index position in the sorted result
+     * @return node id
+     */
+    int node(int index) {
+        return nodes[index];
+    }
+
+    /**
+     * Get the distance or cost of an entry
+     * @param index position in the sorted result
+     * @return distance or cost from the origin
+     */
+    int value(int index) {
+        return values[index];
+    }
+
+    /**
+     * Get the amount of legs of an entry
+     * @param index position in the sorted result
+     * @return legs of the path the search found
+     */
+    int hops(int index) {
+        return hops[index];
+    }
+}
@@ -0,0 +1,105 @@
+package org.pi2.service.planning;
+
+import java.util.List;
+
+/**
+ * One page of the airports reachable from an origin within a budget, returned by the /explore endpoint
+ * The destinations are sorted by increasing distance or cost
+ */
+public class ExploreResult {
+    private final String origin;                     // IATA code of the origin
+    private final String criteria;                   // "shortest" or "cheapest"
+    private final String unit;                       // "km" or "EUR"
+    private final long networkVersion;               // version of the network the result was computed on
+    private final Integer budget;                    // largest distance or cost, null if unbounded
+    private final int total;                         // amount of destinations within the budget, all pages
+    private final int offset;                        // index of the first destination of this page
+    private final List<ReachableAirport> destinations; // the destinations of this page
+
+    /**
+     * Constructor creates the result object
+     * @param origin IATA code of the origin
+     * @param criteria criterion of the exploration
+     * @param unit unit of the values
+     * @param networkVersion version of the network the result was computed on
+     * @param budget largest distance or cost, null if unbounded
+     * @param total amount of destinations within the budget
+     * @param offset index of the first destination of this page
+     * @param destinations the destinations of this page
+     */
+    public ExploreResult(String origin, String criteria, String unit, long networkVersion, Integer budget, int total,
+                         int offset, List<ReachableAirport> destinations) {
+        this.origin = origin;
+        this.criteria = criteria;
+        this.unit = unit;
+        this.networkVersion = networkVersion;
+        this.budget = budget;
+        this.total = total;
+        this.offset = offset;
+        this.destinations = destinations;
+    }
+
+    /**
+     * Get the origin of the exploration
+     * @return IATA code
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    /**
+     * Get the criterion of the exploration
+     * @return "shortest" or "cheapest"
+     */
+    public String getCriteria() {
+        return criteria;
+    }
+
+    /**
+     * Get the unit of the values
+     * @return "km" or "EUR"
+     */
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * Get the version of the network the result was computed on
+     * @return network version
+     */
+    public long getNetworkVersion() {
+        return networkVersion;
+    }
+
+    /**
+     * Get the budget of the exploration
+     * @return largest distance or cost, null if unbounded
+     */
+    public Integer getBudget() {
+        return budget;
+    }
+
+    /**
+     * Get the amount of destinations within the budget
+     * @return destinations of all pages
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Get the position of this page
+     * @return index of the first destination of this page
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Get the destinations of this page
+     * @return destinations by increasing distance or cost
+     */
+    public List<ReachableAirport> getDestinations() {
+        return destinations;
+    }
+}
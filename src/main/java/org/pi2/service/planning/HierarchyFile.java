@@ -0,0 +1,158 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.CsrGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary file format for contraction hierarchies, so a restart does not have to contract the network again
+ *
+ * Written next to the network snapshot file, one file per graph, with the same memory mapped layout:
+ * - Header (48 bytes): magic, format version, fingerprint of the contracted base, node and edge count,
+ *   payload length and CRC32C checksum of the payload
+ * - Rank per airport
+ * - Per hierarchy edge: origin, target, weight, first and second half
+ *
+ * A file is only used if magic, format version, checksum and the fingerprint of the current graph base match.
+ * The fingerprint is computed from the base arrays, so a hierarchy fits every network with the same routes or flights,
+ * no matter if it was loaded from the snapshot file or the database.
+ */
+final class HierarchyFile {
+    private static final Logger log = LoggerFactory.getLogger(HierarchyFile.class);
+
+    private static final int MAGIC = 0x464E4331; // "FNC1"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 48;
+
+    private HierarchyFile() {
+    }
+
+    /**
+     * Writes a hierarchy to a file, through a temporary file that then replaces the target
+     * @param hierarchy hierarchy to write
+     * @param graph graph the hierarchy was built on, its base is fingerprinted
+     * @param file target file
+     * @throws IOException if writing fails
+     */
+    static void write(ContractionHierarchy hierarchy, CsrGraph graph, Path file) throws IOException {
+        long start = System.nanoTime();
+        int nodeCount = hierarchy.nodeCount();
+        int edgeCount = hierarchy.edgeCount();
+        long payload = 4L * nodeCount + 20L * edgeCount;
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + payload);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            // Payload
+            buffer.position(HEADER_SIZE);
+            putInts(buffer, hierarchy.rank);
+            putInts(buffer, hierarchy.edgeSource);
+            putInts(buffer, hierarchy.edgeTarget);
+            putInts(buffer, hierarchy.edgeWeight);
+            putInts(buffer, hierarchy.edgeFirst);
+            putInts(buffer, hierarchy.edgeSecond);
+
+            // Header with the checksum of the payload
+            buffer.position(0);
+            buffer.putInt(MAGIC);
+            buffer.putInt(FORMAT_VERSION);
+            buffer.putLong(ContractionHierarchy.fingerprint(graph.withoutOverlay()));
+            buffer.putInt(nodeCount);
+            buffer.putInt(edgeCount);
+            buffer.putLong(payload);
+            buffer.putLong(checksum(buffer, payload));
+            buffer.force();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Wrote contraction hierarchy {} ({} bytes) in {} ms", file, HEADER_SIZE + payload, (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Reads a hierarchy from a memory mapped file
+     * @param file hierarchy file
+     * @param graph graph the hierarchy is needed for, the file must have been written for the same base
+     * @return the hierarchy, or null if the file is missing, belongs to another base, is corrupt or of another format
+     */
+    static ContractionHierarchy read(Path file, CsrGraph graph) {
+        if (!Files.isRegularFile(file)) return null;
+        long start = System.nanoTime();
+        CsrGraph base = graph.withoutOverlay();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) return reject(file, "file too small");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            // Header checks
+            if (buffer.getInt() != MAGIC) return reject(file, "unknown file type");
+            if (buffer.getInt() != FORMAT_VERSION) return reject(file, "other format version");
+            if (buffer.getLong() != ContractionHierarchy.fingerprint(base)) return reject(file, "network changed");
+            int nodeCount = buffer.getInt();
+            int edgeCount = buffer.getInt();
+            long payload = buffer.getLong();
+            if (payload != size - HEADER_SIZE || payload != 4L * nodeCount + 20L * edgeCount) return reject(file, "truncated");
+            long checksum = buffer.getLong();
+            if (checksum(buffer, payload) != checksum) return reject(file, "checksum mismatch");
+            if (nodeCount != base.nodeCount()) return reject(file, "other airport count");
+
+            buffer.position(HEADER_SIZE);
+            int[] rank = getInts(buffer, nodeCount);
+            int[] edgeSource = getInts(buffer, edgeCount);
+            int[] edgeTarget = getInts(buffer, edgeCount);
+            int[] edgeWeight = getInts(buffer, edgeCount);
+            int[] edgeFirst = getInts(buffer, edgeCount);
+            int[] edgeSecond = getInts(buffer, edgeCount);
+            for (int e = 0; e < edgeCount; e++) {
+                boolean inRange = edgeSource[e] >= 0 && edgeSource[e] < nodeCount && edgeTarget[e] >= 0 && edgeTarget[e] < nodeCount
+                        && (edgeFirst[e] < 0 ? edgeSecond[e] >= 0 && edgeSecond[e] < base.baseEdgeCount()
+                        : edgeFirst[e] < edgeCount && edgeSecond[e] >= 0 && edgeSecond[e] < edgeCount);
+                if (!inRange) return reject(file, "edge " + e + " out of range");
+            }
+            ContractionHierarchy hierarchy = new ContractionHierarchy(base, rank, edgeSource, edgeTarget, edgeWeight,
+                    edgeFirst, edgeSecond, 0);
+            log.info("Read contraction hierarchy {} with {} edges in {} ms", file, edgeCount, (System.nanoTime() - start) / 1e6);
+            return hierarchy;
+        } catch (IOException | RuntimeException e) {
+            // a damaged file only costs a new contraction
+            return reject(file, e.toString());
+        }
+    }
+
+    private static ContractionHierarchy reject(Path file, String reason) {
+        log.info("Not using contraction hierarchy {}: {}", file, reason);
+        return null;
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + values.length * 4);
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        IntBuffer ints = buffer.asIntBuffer();
+        ints.get(values);
+        buffer.position(buffer.position() + count * 4);
+        return values;
+    }
+
+    private static long checksum(ByteBuffer buffer, long payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(HEADER_SIZE, (int) payload));
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,141 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.CsrGraph;
+import org.pi2.model.FlightNetwork;
+import org.pi2.model.NetworkSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Keeps the contraction hierarchy of one graph of the network (routes or flights) up to date
+ *
+ * - Every new base of the graph (startup, reload, compaction) is contracted on a background thread
+ * - With a file configured, the hierarchy is read from the file if it belongs to the same base,
+ *   and written to it after every new contraction, so a restart does not contract again
+ * - Until the hierarchy of the current base exists, and while the graph has changes in its overlay,
+ *   get() returns null and the planners use their other searches
+ */
+final class HierarchyHolder {
+    private static final Logger log = LoggerFactory.getLogger(HierarchyHolder.class);
+
+    // One background thread for all hierarchies, the contraction itself runs in parallel
+    private static final ExecutorService BUILDER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hierarchy-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;                             // "route" or "flight", for the log
+    private final Function<NetworkSnapshot, CsrGraph> graphOf;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final FlightNetwork network;
+    private volatile boolean enabled;                      // off until configured
+    private volatile Path file;                            // null keeps the hierarchy in memory only
+    private volatile ContractionHierarchy hierarchy;       // hierarchy of the latest contracted base
+    private volatile Path persistedTo;                     // file the current hierarchy was read from or written to
+
+    /**
+     * Constructor registers the holder for every new snapshot of the network
+     * @param name name of the graph, for the log
+     * @param graphOf picks the graph out of a snapshot
+     * @param network network whose graph is contracted
+     */
+    HierarchyHolder(String name, Function<NetworkSnapshot, CsrGraph> graphOf, FlightNetwork network) {
+        this.name = name;
+        this.graphOf = graphOf;
+        this.network = network;
+        network.addSnapshotListener(snapshot -> schedule());
+    }
+
+    /**
+     * Switches the hierarchy on or off and sets its file
+     * @param enabled true to contract every new base
+     * @param file file to persist the hierarchy in, null for none
+     */
+    void configure(boolean enabled, Path file) {
+        this.enabled = enabled;
+        this.file = file;
+        if (!enabled) hierarchy = null;
+        schedule();
+    }
+
+    /**
+     * Returns the hierarchy if it may answer a query on the graph
+     * @param graph graph the query runs on
+     * @param source start node
+     * @param target destination node
+     * @return the hierarchy, null if the query has to use another search
+     */
+    ContractionHierarchy get(CsrGraph graph, int source, int target) {
+        ContractionHierarchy current = hierarchy;
+        return enabled && current != null && current.covers(graph, source, target) ? current : null;
+    }
+
+    /**
+     * Queues a contraction, several requests while one is queued collapse into one
+     */
+    private void schedule() {
+        if (enabled && scheduled.compareAndSet(false, true)) {
+            BUILDER.execute(() -> {
+                scheduled.set(false);
+                build();
+            });
+        }
+    }
+
+    /**
+     * Reads or contracts the hierarchy of the current base, unless the current hierarchy already belongs to it
+     * Runs on the builder thread
+     */
+    private void build() {
+        try {
+            if (!enabled) return;
+            CsrGraph graph = graphOf.apply(network.getSnapshot());
+            Path target = file;
+            ContractionHierarchy current = hierarchy;
+            if (current != null && current.sameBase(graph)) {
+                // same base, maybe a file was configured since the contraction
+                if (target != null && !target.equals(persistedTo)) persist(current, graph, target);
+                return;
+            }
+            // Right after a CSV import everything is still in the overlay, the next compaction creates the base
+            if (graph.baseEdgeCount() == 0) {
+                hierarchy = null;
+                return;
+            }
+            ContractionHierarchy built = target == null ? null : HierarchyFile.read(target, graph);
+            if (built != null) {
+                hierarchy = built;
+                persistedTo = target;
+                return;
+            }
+            built = ContractionHierarchy.build(graph);
+            hierarchy = built;
+            persistedTo = null;
+            log.info(String.format("Contracted %s graph with %d airports in %.1f ms, %d shortcuts",
+                    name, built.nodeCount(), built.preprocessingMillis(), built.shortcutCount()));
+            if (target != null) persist(built, graph, target);
+        } catch (RuntimeException e) {
+            log.error("Contraction of the {} graph failed", name, e);
+        }
+    }
+
+    /**
+     * Writes the hierarchy to its file, a failed write only costs a contraction after the next restart
+     */
+    private void persist(ContractionHierarchy built, CsrGraph graph, Path target) {
+        try {
+            HierarchyFile.write(built, graph, target);
+            persistedTo = target;
+        } catch (IOException e) {
+            log.warn("Could not write contraction hierarchy {}: {}", target, e.toString());
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.CsrGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Yen's algorithm for the K shortest loopless paths between two nodes of a graph
+ *
+ * Algorithm Steps:
+ *  1. Init
+ *      One backward search from the target computes the exact remaining distance of every node on the whole graph.
+ *      The first path is the shortest path
+ *  2. Spur searches
+ *      For every node of the last accepted path (the spur node) the path up to it is the root. A spur search
+ *      looks for the shortest path from the spur node to the target without the nodes of the root and without
+ *      the next edge of every accepted path that shares the root. Root plus spur is a new candidate
+ *  3. Selection
+ *      The cheapest candidate becomes the next accepted path, repeat 2. until K paths are accepted
+ *      or no candidate is left
+ *
+ * Optimizations:
+ * - The spur searches of one path are independent and run in parallel on the common ForkJoin pool,
+ *   each worker thread searches with its own SearchScratch
+ * - The remaining distances of step 1 are lower bounds of every spur path, removing nodes and edges only makes
+ *   paths longer. They steer the spur searches as A* potentials (ShortestPathKernel.shortestPathRestricted)
+ *   and prune: if K-|accepted| candidates are known, a spur whose root cost plus lower bound is not below
+ *   the cost of the last of them can not improve the result and is not searched, and a search stops at that cost
+ * - Candidates are deduplicated with a 64 bit hash of their edge sequence, the same path is often found
+ *   again from another root
+ *
+ * Complexity:
+ *  - Time complexity O(K*L*(M+N)*log M)
+ *      - with L=Amount of edges of a path, M=Amount of airports, N=Amount of edges
+ *  - Space Complexity: O(M + K*L) plus the candidates
+ */
+final class KShortestPaths {
+    private static final int[] NO_NODES = new int[0];
+
+    private KShortestPaths() {
+    }
+
+    /**
+     * Candidate path, equal if the edge sequence is equal
+     * @param edges edge ids in travel order
+     * @param cost total weight
+     * @param hash hash of the edge sequence
+     */
+    private record Candidate(int[] edges, long cost, long hash) {
+        private static final Comparator<Candidate> ORDER = Comparator.comparingLong(Candidate::cost)
+                .thenComparingInt(candidate -> candidate.edges.length)
+                .thenComparing(Candidate::edges, Arrays::compare);
+
+        static Candidate of(int[] edges, long cost) {
+            long hash = 1;
+            for (int edge : edges) {
+                hash = (hash ^ edge) * 0x100000001B3L;   // FNV-1a over the edge ids
+            }
+            return new Candidate(edges, cost, hash);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Candidate candidate && hash == candidate.hash && Arrays.equals(edges, candidate.edges);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash);
+        }
+    }
+
+    /**
+     * Finds the K shortest loopless paths
+     * @param graph graph to search, base edges plus delta overlay
+     * @param source start node
+     * @param target destination node
+     * @param k maximum amount of paths
+     * @return edge ids of the paths in travel order, by increasing total weight, fewer than k if there are no more paths
+     */
+    static List<int[]> find(CsrGraph graph, int source, int target, int k) {
+        List<int[]> accepted = new ArrayList<>();
+        if (k <= 0 || source == target) return accepted;
+
+        // Step 1: Init, exact remaining distances on the whole graph
+        int[] remaining = new int[graph.nodeCount()];
+        ShortestPathKernel.oneToAll(graph, target, true, remaining, null, null);
+        if (remaining[source] == Integer.MAX_VALUE) return accepted;
+        int[] first = ShortestPathKernel.shortestPathRestricted(graph, source, target, remaining,
+                NO_NODES, NO_NODES, Long.MAX_VALUE);
+        if (first.length == 0) return accepted;
+        accepted.add(first);
+
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Candidate.ORDER);
+        Set<Candidate> seen = new HashSet<>();
+        seen.add(Candidate.of(first, remaining[source]));
+
+        while (accepted.size() < k) {
+            int[] previous = accepted.get(accepted.size() - 1);
+            int[] nodes = new int[previous.length + 1];
+            long[] rootCosts = new long[previous.length + 1];
+            nodes[0] = source;
+            for (int i = 0; i < previous.length; i++) {
+                nodes[i + 1] = graph.target(previous[i]);
+                rootCosts[i + 1] = rootCosts[i] + graph.weight(previous[i]);
+            }
+            long limit = limit(candidates, k - accepted.size());
+
+            // Step 2: Spur searches of all nodes of the previous path, in parallel
+            List<Candidate> found = IntStream.range(0, previous.length).parallel()
+                    .mapToObj(i -> spur(graph, target, remaining, accepted, previous, nodes, rootCosts, i, limit))
+                    .filter(Objects::nonNull)
+                    .toList();
+            for (Candidate candidate : found) {
+                if (seen.add(candidate)) candidates.add(candidate);
+            }
+
+            // Step 3: Selection
+            Candidate best = candidates.poll();
+            if (best == null) break;
+            accepted.add(best.edges());
+        }
+        return accepted;
+    }
+
+    /**
+     * Cost a candidate has to stay below to still be among the K shortest paths
+     * @param candidates known candidates
+     * @param missing amount of paths still to accept
+     * @return cost of the missing-th cheapest candidate, Long.MAX_VALUE if there are fewer candidates
+     */
+    private static long limit(PriorityQueue<Candidate> candidates, int missing) {
+        if (candidates.size() < missing) return Long.MAX_VALUE;
+        return candidates.stream().mapToLong(Candidate::cost).sorted().skip(missing - 1).findFirst().orElse(Long.MAX_VALUE);
+    }
+
+    /**
+     * Searches the spur path of one node of the previous path
+     * @return root plus spur path, null if there is none below the limit
+     */
+    private static Candidate spur(CsrGraph graph, int target, int[] remaining, List<int[]> accepted, int[] previous,
+                                  int[] nodes, long[] rootCosts, int index, long limit) {
+        int spurNode = nodes[index];
+        long rootCost = rootCosts[index];
+        if (rootCost + remaining[spurNode] >= limit) return null;
+
+        // The next edge of every accepted path with the same root must not be taken again
+        int[] bannedEdges = new int[accepted.size()];
+        int banned = 0;
+        for (int[] path : accepted) {
+            if (path.length > index && Arrays.equals(path, 0, index, previous, 0, index)) {
+                bannedEdges[banned++] = path[index];
+            }
+        }
+        // The nodes of the root must not be visited again, the path stays loopless
+        int[] bannedNodes = Arrays.copyOf(nodes, index);
+
+        long maxCost = limit == Long.MAX_VALUE ? Long.MAX_VALUE : limit - rootCost;
+        int[] spur = ShortestPathKernel.shortestPathRestricted(graph, spurNode, target, remaining, bannedNodes,
+                Arrays.copyOf(bannedEdges, banned), maxCost);
+        if (spur.length == 0) return null;
+
+        int[] edges = new int[index + spur.length];
+        System.arraycopy(previous, 0, edges, 0, index);
+        System.arraycopy(spur, 0, edges, index, spur.length);
+        long cost = rootCost;
+        for (int edge : spur) {
+            cost += graph.weight(edge);
+        }
+        return Candidate.of(edges, cost);
+    }
+}
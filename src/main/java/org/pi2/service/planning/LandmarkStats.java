@@ -0,0 +1,165 @@
+package org.pi2.service.planning;
+
+/**
+ * Statistics about the landmark preprocessing of the "cheapest" search and its effect on the settled nodes
+ * Returned by the /stats endpoint
+ *
+ * The sample values come from random queries run right after the preprocessing, each one with plain Dijkstra,
+ * the bidirectional Dijkstra and the landmark search. The query values count the real queries since the start.
+ */
+public class LandmarkStats {
+    private final int landmarkCount;                 // amount of landmarks, 0 if disabled or not built yet
+    private final String selection;                  // strategy the landmarks were picked with
+    private final long networkVersion;               // version whose base was preprocessed
+    private final double preprocessingMillis;        // duration of selection and tables
+    private final int sampleQueries;                 // amount of sample queries
+    private final double averageSettledDijkstra;     // settled nodes per sample query, unidirectional Dijkstra
+    private final double averageSettledBidirectional; // settled nodes per sample query, bidirectional Dijkstra
+    private final double averageSettledLandmarks;    // settled nodes per sample query, landmark search
+    private final double settledReductionPercent;    // how many settled nodes the landmarks save compared to Dijkstra
+    private final long landmarkQueries;              // real queries that used the landmarks
+    private final long fallbackQueries;              // real queries that fell back to Dijkstra
+    private final double averageSettledPerQuery;     // settled nodes per real landmark query
+
+    /**
+     * Constructor creates the statistics object
+     * @param landmarkCount amount of landmarks
+     * @param selection selection strategy
+     * @param networkVersion version whose base was preprocessed
+     * @param preprocessingMillis duration of the preprocessing in milliseconds
+     * @param sampleQueries amount of sample queries
+     * @param averageSettledDijkstra settled nodes per sample query with unidirectional Dijkstra
+     * @param averageSettledBidirectional settled nodes per sample query with bidirectional Dijkstra
+     * @param averageSettledLandmarks settled nodes per sample query with the landmark search
+     * @param landmarkQueries real queries that used the landmarks
+     * @param fallbackQueries real queries that fell back to Dijkstra
+     * @param averageSettledPerQuery settled nodes per real landmark query
+     */
+    public LandmarkStats(int landmarkCount, String selection, long networkVersion, double preprocessingMillis,
+                         int sampleQueries, double averageSettledDijkstra, double averageSettledBidirectional,
+                         double averageSettledLandmarks, long landmarkQueries, long fallbackQueries,
+                         double averageSettledPerQuery) {
+        this.landmarkCount = landmarkCount;
+        this.selection = selection;
+        this.networkVersion = networkVersion;
+        this.preprocessingMillis = preprocessingMillis;
+        this.sampleQueries = sampleQueries;
+        this.averageSettledDijkstra = averageSettledDijkstra;
+        this.averageSettledBidirectional = averageSettledBidirectional;
+        this.averageSettledLandmarks = averageSettledLandmarks;
+        this.settledReductionPercent = averageSettledDijkstra == 0 ? 0
+                : 100.0 * (1 - averageSettledLandmarks / averageSettledDijkstra);
+        this.landmarkQueries = landmarkQueries;
+        this.fallbackQueries = fallbackQueries;
+        this.averageSettledPerQuery = averageSettledPerQuery;
+    }
+
+    /**
+     * Returns a copy with the current counters of the real queries
+     * @param landmarkQueries real queries that used the landmarks
+     * @param fallbackQueries real queries that fell back to Dijkstra
+     * @param averageSettledPerQuery settled nodes per real landmark query
+     * @return statistics with the new counters
+     */
+    LandmarkStats withQueries(long landmarkQueries, long fallbackQueries, double averageSettledPerQuery) {
+        return new LandmarkStats(landmarkCount, selection, networkVersion, preprocessingMillis, sampleQueries,
+                averageSettledDijkstra, averageSettledBidirectional, averageSettledLandmarks,
+                landmarkQueries, fallbackQueries, averageSettledPerQuery);
+    }
+
+    /**
+     * Get the amount of landmarks
+     * @return landmark count, 0 if disabled or not built yet
+     */
+    public int getLandmarkCount() {
+        return landmarkCount;
+    }
+
+    /**
+     * Get the strategy the landmarks were picked with
+     * @return selection strategy
+     */
+    public String getSelection() {
+        return selection;
+    }
+
+    /**
+     * Get the version whose base was preprocessed
+     * @return network version
+     */
+    public long getNetworkVersion() {
+        return networkVersion;
+    }
+
+    /**
+     * Get the duration of the preprocessing
+     * @return duration in milliseconds
+     */
+    public double getPreprocessingMillis() {
+        return preprocessingMillis;
+    }
+
+    /**
+     * Get the amount of sample queries
+     * @return sample queries
+     */
+    public int getSampleQueries() {
+        return sampleQueries;
+    }
+
+    /**
+     * Get the settled nodes per sample query of the unidirectional Dijkstra
+     * @return average settled nodes
+     */
+    public double getAverageSettledDijkstra() {
+        return averageSettledDijkstra;
+    }
+
+    /**
+     * Get the settled nodes per sample query of the bidirectional Dijkstra
+     * @return average settled nodes
+     */
+    public double getAverageSettledBidirectional() {
+        return averageSettledBidirectional;
+    }
+
+    /**
+     * Get the settled nodes per sample query of the landmark search
+     * @return average settled nodes
+     */
+    public double getAverageSettledLandmarks() {
+        return averageSettledLandmarks;
+    }
+
+    /**
+     * Get how many settled nodes the landmark search saves compared to the unidirectional Dijkstra
+     * @return reduction in percent
+     */
+    public double getSettledReductionPercent() {
+        return settledReductionPercent;
+    }
+
+    /**
+     * Get the amount of real queries that used the landmarks
+     * @return landmark queries
+     */
+    public long getLandmarkQueries() {
+        return landmarkQueries;
+    }
+
+    /**
+     * Get the amount of real queries that fell back to Dijkstra, e.g. because of new flights since the preprocessing
+     * @return fallback queries
+     */
+    public long getFallbackQueries() {
+        return fallbackQueries;
+    }
+
+    /**
+     * Get the settled nodes per real landmark query
+     * @return average settled nodes
+     */
+    public double getAverageSettledPerQuery() {
+        return averageSettledPerQuery;
+    }
+}
@@ -0,0 +1,330 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.CsrGraph;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * ALT preprocessing (A*, Landmarks, Triangle inequality) of one graph base
+ *
+ * A few airports are picked as landmarks L. For every airport v the costs d(L,v) and d(v,L) are stored.
+ * By the triangle inequality the cost from v to a target t is at least
+ *  - d(L,t) - d(L,v)   (going from L to t over v can not be cheaper than going from L to t)
+ *  - d(v,L) - d(t,L)   (going from v to L over t can not be cheaper than going from v to L)
+ * The maximum over all landmarks is a lower bound that steers the A* search of ShortestPathKernel towards the target.
+ * If one of the tables shows that t can not be reached from v, the search skips v completely.
+ *
+ * Selection of the landmarks:
+ * - FARTHEST: every new landmark is the airport farthest away from the landmarks so far
+ * - AVOID: grows a shortest path tree from a random airport and follows the branch the current landmarks
+ *   bound worst down to a leaf, the leaf becomes the next landmark. Gives better bounds than FARTHEST on most graphs
+ * Both need the forward table of the landmarks chosen so far, so the forward tables are computed one after another
+ * while selecting. The backward tables are independent and are computed in parallel, one search per landmark.
+ *
+ * Tables:
+ * - Node major, the costs of all landmarks of a node lie next to each other: table[node * count + landmark]
+ * - Integer.MAX_VALUE if the node is not connected to the landmark in that direction
+ *
+ * Validity:
+ * - The tables are computed on the base edges of a graph without its overlay
+ * - Removing edges only makes costs larger, so the bounds stay valid for every graph of the same base
+ *   whose overlay only has tombstones
+ * - An added edge (new flight, or a cheaper flight between two airports) can make a cost smaller,
+ *   the bounds could overestimate. The planner falls back to Dijkstra until the next base is preprocessed
+ *
+ * Complexity:
+ *  - Preprocessing: 2*K one-to-all searches, O(K*(M+N)*log M) with K=Amount of landmarks
+ *  - Space Complexity: O(K*M)
+ */
+public final class Landmarks {
+
+    /**
+     * Strategy to pick the landmark airports
+     */
+    public enum Selection {
+        FARTHEST,
+        AVOID
+    }
+
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final long SEED = 0x5EEDL; // fixed, so the same network always gets the same landmarks
+
+    private final CsrGraph base;         // base the tables were computed on
+    private final int nodeCount;         // airports of the base, later airports have no table entries
+    private final int count;             // amount of landmarks
+    private final int requested;         // amount of landmarks asked for, more than count on small graphs
+    private final int[] nodes;           // node id of every landmark
+    private final int[] fromLandmark;    // d(L_i, v) at v * count + i
+    private final int[] toLandmark;      // d(v, L_i) at v * count + i
+    private final Selection selection;
+    private final long preprocessingNanos;
+
+    private Landmarks(CsrGraph base, int requested, int[] nodes, int[] fromLandmark, int[] toLandmark,
+                      Selection selection, long preprocessingNanos) {
+        this.base = base;
+        this.nodeCount = base.nodeCount();
+        this.count = nodes.length;
+        this.requested = requested;
+        this.nodes = nodes;
+        this.fromLandmark = fromLandmark;
+        this.toLandmark = toLandmark;
+        this.selection = selection;
+        this.preprocessingNanos = preprocessingNanos;
+    }
+
+    /**
+     * Picks the landmarks of a graph base and computes their cost tables
+     * @param graph graph whose base is preprocessed, the overlay is ignored
+     * @param count amount of landmarks, at most the amount of airports with flights
+     * @param selection strategy to pick the landmarks
+     * @return the preprocessed landmarks
+     */
+    public static Landmarks build(CsrGraph graph, int count, Selection selection) {
+        long start = System.nanoTime();
+        CsrGraph base = graph.withoutOverlay();
+        int nodeCount = base.nodeCount();
+        boolean[] connected = connectedNodes(base);
+        int candidates = 0;
+        for (boolean c : connected) if (c) candidates++;
+        int requested = count;
+        count = Math.max(0, Math.min(count, candidates));
+
+        // Selection, sequential: each landmark depends on the forward tables of the ones before
+        int[] nodes = new int[count];
+        int[][] forward = new int[count][];
+        boolean[] isLandmark = new boolean[nodeCount];
+        Random random = new Random(SEED);
+        int[] distances = new int[nodeCount];
+        int[] parents = new int[nodeCount];
+        int[] order = new int[nodeCount];
+        int[] nearest = new int[nodeCount];  // cost from the closest landmark so far, FARTHEST only
+        Arrays.fill(nearest, UNREACHABLE);
+        for (int i = 0; i < count; i++) {
+            int landmark = -1;
+            if (selection == Selection.AVOID) {
+                landmark = avoid(base, forward, i, isLandmark, connected, random, distances, parents, order);
+            }
+            if (landmark < 0) {
+                landmark = farthest(base, i, isLandmark, connected, random, nearest, distances);
+            }
+            nodes[i] = landmark;
+            isLandmark[landmark] = true;
+            forward[i] = new int[nodeCount];
+            ShortestPathKernel.oneToAll(base, landmark, false, forward[i], null, null);
+            for (int v = 0; v < nodeCount; v++) {
+                nearest[v] = Math.min(nearest[v], forward[i][v]);
+            }
+        }
+
+        // Backward tables, independent per landmark, each worker thread searches with its own scratch
+        int[][] backward = new int[count][];
+        IntStream.range(0, count).parallel().forEach(i -> {
+            backward[i] = new int[nodeCount];
+            ShortestPathKernel.oneToAll(base, nodes[i], true, backward[i], null, null);
+        });
+
+        // Interleave into the node major tables, a lower bound then reads one contiguous block per node
+        int[] fromLandmark = new int[nodeCount * count];
+        int[] toLandmark = new int[nodeCount * count];
+        for (int i = 0; i < count; i++) {
+            int[] from = forward[i];
+            int[] to = backward[i];
+            for (int v = 0; v < nodeCount; v++) {
+                fromLandmark[v * count + i] = from[v];
+                toLandmark[v * count + i] = to[v];
+            }
+        }
+        return new Landmarks(base, requested, nodes, fromLandmark, toLandmark, selection, System.nanoTime() - start);
+    }
+
+    /**
+     * Marks the nodes with at least one incoming or outgoing base edge, only those are useful landmarks
+     */
+    private static boolean[] connectedNodes(CsrGraph base) {
+        int nodeCount = base.nodeCount();
+        boolean[] connected = new boolean[nodeCount];
+        int[] offsets = base.offsets();
+        CsrGraph reverse = base.reverseBase();
+        int[] reverseOffsets = reverse.offsets();
+        for (int v = 0; v < nodeCount; v++) {
+            connected[v] = offsets[v + 1] > offsets[v]
+                    || v < reverse.nodeCount() && reverseOffsets[v + 1] > reverseOffsets[v];
+        }
+        return connected;
+    }
+
+    /**
+     * Picks a random node with edges that is not a landmark yet
+     */
+    private static int randomNode(boolean[] connected, boolean[] isLandmark, Random random) {
+        int nodeCount = connected.length;
+        int start = random.nextInt(nodeCount);
+        for (int j = 0; j < nodeCount; j++) {
+            int v = (start + j) % nodeCount;
+            if (connected[v] && !isLandmark[v]) return v;
+        }
+        return -1;
+    }
+
+    /**
+     * FARTHEST selection: the node with the largest cost from its closest landmark
+     * Nodes no landmark reaches count as farthest, so every part of the network gets a landmark.
+     * The first landmark is the node farthest away from a random node.
+     */
+    private static int farthest(CsrGraph base, int chosen, boolean[] isLandmark, boolean[] connected, Random random,
+                                int[] nearest, int[] distances) {
+        if (chosen == 0) {
+            int root = randomNode(connected, isLandmark, random);
+            ShortestPathKernel.oneToAll(base, root, false, distances, null, null);
+            // unreachable nodes are not preferred here, the root might just be a dead end
+            int best = root;
+            for (int v = 0; v < distances.length; v++) {
+                if (connected[v] && distances[v] != UNREACHABLE && distances[v] > distances[best]) best = v;
+            }
+            return best;
+        }
+        int best = -1;
+        for (int v = 0; v < nearest.length; v++) {
+            if (!connected[v] || isLandmark[v]) continue;
+            if (best < 0 || nearest[v] > nearest[best]) best = v;
+        }
+        return best;
+    }
+
+    /**
+     * AVOID selection
+     *  1. Shortest path tree from a random root r
+     *  2. Weight of a node v: d(r,v) minus the current lower bound of d(r,v), how badly the landmarks cover v
+     *     Only the forward tables are used for the bound, the backward tables do not exist yet
+     *  3. Size of a node: sum of the weights in its subtree, 0 if the subtree already contains a landmark
+     *  4. From r follow the child with the largest size down to a leaf, the leaf is the new landmark
+     * @return the new landmark, -1 if every branch of the tree already contains a landmark
+     */
+    private static int avoid(CsrGraph base, int[][] forward, int chosen, boolean[] isLandmark, boolean[] connected,
+                             Random random, int[] distances, int[] parents, int[] order) {
+        int root = randomNode(connected, isLandmark, random);
+        if (root < 0) return -1;
+        int settled = ShortestPathKernel.oneToAll(base, root, false, distances, parents, order);
+        int nodeCount = distances.length;
+        long[] size = new long[nodeCount];
+        boolean[] covered = new boolean[nodeCount];
+        int[] bestChild = new int[nodeCount];
+        Arrays.fill(bestChild, -1);
+
+        // Reverse settle order visits every child before its parent
+        for (int j = settled - 1; j >= 0; j--) {
+            int v = order[j];
+            if (isLandmark[v]) covered[v] = true;
+            int parent = parents[v];
+            if (covered[v]) {
+                size[v] = 0;
+                if (parent >= 0) covered[parent] = true;
+                continue;
+            }
+            int bound = 0;
+            for (int i = 0; i < chosen; i++) {
+                int fromRoot = forward[i][root];
+                int fromV = forward[i][v];
+                if (fromRoot != UNREACHABLE && fromV != UNREACHABLE) bound = Math.max(bound, fromV - fromRoot);
+            }
+            size[v] += distances[v] - bound;
+            if (parent >= 0) {
+                size[parent] += size[v];
+                if (bestChild[parent] < 0 || size[v] > size[bestChild[parent]]) bestChild[parent] = v;
+            }
+        }
+        if (covered[root] || bestChild[root] < 0) return -1;
+
+        // Covered nodes never become a best child, so the walk stays in the uncovered part of the tree
+        int node = root;
+        while (bestChild[node] >= 0) {
+            node = bestChild[node];
+        }
+        return node;
+    }
+
+    /**
+     * Checks if the bounds are valid for a graph and both nodes have table entries
+     * @param graph graph that is searched
+     * @param source start node
+     * @param target destination node
+     * @return true if the ALT search may run on the graph
+     */
+    public boolean covers(CsrGraph graph, int source, int target) {
+        return count > 0 && base.sameBase(graph) && !graph.hasAddedEdges() && source < nodeCount && target < nodeCount;
+    }
+
+    /**
+     * Checks if these landmarks were built for a graph base with the given settings
+     * @param graph graph to compare with
+     * @param count wanted amount of landmarks
+     * @param selection wanted selection strategy
+     * @return true if nothing has to be rebuilt
+     */
+    public boolean matches(CsrGraph graph, int count, Selection selection) {
+        return base.sameBase(graph) && this.selection == selection && requested == count;
+    }
+
+    /**
+     * Lower bound of the cost from a node to the target
+     * @param node node id, below the node count of the base
+     * @param target destination node id, below the node count of the base
+     * @return lower bound, UNREACHABLE if a table proves that the target can not be reached from the node
+     */
+    int lowerBound(int node, int target) {
+        int v = node * count;
+        int t = target * count;
+        int bound = 0;
+        for (int i = 0; i < count; i++) {
+            int fromV = fromLandmark[v + i];
+            int fromT = fromLandmark[t + i];
+            if (fromV != UNREACHABLE) {
+                // L reaches v but not t, so v does not reach t either
+                if (fromT == UNREACHABLE) return UNREACHABLE;
+                bound = Math.max(bound, fromT - fromV);
+            }
+            int toV = toLandmark[v + i];
+            int toT = toLandmark[t + i];
+            if (toT != UNREACHABLE) {
+                // t reaches L but v does not, so v does not reach t either
+                if (toV == UNREACHABLE) return UNREACHABLE;
+                bound = Math.max(bound, toV - toT);
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Get the amount of landmarks
+     * @return amount of landmarks
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Get the node ids of the landmarks
+     * @return copy of the landmark node ids
+     */
+    public int[] nodes() {
+        return nodes.clone();
+    }
+
+    /**
+     * Get the selection strategy the landmarks were picked with
+     * @return selection strategy
+     */
+    public Selection selection() {
+        return selection;
+    }
+
+    /**
+     * Get the duration of the preprocessing, selection and both tables
+     * @return duration in milliseconds
+     */
+    public double preprocessingMillis() {
+        return preprocessingNanos / 1e6;
+    }
+}
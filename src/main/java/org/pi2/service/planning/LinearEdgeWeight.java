@@ -0,0 +1,41 @@
+package org.pi2.service.planning;
+
+/**
+ * Weighting costWeight * cost + distanceWeight * distance + legPenalty per flight, rounded to an int
+ *
+ * - costWeight 1, the others 0: the cheapest trip
+ * - legPenalty: every flight adds the same amount, more legs make a trip worse even if they are cheap
+ * - distanceWeight above 0 needs the distance of every leg, pairs without a route are not used then
+ *
+ * Coefficients are non negative and at most MAX_COEFFICIENT, the weight of an edge is capped at MAX_WEIGHT.
+ * The search adds the weights of a path in long, a path that reaches Integer.MAX_VALUE counts as no path.
+ *
+ * @param costWeight weight of one euro
+ * @param distanceWeight weight of one km
+ * @param legPenalty weight of every flight
+ */
+public record LinearEdgeWeight(double costWeight, double distanceWeight, double legPenalty) implements EdgeWeight {
+    public static final double MAX_COEFFICIENT = 100;
+    private static final int MAX_WEIGHT = Integer.MAX_VALUE >> 8; // per edge, the search adds the edges in long and stops at Integer.MAX_VALUE
+
+    /**
+     * Constructor checks the coefficients
+     * @throws IllegalArgumentException if a coefficient is negative, not a number or above MAX_COEFFICIENT
+     */
+    public LinearEdgeWeight {
+        if (!valid(costWeight) || !valid(distanceWeight) || !valid(legPenalty)) {
+            throw new IllegalArgumentException("Coefficients have to be between 0 and " + MAX_COEFFICIENT);
+        }
+    }
+
+    private static boolean valid(double coefficient) {
+        return coefficient >= 0 && coefficient <= MAX_COEFFICIENT;
+    }
+
+    @Override
+    public int weight(int cost, int distance) {
+        if (distanceWeight > 0 && distance < 0) return -1;
+        double weight = costWeight * cost + distanceWeight * Math.max(0, distance) + legPenalty;
+        return weight < 0 ? -1 : (int) Math.min(MAX_WEIGHT, Math.round(weight));
+    }
+}
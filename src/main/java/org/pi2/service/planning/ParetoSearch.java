@@ -0,0 +1,227 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.CsrGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Multi-criteria label-setting search, finds every Pareto-optimal path by (total cost, total distance) in one pass
+ *
+ * A label is one partial path ending at a node, with its cost, its distance, its last edge and the label it extends.
+ * A label dominates another if it is not worse in both criteria. Only labels no other label of their node dominates
+ * are kept, every node can hold several of them.
+ *
+ * Algorithm Steps:
+ *  1. Init
+ *      One backward search from the target on the route graph gives a lower bound of the remaining distance
+ *      of every node. The source gets the label (0, 0)
+ *  2. Greedy Choice
+ *      Poll the label with the smallest (cost, distance) in lexicographic order, it is final.
+ *      A final label of the target is part of the front, labels of the target come out with falling distance
+ *  3. Extension
+ *      Extend the label along every edge of its node that has a distance. The new label is dropped if a label
+ *      of the neighbour dominates it, or if its distance plus the lower bound is not below the distance of the
+ *      last front label (that label is cheaper or equal, so the new one can only end up dominated).
+ *      Labels of the neighbour it dominates are dropped
+ *  4. Reconstruction
+ *      Follow the parent labels of every front label back to the source
+ *
+ * Storage:
+ * - Labels live in growing primitive arrays indexed by label id, the labels of a node form a linked list
+ *   through next[], dropped labels are unlinked the next time the list is walked
+ * - The heap holds label ids with the packed key cost << 32 | distance
+ *
+ * Requires non negative costs and distances, so a label never improves by running in a cycle.
+ *
+ * Complexity:
+ *  - Time complexity O(L*(D + log L)) with L=Amount of labels, D=Amount of edges per airport,
+ *    L is M times the size of the front in the worst case
+ *  - Space Complexity: O(M + L)
+ */
+final class ParetoSearch {
+    private static final byte OPEN = 0;
+    private static final byte FINAL = 1;
+    private static final byte DROPPED = 2;
+
+    // Label storage, one entry per label id
+    private int[] node = new int[64];
+    private int[] cost = new int[64];
+    private int[] distance = new int[64];
+    private int[] edge = new int[64];
+    private int[] parent = new int[64];
+    private int[] next = new int[64];    // next label of the same node, -1 at the end
+    private byte[] state = new byte[64];
+    private int labelCount;
+    private final int[] head;            // first label per node, -1 if none
+
+    // Binary min heap of label ids
+    private long[] heapKeys = new long[64];
+    private int[] heapLabels = new int[64];
+    private int heapSize;
+
+    private ParetoSearch(int nodeCount) {
+        head = new int[nodeCount];
+        Arrays.fill(head, -1);
+    }
+
+    /**
+     * Finds the Pareto front of all paths between two nodes
+     * @param graph graph to search, weight = cost, base edges plus delta overlay
+     * @param edgeDistances distance per edge id, -1 if the edge has no distance and is skipped
+     * @param lowerDistances lower bound of the distance from every node to the target, Integer.MAX_VALUE if unreachable
+     * @param source start node
+     * @param target destination node
+     * @return edge ids of the Pareto-optimal paths in travel order, by increasing cost and decreasing distance,
+     *         empty if there is no path or source equals target
+     */
+    static List<int[]> find(CsrGraph graph, int[] edgeDistances, int[] lowerDistances, int source, int target) {
+        if (source == target || lowerDistances[source] == Integer.MAX_VALUE) return List.of();
+        return new ParetoSearch(graph.nodeCount()).search(graph, edgeDistances, lowerDistances, source, target);
+    }
+
+    private List<int[]> search(CsrGraph graph, int[] edgeDistances, int[] lowerDistances, int source, int target) {
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] weights = graph.weights();
+        long[] removed = graph.removed();
+        List<Integer> front = new ArrayList<>();
+        long frontDistance = Long.MAX_VALUE; // distance of the last front label, every later one has to be shorter
+
+        // Step 1: Init
+        push(addLabel(source, 0, 0, -1, -1));
+
+        while (heapSize > 0) {
+            // Step 2: Greedy choice
+            int label = pop();
+            if (state[label] == DROPPED) continue;
+            state[label] = FINAL;
+            int current = node[label];
+            if (current == target) {
+                if (distance[label] < frontDistance) {
+                    front.add(label);
+                    frontDistance = distance[label];
+                }
+                continue;
+            }
+            if ((long) distance[label] + lowerDistances[current] >= frontDistance) continue;
+
+            // Step 3: Extension of the base edges that were not removed by the delta, then of the added edges
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                if (removed != null && (removed[e >>> 6] & (1L << e)) != 0) continue;
+                extend(label, e, targets[e], weights[e], edgeDistances[e], lowerDistances, frontDistance);
+            }
+            int[] added = graph.addedEdges(current);
+            if (added != null) {
+                for (int e : added) {
+                    extend(label, e, graph.target(e), graph.weight(e), edgeDistances[e], lowerDistances, frontDistance);
+                }
+            }
+        }
+
+        // Step 4: Reconstruction
+        List<int[]> paths = new ArrayList<>(front.size());
+        for (int last : front) {
+            int length = 0;
+            for (int l = last; parent[l] >= 0; l = parent[l]) length++;
+            int[] path = new int[length];
+            for (int l = last; parent[l] >= 0; l = parent[l]) path[--length] = edge[l];
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    /**
+     * Creates the label of a neighbour unless it is dominated, drops the open labels it dominates
+     */
+    private void extend(int label, int e, int neighbor, int weight, int edgeDistance, int[] lowerDistances,
+                        long frontDistance) {
+        if (edgeDistance < 0 || lowerDistances[neighbor] == Integer.MAX_VALUE) return;
+        int newCost = cost[label] + weight;
+        int newDistance = distance[label] + edgeDistance;
+        if ((long) newDistance + lowerDistances[neighbor] >= frontDistance) return;
+
+        // Dominance check against the labels of the neighbour, dropped ones are unlinked on the way
+        int previous = -1;
+        for (int l = head[neighbor]; l >= 0; l = next[l]) {
+            if (state[l] == DROPPED) {
+                unlink(neighbor, previous, l);
+                continue;
+            }
+            if (cost[l] <= newCost && distance[l] <= newDistance) return;
+            if (state[l] == OPEN && newCost <= cost[l] && newDistance <= distance[l]) {
+                state[l] = DROPPED;
+                unlink(neighbor, previous, l);
+                continue;
+            }
+            previous = l;
+        }
+        push(addLabel(neighbor, newCost, newDistance, e, label));
+    }
+
+    private void unlink(int owner, int previous, int label) {
+        if (previous < 0) head[owner] = next[label];
+        else next[previous] = next[label];
+    }
+
+    private int addLabel(int at, int labelCost, int labelDistance, int labelEdge, int labelParent) {
+        if (labelCount == node.length) {
+            int capacity = node.length * 2;
+            node = Arrays.copyOf(node, capacity);
+            cost = Arrays.copyOf(cost, capacity);
+            distance = Arrays.copyOf(distance, capacity);
+            edge = Arrays.copyOf(edge, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            next = Arrays.copyOf(next, capacity);
+            state = Arrays.copyOf(state, capacity);
+        }
+        int label = labelCount++;
+        node[label] = at;
+        cost[label] = labelCost;
+        distance[label] = labelDistance;
+        edge[label] = labelEdge;
+        parent[label] = labelParent;
+        state[label] = OPEN;
+        next[label] = head[at];
+        head[at] = label;
+        return label;
+    }
+
+    private void push(int label) {
+        if (heapSize == heapKeys.length) {
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+            heapLabels = Arrays.copyOf(heapLabels, heapSize * 2);
+        }
+        long key = (long) cost[label] << 32 | distance[label];
+        int i = heapSize++;
+        while (i > 0) {
+            int up = (i - 1) >>> 1;
+            if (heapKeys[up] <= key) break;
+            heapKeys[i] = heapKeys[up];
+            heapLabels[i] = heapLabels[up];
+            i = up;
+        }
+        heapKeys[i] = key;
+        heapLabels[i] = label;
+    }
+
+    private int pop() {
+        int top = heapLabels[0];
+        long key = heapKeys[--heapSize];
+        int label = heapLabels[heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) child++;
+            if (key <= heapKeys[child]) break;
+            heapKeys[i] = heapKeys[child];
+            heapLabels[i] = heapLabels[child];
+            i = child;
+        }
+        heapKeys[i] = key;
+        heapLabels[i] = label;
+        return top;
+    }
+}
@@ -0,0 +1,50 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.Flight;
+
+import java.util.List;
+
+/**
+ * One trip of the Pareto front of criteria "pareto", no other trip is both cheaper and shorter
+ */
+public class ParetoTrip {
+    private final int totalCostInEuros;         // sum of the flight costs
+    private final int totalDistanceInKilometer; // sum of the route distances
+    private final List<Flight> flights;         // flights in travel order
+
+    /**
+     * Constructor creates the trip object
+     * @param totalCostInEuros sum of the flight costs
+     * @param totalDistanceInKilometer sum of the route distances
+     * @param flights flights in travel order
+     */
+    public ParetoTrip(int totalCostInEuros, int totalDistanceInKilometer, List<Flight> flights) {
+        this.totalCostInEuros = totalCostInEuros;
+        this.totalDistanceInKilometer = totalDistanceInKilometer;
+        this.flights = flights;
+    }
+
+    /**
+     * Get the total cost of the trip
+     * @return cost in euros
+     */
+    public int getTotalCostInEuros() {
+        return totalCostInEuros;
+    }
+
+    /**
+     * Get the total distance of the trip
+     * @return distance in kilometers
+     */
+    public int getTotalDistanceInKilometer() {
+        return totalDistanceInKilometer;
+    }
+
+    /**
+     * Get the flights of the trip
+     * @return flights in travel order
+     */
+    public List<Flight> getFlights() {
+        return flights;
+    }
+}
@@ -0,0 +1,212 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.CsrGraph;
+
+import java.util.Arrays;
+
+/**
+ * Reachability index of one graph version, answers "is there any path from s to t" in O(1)
+ *
+ * Structure:
+ * - Strongly connected components (Tarjan): every airport of a component reaches every other one
+ * - Condensed DAG: one vertex per component, an edge if any edge of the graph leads from one component to the other
+ * - Reachability bitset per component: bit d is set if component d can be reached, itself included
+ *
+ * Tarjan finishes a component only after every component it reaches, so the component ids are a reverse
+ * topological order: every DAG edge goes from a higher to a lower id. The bitsets are therefore computed in one pass
+ * by increasing id as the union of the bitsets of the successors, and a target component with a higher id
+ * than the source component is rejected without looking at a bitset.
+ *
+ * Validity:
+ * - Computed on the whole graph including its overlay, only valid for exactly this graph version
+ *
+ * Complexity:
+ *  - Build: O(M+N) for the components, O(C*D*C/64) for the bitsets
+ *      - with C=Amount of components, D=Amount of edges of the condensed DAG per component
+ *  - Query: O(1)
+ *  - Space Complexity: O(M + C^2/64)
+ */
+public final class Reachability {
+    static final int MAX_COMPONENTS = 20_000; // 50 MB of bitsets, larger graphs get no index
+
+    private final CsrGraph graph;     // graph version the index belongs to
+    private final int[] component;    // component id per node
+    private final int componentCount;
+    private final int words;          // longs per bitset
+    private final long[] reachable;   // bitset of component c at c * words
+    private final long buildNanos;
+
+    private Reachability(CsrGraph graph, int[] component, int componentCount, long[] reachable, long buildNanos) {
+        this.graph = graph;
+        this.component = component;
+        this.componentCount = componentCount;
+        this.words = (componentCount + 63) >>> 6;
+        this.reachable = reachable;
+        this.buildNanos = buildNanos;
+    }
+
+    /**
+     * Computes the index of a graph
+     * @param graph graph including its overlay
+     * @return the index, null if the graph has more than MAX_COMPONENTS components
+     */
+    public static Reachability build(CsrGraph graph) {
+        long start = System.nanoTime();
+        int nodeCount = graph.nodeCount();
+        int[] component = new int[nodeCount];
+        int componentCount = tarjan(graph, component);
+        if (componentCount > MAX_COMPONENTS) return null;
+
+        // Condensed DAG in CSR layout, parallel edges between two components are merged
+        int[] members = new int[nodeCount];
+        int[] memberOffsets = new int[componentCount + 1];
+        for (int v = 0; v < nodeCount; v++) memberOffsets[component[v] + 1]++;
+        for (int c = 0; c < componentCount; c++) memberOffsets[c + 1] += memberOffsets[c];
+        int[] fill = Arrays.copyOf(memberOffsets, componentCount);
+        for (int v = 0; v < nodeCount; v++) members[fill[component[v]]++] = v;
+
+        int words = (componentCount + 63) >>> 6;
+        long[] reachable = new long[componentCount * words];
+        int[] seen = new int[componentCount];
+        Arrays.fill(seen, -1);
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        // Successors have lower ids, their bitsets are complete when c is computed
+        for (int c = 0; c < componentCount; c++) {
+            int row = c * words;
+            reachable[row + (c >>> 6)] |= 1L << c;
+            seen[c] = c;
+            for (int i = memberOffsets[c]; i < memberOffsets[c + 1]; i++) {
+                int u = members[i];
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    if (!graph.isRemoved(e)) merge(reachable, words, seen, c, component[targets[e]]);
+                }
+                int[] added = graph.addedEdges(u);
+                if (added != null) {
+                    for (int e : added) {
+                        merge(reachable, words, seen, c, component[graph.target(e)]);
+                    }
+                }
+            }
+        }
+        return new Reachability(graph, component, componentCount, reachable, System.nanoTime() - start);
+    }
+
+    private static void merge(long[] reachable, int words, int[] seen, int c, int d) {
+        if (seen[d] == c) return;
+        seen[d] = c;
+        int row = c * words;
+        int from = d * words;
+        for (int w = 0; w < words; w++) {
+            reachable[row + w] |= reachable[from + w];
+        }
+    }
+
+    /**
+     * Iterative Tarjan, a recursive one would overflow the stack on long chains of airports
+     * @param graph graph including its overlay
+     * @param component output, component id per node in reverse topological order
+     * @return amount of components
+     */
+    private static int tarjan(CsrGraph graph, int[] component) {
+        int nodeCount = graph.nodeCount();
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] index = new int[nodeCount];     // discovery index + 1, 0 if not visited
+        int[] low = new int[nodeCount];
+        int[] cursor = new int[nodeCount];    // next edge position of a node on the call stack, base edges first
+        int[] stack = new int[nodeCount];     // Tarjan stack of open nodes
+        int[] callStack = new int[nodeCount];
+        boolean[] onStack = new boolean[nodeCount];
+        int counter = 0;
+        int stackSize = 0;
+        int componentCount = 0;
+
+        for (int root = 0; root < nodeCount; root++) {
+            if (index[root] != 0) continue;
+            int depth = 0;
+            callStack[depth++] = root;
+            index[root] = low[root] = ++counter;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth > 0) {
+                int u = callStack[depth - 1];
+                int baseDegree = offsets[u + 1] - offsets[u];
+                int[] added = graph.addedEdges(u);
+                int degree = baseDegree + (added == null ? 0 : added.length);
+                if (cursor[u] < degree) {
+                    int position = cursor[u]++;
+                    int e = position < baseDegree ? offsets[u] + position : added[position - baseDegree];
+                    if (graph.isRemoved(e)) continue;
+                    int v = position < baseDegree ? targets[e] : graph.target(e);
+                    if (index[v] == 0) {
+                        // descend
+                        index[v] = low[v] = ++counter;
+                        stack[stackSize++] = v;
+                        onStack[v] = true;
+                        callStack[depth++] = v;
+                    } else if (onStack[v]) {
+                        low[u] = Math.min(low[u], index[v]);
+                    }
+                    continue;
+                }
+                // all edges of u done, return to the caller
+                depth--;
+                if (depth > 0) {
+                    int caller = callStack[depth - 1];
+                    low[caller] = Math.min(low[caller], low[u]);
+                }
+                if (low[u] == index[u]) {
+                    int v;
+                    do {
+                        v = stack[--stackSize];
+                        onStack[v] = false;
+                        component[v] = componentCount;
+                    } while (v != u);
+                    componentCount++;
+                }
+            }
+        }
+        return componentCount;
+    }
+
+    /**
+     * Checks if the index belongs to a graph
+     * @param graph graph that is searched
+     * @return true if the index was computed on exactly this graph version
+     */
+    public boolean covers(CsrGraph graph) {
+        return this.graph == graph;
+    }
+
+    /**
+     * Checks if there is any path between two nodes
+     * @param source start node
+     * @param target destination node
+     * @return true if target can be reached from source
+     */
+    public boolean canReach(int source, int target) {
+        int from = component[source];
+        int to = component[target];
+        if (from == to) return true;
+        if (to > from) return false; // reachable components always have lower ids
+        return (reachable[from * words + (to >>> 6)] & (1L << to)) != 0;
+    }
+
+    /**
+     * Get the amount of strongly connected components
+     * @return component count
+     */
+    public int componentCount() {
+        return componentCount;
+    }
+
+    /**
+     * Get the duration of the computation
+     * @return duration in milliseconds
+     */
+    public double buildMillis() {
+        return buildNanos / 1e6;
+    }
+}
@@ -0,0 +1,96 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.CsrGraph;
+import org.pi2.model.FlightNetwork;
+import org.pi2.model.NetworkSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Keeps the reachability index of one graph of the network (routes or flights) up to date
+ *
+ * - Every new version of the graph is indexed again on a background thread, it takes a few milliseconds
+ * - Until the index of the current version exists mayReach() answers true and the planners search as usual
+ */
+final class ReachabilityHolder {
+    private static final Logger log = LoggerFactory.getLogger(ReachabilityHolder.class);
+
+    // One background thread for the indexes of all graphs
+    private static final ExecutorService BUILDER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reachability-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;                             // "route" or "flight", for the log
+    private final Function<NetworkSnapshot, CsrGraph> graphOf;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final FlightNetwork network;
+    private volatile Reachability index;                   // index of the latest indexed graph version
+
+    /**
+     * Constructor registers the holder for every new snapshot of the network and indexes the current one
+     * @param name name of the graph, for the log
+     * @param graphOf picks the graph out of a snapshot
+     * @param network network whose graph is indexed
+     */
+    ReachabilityHolder(String name, Function<NetworkSnapshot, CsrGraph> graphOf, FlightNetwork network) {
+        this.name = name;
+        this.graphOf = graphOf;
+        this.network = network;
+        network.addSnapshotListener(snapshot -> schedule());
+        schedule();
+    }
+
+    /**
+     * Checks if a path may exist
+     * @param graph graph the query runs on
+     * @param source start node
+     * @param target destination node
+     * @return false only if the index of exactly this graph proves that there is no path
+     */
+    boolean mayReach(CsrGraph graph, int source, int target) {
+        Reachability current = index;
+        return current == null || !current.covers(graph) || current.canReach(source, target);
+    }
+
+    /**
+     * Queues an indexing, several requests while one is queued collapse into one
+     */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            BUILDER.execute(() -> {
+                scheduled.set(false);
+                build();
+            });
+        }
+    }
+
+    /**
+     * Indexes the current graph version, unless it is already indexed
+     * Runs on the builder thread
+     */
+    private void build() {
+        try {
+            CsrGraph graph = graphOf.apply(network.getSnapshot());
+            Reachability current = index;
+            if (current != null && current.covers(graph)) return;
+            Reachability built = Reachability.build(graph);
+            index = built;
+            if (built == null) {
+                log.info("The {} graph has more than {} components, no reachability index", name, Reachability.MAX_COMPONENTS);
+            } else {
+                log.info(String.format("Indexed the reachability of the %s graph, %d components in %.1f ms",
+                        name, built.componentCount(), built.buildMillis()));
+            }
+        } catch (RuntimeException e) {
+            index = null;
+            log.error("Reachability index of the {} graph failed", name, e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.pi2.service.planning;
+
+/**
+ * One destination of an exploration, an airport reachable from the origin within the budget
+ */
+public class ReachableAirport {
+    private final String code;   // IATA code of the destination
+    private final String city;   // city of the destination
+    private final int value;     // total distance in km or cost in euros of the best trip
+    private final int hops;      // amount of legs of that trip
+
+    /**
+     * Constructor creates the destination object
+     * @param code IATA code of the destination
+     * @param city city of the destination
+     * @param value total distance or cost of the best trip
+     * @param hops amount of legs of the best trip
+     */
+    public ReachableAirport(String code, String city, int value, int hops) {
+        this.code = code;
+        this.city = city;
+        this.value = value;
+        this.hops = hops;
+    }
+
+    /**
+     * Get the code of the destination
+     * @return IATA code
+     */
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * Get the city of the destination
+     * @return city name
+     */
+    public String getCity() {
+        return city;
+    }
+
+    /**
+     * Get the total distance or cost of the best trip, the unit depends on the criteria of the exploration
+     * @return distance in km or cost in euros
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Get the amount of legs of the best trip
+     * @return legs, 1 for a direct connection
+     */
+    public int getHops() {
+        return hops;
+    }
+}
@@ -0,0 +1,161 @@
+package org.pi2.service.planning;
+
+import org.pi2.util.IndexedMinHeap;
+
+import java.util.Arrays;
+
+/**
+ * Reusable working memory of one shortest path search, one instance per thread
+ *
+ * The arrays grow with the network and are kept between queries. Instead of clearing them before every
+ * search, each search gets a new epoch number: an entry is only valid if its stamp equals the current epoch.
+ * Starting a search is O(1) no matter how many airports the network has.
+ *
+ * A search must copy its result out before the next search starts on the same thread.
+ * A bidirectional search uses a second instance for its backward direction.
+ */
+final class SearchScratch {
+    private static final ThreadLocal<SearchScratch> LOCAL = ThreadLocal.withInitial(SearchScratch::new);
+    private static final ThreadLocal<SearchScratch> LOCAL_BACKWARD = ThreadLocal.withInitial(SearchScratch::new);
+
+    int[] distances = new int[0];    // distance per node, valid if stamps[node] == epoch
+    int[] predecessors = new int[0]; // edge that reached the node, -1 for the source
+    int[] parents = new int[0];      // node the predecessor edge starts at, or ends at in a backward search
+    int[] bounds = new int[0];       // A* lower bound of the remaining distance per reached node
+    int settled;                     // nodes polled from the heap by the last search, both directions
+    // Hop-limited search, see ShortestPathKernel.shortestPathHopLimited
+    int[] hops = new int[0];         // layer of the last improvement per reached node
+    int[] frontier = new int[0];     // nodes improved in the previous layer
+    int[] frontierDistances = new int[0]; // their distances at the end of the previous layer
+    int[] nextFrontier = new int[0]; // nodes improved in the current layer
+    int[] layerEdges = new int[0];   // layer * nodeCount + node: edge of the last improvement of the node in that layer
+    private int[] stamps = new int[0];
+    private int[] bans = new int[0];  // node is excluded from the current search if equal to epoch
+    private int epoch;
+    final IndexedMinHeap heap = new IndexedMinHeap(16);
+
+    private SearchScratch() {
+    }
+
+    /**
+     * Get the scratch of the current thread, prepared for a new search
+     * @param nodeCount amount of nodes of the graph that is searched
+     * @return scratch with every node unreached and an empty heap
+     */
+    static SearchScratch get(int nodeCount) {
+        SearchScratch scratch = LOCAL.get();
+        scratch.prepare(nodeCount);
+        return scratch;
+    }
+
+    /**
+     * Get the second scratch of the current thread for the backward direction of a bidirectional search
+     * @param nodeCount amount of nodes of the graph that is searched
+     * @return scratch with every node unreached and an empty heap
+     */
+    static SearchScratch getBackward(int nodeCount) {
+        SearchScratch scratch = LOCAL_BACKWARD.get();
+        scratch.prepare(nodeCount);
+        return scratch;
+    }
+
+    /**
+     * Get the amount of nodes the last search of the current thread settled
+     * @return settled nodes
+     */
+    static int lastSettledCount() {
+        return LOCAL.get().settled;
+    }
+
+    private void prepare(int nodeCount) {
+        if (stamps.length < nodeCount) {
+            // new stamps are 0 and therefore never equal to a current epoch
+            int capacity = Math.max(nodeCount, stamps.length + (stamps.length >> 1));
+            distances = new int[capacity];
+            predecessors = new int[capacity];
+            parents = new int[capacity];
+            bounds = new int[capacity];
+            stamps = new int[capacity];
+            bans = new int[capacity];
+            hops = new int[capacity];
+            epoch = 0;
+        }
+        if (++epoch == 0) {
+            // after 2^32 searches the stamps could collide with old ones, clear them once
+            Arrays.fill(stamps, 0);
+            Arrays.fill(bans, 0);
+            epoch = 1;
+        }
+        heap.ensureCapacity(nodeCount);
+        heap.clear();
+        settled = 0;
+    }
+
+    /**
+     * Grows the arrays of a hop-limited search, they are overwritten before they are read and never cleared
+     * @param layers amount of layers including layer 0
+     * @param nodeCount amount of nodes of the graph that is searched
+     */
+    void prepareLayers(int layers, int nodeCount) {
+        if (frontier.length < nodeCount) {
+            int capacity = Math.max(nodeCount, frontier.length + (frontier.length >> 1));
+            frontier = new int[capacity];
+            frontierDistances = new int[capacity];
+            nextFrontier = new int[capacity];
+        }
+        long size = (long) layers * nodeCount;
+        if (size > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Too many layers: " + layers);
+        if (layerEdges.length < size) {
+            layerEdges = new int[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(size, layerEdges.length + (layerEdges.length >> 1)))];
+        }
+    }
+
+    /**
+     * Checks if a node got a distance in the current search
+     * @param node node id
+     * @return true if reached
+     */
+    boolean reached(int node) {
+        return stamps[node] == epoch;
+    }
+
+    /**
+     * Get the distance of a node in the current search
+     * @param node node id
+     * @return distance, Integer.MAX_VALUE if not reached
+     */
+    int distance(int node) {
+        return stamps[node] == epoch ? distances[node] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Excludes a node from the current search, e.g. the root path of a spur search
+     * @param node node id
+     */
+    void ban(int node) {
+        bans[node] = epoch;
+    }
+
+    /**
+     * Checks if a node is excluded from the current search
+     * @param node node id
+     * @return true if banned since the search started
+     */
+    boolean banned(int node) {
+        return bans[node] == epoch;
+    }
+
+    /**
+     * Stores a new best distance of a node
+     * @param node node id
+     * @param distance distance from the source
+     * @param edge edge that reached the node, -1 for the source
+     * @param parent node the edge starts at, -1 for the source
+     */
+    void reach(int node, int distance, int edge, int parent) {
+        stamps[node] = epoch;
+        distances[node] = distance;
+        predecessors[node] = edge;
+        parents[node] = parent;
+    }
+}
@@ -0,0 +1,1049 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.CsrGraph;
+import org.pi2.model.GreatCircle;
+import org.pi2.util.IndexedMinHeap;
+
+/**
+ * Shared Dijkstra kernel of the planners, works on int node ids of a CsrGraph
+ *
+ * The route planner runs it on the route graph (weight = distance), the flight planner on the flight graph
+ * (weight = cost of the cheapest flight). The planners translate airports to ids and edge ids back to routes and flights.
+ *
+ * Allocation:
+ * - distances, predecessors and the heap come from the SearchScratch of the thread and are reused
+ * - the only allocation of a query is the returned edge array
+ *
+ * Ties are broken like in the former PriorityQueue version: equal distances are settled by the smaller node id
+ * and a neighbour is only updated on a strictly shorter distance, so both return the same paths.
+ *
+ * Search modes:
+ * - shortestPath: unidirectional, searches from the source until the target is settled
+ * - shortestPathBidirectional: searches from both ends at once and meets in the middle, settles about half the nodes
+ *   on a hub heavy graph. Returns a path of the same length, between equally long paths it may pick another one
+ * - shortestPathAStar: unidirectional, steered towards the target by the great-circle distance, scaled down so no
+ *   route is shorter than the scaled great-circle distance of its airports
+ * - shortestPathLandmarks: unidirectional, steered towards the target by the landmark tables (ALT),
+ *   valid on any graph as long as it has no edges the landmarks were not computed on
+ * - shortestPathRestricted: A* with exact potentials on a graph without some nodes and edges, the spur searches of Yen
+ * - shortestPathHopLimited: layered Bellman-Ford, the shortest path with at most a given amount of edges
+ * - shortestPathConstrained: Dijkstra that skips the edges and nodes a bitset rules out, the filtered trips
+ * - shortestPathHierarchy: two small upward searches on a contraction hierarchy, see ContractionHierarchy
+ * - oneToMany: the distances to a set of targets, stops once all of them are settled
+ * - oneToAll: no target, the distances to or from every node, used for the preprocessing and the all-pairs tables.
+ *   On large graphs a query that only needs the distances runs on the parallel DeltaStepping engine instead
+ * - withinBudget: no target, every node with a distance up to a budget, stops where the budget ends
+ *
+ * Complexity:
+ *  - Time complexity O((M+N)*log M)
+ *      - with M=Amount of airports, N=Amount of edges
+ *  - Space Complexity: O(M), reused between queries
+ */
+public final class ShortestPathKernel {
+    private static final int[] NO_PATH = new int[0];
+
+    private ShortestPathKernel() {
+    }
+
+    /**
+     * Finds the shortest path between two nodes with Dijkstra
+     * Algorithm Steps:
+     *  1. Init
+     *      Start a new epoch of the scratch, the source gets distance 0
+     *  2. Greedy Choice
+     *      Poll the node with the minimal known distance from the heap, stop once it is the target
+     *  3. Relaxation
+     *      Update neighbours if a shorter path was found, with decrease-key if they are already in the heap
+     *  4. Reconstruction
+     *      Follow the predecessor edges back from the target
+     *
+     * @param graph graph to search, base edges plus delta overlay
+     * @param source start node
+     * @param target destination node
+     * @return edge ids of the path in travel order, empty if there is no path or source equals target
+     */
+    public static int[] shortestPath(CsrGraph graph, int source, int target) {
+        if (source == target) return NO_PATH;
+        SearchScratch scratch = SearchScratch.get(graph.nodeCount());
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] weights = graph.weights();
+        long[] removed = graph.removed();
+        int[] distances = scratch.distances;
+        IndexedMinHeap heap = scratch.heap;
+
+        // Step 1: Init
+        scratch.reach(source, 0, -1, -1);
+        heap.insert(source, 0);
+
+        while (!heap.isEmpty()) {
+            // Step 2: Greedy choice
+            int current = heap.poll();
+            scratch.settled++;
+            if (current == target) {
+                return reconstructPath(scratch, source, target);
+            }
+            int distance = distances[current];
+
+            // Step 3: Relaxation of the base edges that were not removed by the delta
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                if (removed != null && (removed[e >>> 6] & (1L << e)) != 0) continue;
+                relax(scratch, heap, current, e, targets[e], distance + weights[e]);
+            }
+            // and of the edges added by the delta since the base was built
+            int[] added = graph.addedEdges(current);
+            if (added != null) {
+                for (int e : added) {
+                    relax(scratch, heap, current, e, graph.target(e), distance + graph.weight(e));
+                }
+            }
+        }
+        return NO_PATH;
+    }
+
+    /**
+     * Finds the shortest path between two nodes with bidirectional Dijkstra
+     * Algorithm Steps:
+     *  1. Init
+     *      A forward search starts at the source on the graph, a backward search at the target on the reversed graph
+     *  2. Greedy Choice
+     *      The direction whose heap has the smaller minimum settles its next node
+     *  3. Relaxation
+     *      Like Dijkstra. Additionally every edge from a node of one search to a node the other search reached
+     *      closes a source-target path, the shortest of these is kept as best
+     *  4. Stopping rule
+     *      Stop once minimum forward + minimum backward >= best. Any path not found yet has to leave the forward
+     *      search at a distance of at least the forward minimum and enter the backward search at a distance
+     *      of at least the backward minimum, so it can not be shorter than best
+     *  5. Reconstruction
+     *      Forward predecessors from the meeting edge back to the source, then the meeting edge,
+     *      then the backward predecessors from the meeting edge to the target
+     *
+     * Requires non negative weights.
+     *
+     * @param graph graph to search, base edges plus delta overlay
+     * @param source start node
+     * @param target destination node
+     * @return edge ids of the path in travel order, empty if there is no path or source equals target
+     */
+    public static int[] shortestPathBidirectional(CsrGraph graph, int source, int target) {
+        if (source == target) return NO_PATH;
+        int nodeCount = graph.nodeCount();
+        SearchScratch forward = SearchScratch.get(nodeCount);
+        SearchScratch backward = SearchScratch.getBackward(nodeCount);
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] weights = graph.weights();
+        long[] removed = graph.removed();
+        CsrGraph reverse = graph.reverseBase();
+        int[] reverseOffsets = reverse.offsets();
+        int[] reverseSources = reverse.targets();
+        int[] reverseWeights = reverse.weights();
+        int[] reverseEdges = graph.reverseEdgeIds();
+        int reverseNodes = reverse.nodeCount(); // airports added by the delta have no transposed base edges
+        IndexedMinHeap forwardHeap = forward.heap;
+        IndexedMinHeap backwardHeap = backward.heap;
+
+        // Step 1: Init
+        forward.reach(source, 0, -1, -1);
+        forwardHeap.insert(source, 0);
+        backward.reach(target, 0, -1, -1);
+        backwardHeap.insert(target, 0);
+        long best = Long.MAX_VALUE; // length of the shortest source-target path found so far
+        int meetEdge = -1;          // edge of that path where the two searches meet
+
+        while (!forwardHeap.isEmpty() && !backwardHeap.isEmpty()) {
+            // Step 4: Stopping rule
+            if ((long) forwardHeap.minKey() + backwardHeap.minKey() >= best) break;
+
+            // Step 2: Greedy choice of the direction
+            if (forwardHeap.minKey() <= backwardHeap.minKey()) {
+                int current = forwardHeap.poll();
+                forward.settled++;
+                int distance = forward.distances[current];
+                // Step 3: Relaxation of the outgoing edges
+                for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                    if (removed != null && (removed[e >>> 6] & (1L << e)) != 0) continue;
+                    int neighbor = targets[e];
+                    int newDistance = distance + weights[e];
+                    relax(forward, forwardHeap, current, e, neighbor, newDistance);
+                    if (backward.reached(neighbor) && (long) newDistance + backward.distances[neighbor] < best) {
+                        best = (long) newDistance + backward.distances[neighbor];
+                        meetEdge = e;
+                    }
+                }
+                int[] added = graph.addedEdges(current);
+                if (added != null) {
+                    for (int e : added) {
+                        int neighbor = graph.target(e);
+                        int newDistance = distance + graph.weight(e);
+                        relax(forward, forwardHeap, current, e, neighbor, newDistance);
+                        if (backward.reached(neighbor) && (long) newDistance + backward.distances[neighbor] < best) {
+                            best = (long) newDistance + backward.distances[neighbor];
+                            meetEdge = e;
+                        }
+                    }
+                }
+            } else {
+                int current = backwardHeap.poll();
+                forward.settled++;
+                int distance = backward.distances[current];
+                // Step 3: Relaxation of the incoming edges, the neighbour is the origin of the edge
+                if (current < reverseNodes) {
+                    for (int r = reverseOffsets[current]; r < reverseOffsets[current + 1]; r++) {
+                        int e = reverseEdges[r];
+                        if (removed != null && (removed[e >>> 6] & (1L << e)) != 0) continue;
+                        int neighbor = reverseSources[r];
+                        int newDistance = distance + reverseWeights[r];
+                        relax(backward, backwardHeap, current, e, neighbor, newDistance);
+                        if (forward.reached(neighbor) && (long) newDistance + forward.distances[neighbor] < best) {
+                            best = (long) newDistance + forward.distances[neighbor];
+                            meetEdge = e;
+                        }
+                    }
+                }
+                int[] addedIn = graph.addedIncomingEdges(current);
+                if (addedIn != null) {
+                    for (int e : addedIn) {
+                        int neighbor = graph.origin(e);
+                        int newDistance = distance + graph.weight(e);
+                        relax(backward, backwardHeap, current, e, neighbor, newDistance);
+                        if (forward.reached(neighbor) && (long) newDistance + forward.distances[neighbor] < best) {
+                            best = (long) newDistance + forward.distances[neighbor];
+                            meetEdge = e;
+                        }
+                    }
+                }
+            }
+        }
+        if (meetEdge < 0) return NO_PATH;
+        return reconstructPath(graph, forward, backward, source, target, meetEdge);
+    }
+
+    /**
+     * Finds the shortest path between two airports with A*, the great-circle distance to the target is the heuristic
+     * Algorithm Steps:
+     *  1. Init
+     *      Like Dijkstra, the heap key of a node is its distance plus the scaled great-circle distance to the target
+     *  2. Greedy Choice
+     *      Poll the node with the smallest key, nodes in the direction of the target come first
+     *  3. Relaxation
+     *      Like Dijkstra, the heuristic of a node is calculated once when it is reached
+     *  4. Reconstruction
+     *      Like Dijkstra
+     *
+     * The heuristic is admissible and consistent as long as no edge is shorter than scale times the great-circle
+     * distance of its airports (see NetworkSnapshot.greatCircleScale), by the triangle inequality of the great circle.
+     * The scaled distance is rounded down, so the integer keys stay a lower bound.
+     *
+     * @param graph route graph, weight = distance in km
+     * @param source start node
+     * @param target destination node
+     * @param latitudes latitude per node in degrees
+     * @param longitudes longitude per node in degrees
+     * @param scale factor of the great-circle distance, see NetworkSnapshot.greatCircleScale
+     * @return edge ids of the path in travel order, empty if there is no path or source equals target
+     */
+    public static int[] shortestPathAStar(CsrGraph graph, int source, int target, double[] latitudes, double[] longitudes,
+                                          double scale) {
+        if (source == target) return NO_PATH;
+        SearchScratch scratch = SearchScratch.get(graph.nodeCount());
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] weights = graph.weights();
+        long[] removed = graph.removed();
+        int[] distances = scratch.distances;
+        IndexedMinHeap heap = scratch.heap;
+        double targetLatitude = latitudes[target];
+        double targetLongitude = longitudes[target];
+
+        // Step 1: Init
+        scratch.reach(source, 0, -1, -1);
+        scratch.bounds[source] = (int) (scale * GreatCircle.distanceKm(latitudes[source], longitudes[source], targetLatitude, targetLongitude));
+        heap.insert(source, scratch.bounds[source]);
+
+        while (!heap.isEmpty()) {
+            // Step 2: Greedy choice
+            int current = heap.poll();
+            scratch.settled++;
+            if (current == target) {
+                return reconstructPath(scratch, source, target);
+            }
+            int distance = distances[current];
+
+            // Step 3: Relaxation
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                if (removed != null && (removed[e >>> 6] & (1L << e)) != 0) continue;
+                int neighbor = targets[e];
+                relaxAStar(scratch, heap, current, e, neighbor, distance + weights[e],
+                        latitudes, longitudes, targetLatitude, targetLongitude, scale);
+            }
+            int[] added = graph.addedEdges(current);
+            if (added != null) {
+                for (int e : added) {
+                    relaxAStar(scratch, heap, current, e, graph.target(e), distance + graph.weight(e),
+                            latitudes, longitudes, targetLatitude, targetLongitude, scale);
+                }
+            }
+        }
+        return NO_PATH;
+    }
+
+    /**
+     * Updates a neighbour of the A* search if the new distance is shorter, the heap key includes the heuristic
+     */
+    private static void relaxAStar(SearchScratch scratch, IndexedMinHeap heap, int current, int edge, int neighbor,
+                                   int newDistance, double[] latitudes, double[] longitudes,
+                                   double targetLatitude, double targetLongitude, double scale) {
+        if (!scratch.reached(neighbor)) {
+            scratch.reach(neighbor, newDistance, edge, current);
+            int bound = (int) (scale * GreatCircle.distanceKm(latitudes[neighbor], longitudes[neighbor], targetLatitude, targetLongitude));
+            scratch.bounds[neighbor] = bound;
+            heap.insert(neighbor, newDistance + bound);
+        } else if (newDistance < scratch.distances[neighbor]) {
+            scratch.reach(neighbor, newDistance, edge, current);
+            heap.insertOrDecrease(neighbor, newDistance + scratch.bounds[neighbor]);
+        }
+    }
+
+    /**
+     * Finds the cheapest path with A* and the landmark lower bounds (ALT)
+     * Algorithm Steps:
+     *  1. Init
+     *      Like Dijkstra, the heap key of a node is its distance plus the landmark bound to the target
+     *  2. Greedy Choice
+     *      Poll the node with the smallest key, stop once it is the target
+     *  3. Relaxation
+     *      Like Dijkstra, the bound of a node is calculated once when it is reached.
+     *      Nodes the landmark tables prove to be disconnected from the target are never inserted
+     *  4. Reconstruction
+     *      Like Dijkstra
+     *
+     * The caller has to check Landmarks.covers first, the bounds are only valid on their base without added edges.
+     *
+     * @param graph graph to search, same base as the landmarks, tombstones only
+     * @param source start node
+     * @param target destination node
+     * @param landmarks preprocessed landmarks of the graph base
+     * @return edge ids of the path in travel order, empty if there is no path or source equals target
+     */
+    public static int[] shortestPathLandmarks(CsrGraph graph, int source, int target, Landmarks landmarks) {
+        if (source == target) return NO_PATH;
+        SearchScratch scratch = SearchScratch.get(graph.nodeCount());
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] weights = graph.weights();
+        long[] removed = graph.removed();
+        int[] distances = scratch.distances;
+        IndexedMinHeap heap = scratch.heap;
+
+        // Step 1: Init, a source that can not reach the target ends the search right away
+        int sourceBound = landmarks.lowerBound(source, target);
+        if (sourceBound == Landmarks.UNREACHABLE) return NO_PATH;
+        scratch.reach(source, 0, -1, -1);
+        scratch.bounds[source] = sourceBound;
+        heap.insert(source, sourceBound);
+
+        while (!heap.isEmpty()) {
+            // Step 2: Greedy choice
+            int current = heap.poll();
+            scratch.settled++;
+            if (current == target) {
+                return reconstructPath(scratch, source, target);
+            }
+            int distance = distances[current];
+
+            // Step 3: Relaxation, only base edges since the graph has no added edges
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                if (removed != null && (removed[e >>> 6] & (1L << e)) != 0) continue;
+                int neighbor = targets[e];
+                int newDistance = distance + weights[e];
+                if (!scratch.reached(neighbor)) {
+                    int bound = landmarks.lowerBound(neighbor, target);
+                    if (bound == Landmarks.UNREACHABLE) continue;
+                    scratch.reach(neighbor, newDistance, e, current);
+                    scratch.bounds[neighbor] = bound;
+                    heap.insert(neighbor, newDistance + bound);
+                } else if (newDistance < distances[neighbor]) {
+                    scratch.reach(neighbor, newDistance, e, current);
+                    heap.insertOrDecrease(neighbor, newDistance + scratch.bounds[neighbor]);
+                }
+            }
+        }
+        return NO_PATH;
+    }
+
+    /**
+     * Finds the shortest path in a restricted graph with A* and exact remaining distances as potentials
+     * Used for the spur searches of the K shortest paths (see KShortestPaths)
+     * Algorithm Steps:
+     *  1. Init
+     *      Like A*, the banned nodes are marked in the scratch of the search
+     *  2. Greedy Choice
+     *      Poll the node with the smallest distance plus potential, stop once it is the target
+     *      or once the key reaches the cost limit, every path left would cost at least as much
+     *  3. Relaxation
+     *      Like A*, without banned nodes, without the banned edges of the source
+     *      and without nodes whose potential shows that they can not reach the target
+     *  4. Reconstruction
+     *      Like Dijkstra
+     *
+     * The potentials have to be lower bounds that are consistent on the restricted graph, e.g. the distances
+     * to the target on the whole graph: banning nodes and edges only makes paths longer.
+     *
+     * @param graph graph to search, base edges plus delta overlay
+     * @param source start node
+     * @param target destination node
+     * @param potentials lower bound of the distance to the target per node, Integer.MAX_VALUE if unreachable
+     * @param bannedNodes nodes the path must not visit
+     * @param bannedEdges edges of the source the path must not start with
+     * @param maxCost paths costing this much or more are not searched
+     * @return edge ids of the path in travel order, empty if there is no path below maxCost or source equals target
+     */
+    public static int[] shortestPathRestricted(CsrGraph graph, int source, int target, int[] potentials,
+                                               int[] bannedNodes, int[] bannedEdges, long maxCost) {
+        if (source == target || potentials[source] == Integer.MAX_VALUE) return NO_PATH;
+        SearchScratch scratch = SearchScratch.get(graph.nodeCount());
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] weights = graph.weights();
+        long[] removed = graph.removed();
+        int[] distances = scratch.distances;
+        IndexedMinHeap heap = scratch.heap;
+
+        // Step 1: Init
+        for (int node : bannedNodes) {
+            scratch.ban(node);
+        }
+        scratch.reach(source, 0, -1, -1);
+        heap.insert(source, potentials[source]);
+
+        while (!heap.isEmpty()) {
+            // Step 2: Greedy choice, the key of a node is a lower bound of every path over it
+            int current = heap.poll();
+            scratch.settled++;
+            if ((long) distances[current] + potentials[current] >= maxCost) return NO_PATH;
+            if (current == target) {
+                return reconstructPath(scratch, source, target);
+            }
+            int distance = distances[current];
+
+            // Step 3: Relaxation
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                if (removed != null && (removed[e >>> 6] & (1L << e)) != 0) continue;
+                if (current == source && contains(bannedEdges, e)) continue;
+                relaxRestricted(scratch, heap, current, e, targets[e], distance + weights[e], potentials);
+            }
+            int[] added = graph.addedEdges(current);
+            if (added != null) {
+                for (int e : added) {
+                    if (current == source && contains(bannedEdges, e)) continue;
+                    relaxRestricted(scratch, heap, current, e, graph.target(e), distance + graph.weight(e), potentials);
+                }
+            }
+        }
+        return NO_PATH;
+    }
+
+    /**
+     * Updates a neighbour of the restricted search, banned nodes and nodes that can not reach the target are skipped
+     */
+    private static void relaxRestricted(SearchScratch scratch, IndexedMinHeap heap, int current, int edge, int neighbor,
+                                        int newDistance, int[] potentials) {
+        if (scratch.banned(neighbor) || potentials[neighbor] == Integer.MAX_VALUE) return;
+        if (!scratch.reached(neighbor)) {
+            scratch.reach(neighbor, newDistance, edge, current);
+            heap.insert(neighbor, newDistance + potentials[neighbor]);
+        } else if (newDistance < scratch.distances[neighbor]) {
+            scratch.reach(neighbor, newDistance, edge, current);
+            heap.insertOrDecrease(neighbor, newDistance + potentials[neighbor]);
+        }
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Finds the shortest path between two nodes with Dijkstra, only over allowed edges and nodes
+     * Algorithm Steps:
+     *  1. Init
+     *      Like Dijkstra
+     *  2. Greedy Choice
+     *      Like Dijkstra
+     *  3. Relaxation
+     *      Like Dijkstra, but an edge is skipped if the bit of its label is not set in allowedLabels, if its weight
+     *      is negative (no value for this weight) or if the bit of its neighbour is not set in allowedNodes.
+     *      Each test is one AND of one word of the bitset, the target is always allowed.
+     *      The new distance is added in long, a path of Integer.MAX_VALUE or more counts as no path instead of
+     *      overflowing, so the weights of a weighting (see EdgeWeight) may be large
+     *  4. Reconstruction
+     *      Like Dijkstra
+     *
+     * @param graph graph to search, base edges plus delta overlay
+     * @param weights weight per edge id instead of the weights of the graph, null for the weights of the graph
+     * @param source start node
+     * @param target destination node
+     * @param edgeLabels label per edge id (e.g. airline id), -1 for none. Only read if allowedLabels is set
+     * @param allowedLabels bitset of the allowed labels, null if every edge is allowed
+     * @param allowedNodes bitset of the nodes the path may pass through, null if every node is allowed
+     * @return edge ids of the path in travel order, empty if there is no path or source equals target
+     */
+    public static int[] shortestPathConstrained(CsrGraph graph, int[] weights, int source, int target,
+                                                int[] edgeLabels, long[] allowedLabels, long[] allowedNodes) {
+        if (source == target) return NO_PATH;
+        SearchScratch scratch = SearchScratch.get(graph.nodeCount());
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] baseWeights = weights == null ? graph.weights() : weights;
+        long[] removed = graph.removed();
+        int[] distances = scratch.distances;
+        IndexedMinHeap heap = scratch.heap;
+
+        // Step 1: Init
+        scratch.reach(source, 0, -1, -1);
+        heap.insert(source, 0);
+
+        while (!heap.isEmpty()) {
+            // Step 2: Greedy choice
+            int current = heap.poll();
+            scratch.settled++;
+            if (current == target) {
+                return reconstructPath(scratch, source, target);
+            }
+            int distance = distances[current];
+
+            // Step 3: Relaxation of the allowed base edges that were not removed by the delta
+            if (current < offsets.length - 1) {
+                for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                    if (removed != null && (removed[e >>> 6] & (1L << e)) != 0) continue;
+                    if (allowedLabels != null && !allowed(allowedLabels, edgeLabels[e])) continue;
+                    int neighbor = targets[e];
+                    if (allowedNodes != null && neighbor != target && !allowed(allowedNodes, neighbor)) continue;
+                    if (baseWeights[e] < 0) continue;
+                    long newDistance = (long) distance + baseWeights[e];
+                    if (newDistance >= Integer.MAX_VALUE) continue;
+                    relax(scratch, heap, current, e, neighbor, (int) newDistance);
+                }
+            }
+            // and of the edges added by the delta since the base was built
+            int[] added = graph.addedEdges(current);
+            if (added != null) {
+                for (int e : added) {
+                    if (allowedLabels != null && !allowed(allowedLabels, edgeLabels[e])) continue;
+                    int neighbor = graph.target(e);
+                    if (allowedNodes != null && neighbor != target && !allowed(allowedNodes, neighbor)) continue;
+                    int weight = weights == null ? graph.weight(e) : weights[e];
+                    if (weight < 0) continue;
+                    long newDistance = (long) distance + weight;
+                    if (newDistance >= Integer.MAX_VALUE) continue;
+                    relax(scratch, heap, current, e, neighbor, (int) newDistance);
+                }
+            }
+        }
+        return NO_PATH;
+    }
+
+    /**
+     * Tests the bit of an id, ids of -1 are never allowed
+     */
+    private static boolean allowed(long[] bits, int id) {
+        return id >= 0 && (bits[id >>> 6] & (1L << id)) != 0;
+    }
+
+    /**
+     * Finds the shortest path with at most maxHops edges, layered Bellman-Ford
+     * Algorithm Steps:
+     *  1. Init
+     *      Layer 0 is the source with distance 0, it is the first frontier
+     *  2. Layers
+     *      Layer i relaxes the edges of the frontier only, the nodes whose distance improved in layer i-1,
+     *      with their distances at the end of layer i-1. The nodes improved now are the next frontier.
+     *      After layer i every node has the distance of its shortest path with at most i edges
+     *  3. Stopping rule
+     *      Stop after maxHops layers or once the frontier is empty. Frontier nodes that are already at least
+     *      as far away as the best known distance of the target are not relaxed
+     *  4. Reconstruction
+     *      The target was last improved in some layer L by the edge stored for (L, target).
+     *      Its origin was improved in layer L-1, follow the stored edges down to layer 1
+     *
+     * Memory:
+     * - The frontier and the next frontier are two rolling arrays of the scratch, swapped after every layer
+     * - One edge per node and layer, written on improvement only, so nothing is cleared between queries
+     * - No allocation besides the returned edge array once the scratch has grown
+     *
+     * Complexity:
+     *  - Time complexity O(maxHops*(M+N)), usually far less since only the frontier is relaxed
+     *  - Space Complexity: O(maxHops*M), reused between queries
+     *
+     * @param graph graph to search, base edges plus delta overlay
+     * @param source start node
+     * @param target destination node
+     * @param maxHops maximum amount of edges of the path
+     * @return edge ids of the path in travel order, empty if there is no path with at most maxHops edges
+     *         or source equals target
+     */
+    public static int[] shortestPathHopLimited(CsrGraph graph, int source, int target, int maxHops) {
+        if (source == target || maxHops <= 0) return NO_PATH;
+        int nodeCount = graph.nodeCount();
+        SearchScratch scratch = SearchScratch.get(nodeCount);
+        scratch.prepareLayers(maxHops + 1, nodeCount);
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] weights = graph.weights();
+        long[] removed = graph.removed();
+        int[] distances = scratch.distances;
+        int[] hops = scratch.hops;
+        int[] layerEdges = scratch.layerEdges;
+        int[] frontier = scratch.frontier;
+        int[] frontierDistances = scratch.frontierDistances;
+        int[] next = scratch.nextFrontier;
+
+        // Step 1: Init
+        scratch.reach(source, 0, -1, -1);
+        hops[source] = 0;
+        frontier[0] = source;
+        frontierDistances[0] = 0;
+        int size = 1;
+        int targetLayer = -1;
+
+        // Step 2: Layers
+        for (int layer = 1; layer <= maxHops && size > 0; layer++) {
+            int row = layer * nodeCount;
+            int nextSize = 0;
+            for (int i = 0; i < size; i++) {
+                int current = frontier[i];
+                int distance = frontierDistances[i];
+                // Step 3: nothing behind the target or behind its distance can improve it
+                if (current == target || distance >= scratch.distance(target)) continue;
+                scratch.settled++;
+                for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                    if (removed != null && (removed[e >>> 6] & (1L << e)) != 0) continue;
+                    int neighbor = targets[e];
+                    int newDistance = distance + weights[e];
+                    if (newDistance < scratch.distance(neighbor)) {
+                        if (!scratch.reached(neighbor) || hops[neighbor] != layer) next[nextSize++] = neighbor;
+                        scratch.reach(neighbor, newDistance, e, current);
+                        hops[neighbor] = layer;
+                        layerEdges[row + neighbor] = e;
+                    }
+                }
+                int[] added = graph.addedEdges(current);
+                if (added != null) {
+                    for (int e : added) {
+                        int neighbor = graph.target(e);
+                        int newDistance = distance + graph.weight(e);
+                        if (newDistance < scratch.distance(neighbor)) {
+                            if (!scratch.reached(neighbor) || hops[neighbor] != layer) next[nextSize++] = neighbor;
+                            scratch.reach(neighbor, newDistance, e, current);
+                            hops[neighbor] = layer;
+                            layerEdges[row + neighbor] = e;
+                        }
+                    }
+                }
+            }
+            if (scratch.reached(target) && hops[target] == layer) targetLayer = layer;
+
+            // the improved nodes with their final distance of this layer are the next frontier
+            int[] swap = frontier;
+            frontier = next;
+            next = swap;
+            for (int i = 0; i < nextSize; i++) {
+                frontierDistances[i] = distances[frontier[i]];
+            }
+            size = nextSize;
+        }
+        if (targetLayer < 0) return NO_PATH;
+
+        // Step 4: Reconstruction, one edge per layer
+        int[] path = new int[targetLayer];
+        int node = target;
+        for (int layer = targetLayer; layer >= 1; layer--) {
+            int edge = layerEdges[layer * nodeCount + node];
+            path[layer - 1] = edge;
+            node = graph.origin(edge);
+        }
+        return path;
+    }
+
+    /**
+     * Finds the shortest path with the upward searches of a contraction hierarchy
+     * Algorithm Steps:
+     *  1. Init
+     *      Forward search from the source, backward search from the target, like the bidirectional Dijkstra
+     *  2. Greedy Choice
+     *      The direction with the smaller heap minimum settles its next node, a direction stops once its
+     *      minimum reaches the best path found so far
+     *  3. Relaxation
+     *      Forward only over edges to higher ranks, backward only over edges from higher ranks.
+     *      Stall on demand: a node that a higher node already reaches on a shorter way can not be on a shortest
+     *      up-down path, its edges are not relaxed
+     *  4. Meeting
+     *      Every node reached by both searches closes a path, the shortest one is kept
+     *  5. Reconstruction
+     *      Hierarchy edges from the source to the meeting node and on to the target, every shortcut is unpacked
+     *      into the base edges it stands for
+     *
+     * The caller has to check ContractionHierarchy.covers first.
+     *
+     * @param hierarchy contraction hierarchy of the searched graph
+     * @param source start node
+     * @param target destination node
+     * @return base edge ids of the path in travel order, empty if there is no path or source equals target
+     */
+    public static int[] shortestPathHierarchy(ContractionHierarchy hierarchy, int source, int target) {
+        if (source == target) return NO_PATH;
+        int nodeCount = hierarchy.nodeCount();
+        SearchScratch forward = SearchScratch.get(nodeCount);
+        SearchScratch backward = SearchScratch.getBackward(nodeCount);
+        IndexedMinHeap forwardHeap = forward.heap;
+        IndexedMinHeap backwardHeap = backward.heap;
+        int[] edgeSource = hierarchy.edgeSource;
+        int[] edgeTarget = hierarchy.edgeTarget;
+        int[] edgeWeight = hierarchy.edgeWeight;
+        int[] upOffsets = hierarchy.upOffsets;
+        int[] upEdges = hierarchy.upEdges;
+        int[] downOffsets = hierarchy.downOffsets;
+        int[] downEdges = hierarchy.downEdges;
+
+        // Step 1: Init
+        forward.reach(source, 0, -1, -1);
+        forwardHeap.insert(source, 0);
+        backward.reach(target, 0, -1, -1);
+        backwardHeap.insert(target, 0);
+        long best = Long.MAX_VALUE;
+        int meet = -1;
+
+        while (true) {
+            // Step 2: Greedy choice, a direction is done once its minimum can not improve the best path
+            boolean forwardOpen = !forwardHeap.isEmpty() && forwardHeap.minKey() < best;
+            boolean backwardOpen = !backwardHeap.isEmpty() && backwardHeap.minKey() < best;
+            if (!forwardOpen && !backwardOpen) break;
+            if (forwardOpen && (!backwardOpen || forwardHeap.minKey() <= backwardHeap.minKey())) {
+                int current = forwardHeap.poll();
+                forward.settled++;
+                int distance = forward.distances[current];
+                // Step 4: Meeting
+                if (backward.reached(current) && (long) distance + backward.distances[current] < best) {
+                    best = (long) distance + backward.distances[current];
+                    meet = current;
+                }
+                // Step 3: Stall on demand over the edges coming down from higher nodes
+                if (stalled(forward, current, distance, downOffsets, downEdges, edgeSource, edgeWeight)) continue;
+                for (int i = upOffsets[current]; i < upOffsets[current + 1]; i++) {
+                    int e = upEdges[i];
+                    relax(forward, forwardHeap, current, e, edgeTarget[e], distance + edgeWeight[e]);
+                }
+            } else {
+                int current = backwardHeap.poll();
+                forward.settled++;
+                int distance = backward.distances[current];
+                if (forward.reached(current) && (long) distance + forward.distances[current] < best) {
+                    best = (long) distance + forward.distances[current];
+                    meet = current;
+                }
+                // Edges going up from the node are the edges coming down in the backward direction
+                if (stalled(backward, current, distance, upOffsets, upEdges, edgeTarget, edgeWeight)) continue;
+                for (int i = downOffsets[current]; i < downOffsets[current + 1]; i++) {
+                    int e = downEdges[i];
+                    relax(backward, backwardHeap, current, e, edgeSource[e], distance + edgeWeight[e]);
+                }
+            }
+        }
+        if (meet < 0) return NO_PATH;
+
+        // Step 5: Reconstruction, forward part backwards from the meeting node, then the backward part
+        int length = 0;
+        for (int node = meet; node != source; node = forward.parents[node]) length++;
+        for (int node = meet; node != target; node = backward.parents[node]) length++;
+        int[] edges = new int[length];
+        int index = 0;
+        for (int node = meet; node != source; node = forward.parents[node]) {
+            edges[index++] = forward.predecessors[node];
+        }
+        for (int i = 0, j = index - 1; i < j; i++, j--) {
+            int swap = edges[i];
+            edges[i] = edges[j];
+            edges[j] = swap;
+        }
+        for (int node = meet; node != target; node = backward.parents[node]) {
+            edges[index++] = backward.predecessors[node];
+        }
+        return hierarchy.unpack(edges, length);
+    }
+
+    /**
+     * Checks if a higher node reached by the same search gives a shorter way to a node
+     */
+    private static boolean stalled(SearchScratch scratch, int node, int distance, int[] offsets, int[] edges,
+                                   int[] higherEnd, int[] weights) {
+        for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+            int e = edges[i];
+            int higher = higherEnd[e];
+            if (scratch.reached(higher) && (long) scratch.distances[higher] + weights[e] < distance) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Computes the distances from one node to a set of target nodes
+     * Plain Dijkstra that stops as soon as every target is settled, used for the many-to-many matrix
+     *
+     * @param graph graph to search, base edges plus delta overlay
+     * @param source start node
+     * @param targets distinct target nodes
+     * @param isTarget true for every node of targets, at least nodeCount entries
+     * @param distances output, distance per entry of targets, Integer.MAX_VALUE if not reachable
+     */
+    public static void oneToMany(CsrGraph graph, int source, int[] targets, boolean[] isTarget, int[] distances) {
+        SearchScratch scratch = SearchScratch.get(graph.nodeCount());
+        int[] offsets = graph.offsets();
+        int[] edgeTargets = graph.targets();
+        int[] weights = graph.weights();
+        long[] removed = graph.removed();
+        IndexedMinHeap heap = scratch.heap;
+
+        scratch.reach(source, 0, -1, -1);
+        heap.insert(source, 0);
+        int remaining = targets.length;
+        while (!heap.isEmpty() && remaining > 0) {
+            int current = heap.poll();
+            scratch.settled++;
+            // the last target ends the search, its edges are not needed anymore
+            if (isTarget[current] && --remaining == 0) break;
+            int distance = scratch.distances[current];
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                if (removed != null && (removed[e >>> 6] & (1L << e)) != 0) continue;
+                relax(scratch, heap, current, e, edgeTargets[e], distance + weights[e]);
+            }
+            int[] added = graph.addedEdges(current);
+            if (added != null) {
+                for (int e : added) {
+                    relax(scratch, heap, current, e, graph.target(e), distance + graph.weight(e));
+                }
+            }
+        }
+        for (int i = 0; i < targets.length; i++) {
+            distances[i] = scratch.distance(targets[i]);
+        }
+    }
+
+    /**
+     * Computes the distances from one node to all nodes, or from all nodes to one node
+     * Plain Dijkstra without a target, used for preprocessing
+     *
+     * @param graph graph to search, base edges plus delta overlay
+     * @param source start node, or destination node if backward
+     * @param backward false: distances source -> v on the graph, true: distances v -> source on the reversed graph
+     * @param distances output, distance per node, Integer.MAX_VALUE if not reachable. At least nodeCount entries
+     * @param parents output, the neighbour the shortest path reached a node from (forward) or continues to (backward),
+     *                -1 for the source and unreachable nodes. May be null
+     * @param order output, the nodes in the order they were settled. May be null
+     * @return amount of settled nodes, the used length of order
+     */
+    public static int oneToAll(CsrGraph graph, int source, boolean backward, int[] distances, int[] parents, int[] order) {
+        return oneToAll(graph, source, backward, distances, parents, null, order);
+    }
+
+    /**
+     * Computes the distances from one node to all nodes, or from all nodes to one node, with the edges of the paths
+     *
+     * @param graph graph to search, base edges plus delta overlay
+     * @param source start node, or destination node if backward
+     * @param backward false: distances source -> v on the graph, true: distances v -> source on the reversed graph
+     * @param distances output, distance per node, Integer.MAX_VALUE if not reachable. At least nodeCount entries
+     * @param parents output, see above. May be null
+     * @param edges output, the edge between a node and its parent, -1 for the source and unreachable nodes. May be null
+     * @param order output, the nodes in the order they were settled. May be null
+     * @return amount of settled nodes, the used length of order
+     */
+    public static int oneToAll(CsrGraph graph, int source, boolean backward, int[] distances, int[] parents,
+                               int[] edges, int[] order) {
+        // Distances only: large graphs use all cores, DeltaStepping returns -1 for negative weights
+        if (parents == null && edges == null && order == null && DeltaStepping.suited(graph)) {
+            int reached = DeltaStepping.run(graph, source, backward, distances);
+            if (reached >= 0) return reached;
+        }
+        int nodeCount = graph.nodeCount();
+        SearchScratch scratch = SearchScratch.get(nodeCount);
+        IndexedMinHeap heap = scratch.heap;
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] weights = graph.weights();
+        long[] removed = graph.removed();
+        CsrGraph reverse = backward ? graph.reverseBase() : null;
+        int[] reverseEdges = backward ? graph.reverseEdgeIds() : null;
+
+        scratch.reach(source, 0, -1, -1);
+        heap.insert(source, 0);
+        int settledCount = 0;
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            if (order != null) order[settledCount] = current;
+            settledCount++;
+            int distance = scratch.distances[current];
+            if (!backward) {
+                for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                    if (removed != null && (removed[e >>> 6] & (1L << e)) != 0) continue;
+                    relax(scratch, heap, current, e, targets[e], distance + weights[e]);
+                }
+                int[] added = graph.addedEdges(current);
+                if (added != null) {
+                    for (int e : added) {
+                        relax(scratch, heap, current, e, graph.target(e), distance + graph.weight(e));
+                    }
+                }
+            } else {
+                if (current < reverse.nodeCount()) {
+                    int[] reverseOffsets = reverse.offsets();
+                    for (int r = reverseOffsets[current]; r < reverseOffsets[current + 1]; r++) {
+                        int e = reverseEdges[r];
+                        if (removed != null && (removed[e >>> 6] & (1L << e)) != 0) continue;
+                        relax(scratch, heap, current, e, reverse.targets()[r], distance + reverse.weights()[r]);
+                    }
+                }
+                int[] addedIn = graph.addedIncomingEdges(current);
+                if (addedIn != null) {
+                    for (int e : addedIn) {
+                        relax(scratch, heap, current, e, graph.origin(e), distance + graph.weight(e));
+                    }
+                }
+            }
+        }
+        scratch.settled = settledCount;
+        // copy out, the scratch is only valid until the next search of this thread
+        for (int v = 0; v < nodeCount; v++) {
+            boolean reached = scratch.reached(v);
+            distances[v] = reached ? scratch.distances[v] : Integer.MAX_VALUE;
+            if (parents != null) parents[v] = reached ? scratch.parents[v] : -1;
+            if (edges != null) edges[v] = reached ? scratch.predecessors[v] : -1;
+        }
+        return settledCount;
+    }
+
+    /**
+     * Computes every node that can be reached from a source within a budget, with its distance and amount of edges
+     * Dijkstra that never puts a node beyond the budget into the heap, so the search ends where the budget ends
+     * and the nodes come out sorted by distance. The amount of edges is the one of the path Dijkstra found
+     *
+     * @param graph graph to search, base edges plus delta overlay
+     * @param source start node, not part of the result
+     * @param budget largest distance that is included
+     * @param nodes output, the reached nodes by increasing distance. At least nodeCount entries
+     * @param distances output, distance per entry of nodes
+     * @param hops output, amount of edges of the path per entry of nodes
+     * @return amount of reached nodes, the used length of the outputs
+     */
+    public static int withinBudget(CsrGraph graph, int source, int budget, int[] nodes, int[] distances, int[] hops) {
+        SearchScratch scratch = SearchScratch.get(graph.nodeCount());
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] weights = graph.weights();
+        long[] removed = graph.removed();
+        IndexedMinHeap heap = scratch.heap;
+
+        scratch.reach(source, 0, -1, -1);
+        heap.insert(source, 0);
+        int count = 0;
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            scratch.settled++;
+            int distance = scratch.distances[current];
+            // the parent is settled before the node, its edge count is final
+            int parent = scratch.parents[current];
+            scratch.hops[current] = parent < 0 ? 0 : scratch.hops[parent] + 1;
+            if (current != source) {
+                nodes[count] = current;
+                distances[count] = distance;
+                hops[count] = scratch.hops[current];
+                count++;
+            }
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                if (removed != null && (removed[e >>> 6] & (1L << e)) != 0) continue;
+                if ((long) distance + weights[e] > budget) continue;
+                relax(scratch, heap, current, e, targets[e], distance + weights[e]);
+            }
+            int[] added = graph.addedEdges(current);
+            if (added != null) {
+                for (int e : added) {
+                    if ((long) distance + graph.weight(e) > budget) continue;
+                    relax(scratch, heap, current, e, graph.target(e), distance + graph.weight(e));
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Updates a neighbour if the new distance is shorter
+     * With non negative weights a settled neighbour is never shorter again, a negative weight from the data
+     * puts it back into the heap like the former version did
+     */
+    private static void relax(SearchScratch scratch, IndexedMinHeap heap, int current, int edge, int neighbor, int newDistance) {
+        if (!scratch.reached(neighbor)) {
+            scratch.reach(neighbor, newDistance, edge, current);
+            heap.insert(neighbor, newDistance);
+        } else if (newDistance < scratch.distances[neighbor]) {
+            scratch.reach(neighbor, newDistance, edge, current);
+            heap.insertOrDecrease(neighbor, newDistance);
+        }
+    }
+
+    /**
+     * Step 4: Follows the predecessor chain from the target back to the source
+     * The chain is walked twice, first to get the length, then to fill the result from the back,
+     * so the result has the exact size and does not need to be reversed
+     */
+    private static int[] reconstructPath(SearchScratch scratch, int source, int target) {
+        int length = 0;
+        for (int node = target; node != source; node = scratch.parents[node]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int node = target; node != source; node = scratch.parents[node]) {
+            path[--length] = scratch.predecessors[node];
+        }
+        return path;
+    }
+
+    /**
+     * Step 5 of the bidirectional search: forward part, meeting edge, backward part
+     * In the backward scratch the parent of a node is the next node towards the target
+     */
+    private static int[] reconstructPath(CsrGraph graph, SearchScratch forward, SearchScratch backward,
+                                         int source, int target, int meetEdge) {
+        int from = graph.origin(meetEdge);
+        int to = graph.target(meetEdge);
+        int forwardLength = 0;
+        for (int node = from; node != source; node = forward.parents[node]) {
+            forwardLength++;
+        }
+        int backwardLength = 0;
+        for (int node = to; node != target; node = backward.parents[node]) {
+            backwardLength++;
+        }
+        int[] path = new int[forwardLength + 1 + backwardLength];
+        int index = forwardLength;
+        for (int node = from; node != source; node = forward.parents[node]) {
+            path[--index] = forward.predecessors[node];
+        }
+        index = forwardLength;
+        path[index++] = meetEdge;
+        for (int node = to; node != target; node = backward.parents[node]) {
+            path[index++] = backward.predecessors[node];
+        }
+        return path;
+    }
+
+    /**
+     * Get the amount of nodes the last search of the current thread settled, both directions together
+     * Used to compare the search modes
+     * @return settled nodes
+     */
+    public static int lastSettledCount() {
+        return SearchScratch.lastSettledCount();
+    }
+}
@@ -0,0 +1,182 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.ConstraintIndex;
+import org.pi2.model.NetworkSnapshot;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Filters of a trip: airlines to use or avoid, airports to avoid and countries to transit or never transit
+ *
+ * Semantics:
+ * - onlyAirlines: every flight is operated by one of them, avoidAirlines: no flight is operated by one of them
+ * - onlyCountries / avoidCountries / avoidAirports: apply to the airports the trip changes planes at,
+ *   the origin and the destination of the trip are always allowed
+ * - Names are matched case-insensitive, airports by IATA code. Unknown names are in no flight or airport of
+ *   the network: they never match an "only" list and avoiding them changes nothing
+ *
+ * The filters are compiled per query into bitsets over the airline ids, and over the airport ids
+ * (see ConstraintIndex), which the search tests with one AND per edge and per airport.
+ */
+public final class TripConstraints {
+    private final List<String> onlyAirlines;
+    private final List<String> avoidAirlines;
+    private final List<String> onlyCountries;
+    private final List<String> avoidCountries;
+    private final List<String> avoidAirports;
+
+    /**
+     * Constructor creates the filters, null or empty lists mean no filter
+     * @param onlyAirlines airlines every flight has to be operated by
+     * @param avoidAirlines airlines no flight may be operated by
+     * @param onlyCountries countries the connecting airports have to be in
+     * @param avoidCountries countries no connecting airport may be in
+     * @param avoidAirports IATA codes of the airports the trip must not change planes at
+     */
+    public TripConstraints(Collection<String> onlyAirlines, Collection<String> avoidAirlines,
+                           Collection<String> onlyCountries, Collection<String> avoidCountries,
+                           Collection<String> avoidAirports) {
+        this.onlyAirlines = copy(onlyAirlines);
+        this.avoidAirlines = copy(avoidAirlines);
+        this.onlyCountries = copy(onlyCountries);
+        this.avoidCountries = copy(avoidCountries);
+        this.avoidAirports = copy(avoidAirports);
+    }
+
+    private static List<String> copy(Collection<String> values) {
+        return values == null ? List.of() : List.copyOf(values);
+    }
+
+    /**
+     * Checks if there are any filters
+     * @return true if at least one list is set
+     */
+    public boolean hasFilters() {
+        return hasAirlineFilter() || hasAirportFilter();
+    }
+
+    /**
+     * Checks if the flights are filtered by airline
+     * @return true if onlyAirlines or avoidAirlines is set
+     */
+    public boolean hasAirlineFilter() {
+        return !onlyAirlines.isEmpty() || !avoidAirlines.isEmpty();
+    }
+
+    /**
+     * Checks if the connecting airports are filtered
+     * @return true if onlyCountries, avoidCountries or avoidAirports is set
+     */
+    public boolean hasAirportFilter() {
+        return !onlyCountries.isEmpty() || !avoidCountries.isEmpty() || !avoidAirports.isEmpty();
+    }
+
+    /**
+     * Compiles the filters into the bitsets of one query
+     * @param snapshot network version of the query
+     * @param source origin id, always allowed
+     * @param target destination id, always allowed
+     * @return the bitsets, null entries for filters that are not set
+     */
+    Mask compile(NetworkSnapshot snapshot, int source, int target) {
+        ConstraintIndex index = snapshot.constraints();
+
+        long[] airlines = null;
+        if (hasAirlineFilter()) {
+            airlines = new long[(index.airlineCount() + 63) >>> 6];
+            if (onlyAirlines.isEmpty()) {
+                setAll(airlines, index.airlineCount());
+            } else {
+                for (String name : onlyAirlines) set(airlines, index.airlineId(name), true);
+            }
+            for (String name : avoidAirlines) set(airlines, index.airlineId(name), false);
+        }
+
+        long[] nodes = null;
+        if (hasAirportFilter()) {
+            // countries first, then every airport by the bit of its country
+            long[] countries = new long[(index.countryCount() + 63) >>> 6];
+            if (onlyCountries.isEmpty()) {
+                setAll(countries, index.countryCount());
+            } else {
+                for (String name : onlyCountries) set(countries, index.countryId(name), true);
+            }
+            for (String name : avoidCountries) set(countries, index.countryId(name), false);
+
+            int nodeCount = snapshot.airportCount();
+            int[] nodeCountries = index.nodeCountries();
+            nodes = new long[(nodeCount + 63) >>> 6];
+            for (int v = 0; v < nodeCount; v++) {
+                int country = nodeCountries[v];
+                // airports without a country only fail a list of allowed countries
+                boolean allowed = country < 0
+                        ? onlyCountries.isEmpty()
+                        : (countries[country >>> 6] & (1L << country)) != 0;
+                if (allowed) nodes[v >>> 6] |= 1L << v;
+            }
+            for (String code : avoidAirports) set(nodes, snapshot.idOf(code), false);
+            set(nodes, source, true);
+            set(nodes, target, true);
+        }
+        return new Mask(airlines, nodes);
+    }
+
+    private static void setAll(long[] bits, int count) {
+        for (int i = 0; i < count; i++) bits[i >>> 6] |= 1L << i;
+    }
+
+    private static void set(long[] bits, int id, boolean value) {
+        if (id < 0) return;
+        if (value) bits[id >>> 6] |= 1L << id;
+        else bits[id >>> 6] &= ~(1L << id);
+    }
+
+    /**
+     * Get the airlines every flight has to be operated by
+     * @return names, empty if not filtered
+     */
+    public List<String> getOnlyAirlines() {
+        return onlyAirlines;
+    }
+
+    /**
+     * Get the airlines no flight may be operated by
+     * @return names, empty if not filtered
+     */
+    public List<String> getAvoidAirlines() {
+        return avoidAirlines;
+    }
+
+    /**
+     * Get the countries the connecting airports have to be in
+     * @return names, empty if not filtered
+     */
+    public List<String> getOnlyCountries() {
+        return onlyCountries;
+    }
+
+    /**
+     * Get the countries no connecting airport may be in
+     * @return names, empty if not filtered
+     */
+    public List<String> getAvoidCountries() {
+        return avoidCountries;
+    }
+
+    /**
+     * Get the airports the trip must not change planes at
+     * @return IATA codes, empty if not filtered
+     */
+    public List<String> getAvoidAirports() {
+        return avoidAirports;
+    }
+
+    /**
+     * Compiled filters of one query
+     * @param airlines bitset of the allowed airline ids, null if every airline is allowed
+     * @param nodes bitset of the airport ids the trip may pass, null if every airport is allowed
+     */
+    record Mask(long[] airlines, long[] nodes) {
+    }
+}
@@ -0,0 +1,163 @@
+package org.pi2.service.planning;
+
+import org.pi2.model.CsrGraph;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Dense matrix of trip distances or costs between a list of origins and a list of destinations
+ * Returned by the /matrix endpoint
+ *
+ * values[i][j] is the total distance (criteria "shortest") or cost (criteria "cheapest") of the best trip from
+ * origins[i] to destinations[j], 0 if both are the same airport and -1 if there is no trip.
+ *
+ * Computation:
+ * - One search per distinct origin, the origins are searched in parallel on the common ForkJoin pool
+ * - Each search stops once every distinct destination is settled (ShortestPathKernel.oneToMany)
+ * - If the all-pairs tables of the graph are available, the rows are read from the tables instead
+ */
+public class TripMatrix {
+    static final int NO_TRIP = -1;
+
+    private final String criteria;      // "shortest" or "cheapest"
+    private final String unit;          // "km" or "EUR"
+    private final long networkVersion;  // version of the network the matrix was computed on
+    private final String[] origins;     // IATA codes of the rows
+    private final String[] destinations; // IATA codes of the columns
+    private final int[][] values;       // one row per origin, one column per destination
+
+    /**
+     * Constructor creates the matrix object
+     * @param criteria criterion of the trips
+     * @param unit unit of the values
+     * @param networkVersion version of the network the matrix was computed on
+     * @param origins IATA codes of the rows
+     * @param destinations IATA codes of the columns
+     * @param values distance or cost per origin and destination, -1 if there is no trip
+     */
+    public TripMatrix(String criteria, String unit, long networkVersion, String[] origins, String[] destinations,
+                      int[][] values) {
+        this.criteria = criteria;
+        this.unit = unit;
+        this.networkVersion = networkVersion;
+        this.origins = origins;
+        this.destinations = destinations;
+        this.values = values;
+    }
+
+    /**
+     * Computes the rows of the matrix
+     * @param graph graph to search, base edges plus delta overlay
+     * @param tables all-pairs tables of exactly this graph, null to search
+     * @param sources node id per origin, -1 for unknown airports
+     * @param targets node id per destination, -1 for unknown airports
+     * @return one row per origin, -1 if there is no trip
+     */
+    static int[][] compute(CsrGraph graph, AllPairs tables, int[] sources, int[] targets) {
+        int nodeCount = graph.nodeCount();
+        // Distinct destinations, column j reads the distance of distinct target column[j]
+        boolean[] isTarget = new boolean[nodeCount];
+        int[] distinct = new int[targets.length];
+        int[] column = new int[targets.length];
+        int[] slot = new int[nodeCount];
+        int count = 0;
+        for (int j = 0; j < targets.length; j++) {
+            int target = targets[j];
+            if (target < 0) {
+                column[j] = -1;
+                continue;
+            }
+            if (!isTarget[target]) {
+                isTarget[target] = true;
+                slot[target] = count;
+                distinct[count++] = target;
+            }
+            column[j] = slot[target];
+        }
+        int[] distinctTargets = Arrays.copyOf(distinct, count);
+
+        // Rows of the same origin are only computed once
+        int[][] rows = new int[nodeCount][];
+        int[] distinctSources = IntStream.of(sources).filter(s -> s >= 0).distinct().toArray();
+        int[][] computed = IntStream.of(distinctSources).parallel()
+                .mapToObj(source -> row(graph, tables, source, distinctTargets, isTarget))
+                .toArray(int[][]::new);
+        for (int i = 0; i < distinctSources.length; i++) {
+            rows[distinctSources[i]] = computed[i];
+        }
+
+        int[][] values = new int[sources.length][targets.length];
+        for (int i = 0; i < sources.length; i++) {
+            int[] row = sources[i] < 0 ? null : rows[sources[i]];
+            for (int j = 0; j < targets.length; j++) {
+                int distance = row == null || column[j] < 0 ? AllPairs.UNREACHABLE : row[column[j]];
+                values[i][j] = distance == AllPairs.UNREACHABLE ? NO_TRIP : distance;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Distances from one origin to the distinct destinations, from the tables or one search
+     */
+    private static int[] row(CsrGraph graph, AllPairs tables, int source, int[] targets, boolean[] isTarget) {
+        int[] distances = new int[targets.length];
+        if (tables != null) {
+            for (int j = 0; j < targets.length; j++) {
+                distances[j] = tables.distance(source, targets[j]);
+            }
+        } else if (targets.length > 0) {
+            ShortestPathKernel.oneToMany(graph, source, targets, isTarget, distances);
+        }
+        return distances;
+    }
+
+    /**
+     * Get the criterion of the trips
+     * @return "shortest" or "cheapest"
+     */
+    public String getCriteria() {
+        return criteria;
+    }
+
+    /**
+     * Get the unit of the values
+     * @return "km" for distances, "EUR" for costs
+     */
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * Get the version of the network the matrix was computed on
+     * @return network version
+     */
+    public long getNetworkVersion() {
+        return networkVersion;
+    }
+
+    /**
+     * Get the airports of the rows
+     * @return IATA codes in request order
+     */
+    public String[] getOrigins() {
+        return origins;
+    }
+
+    /**
+     * Get the airports of the columns
+     * @return IATA codes in request order
+     */
+    public String[] getDestinations() {
+        return destinations;
+    }
+
+    /**
+     * Get the matrix
+     * @return values[origin][destination], -1 if there is no trip
+     */
+    public int[][] getValues() {
+        return values;
+    }
+}
@@ -1,9 +1,15 @@
 package org.pi2.service.planning;
 
 import org.pi2.model.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.sql.SQLException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  /**
@@ -18,6 +24,50 @@ import java.util.*;
  * - Edges: Routes
  * - Weights: Distance of the routes
  *
+ * Landmarks (ALT) for "cheapest":
+ * - Every new base of the flight graph (startup, reload, compaction) is preprocessed on a background thread,
+ *   see Landmarks. Until it is done, and while new flights are in the delta, queries use Dijkstra
+ * - After each preprocessing a few random queries compare the settled nodes of Dijkstra and ALT,
+ *   the result is logged and returned by getLandmarkStats()
+ *
+ * All-pairs tables for "cheapest":
+ * - Small networks get the cost table of all airport pairs like the route planner, see AllPairs
+ * - Preferred over every search, computed again after every change of the flight graph
+ *
+ * Contraction hierarchy for "cheapest":
+ * - If enabled, the flight graph is contracted like the route graph, see ContractionHierarchy
+ * - Preferred over the landmarks, both need a graph without new flights since the last compaction
+ *
+ * Reachability index:
+ * - Trips between airports that can not reach each other in the flight graph (or the route graph for "shortest")
+ *   are rejected without a search, see Reachability
+ *
+ * Maximum stops:
+ * - planTrip with maxStops plans the best trip with at most maxStops + 1 legs, see ShortestPathKernel.shortestPathHopLimited
+ *
+ * Constraints:
+ * - planTrip with TripConstraints plans the best trip that avoids or only uses some airlines, or does not change
+ *   planes at some airports or countries. Airline filters search the flight multigraph of ConstraintIndex with
+ *   one edge per flight, airport filters alone the usual graphs, see ShortestPathKernel.shortestPathConstrained
+ *
+ * Weighted trips:
+ * - planTrip with an EdgeWeight plans the trip with the lowest total of a mixed objective, e.g.
+ *   a * cost + b * distance + c per leg (LinearEdgeWeight). The weighting is evaluated once per edge into an int[]
+ *   over the flight graph edges, cached per weighting and network version, the kernel only reads that array
+ *
+ * Earliest arrival:
+ * - planEarliestTrip plans the trip with the earliest arrival after a departure time with the Connection Scan
+ *   Algorithm over the scheduled flights, see ConnectionScan. The timetable is built on the first query of
+ *   every network version with new flights or airports
+ *
+ * Exploration:
+ * - explore returns every airport reachable from an origin within a budget of distance or cost, from one search
+ *   that stops at the budget. Results are cached per origin, criteria and network version, see Exploration
+ *
+ * Alternatives:
+ * - planTrips returns the K best trips of a criterion with Yen's algorithm, see KShortestPaths
+ * - planParetoTrips returns every trip no other trip beats in both cost and distance, see ParetoSearch
+ *
  * Complexity:
  *  - Time complexity O(M+N)*log M)
  *      - with M=Amount of airport, N=Amount of routes
@@ -25,20 +75,233 @@ import java.util.*;
  */
 public class TripPlannerFlight {
 
+    private static final Logger log = LoggerFactory.getLogger(TripPlannerFlight.class);
+    private static final int SAMPLE_QUERIES = 100; // random queries that measure the effect of the landmarks
+    private static final int MAX_EXPLORATIONS = 256; // cached explorations, the least recently used one is dropped
+    private static final int MAX_WEIGHTINGS = 16; // cached edge weight arrays, the least recently used one is dropped
+
     /**
      * Flightnetwork contains all airports,routes and flights
      */
     private final FlightNetwork network;
     // Tripplanner that is being used, if Criteria is "shortest"
     private final TripPlannerRoute routePlanner;
+    // Point to point queries search from both ends by default, false runs the unidirectional search
+    private volatile boolean bidirectional = true;
+
+    // Landmark settings, 0 landmarks disables the ALT search
+    private volatile int landmarkCount = 8;
+    private volatile Landmarks.Selection landmarkSelection = Landmarks.Selection.AVOID;
+    // Landmarks of the latest preprocessed base, null until the first preprocessing is done
+    private volatile Landmarks landmarks;
+    private volatile LandmarkStats landmarkStats;
+    private final LongAdder landmarkQueries = new LongAdder();
+    private final LongAdder landmarkSettled = new LongAdder();
+    private final LongAdder fallbackQueries = new LongAdder();
+    // Preprocessing runs on one background thread, the tables themselves are computed in parallel
+    private final ExecutorService landmarkBuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "landmark-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean landmarkBuildScheduled = new AtomicBoolean();
+    // Contraction hierarchy of the flight graph, off until setContractionHierarchy is called
+    private final HierarchyHolder hierarchy;
+    // All-pairs tables of the flight graph, off until setAllPairs is called
+    private final AllPairsHolder allPairs;
+    // Reachability index of the flight graph, rejects impossible trips before any search
+    private final ReachabilityHolder reachability;
+    // Timetable of the scheduled flights, built on the first "earliest" query of a network version
+    private volatile ConnectionScan timetable;
+    // Explorations by origin, criteria and network version, in access order for the LRU eviction
+    private final Map<ExplorationKey, Exploration> explorations = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ExplorationKey, Exploration> eldest) {
+            return size() > MAX_EXPLORATIONS;
+        }
+    };
+    // Edge weight arrays by weighting and network version, in access order for the LRU eviction
+    private final Map<WeightingKey, int[]> weightings = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<WeightingKey, int[]> eldest) {
+            return size() > MAX_WEIGHTINGS;
+        }
+    };
 
     /**
      * Constructor initiliazes the flightNetwork and TripPlannerRoute
+     * Starts the landmark preprocessing of the current network and of every later base
      * @param network the Flightnetwork on which we act upon
      */
     public TripPlannerFlight(FlightNetwork network) {
+        this(network, new TripPlannerRoute(network));
+    }
+
+    /**
+     * Constructor with a route planner shared with the caller, so its preprocessing only runs once
+     * @param network the Flightnetwork on which we act upon
+     * @param routePlanner planner used for the "shortest" criterion, on the same network
+     */
+    public TripPlannerFlight(FlightNetwork network, TripPlannerRoute routePlanner) {
         this.network = network;
-        this.routePlanner = new TripPlannerRoute(network);
+        this.routePlanner = routePlanner;
+        this.hierarchy = new HierarchyHolder("flight", NetworkSnapshot::flightGraph, network);
+        this.allPairs = new AllPairsHolder("flight", NetworkSnapshot::flightGraph, network);
+        this.reachability = new ReachabilityHolder("flight", NetworkSnapshot::flightGraph, network);
+        network.addSnapshotListener(snapshot -> scheduleLandmarkBuild());
+        // Explorations of older versions are never hit again
+        network.addSnapshotListener(snapshot -> {
+            synchronized (explorations) {
+                explorations.clear();
+            }
+        });
+        network.addSnapshotListener(snapshot -> {
+            synchronized (weightings) {
+                weightings.clear();
+            }
+        });
+        scheduleLandmarkBuild();
+    }
+
+    /**
+     * Changes the landmarks of the "cheapest" search, they are rebuilt in the background
+     * @param count amount of landmarks, 0 disables the landmark search
+     * @param selection strategy to pick the landmarks
+     */
+    public void setLandmarks(int count, Landmarks.Selection selection) {
+        this.landmarkCount = Math.max(0, count);
+        this.landmarkSelection = selection;
+        scheduleLandmarkBuild();
+    }
+
+    /**
+     * Switches the contraction hierarchy of the flight graph on or off
+     * @param enabled true to contract every new base of the flight graph in the background
+     * @param file file the hierarchy is kept in across restarts, null to keep it in memory only
+     */
+    public void setContractionHierarchy(boolean enabled, Path file) {
+        hierarchy.configure(enabled, file);
+    }
+
+    /**
+     * Sets the airport limit and the algorithm of the all-pairs tables of the flight graph
+     * @param maxAirports networks with at most this many airports get the tables, 0 disables them
+     * @param method algorithm that computes the tables
+     */
+    public void setAllPairs(int maxAirports, AllPairs.Method method) {
+        allPairs.configure(maxAirports, method);
+    }
+
+    /**
+     * Get the statistics of the landmark preprocessing and the queries that used it
+     * @return landmark statistics, all 0 if no landmarks were built yet
+     */
+    public LandmarkStats getLandmarkStats() {
+        LandmarkStats stats = landmarkStats;
+        if (stats == null) {
+            stats = new LandmarkStats(0, landmarkSelection.name().toLowerCase(), -1, 0, 0, 0, 0, 0, 0, 0, 0);
+        }
+        long queries = landmarkQueries.sum();
+        return stats.withQueries(queries, fallbackQueries.sum(), queries == 0 ? 0 : (double) landmarkSettled.sum() / queries);
+    }
+
+    /**
+     * Queues a landmark preprocessing, several requests while one is queued collapse into one
+     */
+    private void scheduleLandmarkBuild() {
+        if (landmarkBuildScheduled.compareAndSet(false, true)) {
+            landmarkBuilder.execute(() -> {
+                landmarkBuildScheduled.set(false);
+                buildLandmarks();
+            });
+        }
+    }
+
+    /**
+     * Preprocesses the base of the current flight graph, unless the landmarks already belong to it
+     * Runs on the landmark builder thread
+     */
+    private void buildLandmarks() {
+        try {
+            NetworkSnapshot snapshot = network.getSnapshot();
+            CsrGraph graph = snapshot.flightGraph();
+            int count = landmarkCount;
+            Landmarks.Selection selection = landmarkSelection;
+            Landmarks current = landmarks;
+            if (current != null && current.matches(graph, count, selection)) return;
+            if (count == 0 || graph.baseEdgeCount() == 0) {
+                landmarks = null;
+                landmarkStats = null;
+                return;
+            }
+            Landmarks built = Landmarks.build(graph, count, selection);
+            landmarkStats = measure(snapshot, built);
+            landmarks = built;
+            LandmarkStats stats = landmarkStats;
+            log.info(String.format("Built %d landmarks (%s) for network version %d in %.1f ms, settled nodes per query: "
+                            + "Dijkstra %.1f, bidirectional %.1f, landmarks %.1f (%.1f%% less than Dijkstra)",
+                    built.count(), selection, snapshot.baseVersion(), built.preprocessingMillis(),
+                    stats.getAverageSettledDijkstra(), stats.getAverageSettledBidirectional(),
+                    stats.getAverageSettledLandmarks(), stats.getSettledReductionPercent()));
+        } catch (RuntimeException e) {
+            log.error("Landmark preprocessing failed", e);
+        }
+    }
+
+    /**
+     * Runs random queries with Dijkstra, bidirectional Dijkstra and the landmarks on the preprocessed base
+     * and counts their settled nodes. Also checks that all three find the same cost
+     * @param snapshot snapshot whose flight graph was preprocessed
+     * @param built the new landmarks
+     * @return statistics of the sample queries
+     */
+    private LandmarkStats measure(NetworkSnapshot snapshot, Landmarks built) {
+        CsrGraph base = snapshot.flightGraph().withoutOverlay();
+        int nodeCount = base.nodeCount();
+        Random random = new Random(nodeCount);
+        long dijkstra = 0;
+        long bidirectional = 0;
+        long alt = 0;
+        int queries = 0;
+        for (int q = 0; q < SAMPLE_QUERIES && nodeCount > 1; q++) {
+            int source = random.nextInt(nodeCount);
+            int target = random.nextInt(nodeCount);
+            if (source == target) continue;
+            long cost = cost(base, ShortestPathKernel.shortestPath(base, source, target));
+            dijkstra += ShortestPathKernel.lastSettledCount();
+            long bidirectionalCost = cost(base, ShortestPathKernel.shortestPathBidirectional(base, source, target));
+            bidirectional += ShortestPathKernel.lastSettledCount();
+            long altCost = cost(base, ShortestPathKernel.shortestPathLandmarks(base, source, target, built));
+            alt += ShortestPathKernel.lastSettledCount();
+            if (cost != bidirectionalCost || cost != altCost) {
+                log.warn("Landmark check {} -> {}: Dijkstra {}, bidirectional {}, landmarks {}",
+                        source, target, cost, bidirectionalCost, altCost);
+            }
+            queries++;
+        }
+        double n = Math.max(queries, 1);
+        return new LandmarkStats(built.count(), built.selection().name().toLowerCase(), snapshot.baseVersion(),
+                built.preprocessingMillis(), queries, dijkstra / n, bidirectional / n, alt / n, 0, 0, 0);
+    }
+
+    /**
+     * Sums the weights of a path, -1 for no path
+     */
+    private static long cost(CsrGraph graph, int[] edges) {
+        if (edges.length == 0) return -1;
+        long cost = 0;
+        for (int edge : edges) cost += graph.weight(edge);
+        return cost;
+    }
+
+    /**
+     * Switches between the bidirectional and the unidirectional search for both criteria, e.g. to compare them
+     * Both return a trip with the same total distance or cost
+     * @param bidirectional true to search from both ends (default), false to search from the origin only
+     */
+    public void setBidirectional(boolean bidirectional) {
+        this.bidirectional = bidirectional;
+        routePlanner.setBidirectional(bidirectional);
     }
 
     /**
@@ -52,185 +315,515 @@ public class TripPlannerFlight {
      * @param to Destination airport
      * @param criteria Either "shortest" or "cheapest"
      * @return List of flights for the trip, empty list if no route found
-     * @throws SQLException if db operations fail
      */
-    public List<Flight> planTrip(Airport from, Airport to, String criteria) throws SQLException {
+    public List<Flight> planTrip(Airport from, Airport to, String criteria) {
         // Validating Input
         if (from == null || to == null || criteria == null) {
             return Collections.emptyList();
         }
 
+        // Pin the current version of the network, so every step of the query sees the same network
+        NetworkSnapshot snapshot = network.getSnapshot();
+
         // Switch cases to check the criteria and choose the proper Algorithm for the Solution.
         // if No criteria is choosen, nothing is returned
         switch (criteria.toLowerCase()) {
             case "shortest":
-                return findShortestFlights(from, to);
+                return findShortestFlights(snapshot, from, to);
             case "cheapest":
-                return findCheapestFlights(from, to);
+                return findCheapestFlights(snapshot, from, to);
             default:
                 return Collections.emptyList();
         }
     }
 
     /**
-     * Finds flights that follow the shortest route path
-     * @param from  Originating Airport
-     * @param to    Destination Airport
-     * @return List of flights following the criteria
+     * Plans a trip based on the specified criteria with at most maxStops connections
+     * The preprocessed searches do not know the amount of legs, so the trip is planned with the hop-limited
+     * layered search of the kernel (ShortestPathKernel.shortestPathHopLimited) on the same graphs.
+     * A shortest path never visits an airport twice, so more legs than airports - 1 are never searched
+     *
+     * @param from Origin airport
+     * @param to Destination airport
+     * @param criteria Either "shortest" or "cheapest"
+     * @param maxStops Maximum amount of stops between origin and destination, 0 for a direct flight
+     * @return List of flights for the trip with at most maxStops + 1 flights, empty list if no route found
      */
-    private List<Flight> findShortestFlights(Airport from, Airport to) throws SQLException {
-        // Get the shortest route path using the existing route planner
-        List<Route> shortestRoutes = routePlanner.findShortestPath(from, to);
-
-        if (shortestRoutes.isEmpty()) {
+    public List<Flight> planTrip(Airport from, Airport to, String criteria, int maxStops) {
+        if (from == null || to == null || criteria == null || maxStops < 0) {
             return Collections.emptyList();
         }
-        // Find flights that correspond to these routes
-        return findFlightsForRoutes(shortestRoutes);
+
+        // Pin the current version of the network, so every step of the query sees the same network
+        NetworkSnapshot snapshot = network.getSnapshot();
+        int source = snapshot.idOf(from);
+        int target = snapshot.idOf(to);
+        if (source == target || !mayReach(snapshot, source, target, criteria)) return Collections.emptyList();
+        // long arithmetic, maxStops + 1 overflows for Integer.MAX_VALUE
+        int maxLegs = (int) Math.min((long) maxStops + 1, Math.max(1, snapshot.airportCount() - 1));
+
+        switch (criteria.toLowerCase()) {
+            case "shortest": {
+                return findFlightsForRoutes(snapshot,
+                        ShortestPathKernel.shortestPathHopLimited(snapshot.routeGraph(), source, target, maxLegs));
+            }
+            case "cheapest":
+                return toFlights(snapshot,
+                        ShortestPathKernel.shortestPathHopLimited(snapshot.flightGraph(), source, target, maxLegs));
+            default:
+                return Collections.emptyList();
+        }
     }
 
     /**
-     * Finds the cheapest flight path using Dijkstra's algorithm with cost as weight, optimizing for lowest total Trip cost
-     * Similar to TripPlannerRoute, first wie initialize the data, make greedy choice, update neighbors and reconstruct optimal path
+     * Plans a trip based on the specified criteria that only uses the airlines and connecting airports the
+     * constraints allow
      *
-     * @param from Originating Airport
-     * @param to Destination Airport
-     * @return List<Flight> List of the cheapest Flights
-     * @throws SQLException if db Operations fail
+     * Selection:
+     *  -"shortest" with airline filters: shortest path over the allowed flights, every leg weighs the distance of the
+     *   shortest route of its pair and uses the cheapest allowed flight of the pair
+     *  -"shortest" with airport filters only: shortest route path over the allowed airports, then the cheapest flight per route
+     *  -"cheapest" with airline filters: cheapest path over the allowed flights
+     *  -"cheapest" with airport filters only: cheapest path on the flight graph over the allowed airports
+     *
+     * @param from Origin airport
+     * @param to Destination airport
+     * @param criteria Either "shortest" or "cheapest"
+     * @param constraints filters of the trip, null or empty for the unfiltered trip
+     * @return List of flights for the trip, empty list if no route found
+     */
+    public List<Flight> planTrip(Airport from, Airport to, String criteria, TripConstraints constraints) {
+        if (constraints == null || !constraints.hasFilters()) return planTrip(from, to, criteria);
+        if (from == null || to == null || criteria == null) return Collections.emptyList();
+
+        // Pin the current version of the network, the masks are compiled against its ids
+        NetworkSnapshot snapshot = network.getSnapshot();
+        int source = snapshot.idOf(from);
+        int target = snapshot.idOf(to);
+        if (source == target || !mayReach(snapshot, source, target, criteria)) return Collections.emptyList();
+        TripConstraints.Mask mask = constraints.compile(snapshot, source, target);
+        ConstraintIndex index = snapshot.constraints();
+
+        switch (criteria.toLowerCase()) {
+            case "shortest": {
+                if (!constraints.hasAirlineFilter()) {
+                    return findFlightsForRoutes(snapshot, ShortestPathKernel.shortestPathConstrained(snapshot.routeGraph(),
+                            null, source, target, null, null, mask.nodes()));
+                }
+                return index.toFlights(ShortestPathKernel.shortestPathConstrained(index.flights(), index.edgeDistances(),
+                        source, target, index.edgeAirlines(), mask.airlines(), mask.nodes()));
+            }
+            case "cheapest": {
+                if (!constraints.hasAirlineFilter()) {
+                    return toFlights(snapshot, ShortestPathKernel.shortestPathConstrained(snapshot.flightGraph(), null,
+                            source, target, null, null, mask.nodes()));
+                }
+                return index.toFlights(ShortestPathKernel.shortestPathConstrained(index.flights(), null,
+                        source, target, index.edgeAirlines(), mask.airlines(), mask.nodes()));
+            }
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Plans the trip with the lowest total weight of a weighting, criteria "weighted"
+     * Runs on the flight graph like "cheapest", every leg uses the cheapest flight of its pair.
+     * The weight of every edge comes from an int[] materialized once per weighting and network version,
+     * so the search reads a primitive array like every other search (ShortestPathKernel.shortestPathConstrained)
+     *
+     * @param from Origin airport
+     * @param to Destination airport
+     * @param weight weighting of the edges, e.g. a LinearEdgeWeight
+     * @return List of flights for the trip, empty list if no route found
      */
-    private List<Flight> findCheapestFlights(Airport from, Airport to) throws SQLException {
+    public List<Flight> planTrip(Airport from, Airport to, EdgeWeight weight) {
+        if (from == null || to == null || weight == null) return Collections.emptyList();
 
-        // Init the Datastructures for the algorithm
-        Map<Airport, Integer> costs = new HashMap<>(); //Distance table, this Algorithm optimizes for cost
-        Map<Airport, Flight> predecessors = new HashMap<>(); //Predecessor table so we can reconstruct Paths to make the optimal choice
+        // Pin the current version of the network, the weight array belongs to it
+        NetworkSnapshot snapshot = network.getSnapshot();
+        int source = snapshot.idOf(from);
+        int target = snapshot.idOf(to);
+        if (source == target || !mayReach(snapshot, source, target, "weighted")) return Collections.emptyList();
 
-        // Initialize airports and cost with maximum value
-        for (Airport airport : network.getAllAirports()) {
-            costs.put(airport, Integer.MAX_VALUE);
+        return toFlights(snapshot, ShortestPathKernel.shortestPathConstrained(snapshot.flightGraph(),
+                weights(snapshot, weight), source, target, null, null, null));
+    }
+
+    /**
+     * Get the weight of every flight graph edge of a network version, from the cache or evaluated now
+     * Concurrent queries with a new weighting may both evaluate it, the last one wins
+     */
+    private int[] weights(NetworkSnapshot snapshot, EdgeWeight weight) {
+        WeightingKey key = new WeightingKey(weight, snapshot.version());
+        int[] weights;
+        synchronized (weightings) {
+            weights = weightings.get(key);
         }
-        costs.put(from, 0); // Initializing our Starting Airport with cost 0 (freeby)
-
-        // Creating a priority Queue, sorted by current minimum costs
-        // The comparator is created after the costs are initialized
-        PriorityQueue<Airport> priorityQueue = new PriorityQueue<>(
-                Comparator.comparingInt(airport -> costs.getOrDefault(airport, Integer.MAX_VALUE))
-        );
-        priorityQueue.add(from);
-
-        // The Main loop of the Algorithm
-        while (!priorityQueue.isEmpty()) {
-            // We take Airport with the minimum cost, the greedy choice
-            Airport current = priorityQueue.poll();
-
-            // If we reach the destination, the algorithm is stopped.
-            if (current.equals(to)) {
-                // if destination is reached, terminate early
-                break;
+        if (weights != null) return weights;
+
+        // One call of the weighting per edge, base and added. Removed base edges are never read by the search
+        CsrGraph graph = snapshot.flightGraph();
+        int[] distances = snapshot.flightDistances();
+        weights = new int[graph.edgeCount()];
+        for (int e = 0; e < weights.length; e++) {
+            weights[e] = weight.weight(graph.weight(e), distances[e]);
+        }
+        synchronized (weightings) {
+            weightings.put(key, weights);
+        }
+        return weights;
+    }
+
+    // Cache key of an edge weight array, a new network version never hits the entries of an older one
+    private record WeightingKey(EdgeWeight weight, long version) {
+    }
+
+    /**
+     * Computes the distance or cost of the best trip between every origin and every destination
+     *
+     * Selection:
+     *  -"shortest" total distance in km of the shortest route path, on the route graph
+     *  -"cheapest" total cost in euros of the cheapest flights, on the flight graph
+     *
+     * @param origins airports of the rows
+     * @param destinations airports of the columns
+     * @param criteria Either "shortest" or "cheapest"
+     * @return the matrix, null if the criteria is unknown
+     */
+    public TripMatrix planMatrix(List<Airport> origins, List<Airport> destinations, String criteria) {
+        if (origins == null || destinations == null || criteria == null) return null;
+
+        // Pin the current version of the network, every row is computed on the same network
+        NetworkSnapshot snapshot = network.getSnapshot();
+        int[] sources = origins.stream().mapToInt(airport -> airport == null ? -1 : snapshot.idOf(airport)).toArray();
+        int[] targets = destinations.stream().mapToInt(airport -> airport == null ? -1 : snapshot.idOf(airport)).toArray();
+        String[] rowCodes = origins.stream().map(airport -> airport == null ? null : airport.getCode()).toArray(String[]::new);
+        String[] columnCodes = destinations.stream().map(airport -> airport == null ? null : airport.getCode()).toArray(String[]::new);
+
+        switch (criteria.toLowerCase()) {
+            case "shortest": {
+                CsrGraph graph = snapshot.routeGraph();
+                int[][] values = TripMatrix.compute(graph, routePlanner.allPairs(graph), sources, targets);
+                return new TripMatrix("shortest", "km", snapshot.version(), rowCodes, columnCodes, values);
             }
+            case "cheapest": {
+                CsrGraph graph = snapshot.flightGraph();
+                int[][] values = TripMatrix.compute(graph, allPairs.get(graph), sources, targets);
+                return new TripMatrix("cheapest", "EUR", snapshot.version(), rowCodes, columnCodes, values);
+            }
+            default:
+                return null;
+        }
+    }
 
-            // init out list of flights
-            List<Flight> flights = null;
-            // We get all flights from current airport straight from the database
-            try {
-                flights = network.getFlightsFrom(current.getCode());
-            } catch (SQLException e) {
-                throw new RuntimeException(e); // Exception handling
+    /**
+     * Plans every trip of the trade-off between cost and distance in one search, see ParetoSearch
+     * Runs on the flight graph, every leg uses the cheapest flight of its pair and the shortest route of that pair,
+     * flights between airports without a route are skipped because they have no distance
+     *
+     * @param from Origin airport
+     * @param to Destination airport
+     * @return trips of the Pareto front from cheapest to shortest, empty list if no route found
+     */
+    public List<ParetoTrip> planParetoTrips(Airport from, Airport to) {
+        if (from == null || to == null) return Collections.emptyList();
+
+        // Pin the current version of the network, costs and distances come from the same network
+        NetworkSnapshot snapshot = network.getSnapshot();
+        int source = snapshot.idOf(from);
+        int target = snapshot.idOf(to);
+        if (source < 0 || target < 0 || source == target) return Collections.emptyList();
+
+        // The shortest route distance to the target bounds the distance of every flight path from below
+        CsrGraph graph = snapshot.flightGraph();
+        if (!reachability.mayReach(graph, source, target)) return Collections.emptyList();
+        int[] edgeDistances = snapshot.flightDistances();
+        int[] lowerDistances = new int[graph.nodeCount()];
+        ShortestPathKernel.oneToAll(snapshot.routeGraph(), target, true, lowerDistances, null, null);
+
+        List<ParetoTrip> trips = new ArrayList<>();
+        for (int[] edges : ParetoSearch.find(graph, edgeDistances, lowerDistances, source, target)) {
+            int cost = 0;
+            int distance = 0;
+            for (int edge : edges) {
+                cost += graph.weight(edge);
+                distance += edgeDistances[edge];
             }
+            trips.add(new ParetoTrip(cost, distance, toFlights(snapshot, edges)));
+        }
+        return trips;
+    }
+
+    /**
+     * Plans the trip that lands first when leaving an airport at a given time, criteria "earliest", see ConnectionScan
+     * Only flights with a schedule are used. The schedule repeats daily, a trip may continue on the next day
+     *
+     * @param from Origin airport
+     * @param to Destination airport
+     * @param departure earliest departure in minutes after midnight, 0 to 1439
+     * @return the trip, null if there is no trip or the departure is no time of day
+     */
+    public EarliestTrip planEarliestTrip(Airport from, Airport to, int departure) {
+        if (from == null || to == null || departure < 0 || departure >= Flight.MINUTES_PER_DAY) return null;
+
+        // Pin the current version of the network, the timetable belongs to it
+        NetworkSnapshot snapshot = network.getSnapshot();
+        int source = snapshot.idOf(from);
+        int target = snapshot.idOf(to);
+        if (source == target || !mayReach(snapshot, source, target, "earliest")) return null;
+
+        ConnectionScan current = timetable(snapshot);
+        int[] connections = current.earliestArrival(source, target, departure);
+        if (connections.length == 0) return null;
+
+        int cost = 0;
+        List<Flight> flights = new ArrayList<>(connections.length);
+        for (int connection : connections) {
+            Flight flight = current.flight(connection);
+            cost += flight.getCostInEuros();
+            flights.add(flight);
+        }
+        int leaves = current.departure(connections[0]);
+        int lands = current.arrival(connections[connections.length - 1]);
+        return new EarliestTrip(Flight.formatTime(leaves % Flight.MINUTES_PER_DAY),
+                Flight.formatTime(lands % Flight.MINUTES_PER_DAY), lands / Flight.MINUTES_PER_DAY,
+                lands - departure, cost, flights);
+    }
 
+    /**
+     * Get the timetable of a network version, built again if flights or airports were added since the last one
+     * Concurrent queries on a new version may both build it, the last one wins
+     */
+    private ConnectionScan timetable(NetworkSnapshot snapshot) {
+        ConnectionScan current = timetable;
+        if (current == null || !current.covers(snapshot)) {
+            current = ConnectionScan.build(snapshot);
+            timetable = current;
+            log.info("Built the timetable with {} connections", current.connectionCount());
+        }
+        return current;
+    }
 
-            // Processing all outgoing flights from the airport
-
-            for (Flight flight : flights) {
-                Airport neighbor = network.getAirport(flight.getDestinationCode());
-                if (neighbor == null) continue; // Skipping invalid destinations
-                // init the Cost of the flight
-                Integer flightCost = flight.getCostInEuros();
-                if (flightCost == null) continue; // Skip the flight if cost is null
-                /**
-                 * Updating step
-                 * Calcuclate new cost
-                 */
-                int newCost = costs.get(current) + flightCost;
-                if (newCost < costs.getOrDefault(neighbor, Integer.MAX_VALUE)) { // Verifying if new path is cheaper than previous path
-                    costs.put(neighbor, newCost);                                // Updating minimal cost
-                    predecessors.put(neighbor, flight);                          // Storing the optimal flight to th eneighbor
-                    priorityQueue.add(neighbor);                                 // Adding to queue for processing
-                }
+    /**
+     * Finds every airport reachable from an origin within a budget, sorted by total distance or cost
+     *
+     * Selection:
+     *  -"shortest" total distance in km on the route graph, like planMatrix
+     *  -"cheapest" total cost in euros of the cheapest flights on the flight graph
+     *
+     * The search of an origin is cached for the network version. A query with a budget up to the cached one
+     * is answered from the cache, a larger budget searches again and replaces the entry.
+     *
+     * @param from Origin airport
+     * @param criteria Either "shortest" or "cheapest"
+     * @param budget largest total distance or cost, null for no limit
+     * @param offset index of the first destination of the page
+     * @param limit maximum amount of destinations of the page
+     * @return the page, null if the criteria is unknown
+     */
+    public ExploreResult explore(Airport from, String criteria, Integer budget, int offset, int limit) {
+        if (from == null || criteria == null || offset < 0 || limit < 0) return null;
+
+        // Pin the current version of the network, the cache entry belongs to it
+        NetworkSnapshot snapshot = network.getSnapshot();
+        String name = criteria.toLowerCase();
+        CsrGraph graph;
+        String unit;
+        switch (name) {
+            case "shortest":
+                graph = snapshot.routeGraph();
+                unit = "km";
+                break;
+            case "cheapest":
+                graph = snapshot.flightGraph();
+                unit = "EUR";
+                break;
+            default:
+                return null;
+        }
+        int source = snapshot.idOf(from);
+        int bound = budget == null ? Integer.MAX_VALUE : budget;
+        if (source < 0 || bound < 0) {
+            return new ExploreResult(from.getCode(), name, unit, snapshot.version(), budget, 0, offset, List.of());
+        }
+
+        ExplorationKey key = new ExplorationKey(source, name, snapshot.version());
+        Exploration exploration;
+        synchronized (explorations) {
+            exploration = explorations.get(key);
+        }
+        if (exploration == null || !exploration.covers(bound)) {
+            exploration = Exploration.search(graph, source, bound);
+            synchronized (explorations) {
+                explorations.put(key, exploration);
             }
         }
-        // Reconstructing the optimal path for the trip
 
-        return reconstructFlightPath(predecessors, from, to);
+        int total = exploration.countWithin(bound);
+        int end = (int) Math.min(total, (long) offset + limit);
+        List<ReachableAirport> page = new ArrayList<>(Math.max(0, end - offset));
+        for (int i = offset; i < end; i++) {
+            Airport airport = snapshot.airport(exploration.node(i));
+            page.add(new ReachableAirport(airport.getCode(), airport.getCity(), exploration.value(i), exploration.hops(i)));
+        }
+        return new ExploreResult(from.getCode(), name, unit, snapshot.version(), budget, total, offset, page);
+    }
+
+    // Cache key of an exploration, a new network version never hits the entries of an older one
+    private record ExplorationKey(int source, String criteria, long version) {
+    }
+
+    /**
+     * Plans the K best alternative trips based on the specified criteria, with Yen's algorithm (see KShortestPaths)
+     *
+     * Selection:
+     *  -"shortest" the K shortest loopless route paths, each flown with the cheapest flight per route.
+     *   Paths with a route that has no flight are left out, so fewer than K trips may be returned
+     *  -"cheapest" the K cheapest loopless airport sequences on the flight graph, each leg with its cheapest flight
+     *
+     * @param from Origin airport
+     * @param to Destination airport
+     * @param criteria Either "shortest" or "cheapest"
+     * @param k Maximum amount of trips
+     * @return trips ordered from best to worst, empty list if no route found, null if the criteria is unknown
+     */
+    public List<List<Flight>> planTrips(Airport from, Airport to, String criteria, int k) {
+        if (from == null || to == null || criteria == null) return null;
+
+        // Pin the current version of the network, every spur search runs on the same network
+        NetworkSnapshot snapshot = network.getSnapshot();
+        int source = snapshot.idOf(from);
+        int target = snapshot.idOf(to);
+        boolean reachable = mayReach(snapshot, source, target, criteria);
+
+        List<List<Flight>> trips = new ArrayList<>();
+        switch (criteria.toLowerCase()) {
+            case "shortest":
+                if (!reachable) return trips;
+                for (int[] edges : KShortestPaths.find(snapshot.routeGraph(), source, target, k)) {
+                    List<Flight> flights = findFlightsForRoutes(snapshot, edges);
+                    if (!flights.isEmpty()) trips.add(flights);
+                }
+                return trips;
+            case "cheapest":
+                if (!reachable) return trips;
+                for (int[] edges : KShortestPaths.find(snapshot.flightGraph(), source, target, k)) {
+                    trips.add(toFlights(snapshot, edges));
+                }
+                return trips;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Checks with the reachability indexes if there can be a trip between two airports, see Reachability
+     * "shortest" needs a path in the route graph, every other criteria a path in the flight graph
+     *
+     * @param from Origin airport
+     * @param to Destination airport
+     * @param criteria criteria of the trip
+     * @return false if there is certainly no trip, true if there may be one or the index of the current network is not ready
+     */
+    public boolean mayReach(Airport from, Airport to, String criteria) {
+        if (from == null || to == null || criteria == null) return false;
+        NetworkSnapshot snapshot = network.getSnapshot();
+        return mayReach(snapshot, snapshot.idOf(from), snapshot.idOf(to), criteria);
+    }
+
+    private boolean mayReach(NetworkSnapshot snapshot, int source, int target, String criteria) {
+        if (source < 0 || target < 0) return false;
+        if (criteria.equalsIgnoreCase("shortest")) return routePlanner.mayReach(snapshot.routeGraph(), source, target);
+        return reachability.mayReach(snapshot.flightGraph(), source, target);
+    }
+
+    /**
+     * Finds flights that follow the shortest route path
+     * @param snapshot Network version to plan on
+     * @param from  Originating Airport
+     * @param to    Destination Airport
+     * @return List of flights following the criteria
+     */
+    private List<Flight> findShortestFlights(NetworkSnapshot snapshot, Airport from, Airport to) {
+        // Get the shortest route path using the existing route planner, as edges of the route graph
+        int[] shortestRoutes = routePlanner.findShortestPathEdges(snapshot, from, to);
+
+        // Find flights that correspond to these routes
+        return findFlightsForRoutes(snapshot, shortestRoutes);
     }
 
     /**
-     * Reconstruct flights by backtracking through predecessors
-     * Takes the Params as a combination of the Airports and flights
-     * Steps:
-     *      1. Start at Destination
-     *      2. Follow the predecessor chain backwards to the origin
-     *      3. Collect the flights
-     *      4. Use addFirst() to maintain the order
+     * Finds the cheapest flight path using Dijkstra's algorithm with cost as weight, optimizing for lowest total Trip cost
+     * Similar to TripPlannerRoute, first wie initialize the data, make greedy choice, update neighbors and reconstruct optimal path
+     * Runs on the flight graph of the snapshot, where every edge carries the cost of the cheapest flight between two airports
      *
-     * @param predecessors Previous step flights
+     * @param snapshot Network version to plan on
      * @param from Originating Airport
      * @param to Destination Airport
-     * @return path the Reconstructed Path
-     * @throws SQLException if dp operations fail
+     * @return List<Flight> List of the cheapest Flights
      */
-    private List<Flight> reconstructFlightPath(Map<Airport, Flight> predecessors, Airport from, Airport to) throws SQLException {
-        // Similar to tripPlannerRoute
-        LinkedList<Flight> path = new LinkedList<>();
-        Airport current = to;
-
-        // Verify that we can reach the destination
-        if (predecessors.get(current) == null && !from.equals(to)) {
-            return Collections.emptyList();
+    private List<Flight> findCheapestFlights(NetworkSnapshot snapshot, Airport from, Airport to) {
+        int source = snapshot.idOf(from);
+        int target = snapshot.idOf(to);
+        if (source < 0 || target < 0 || source == target) return Collections.emptyList();
+
+        // The search itself runs in the shared kernel on the flight graph, weight = cost of the cheapest flight
+        CsrGraph graph = snapshot.flightGraph();
+        if (!reachability.mayReach(graph, source, target)) return Collections.emptyList();
+        AllPairs tables = allPairs.get(graph);
+        int[] edges = tables == null ? null : tables.path(source, target);
+        if (edges != null) {
+            return toFlights(snapshot, edges);
+        }
+        Landmarks alt = landmarks;
+        ContractionHierarchy ch = hierarchy.get(graph, source, target);
+        if (ch != null) {
+            edges = ShortestPathKernel.shortestPathHierarchy(ch, source, target);
+        } else if (alt != null && alt.covers(graph, source, target)) {
+            edges = ShortestPathKernel.shortestPathLandmarks(graph, source, target, alt);
+            landmarkQueries.increment();
+            landmarkSettled.add(ShortestPathKernel.lastSettledCount());
+        } else {
+            if (landmarkCount > 0) fallbackQueries.increment();
+            edges = bidirectional
+                    ? ShortestPathKernel.shortestPathBidirectional(graph, source, target)
+                    : ShortestPathKernel.shortestPath(graph, source, target);
         }
+        return toFlights(snapshot, edges);
+    }
 
-        //Back tracking from destination to Original origin(not for a single leg of the trip but entire trip) by using the predecessors
-        while (predecessors.containsKey(current)) {
-            Flight flight = predecessors.get(current);
-            path.addFirst(flight);                                  // adding the flight at the begging of the list
-            current = network.getAirport(flight.getOriginCode());  // Move to the origin(the previous Airport in the path)
+    /**
+     * Translates the edges of a path in the flight graph back into the cheapest flights
+     * @param snapshot Snapshot the search ran on
+     * @param edges Edge ids of the path in travel order
+     * @return path the List of Flights, empty if the path is empty
+     */
+    private List<Flight> toFlights(NetworkSnapshot snapshot, int[] edges) {
+        if (edges.length == 0) return Collections.emptyList();
+        List<Flight> path = new ArrayList<>(edges.length);
+        for (int edge : edges) {
+            path.add(snapshot.flight(edge));
         }
         return path;
     }
 
     /**
-     * Converting a List of Routes into the flights
+     * Converting a path of route edges into the flights
      * For each route, the method will select the cheapest available flight
+     * The flight graph edge of every route edge is kept by the snapshot (NetworkSnapshot.flightEdgeOfRoute),
+     * so every leg is one array read without looking at the other flights of the origin
      */
-    private List<Flight> findFlightsForRoutes(List<Route> routes) {
-        List<Flight> flights = new ArrayList<>();
-
-        for (Route route : routes) {
-            List<Flight> availableFlights = null;
-            try {
-                availableFlights = network.getFlightsFrom(route.getOriginCode());   // We are tasking all flights that are on Route
-            } catch (SQLException e) {
-                throw new RuntimeException(e);                                      //Exception handling
-            }
-
-            // We find the flight for the choosen route with the lowest cost
-            Flight selectedFlight = null;
-            int cheapestCost = Integer.MAX_VALUE;
-
-            for (Flight flight : availableFlights) {
-                if (flight.getDestinationCode().equals(route.getDestinationCode())){// Verifying that the flight is on Route i.e. has the correct Destination
-                    Integer cost = flight.getCostInEuros();
-                    if (cost != null && cost < cheapestCost) {                      // If the cost exists, i.e. the flight exists, and is lower than the cheapest Cost so far
-                        cheapestCost = cost;                                        // Then we update costs
-                        selectedFlight = flight;                                    // and flight
-                    }
-                }
-            }
-            if (selectedFlight != null) {                                           // If the flight exists, add it to the flights
-                flights.add(selectedFlight);
-            } else {
-                return Collections.emptyList();                                     // If no flight found for this route, return empty list
-
+    private List<Flight> findFlightsForRoutes(NetworkSnapshot snapshot, int[] routeEdges) {
+        if (routeEdges.length == 0) return Collections.emptyList();
+        List<Flight> flights = new ArrayList<>(routeEdges.length);
+
+        for (int routeEdge : routeEdges) {
+            int edge = snapshot.flightEdgeOfRoute(routeEdge);
+            if (edge < 0) {
+                return Collections.emptyList();     // If no flight found for this route, return empty list
             }
+            flights.add(snapshot.flight(edge));
         }
 
         return flights;
@@ -272,7 +865,7 @@ public class TripPlannerFlight {
     }
 
 
-    public String planAndFormatTrip(Airport from, Airport to, String criteria) throws SQLException {
+    public String planAndFormatTrip(Airport from, Airport to, String criteria) {
         List<Flight> flights = planTrip(from, to, criteria);
         return formatFlightTrip(flights);
     }
@@ -2,7 +2,7 @@ package org.pi2.service.planning;
 
 import org.pi2.model.*;
 
-import java.sql.SQLException;
+import java.nio.file.Path;
 import java.util.*;
 
 /**
@@ -13,17 +13,55 @@ import java.util.*;
  * - Edges: Routes
  * - Weights: Distance of the routes
  *
+ * The Dijkstra search itself is the ShortestPathKernel, shared with TripPlannerFlight
+ *
+ * A* mode:
+ * - Some routes are shorter than the great-circle distance of their airports (rounded distances in the data), so the
+ *   great-circle distance is scaled by the smallest ratio of route distance to great-circle distance over all routes,
+ *   at most 1 (NetworkSnapshot.greatCircleScale). The scaled distance to the destination is a lower bound of the
+ *   remaining trip
+ * - A* uses it to settle the airports in the direction of the destination first
+ * - The planner only falls back to Dijkstra if the factor is 0, an airport has no coordinates or a route has distance 0
+ *
+ * All-pairs tables:
+ * - Small networks get a distance table and a first edge table of all airport pairs, see AllPairs
+ * - A query is one lookup per leg, the tables are computed again after every change of the network
+ *
+ * Reachability index:
+ * - Every version of the route graph gets its strongly connected components and their reachability bitsets,
+ *   see Reachability. A trip between airports that can not reach each other is rejected without any search
+ *
+ * Constraints:
+ * - Trips that must not change planes at some airports or countries run a Dijkstra that skips them,
+ *   see TripConstraints. The preprocessed tables and hierarchies do not know the filters and are not used
+ *
+ * Contraction hierarchy:
+ * - If enabled, every new base of the route graph is contracted in the background, see ContractionHierarchy
+ * - Queries on a graph without changes since the last compaction run the upward search on the hierarchy,
+ *   and only fall back to A* or Dijkstra while the hierarchy is missing or new routes are in the delta
+ *
  * Complexity_
  *  - Time complexity O(M+N)*log M)
  *      - with M=Amount of airport, N=Amount of routes
  *  - Space Complexity: O(M)
  */
 public class TripPlannerRoute {
+    private static final int[] NO_PATH = new int[0];
     /**
      * FlightNetwork contains all airports and routes
      * Declared as final so it wont change during construction
      */
     private final FlightNetwork network;
+    // Point to point queries search from both ends by default, false runs the unidirectional search
+    private volatile boolean bidirectional = true;
+    // A* towards the destination if the airports have coordinates, false always uses Dijkstra
+    private volatile boolean aStar = true;
+    // Contraction hierarchy of the route graph, off until setContractionHierarchy is called
+    private final HierarchyHolder hierarchy;
+    // All-pairs tables of the route graph, off until setAllPairs is called
+    private final AllPairsHolder allPairs;
+    // Reachability index of the route graph, rejects impossible trips before any search
+    private final ReachabilityHolder reachability;
 
     /**
      * Constructor with dependency
@@ -31,11 +69,15 @@ public class TripPlannerRoute {
      */
     public TripPlannerRoute(FlightNetwork network) {
         this.network = network;
+        this.hierarchy = new HierarchyHolder("route", NetworkSnapshot::routeGraph, network);
+        this.allPairs = new AllPairsHolder("route", NetworkSnapshot::routeGraph, network);
+        this.reachability = new ReachabilityHolder("route", NetworkSnapshot::routeGraph, network);
     }
 
     /**
      * Finding the shortest path with Dijkstra
-     * Algorithm Steps:
+     * The search runs on the immutable CSR snapshot of the network, no database access happens while searching
+     * Algorithm Steps (see ShortestPathKernel):
      *  1. Init
      *      Every Distance as max Value, set Starting Vertice to 0
      *  2. Greedy Choice
@@ -43,142 +85,173 @@ public class TripPlannerRoute {
      *  3. Relaxation
      *      Update neighbours, if better path was found
      *  4. Reconstruction
-     *      We Reconstruct the optimal path by using a predecessor List
+     *      We Reconstruct the optimal path by using the predecessor edges
+     * @param from Starting Airport
+     * @param to Destination Airport
+     * @return List of Routes for the shortest path, empty if no path exists
+     */
+    public List<Route> findShortestPath(Airport from, Airport to) {
+        // Pin the current version of the network for the whole query
+        return findShortestPath(network.getSnapshot(), from, to);
+    }
+
+    /**
+     * Finding the shortest path with Dijkstra on a given snapshot
+     * Used by callers that already pinned a network version for their whole query
+     * @param snapshot Network version to search on
      * @param from Starting Airport
      * @param to Destination Airport
      * @return List of Routes for the shortest path, empty if no path exists
      */
-    public List<Route> findShortestPath(Airport from, Airport to) throws SQLException {
+    public List<Route> findShortestPath(NetworkSnapshot snapshot, Airport from, Airport to) {
+        return toRoutes(snapshot, findShortestPathEdges(snapshot, from, to));
+    }
+
+    /**
+     * Finding the shortest path on a given snapshot as edge ids of the route graph
+     * Used by the flight planner, which maps the route edges to their flights without the Route objects
+     * @param snapshot Network version to search on
+     * @param from Starting Airport
+     * @param to Destination Airport
+     * @return edge ids of the path in travel order, empty if no path exists
+     */
+    int[] findShortestPathEdges(NetworkSnapshot snapshot, Airport from, Airport to) {
         // Validation of Input
-        if (from==null||to==null) return Collections.emptyList();
-
-        /***
-         * Step 1, Initialize Data
-         * distance: Storing the minimal known distance
-         * key: Destination airport
-         * Value: Integer(Minimal distance in Km
-         */
-        Map<Airport, Integer> distances=new HashMap<>();
-        /**
-         * Predecessor table for path reconstruction
-         * Key: Destinaiton Airport
-         * Allows us to backtrack
-         */
-        Map<Airport, Route> predecessors=new HashMap<>();
-
-        /**
-         * priorityQueue: the minheap for greedily choosing the next vertice
-         * sorting: Sorted by current distance, using distancess::get as comparator
-         */
-        PriorityQueue<Airport> priorityQueue=new PriorityQueue<>(Comparator.comparingInt(distances::get));
-
-        /**
-         * Initializing the distances
-         */
-        try {
-            //marking all airports as unreachable
-            for (Airport airport:network.getAllAirports()){
-                distances.put(airport,Integer.MAX_VALUE);
-            }
-        } catch (SQLException e) {
-            // Catching Exceptions in care or DB operation error
-            throw new RuntimeException(e);
-        }
-        // Starting Airport has distance 0, our starting point
-        distances.put(from,0);
-        // Adding our starting point to the priorityQueue
-        priorityQueue.add(from);
-
-        /**
-         * Main Part
-         */
-        while(!priorityQueue.isEmpty()){
-
-            // Choose Airport with the lowest known distance
-            Airport current = priorityQueue.poll();
-
-            // Break if destination is reached
-            // Avoid multiple useless iterations
-            if (current.equals(to)) break;
-
-            /**
-             * Process all outgoing Routes from the Airport
-             * Every route -> an edge in the network
-             */
-            for (Route route: network.getRoutesFrom(current.getCode())){
-                Airport neighbor = null;
-                try {
-                    // Trying to find the Destination Airport of the route
-                    neighbor = network.getAirport(route.getDestinationCode());
-                } catch (SQLException e) {
-                    throw new RuntimeException(e);  // SQL Error handling
-                }
-                if (neighbor==null) continue;       // Skip invalid routes
-
-                /**
-                 * Relaxation
-                 *  Calculcate new distances via new distance= known distance+total distance
-                 */
-                int newDistance=distances.get(current)+route.getDistanceInKilometer();
-
-                // Checking if the new path is actually shorter than the old one
-                if (newDistance < distances.getOrDefault(neighbor,Integer.MAX_VALUE)){
-                    distances.put(neighbor,newDistance);        // Update minimal known distance to neighbor
-                    predecessors.put(neighbor,route);           // Store Route that might be more optimal
-                    priorityQueue.add(neighbor);                // Adding to PriorityQueue
-                }
-            }
+        if (from==null||to==null) return NO_PATH;
+
+        int source = snapshot.idOf(from);
+        int target = snapshot.idOf(to);
+        // Unknown airports or origin = destination -> no route
+        if (source < 0 || target < 0 || source == target) return NO_PATH;
+        // Origin can not reach the destination at all -> no route, without searching
+        if (!reachability.mayReach(snapshot.routeGraph(), source, target)) return NO_PATH;
+
+        // The search itself runs in the shared kernel on the route graph, weight = distance
+        AllPairs tables = allPairs.get(snapshot.routeGraph());
+        int[] edges = tables == null ? null : tables.path(source, target);
+        if (edges != null) {
+            return edges;
         }
-        return reconstructPath(predecessors,from,to);
+        ContractionHierarchy ch = hierarchy.get(snapshot.routeGraph(), source, target);
+        if (ch != null) {
+            edges = ShortestPathKernel.shortestPathHierarchy(ch, source, target);
+        } else if (aStar && snapshot.greatCircleScale() > 0) {
+            edges = ShortestPathKernel.shortestPathAStar(snapshot.routeGraph(), source, target,
+                    snapshot.latitudes(), snapshot.longitudes(), snapshot.greatCircleScale());
+        } else if (bidirectional) {
+            edges = ShortestPathKernel.shortestPathBidirectional(snapshot.routeGraph(), source, target);
+        } else {
+            edges = ShortestPathKernel.shortestPath(snapshot.routeGraph(), source, target);
         }
+        return edges;
+    }
 
     /**
-     * Method to reconstruct the optimal path via Backtracking through the predecessors
-     *
-     * Algorithm:
-     *      1. start with Destination Airport
-     *      2. Follow Predecessor chain backwards to the origin
-     *      3. Collect Routes in reverse order
-     *      4. Using the addFirst() makes sure, that the order is correct
-     *
-     * @param predecessors  Map with optimal predecessor routes
-     * @param from          Originating Airport
-     * @param to            Destination Airport
-     * @return              List of Routes
+     * Finding the shortest path that does not change planes at the airports the constraints rule out
+     * Dijkstra on the route graph that skips the ruled out airports, see ShortestPathKernel.shortestPathConstrained.
+     * Routes have no airline, the airline filters of the constraints are not used here
+     * @param from Starting Airport
+     * @param to Destination Airport
+     * @param constraints avoided airports and allowed or avoided countries of the connecting airports
+     * @return List of Routes for the shortest allowed path, empty if no path exists
      */
-    private List<Route> reconstructPath(Map<Airport, Route> predecessors, Airport from, Airport to) {
-        /**
-         * Using a Linked List für efficiency
-         * addFirst() complexity: O(1), using ArrayList -> O(n)
-         */
-        LinkedList<Route> path = new LinkedList<>();
-        // Starting the backtracking at Destination airport
-        Airport current = to;
-        // Verifying if we could reach a destination
-        // if no predecessor exists for the destination -> No path
-        // Exception: Origin = Destination (Empty Route)
-        if (predecessors.get(current) == null && !from.equals(to)) {
-            return Collections.emptyList();
-        }
+    public List<Route> findShortestPath(Airport from, Airport to, TripConstraints constraints) {
+        if (constraints == null || !constraints.hasAirportFilter()) return findShortestPath(from, to);
+        if (from == null || to == null) return Collections.emptyList();
 
-        /**
-         * Following the predecessor Chain from End to start
-         * As long as predecessors exist, this will continue
-         * And terminate if the Origin Airport has no predecessor
-         */
-        while (predecessors.containsKey(current)) {
-            // get Route with optimal path to current
-            Route route = predecessors.get(current);
-            // Add to start of List
-            path.addFirst(route);
-            // Move to Origin of current route
-            try {
-                current = network.getAirport(route.getOriginCode());
-            } catch (SQLException e) {
-                throw new RuntimeException(e);      // Exception handling
-            }
+        // Pin the current version of the network for the whole query
+        NetworkSnapshot snapshot = network.getSnapshot();
+        int source = snapshot.idOf(from);
+        int target = snapshot.idOf(to);
+        if (source < 0 || target < 0 || source == target) return Collections.emptyList();
+        if (!reachability.mayReach(snapshot.routeGraph(), source, target)) return Collections.emptyList();
+
+        TripConstraints.Mask mask = constraints.compile(snapshot, source, target);
+        return toRoutes(snapshot, ShortestPathKernel.shortestPathConstrained(snapshot.routeGraph(), null,
+                source, target, null, null, mask.nodes()));
+    }
+
+    /**
+     * Checks with the reachability index if there can be a route path between two airports, see Reachability
+     * @param from Starting Airport
+     * @param to Destination Airport
+     * @return false if there is certainly no path, true if there is one or the index of the current network is not ready
+     */
+    public boolean mayReach(Airport from, Airport to) {
+        if (from == null || to == null) return false;
+        NetworkSnapshot snapshot = network.getSnapshot();
+        return mayReach(snapshot.routeGraph(), snapshot.idOf(from), snapshot.idOf(to));
+    }
+
+    /**
+     * Checks with the reachability index if there can be a path between two nodes of the route graph
+     * @param graph route graph of the pinned snapshot
+     * @param source start node, -1 if unknown
+     * @param target destination node, -1 if unknown
+     * @return false if there is certainly no path
+     */
+    boolean mayReach(CsrGraph graph, int source, int target) {
+        return source >= 0 && target >= 0 && reachability.mayReach(graph, source, target);
+    }
+
+    /**
+     * Switches between the bidirectional and the unidirectional search, e.g. to compare them
+     * Both return a path of the same length
+     * @param bidirectional true to search from both ends (default), false to search from the origin only
+     */
+    public void setBidirectional(boolean bidirectional) {
+        this.bidirectional = bidirectional;
+    }
+
+    /**
+     * Switches the A* search on or off
+     * A* is used if every airport has coordinates, with the great-circle distance scaled down to a lower bound
+     * of every route (see NetworkSnapshot.greatCircleScale), Dijkstra otherwise
+     * @param aStar true to use A* when possible (default), false to always use Dijkstra
+     */
+    public void setAStar(boolean aStar) {
+        this.aStar = aStar;
+    }
+
+    /**
+     * Switches the contraction hierarchy of the route graph on or off
+     * @param enabled true to contract every new base of the route graph in the background
+     * @param file file the hierarchy is kept in across restarts, null to keep it in memory only
+     */
+    public void setContractionHierarchy(boolean enabled, Path file) {
+        hierarchy.configure(enabled, file);
+    }
+
+    /**
+     * Sets the airport limit and the algorithm of the all-pairs tables of the route graph
+     * @param maxAirports networks with at most this many airports get the tables, 0 disables them
+     * @param method algorithm that computes the tables
+     */
+    public void setAllPairs(int maxAirports, AllPairs.Method method) {
+        allPairs.configure(maxAirports, method);
+    }
+
+    /**
+     * Get the all-pairs tables of a route graph, used by the many-to-many matrix
+     * @param graph route graph of the pinned snapshot
+     * @return the tables, null if they do not belong to exactly this graph
+     */
+    AllPairs allPairs(CsrGraph graph) {
+        return allPairs.get(graph);
+    }
+
+    /**
+     * Translates the edges of a path in the route graph back into the routes
+     * @param snapshot Snapshot the search ran on
+     * @param edges Edge ids of the path in travel order
+     * @return List of Routes, empty if the path is empty
+     */
+    private List<Route> toRoutes(NetworkSnapshot snapshot, int[] edges) {
+        if (edges.length == 0) return Collections.emptyList();
+        List<Route> path = new ArrayList<>(edges.length);
+        for (int edge : edges) {
+            path.add(snapshot.route(edge));
         }
-        // Path is now in the correct order( Destination -> Origin)
         return path;
     }
 
@@ -209,7 +282,7 @@ public class TripPlannerRoute {
         }
 
         // Method to find and format trip in one call
-        public String planAndFormatRoute(Airport from, Airport to) throws SQLException {
+        public String planAndFormatRoute(Airport from, Airport to) {
             List<Route> routes = findShortestPath(from, to);
             return formatRoute(routes);
         }
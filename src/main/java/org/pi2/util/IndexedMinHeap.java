@@ -0,0 +1,189 @@
+package org.pi2.util;
+
+import java.util.Arrays;
+
+/**
+ * Indexed 4-ary min heap over int node ids with int keys, supports decrease-key
+ *
+ * Every node is at most once in the heap. Entries pack (key, node) into one long, so two nodes with the
+ * same key are ordered by their id and the heap compares plain longs. The position of every node is kept
+ * in an index array, which makes decrease-key O(log n) instead of inserting a duplicate entry.
+ *
+ * A 4-ary heap is flatter than a binary heap, a sift down touches four children that lie next to each other
+ * in memory, which fits the many decrease-key and few poll operations of Dijkstra.
+ *
+ * Restrictions:
+ * - Keys must not be negative
+ * - Node ids must be below the capacity
+ *
+ * Not thread safe, clear() makes the heap reusable without touching the index array.
+ */
+public final class IndexedMinHeap {
+    private static final int ARITY = 4;
+
+    private long[] heap;    // packed (key << 32 | node), heap ordered
+    private int[] position; // node to index in heap, only valid while the node is in the heap
+    private int size;
+
+    /**
+     * Creates an empty heap
+     * @param capacity amount of node ids, nodes must be below this value
+     */
+    public IndexedMinHeap(int capacity) {
+        heap = new long[Math.max(capacity, 1)];
+        position = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Grows the heap so it can hold the given amount of node ids
+     * @param capacity amount of node ids
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > position.length) {
+            int newCapacity = Math.max(capacity, position.length + (position.length >> 1));
+            heap = Arrays.copyOf(heap, newCapacity);
+            position = Arrays.copyOf(position, newCapacity);
+        }
+    }
+
+    /**
+     * Removes all nodes, O(1)
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Checks if the heap is empty
+     * @return true if no node is in the heap
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the amount of nodes in the heap
+     * @return amount of nodes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if a node is in the heap
+     * The entry at the stored position is compared with the node, so stale positions of earlier uses are harmless
+     * @param node node id
+     * @return true if the node is in the heap
+     */
+    public boolean contains(int node) {
+        int index = position[node];
+        return index >= 0 && index < size && (int) heap[index] == node;
+    }
+
+    /**
+     * Inserts a node that is not in the heap
+     * @param node node id
+     * @param key non negative key
+     */
+    public void insert(int node, int key) {
+        int index = size++;
+        siftUp(index, ((long) key << 32) | node);
+    }
+
+    /**
+     * Lowers the key of a node in the heap
+     * @param node node id, must be in the heap
+     * @param key new key, not greater than the current key
+     */
+    public void decreaseKey(int node, int key) {
+        siftUp(position[node], ((long) key << 32) | node);
+    }
+
+    /**
+     * Inserts the node or lowers its key, whichever applies
+     * @param node node id
+     * @param key non negative key
+     */
+    public void insertOrDecrease(int node, int key) {
+        if (contains(node)) {
+            decreaseKey(node, key);
+        } else {
+            insert(node, key);
+        }
+    }
+
+    /**
+     * Get the smallest key without removing it
+     * @return smallest key, the heap must not be empty
+     */
+    public int minKey() {
+        return (int) (heap[0] >>> 32);
+    }
+
+    /**
+     * Get the node with the smallest key without removing it
+     * @return node id, the heap must not be empty
+     */
+    public int minNode() {
+        return (int) heap[0];
+    }
+
+    /**
+     * Removes the node with the smallest key
+     * @return node id, the heap must not be empty
+     */
+    public int poll() {
+        int node = (int) heap[0];
+        long last = heap[--size];
+        if (size > 0) {
+            siftDown(0, last);
+        }
+        return node;
+    }
+
+    /**
+     * Moves an entry up from an index until its parent is smaller
+     * @param index start index
+     * @param entry packed entry to place
+     */
+    private void siftUp(int index, long entry) {
+        while (index > 0) {
+            int parent = (index - 1) / ARITY;
+            long parentEntry = heap[parent];
+            if (parentEntry <= entry) break;
+            heap[index] = parentEntry;
+            position[(int) parentEntry] = index;
+            index = parent;
+        }
+        heap[index] = entry;
+        position[(int) entry] = index;
+    }
+
+    /**
+     * Moves an entry down from an index until all of its children are larger
+     * @param index start index
+     * @param entry packed entry to place
+     */
+    private void siftDown(int index, long entry) {
+        while (true) {
+            int first = index * ARITY + 1;
+            if (first >= size) break;
+            // smallest of up to four children, they lie next to each other
+            int last = Math.min(first + ARITY, size);
+            int child = first;
+            long childEntry = heap[first];
+            for (int i = first + 1; i < last; i++) {
+                if (heap[i] < childEntry) {
+                    child = i;
+                    childEntry = heap[i];
+                }
+            }
+            if (entry <= childEntry) break;
+            heap[index] = childEntry;
+            position[(int) childEntry] = index;
+            index = child;
+        }
+        heap[index] = entry;
+        position[(int) entry] = index;
+    }
+}
@@ -0,0 +1,169 @@
+package org.pi2.util;
+
+import java.util.Arrays;
+
+/**
+ * Hash map with primitive int keys and primitive int values
+ *
+ * Open addressing with linear probing in two parallel int arrays, no boxing and no entry objects.
+ * The capacity is always a power of two and the table is grown at a load factor of 0.5.
+ *
+ * Restrictions:
+ * - Keys must not be negative, -1 marks a free slot
+ * - get returns the missing value given at construction for keys that are not mapped
+ *
+ * Not thread safe.
+ */
+public final class IntIntHashMap {
+    private static final int FREE = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+    private final int missingValue; // returned by get for unmapped keys
+
+    /**
+     * Creates an empty map
+     * @param expectedSize expected amount of entries
+     * @param missingValue value returned for unmapped keys
+     */
+    public IntIntHashMap(int expectedSize, int missingValue) {
+        int capacity = tableSize(expectedSize);
+        keys = new int[capacity];
+        Arrays.fill(keys, FREE);
+        values = new int[capacity];
+        mask = capacity - 1;
+        this.missingValue = missingValue;
+    }
+
+    /**
+     * Get the value of a key
+     * @param key non negative key
+     * @return value, or the missing value if the key is not mapped
+     */
+    public int get(int key) {
+        if (key < 0) return missingValue;
+        int slot = mix(key) & mask;
+        int k;
+        while ((k = keys[slot]) != FREE) {
+            if (k == key) return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    /**
+     * Checks if the key is mapped
+     * @param key non negative key
+     * @return true if a value exists
+     */
+    public boolean containsKey(int key) {
+        if (key < 0) return false;
+        int slot = mix(key) & mask;
+        int k;
+        while ((k = keys[slot]) != FREE) {
+            if (k == key) return true;
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Maps a key to a value
+     * @param key non negative key
+     * @param value value
+     * @return previous value or the missing value
+     */
+    public int put(int key, int value) {
+        if (key < 0) throw new IllegalArgumentException("Negative key: " + key);
+        int slot = mix(key) & mask;
+        int k;
+        while ((k = keys[slot]) != FREE) {
+            if (k == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return missingValue;
+    }
+
+    /**
+     * Get the amount of mappings
+     * @return amount of mappings
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all mappings, keeps the capacity
+     */
+    public void clear() {
+        if (size == 0) return;
+        Arrays.fill(keys, FREE);
+        size = 0;
+    }
+
+    /**
+     * Creates an independent copy of the map
+     * @return copy with the same mappings
+     */
+    public IntIntHashMap copy() {
+        IntIntHashMap copy = new IntIntHashMap(0, missingValue);
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.size = size;
+        copy.mask = mask;
+        return copy;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        Arrays.fill(keys, FREE);
+        values = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key == FREE) continue;
+            int slot = mix(key) & mask;
+            while (keys[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = oldValues[i];
+        }
+    }
+
+    /**
+     * Power of two table size that keeps the load factor at or below 0.5
+     * @param expectedSize expected amount of entries
+     * @return table size
+     */
+    static int tableSize(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spreads the key bits, packed IATA codes and dense ids are clustered in the low bits
+     * @param key key
+     * @return mixed hash
+     */
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
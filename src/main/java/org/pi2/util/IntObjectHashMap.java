@@ -0,0 +1,268 @@
+package org.pi2.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Hash map with primitive int keys and object values
+ *
+ * Open addressing with linear probing in two parallel arrays, so neither the keys are boxed nor an entry object is
+ * allocated per mapping. The capacity is always a power of two and the table is grown at a load factor of 0.5.
+ *
+ * Restrictions:
+ * - Keys must not be negative, -1 marks a free slot
+ * - Values must not be null, get returns null for missing keys
+ *
+ * Not thread safe.
+ *
+ * @param <V> value type
+ */
+public final class IntObjectHashMap<V> {
+    private static final int FREE = -1;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    /**
+     * Creates an empty map
+     */
+    public IntObjectHashMap() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty map that holds the expected amount of entries without growing
+     * @param expectedSize expected amount of entries
+     */
+    public IntObjectHashMap(int expectedSize) {
+        int capacity = IntIntHashMap.tableSize(expectedSize);
+        keys = new int[capacity];
+        Arrays.fill(keys, FREE);
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Get the value of a key
+     * @param key non negative key
+     * @return value, or null if the key is not mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key < 0) return null;
+        int slot = IntIntHashMap.mix(key) & mask;
+        int k;
+        while ((k = keys[slot]) != FREE) {
+            if (k == key) return (V) values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Get the value of a key or a default
+     * @param key non negative key
+     * @param defaultValue returned if the key is not mapped
+     * @return value or defaultValue
+     */
+    public V getOrDefault(int key, V defaultValue) {
+        V value = get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Checks if the key is mapped
+     * @param key non negative key
+     * @return true if a value exists
+     */
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Maps a key to a value
+     * @param key non negative key
+     * @param value non null value
+     * @return previous value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (key < 0) throw new IllegalArgumentException("Negative key: " + key);
+        if (value == null) throw new IllegalArgumentException("Null value for key " + key);
+        int slot = IntIntHashMap.mix(key) & mask;
+        int k;
+        while ((k = keys[slot]) != FREE) {
+            if (k == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Maps the key only if it is not mapped yet
+     * @param key non negative key
+     * @param value non null value
+     * @return existing value, or null if the value was inserted
+     */
+    public V putIfAbsent(int key, V value) {
+        V existing = get(key);
+        if (existing != null) return existing;
+        put(key, value);
+        return null;
+    }
+
+    /**
+     * Get the value of a key, creating and inserting it first if the key is not mapped
+     * @param key non negative key
+     * @param factory creates the value from the key, must not return null
+     * @return existing or created value
+     */
+    public V computeIfAbsent(int key, IntFunction<? extends V> factory) {
+        V value = get(key);
+        if (value == null) {
+            value = factory.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Removes a key, the following entries of the probe sequence are shifted back so no tombstones are needed
+     * @param key non negative key
+     * @return removed value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        if (key < 0) return null;
+        int slot = IntIntHashMap.mix(key) & mask;
+        int k;
+        while ((k = keys[slot]) != FREE) {
+            if (k == key) {
+                V previous = (V) values[slot];
+                shiftBack(slot);
+                size--;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Get the amount of mappings
+     * @return amount of mappings
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the map is empty
+     * @return true if no mapping exists
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all mappings, keeps the capacity
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Creates an independent copy of the map, the values themselves are not copied
+     * @return copy with the same mappings
+     */
+    public IntObjectHashMap<V> copy() {
+        IntObjectHashMap<V> copy = new IntObjectHashMap<>(0);
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.size = size;
+        copy.mask = mask;
+        return copy;
+    }
+
+    /**
+     * Get all values in table order
+     * @return new list with all values
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> result = new ArrayList<>(size);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) result.add((V) values[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Get all keys in table order
+     * @return new array with all keys
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int key : keys) {
+            if (key != FREE) result[n++] = key;
+        }
+        return result;
+    }
+
+    /**
+     * Closes the gap at a removed slot by moving later entries of the same probe sequence back
+     * @param gap slot that got freed
+     */
+    private void shiftBack(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            int k = keys[slot];
+            if (k == FREE) break;
+            int home = IntIntHashMap.mix(k) & mask;
+            // move the entry if its home slot is not between the gap and its current slot
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = k;
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        keys[gap] = FREE;
+        values[gap] = null;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        Arrays.fill(keys, FREE);
+        values = new Object[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key == FREE) continue;
+            int slot = IntIntHashMap.mix(key) & mask;
+            while (keys[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = oldValues[i];
+        }
+    }
+}
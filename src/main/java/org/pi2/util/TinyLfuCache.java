@@ -0,0 +1,263 @@
+package org.pi2.util;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Bounded cache with W-TinyLFU admission, least recently used eviction and an optional time to live
+ *
+ * Structure:
+ * - Window: small LRU map (1% of the entries) every new entry goes into first, so bursts of new keys
+ *   do not push out the established ones right away
+ * - Main: LRU map with the rest of the entries
+ * - Frequency sketch: count-min sketch of 4-bit counters, 16 per entry of the capacity, 4 counters per key,
+ *   over every access of the cache.
+ *   After 10 accesses per entry of the capacity all counters are halved, so old popularity fades
+ *
+ * Admission:
+ *  A key that falls out of the window competes with the least recently used entry of the main map,
+ *  the one with the higher estimated frequency stays, the other one is evicted. One-off keys (a scan over many
+ *  different keys) therefore never push out the frequent ones.
+ *
+ * Expiry: every entry is dropped on the first read after its time to live, 0 means no expiry.
+ *
+ * Thread safe, every access is synchronized on the cache. The value of a miss is computed outside the lock,
+ * so two threads missing the same key may both compute it, the later one replaces the earlier one.
+ *
+ * Complexity:
+ *  - get / put: O(1)
+ *  - Space Complexity: O(capacity)
+ */
+public final class TinyLfuCache<K, V> {
+    private static final int SAMPLE_FACTOR = 10;     // accesses per entry of the capacity until the counters are halved
+    private static final long RESET_MASK = 0x7777777777777777L; // halves 16 counters of 4 bits at once
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private final int maximumSize;
+    private final int windowSize;
+    private final int mainSize;
+    private final long ttlNanos;                     // 0 for no expiry
+    private final LinkedHashMap<K, Entry<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entry<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final long[] sketch;                     // 16 counters of 4 bits per long
+    private final int sketchMask;
+    private final int sampleSize;
+    private int additions;                           // accesses since the counters were last halved
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    /**
+     * Creates an empty cache
+     * @param maximumSize maximum amount of entries, at least 1
+     * @param ttlMillis time to live of an entry in milliseconds, 0 for no expiry
+     * @throws IllegalArgumentException if the size is below 1 or the time to live negative
+     */
+    public TinyLfuCache(int maximumSize, long ttlMillis) {
+        if (maximumSize < 1) throw new IllegalArgumentException("maximumSize must be at least 1");
+        if (ttlMillis < 0) throw new IllegalArgumentException("ttlMillis must not be negative");
+        this.maximumSize = maximumSize;
+        this.windowSize = Math.max(1, maximumSize / 100);
+        this.mainSize = maximumSize - windowSize;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        // one long of 16 counters per entry, rounded up to a power of two
+        this.sketch = new long[Integer.highestOneBit(Math.max(8, Math.min(maximumSize, 1 << 24) - 1) << 1)];
+        this.sketchMask = sketch.length - 1;
+        this.sampleSize = (int) Math.min(Integer.MAX_VALUE, (long) SAMPLE_FACTOR * maximumSize);
+    }
+
+    /**
+     * Returns the cached value of a key, computes and caches it on a miss
+     * @param key key of the value, must implement equals and hashCode
+     * @param loader computes the value of a missing key, must not return null
+     * @return the cached or computed value
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        return get(key, loader, k -> true);
+    }
+
+    /**
+     * Returns the cached value of a key, computes it on a miss and caches it if the key is still valid
+     * The check runs under the lock of the cache after the value was computed, so a clear() that runs while the value
+     * is computed either happens before the check or removes the value again
+     * @param key key of the value, must implement equals and hashCode
+     * @param loader computes the value of a missing key, must not return null
+     * @param valid checks if a computed value may still be cached, e.g. if the version in the key is still current
+     * @return the cached or computed value
+     */
+    public V get(K key, Function<? super K, ? extends V> loader, Predicate<? super K> valid) {
+        synchronized (this) {
+            V value = lookup(key);
+            if (value != null) {
+                hits++;
+                return value;
+            }
+            misses++;
+        }
+        V value = loader.apply(key);
+        synchronized (this) {
+            if (valid.test(key)) put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the cached value of a key
+     * @param key key of the value
+     * @return the value, null if not cached or expired
+     */
+    public synchronized V getIfPresent(K key) {
+        V value = lookup(key);
+        if (value != null) hits++;
+        else misses++;
+        return value;
+    }
+
+    private V lookup(K key) {
+        increment(key);
+        Map<K, Entry<V>> segment = window;
+        Entry<V> entry = window.get(key);
+        if (entry == null) {
+            segment = main;
+            entry = main.get(key);
+        }
+        if (entry == null) return null;
+        if (ttlNanos > 0 && System.nanoTime() - entry.expiresAt > 0) {
+            segment.remove(key);
+            expirations++;
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Caches a value, replaces the value of a cached key
+     * @param key key of the value
+     * @param value value, must not be null
+     */
+    public synchronized void put(K key, V value) {
+        if (value == null) throw new NullPointerException("value");
+        Entry<V> entry = new Entry<>(value, ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0);
+        if (main.containsKey(key)) {
+            main.put(key, entry);
+            return;
+        }
+        window.put(key, entry);
+        if (window.size() <= windowSize) return;
+
+        // The eldest entry of the window moves to the main map if there is room or it is used more often
+        // than the least recently used entry there
+        Iterator<Map.Entry<K, Entry<V>>> windowEldest = window.entrySet().iterator();
+        Map.Entry<K, Entry<V>> candidate = windowEldest.next();
+        windowEldest.remove();
+        if (main.size() < mainSize) {
+            main.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+        evictions++;
+        if (mainSize == 0) return;
+        Iterator<Map.Entry<K, Entry<V>>> mainEldest = main.entrySet().iterator();
+        Map.Entry<K, Entry<V>> victim = mainEldest.next();
+        if (frequency(candidate.getKey()) > frequency(victim.getKey())) {
+            mainEldest.remove();
+            main.put(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    /**
+     * Removes every entry and resets the frequencies, the statistics are kept
+     */
+    public synchronized void clear() {
+        window.clear();
+        main.clear();
+        Arrays.fill(sketch, 0);
+        additions = 0;
+    }
+
+    /**
+     * Get the statistics of the cache
+     * @return hits, misses, evictions and expirations since the creation, current and maximum size
+     */
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, expirations, window.size() + main.size(), maximumSize);
+    }
+
+    /**
+     * Counts one access of a key in the sketch, halves all counters once the sample is full
+     */
+    private void increment(K key) {
+        long hash = spread(key);
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int counter = counterIndex(hash, i);
+            int slot = counter >>> 4;
+            int shift = (counter & 15) << 2;
+            if (((sketch[slot] >>> shift) & 15) != 15) {
+                sketch[slot] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            for (int i = 0; i < sketch.length; i++) {
+                sketch[i] = (sketch[i] >>> 1) & RESET_MASK;
+            }
+            additions >>>= 1;
+        }
+    }
+
+    /**
+     * Estimated amount of accesses of a key, the smallest of its counters
+     */
+    private int frequency(K key) {
+        long hash = spread(key);
+        int frequency = 15;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int counter = counterIndex(hash, i);
+            frequency = Math.min(frequency, (int) ((sketch[counter >>> 4] >>> ((counter & 15) << 2)) & 15));
+        }
+        return frequency;
+    }
+
+    private int counterIndex(long hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h ^= h >>> 32;
+        // every row uses its own quarter of the 16 counters of a long, so the rows of one key never collide
+        int slot = (int) (h >>> 8) & sketchMask;
+        return (slot << 4) | (row << 2) | (int) (h & 3);
+    }
+
+    private static long spread(Object key) {
+        long h = key.hashCode() * 0x9e3779b97f4a7c15L;
+        return h ^ (h >>> 29);
+    }
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+
+    /**
+     * Statistics of a cache, returned by the /stats endpoint
+     * @param hits lookups answered from the cache
+     * @param misses lookups that had to compute the value
+     * @param evictions entries dropped for the size bound, admission rejections included
+     * @param expirations entries dropped after their time to live
+     * @param size current amount of entries
+     * @param maximumSize maximum amount of entries, 0 if the cache is disabled
+     */
+    public record Stats(long hits, long misses, long evictions, long expirations, int size, int maximumSize) {
+
+        /**
+         * Get the share of the lookups answered from the cache
+         * @return hits in percent of all lookups, 0 without lookups
+         */
+        public double getHitRatePercent() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : 100.0 * hits / lookups;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.pi2.service.planning;
+
+import org.junit.jupiter.api.Test;
+import org.pi2.model.Airport;
+import org.pi2.model.CsrGraph;
+import org.pi2.model.Flight;
+import org.pi2.model.NetworkSnapshot;
+import org.pi2.model.Route;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the parallel delta-stepping engine with Dijkstra (ShortestPathKernel.oneToAll with parents, which never
+ * uses the engine) on random flight graphs with removed base edges, added edges and added airports
+ *
+ * DeltaStepping.run is called directly, past the MIN_NODES gate of DeltaStepping.suited, on graphs large enough that
+ * the frontiers are relaxed in parallel tasks. The runs happen inside their own ForkJoinPool, so the tasks use
+ * several threads even on a machine with a single core.
+ */
+class DeltaSteppingTest {
+    private static final int NODES = 4000;       // large enough for frontiers above the parallel threshold
+    private static final int DEGREE = 6;         // flights per airport of the base
+    private static final int CHANGES = 400;      // flights added after the build
+    private static final int ADDED_AIRPORTS = 20;
+    private static final int SOURCES = 5;        // queries per graph and direction
+    private static final int THREADS = 4;
+
+    @Test
+    void forwardDistancesMatchDijkstra() throws Exception {
+        compare(false);
+    }
+
+    @Test
+    void backwardDistancesMatchDijkstra() throws Exception {
+        compare(true);
+    }
+
+    @Test
+    void refusesNegativeWeights() {
+        List<Airport> airports = List.of(airport(0), airport(1));
+        List<List<Flight>> flights = List.of(List.of(new Flight(code(0), code(1), "A", -5)), List.of());
+        NetworkSnapshot snapshot = NetworkSnapshot.build(1, airports, List.of(List.of(), List.of()), flights);
+
+        assertEquals(-1, DeltaStepping.run(snapshot.flightGraph(), 0, false, new int[2]));
+    }
+
+    private void compare(boolean backward) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        try {
+            for (long seed = 1; seed <= 3; seed++) {
+                Random random = new Random(seed);
+                CsrGraph graph = randomGraph(random).flightGraph();
+                assertTrue(graph.removed() != null && graph.hasAddedEdges(), "graph needs removed and added edges");
+
+                int nodeCount = graph.nodeCount();
+                for (int q = 0; q < SOURCES; q++) {
+                    int source = random.nextInt(nodeCount);
+                    int[] expected = new int[nodeCount];
+                    ShortestPathKernel.oneToAll(graph, source, backward, expected, new int[nodeCount], null);
+
+                    int[] actual = new int[nodeCount];
+                    int reached = pool.submit(() -> DeltaStepping.run(graph, source, backward, actual)).get();
+
+                    assertArrayEquals(expected, actual, "seed " + seed + ", source " + source);
+                    int expectedReached = 0;
+                    for (int distance : expected) {
+                        if (distance != Integer.MAX_VALUE) expectedReached++;
+                    }
+                    assertEquals(expectedReached, reached);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Random network with costs from 0 to 200, then cheaper flights on base pairs (removed base edges),
+     * flights on new pairs (added edges) and new airports with flights from and to them
+     */
+    private static NetworkSnapshot randomGraph(Random random) {
+        List<Airport> airports = new ArrayList<>();
+        List<List<Flight>> flights = new ArrayList<>();
+        List<List<Route>> routes = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            airports.add(airport(i));
+            List<Flight> outgoing = new ArrayList<>();
+            for (int k = 0; k < DEGREE; k++) {
+                outgoing.add(new Flight(code(i), code(random.nextInt(NODES)), "A", random.nextInt(201)));
+            }
+            flights.add(outgoing);
+            routes.add(List.of());
+        }
+        NetworkSnapshot snapshot = NetworkSnapshot.build(1, airports, routes, flights);
+
+        long version = 2;
+        for (int i = 0; i < CHANGES; i++) {
+            int from = random.nextInt(NODES);
+            int[] offsets = snapshot.flightGraph().offsets();
+            // every second flight undercuts a base pair of the origin, the others mostly open new pairs
+            int to = i % 2 == 0 && offsets[from] < offsets[from + 1]
+                    ? snapshot.flightGraph().target(offsets[from])
+                    : random.nextInt(NODES);
+            snapshot = snapshot.withFlight(new Flight(code(from), code(to), "B", random.nextInt(20)), version++);
+        }
+        for (int i = NODES; i < NODES + ADDED_AIRPORTS; i++) {
+            snapshot = snapshot.withAirport(airport(i), version++);
+            snapshot = snapshot.withFlight(new Flight(code(random.nextInt(i)), code(i), "C", random.nextInt(201)), version++);
+            snapshot = snapshot.withFlight(new Flight(code(i), code(random.nextInt(i)), "C", random.nextInt(201)), version++);
+        }
+        return snapshot;
+    }
+
+    private static Airport airport(int id) {
+        return new Airport("Airport " + id, code(id), "City", "Country");
+    }
+
+    private static String code(int id) {
+        return "" + (char) ('A' + id / 676) + (char) ('A' + id / 26 % 26) + (char) ('A' + id % 26);
+    }
+}